@@ -0,0 +1,61 @@
+package ch.obermuhlner.rpc.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class DeadlineTest {
+
+	@Test
+	public void testWithTimeout() {
+		assertEquals(false, Deadline.isSet());
+		assertEquals(Long.MAX_VALUE, Deadline.getRemaining(TimeUnit.MILLISECONDS));
+
+		Deadline.run(10, TimeUnit.SECONDS, () -> {
+			assertEquals(true, Deadline.isSet());
+			assertTrue(Deadline.getRemaining(TimeUnit.SECONDS) > 8);
+		});
+
+		assertEquals(false, Deadline.isSet());
+	}
+
+	@Test
+	public void testNestedDeadlineOnlyShortens() {
+		Deadline.run(1, TimeUnit.SECONDS, () -> {
+			Deadline.run(10, TimeUnit.SECONDS, () -> {
+				assertTrue(Deadline.getRemaining(TimeUnit.MILLISECONDS) <= 1000);
+			});
+
+			Deadline.run(100, TimeUnit.MILLISECONDS, () -> {
+				assertTrue(Deadline.getRemaining(TimeUnit.MILLISECONDS) <= 100);
+			});
+
+			assertTrue(Deadline.getRemaining(TimeUnit.MILLISECONDS) > 100);
+		});
+	}
+
+	@Test
+	public void testCall() {
+		String result = Deadline.call(1, TimeUnit.SECONDS, () -> {
+			assertEquals(true, Deadline.isSet());
+			return "result";
+		});
+
+		assertEquals("result", result);
+		assertEquals(false, Deadline.isSet());
+	}
+
+	@Test
+	public void testPassedDeadline() throws InterruptedException {
+		Deadline.Scope scope = Deadline.withTimeout(1, TimeUnit.MILLISECONDS);
+		try {
+			Thread.sleep(10);
+			assertTrue(Deadline.getRemaining(TimeUnit.MILLISECONDS) < 0);
+		} finally {
+			scope.close();
+		}
+	}
+}
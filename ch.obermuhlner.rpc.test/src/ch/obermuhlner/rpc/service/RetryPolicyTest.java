@@ -0,0 +1,214 @@
+package ch.obermuhlner.rpc.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import ch.obermuhlner.rpc.annotation.RpcMethod;
+import ch.obermuhlner.rpc.exception.RpcException;
+import ch.obermuhlner.rpc.exception.RpcOverloadedException;
+import ch.obermuhlner.rpc.exception.RpcTimeoutException;
+import ch.obermuhlner.rpc.meta.MetaDataService;
+import ch.obermuhlner.rpc.transport.ClientTransport;
+import ch.obermuhlner.rpc.transport.local.DirectLocalTransport;
+
+public class RetryPolicyTest {
+
+	public static interface CounterService {
+		@RpcMethod(idempotent = true)
+		int get();
+
+		int increment();
+	}
+
+	public static class CounterServiceImpl implements CounterService {
+		private int value = 42;
+
+		@Override
+		public int get() {
+			return value;
+		}
+
+		@Override
+		public int increment() {
+			return ++value;
+		}
+	}
+
+	@Test
+	public void testBackoff() {
+		RetryPolicy retryPolicy = new RetryPolicy(5, 10, 25, TimeUnit.MILLISECONDS, new RetryBudget());
+
+		for (int i = 0; i < 100; i++) {
+			long backoffNanos = retryPolicy.getBackoffNanos(1);
+			assertTrue(backoffNanos >= 0 && backoffNanos <= TimeUnit.MILLISECONDS.toNanos(10));
+			backoffNanos = retryPolicy.getBackoffNanos(2);
+			assertTrue(backoffNanos >= 0 && backoffNanos <= TimeUnit.MILLISECONDS.toNanos(20));
+			backoffNanos = retryPolicy.getBackoffNanos(40);
+			assertTrue(backoffNanos >= 0 && backoffNanos <= TimeUnit.MILLISECONDS.toNanos(25));
+		}
+	}
+
+	@Test
+	public void testRetryable() {
+		RetryPolicy retryPolicy = new RetryPolicy();
+
+		assertTrue(retryPolicy.isRetryable(new RpcException("connection refused")));
+		assertTrue(retryPolicy.isRetryable(new RpcOverloadedException("overloaded")));
+		assertFalse(retryPolicy.isRetryable(new RpcTimeoutException("timeout")));
+		assertFalse(retryPolicy.isRetryable(new CancellationException()));
+		assertFalse(retryPolicy.isRetryable(new IllegalArgumentException()));
+	}
+
+	@Test
+	public void testRetryBudget() {
+		RetryBudget retryBudget = new RetryBudget(0.1, 2);
+
+		assertTrue(retryBudget.tryWithdraw());
+		assertTrue(retryBudget.tryWithdraw());
+		assertFalse(retryBudget.tryWithdraw());
+
+		for (int i = 0; i < 9; i++) {
+			retryBudget.deposit();
+		}
+		assertFalse(retryBudget.tryWithdraw());
+		retryBudget.deposit();
+		retryBudget.deposit();
+		assertTrue(retryBudget.tryWithdraw());
+
+		assertEquals(3, retryBudget.getRetryCount());
+		assertEquals(2, retryBudget.getExhaustedCount());
+	}
+
+	@Test
+	public void testRetryIdempotentMethod() {
+		FailingClientTransport clientTransport = createClientTransport(2);
+		CounterService counterService = createCounterService(clientTransport, new RetryPolicy(3, 1, 10, TimeUnit.MILLISECONDS, new RetryBudget()));
+
+		assertEquals(42, counterService.get());
+		assertEquals(3, clientTransport.sentCount);
+		assertEquals(3, clientTransport.requestIds.size());
+	}
+
+	@Test
+	public void testMaxAttempts() {
+		FailingClientTransport clientTransport = createClientTransport(5);
+		CounterService counterService = createCounterService(clientTransport, new RetryPolicy(3, 1, 10, TimeUnit.MILLISECONDS, new RetryBudget()));
+
+		try {
+			counterService.get();
+			fail("expected RpcException");
+		} catch (RpcException e) {
+			// expected
+		}
+		assertEquals(3, clientTransport.sentCount);
+	}
+
+	@Test
+	public void testNoRetryNotIdempotentMethod() {
+		FailingClientTransport clientTransport = createClientTransport(1);
+		CounterService counterService = createCounterService(clientTransport, new RetryPolicy(3, 1, 10, TimeUnit.MILLISECONDS, new RetryBudget()));
+
+		try {
+			counterService.increment();
+			fail("expected RpcException");
+		} catch (RpcException e) {
+			// expected
+		}
+		assertEquals(1, clientTransport.sentCount);
+	}
+
+	@Test
+	public void testNoRetryBudgetExhausted() {
+		RetryBudget retryBudget = new RetryBudget(0.1, 1);
+		FailingClientTransport clientTransport = createClientTransport(100);
+		CounterService counterService = createCounterService(clientTransport, new RetryPolicy(3, 1, 10, TimeUnit.MILLISECONDS, retryBudget));
+
+		for (int i = 0; i < 5; i++) {
+			try {
+				counterService.get();
+				fail("expected RpcException");
+			} catch (RpcException e) {
+				// expected
+			}
+		}
+
+		// 5 calls and a single retry
+		assertEquals(6, clientTransport.sentCount);
+		assertEquals(1, retryBudget.getRetryCount());
+	}
+
+	@Test
+	public void testTransportTimeoutSendsCancel() {
+		List<Request> cancelRequests = new ArrayList<>();
+		ClientTransport clientTransport = (request) -> {
+			if (!request.execute) {
+				cancelRequests.add(request);
+				return CompletableFuture.completedFuture(new Response());
+			}
+			CompletableFuture<Response> future = new CompletableFuture<>();
+			future.completeExceptionally(new RpcTimeoutException("Request timed out"));
+			return future;
+		};
+		ServiceFactory serviceFactory = new ServiceFactory(new MetaDataService());
+		serviceFactory.setRetryPolicy(new RetryPolicy(3, 1, 10, TimeUnit.MILLISECONDS, new RetryBudget()));
+		CounterService counterService = serviceFactory.createRemoteService(CounterService.class, clientTransport);
+
+		try {
+			counterService.get();
+			fail("expected RpcTimeoutException");
+		} catch (RpcTimeoutException e) {
+			// expected
+		}
+		assertEquals(1, cancelRequests.size());
+	}
+
+	private static FailingClientTransport createClientTransport(int failureCount) {
+		MetaDataService metaDataService = new MetaDataService();
+		DirectLocalTransport localTransport = new DirectLocalTransport(metaDataService);
+		new ServiceFactory(metaDataService).publishService(CounterService.class, new CounterServiceImpl(), localTransport);
+		return new FailingClientTransport(localTransport, metaDataService, failureCount);
+	}
+
+	private static CounterService createCounterService(FailingClientTransport clientTransport, RetryPolicy retryPolicy) {
+		ServiceFactory serviceFactory = new ServiceFactory(clientTransport.metaDataService);
+		serviceFactory.setRetryPolicy(retryPolicy);
+		return serviceFactory.createRemoteService(CounterService.class, clientTransport);
+	}
+
+	private static class FailingClientTransport implements ClientTransport {
+		final ClientTransport clientTransport;
+		final MetaDataService metaDataService;
+		final Set<String> requestIds = new HashSet<>();
+		int failureCount;
+		int sentCount;
+
+		FailingClientTransport(ClientTransport clientTransport, MetaDataService metaDataService, int failureCount) {
+			this.clientTransport = clientTransport;
+			this.metaDataService = metaDataService;
+			this.failureCount = failureCount;
+		}
+
+		@Override
+		public synchronized CompletableFuture<Response> send(Request request) {
+			sentCount++;
+			requestIds.add(request.requestId);
+			if (failureCount > 0) {
+				failureCount--;
+				throw new RpcException("Connection refused");
+			}
+			return clientTransport.send(request);
+		}
+	}
+}
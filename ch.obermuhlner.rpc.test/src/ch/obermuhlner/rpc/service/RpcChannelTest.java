@@ -0,0 +1,138 @@
+package ch.obermuhlner.rpc.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import ch.obermuhlner.rpc.exception.RpcException;
+
+public class RpcChannelTest {
+
+	@Test
+	public void testSendAndReceive() {
+		RpcChannel<String> channel = new RpcChannel<>();
+		channel.send("a");
+		channel.send("b");
+		channel.close();
+
+		assertTrue(channel.hasNext());
+		assertEquals("a", channel.next());
+		assertEquals("b", channel.next());
+		assertFalse(channel.hasNext());
+		assertTrue(channel.isDone());
+	}
+
+	@Test
+	public void testCapacity() {
+		RpcChannel<Integer> channel = new RpcChannel<>(2);
+		assertTrue(channel.offer(1));
+		assertTrue(channel.offer(2));
+		assertFalse(channel.offer(3));
+		assertEquals(0, channel.getRemainingCapacity());
+
+		assertEquals(Integer.valueOf(1), channel.next());
+		assertEquals(1, channel.getRemainingCapacity());
+	}
+
+	@Test
+	public void testSendBlocksWhileFull() throws InterruptedException {
+		RpcChannel<Integer> channel = new RpcChannel<>(1);
+		Thread producer = new Thread(() -> {
+			for (int i = 0; i < 100; i++) {
+				channel.send(i);
+			}
+			channel.close();
+		});
+		producer.start();
+
+		for (int i = 0; i < 100; i++) {
+			assertEquals(Integer.valueOf(i), channel.next());
+		}
+		assertFalse(channel.hasNext());
+		producer.join();
+	}
+
+	@Test
+	public void testCancel() {
+		RpcChannel<Integer> channel = new RpcChannel<>();
+		AtomicInteger cancelCount = new AtomicInteger();
+		channel.whenCancelled(() -> cancelCount.incrementAndGet());
+		channel.send(1);
+
+		channel.cancel();
+		assertEquals(1, cancelCount.get());
+		assertFalse(channel.hasNext());
+		assertFalse(channel.offer(2));
+		try {
+			channel.send(3);
+			fail("Expected an exception");
+		} catch (RpcException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testFail() {
+		RpcChannel<Integer> channel = new RpcChannel<>();
+		channel.send(1);
+		channel.fail(new IllegalStateException("expected"));
+
+		assertEquals(Integer.valueOf(1), channel.next());
+		try {
+			channel.hasNext();
+			fail("Expected an exception");
+		} catch (IllegalStateException e) {
+			assertEquals("expected", e.getMessage());
+		}
+	}
+
+	@Test
+	public void testPoll() {
+		RpcChannel<Integer> channel = new RpcChannel<>();
+		assertNull(channel.poll(10, TimeUnit.MILLISECONDS));
+
+		channel.send(1);
+		assertEquals(Integer.valueOf(1), channel.poll(10, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void testDrain() {
+		RpcChannel<Integer> channel = new RpcChannel<>();
+		for (int i = 0; i < 5; i++) {
+			channel.send(i);
+		}
+
+		assertEquals(Arrays.asList(0, 1, 2), channel.drain(3));
+		assertEquals(Arrays.asList(3, 4), channel.drain(3));
+		assertEquals(Arrays.asList(), channel.drain(3));
+	}
+
+	@Test
+	public void testListeners() {
+		RpcChannel<Integer> channel = new RpcChannel<>(1);
+		AtomicInteger availableCount = new AtomicInteger();
+		AtomicInteger spaceCount = new AtomicInteger();
+
+		channel.whenAvailable(() -> availableCount.incrementAndGet());
+		assertEquals(0, availableCount.get());
+		channel.send(1);
+		assertEquals(1, availableCount.get());
+
+		channel.whenSpaceAvailable(() -> spaceCount.incrementAndGet());
+		assertEquals(0, spaceCount.get());
+		channel.next();
+		assertEquals(1, spaceCount.get());
+
+		channel.close();
+		channel.whenAvailable(() -> availableCount.incrementAndGet());
+		assertEquals(2, availableCount.get());
+	}
+}
@@ -3,20 +3,33 @@ package ch.obermuhlner.rpc.transport;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
+import java.io.IOException;
+import java.net.Socket;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import org.junit.Test;
 
+import ch.obermuhlner.rpc.annotation.RpcOneWay;
 import ch.obermuhlner.rpc.annotation.RpcService;
+import ch.obermuhlner.rpc.exception.RpcException;
+import ch.obermuhlner.rpc.exception.RpcTimeoutException;
+import ch.obermuhlner.rpc.service.Deadline;
+import ch.obermuhlner.rpc.service.RpcChannel;
 
 public abstract class AbstractTransportTest {
 
 	private static final String ILLEGAL_ARGUMENT_EXCEPTION_MESSAGE = "This is an expected exception";
+	private static final String RPC_EXCEPTION_MESSAGE = "This is an expected rpc exception";
 
 	protected static TestService testService;
 
@@ -40,6 +53,110 @@ public abstract class AbstractTransportTest {
 		assertEquals(Integer.valueOf(2), futureIntToInt.get());
 	}
 	
+	@Test
+	public void testStream() {
+		try (Stream<Integer> stream = testService.methodIntToStream(1000)) {
+			assertEquals(IntStream.range(0, 1000).boxed().collect(Collectors.toList()), stream.collect(Collectors.toList()));
+		}
+		
+		try (Stream<Integer> stream = testService.methodIntToStream(0)) {
+			assertEquals(0, stream.count());
+		}
+	}
+	
+	@Test
+	public void testStreamAsync() throws InterruptedException, ExecutionException {
+		try (Stream<Integer> stream = testServiceAsync.methodIntToStreamAsync(600).get()) {
+			assertEquals(600, stream.count());
+		}
+	}
+	
+	@Test
+	public void testStreamCloseEarly() {
+		try (Stream<Integer> stream = testService.methodIntToStream(100000)) {
+			assertEquals(Arrays.asList(0, 1, 2), stream.limit(3).collect(Collectors.toList()));
+		}
+		
+		assertEquals(1, testService.methodVoidToInt());
+	}
+	
+	@Test
+	public void testIterator() {
+		Iterator<String> iterator = testService.methodIntToIterator(700);
+		for (int i = 0; i < 700; i++) {
+			assertEquals(true, iterator.hasNext());
+			assertEquals("int:" + i, iterator.next());
+		}
+		assertEquals(false, iterator.hasNext());
+	}
+	
+	@Test
+	public void testChannel() {
+		RpcChannel<Integer> channel = testService.methodIntToChannel(1000);
+		for (int i = 0; i < 1000; i++) {
+			assertEquals(true, channel.hasNext());
+			assertEquals(Integer.valueOf(i), channel.next());
+		}
+		assertEquals(false, channel.hasNext());
+	}
+	
+	@Test
+	public void testChannelCancel() {
+		RpcChannel<Integer> channel = testService.methodIntToChannel(100000);
+		assertEquals(Integer.valueOf(0), channel.next());
+		channel.cancel();
+		
+		assertEquals(false, channel.hasNext());
+		assertEquals(1, testService.methodVoidToInt());
+	}
+	
+	@Test
+	public void testChannelArgument() {
+		RpcChannel<Integer> channel = new RpcChannel<>();
+		sendInBackground(channel, 1000);
+		
+		assertEquals(1000 * 999 / 2, testService.methodChannelToInt(channel));
+	}
+	
+	@Test
+	public void testChannelBidirectional() {
+		RpcChannel<Integer> channel = new RpcChannel<>();
+		RpcChannel<String> result = testService.methodChannelToChannel(channel);
+		sendInBackground(channel, 500);
+		
+		for (int i = 0; i < 500; i++) {
+			assertEquals("int:" + i, result.next());
+		}
+		assertEquals(false, result.hasNext());
+	}
+	
+	private static void sendInBackground(RpcChannel<Integer> channel, int count) {
+		new Thread(() -> {
+			for (int i = 0; i < count; i++) {
+				channel.send(i);
+			}
+			channel.close();
+		}).start();
+	}
+	
+	@Test
+	public void testOneWay() throws InterruptedException {
+		int startCount = testService.oneWayCounter();
+		
+		long startMillis = System.currentTimeMillis();
+		for (int i = 0; i < 3; i++) {
+			testService.methodOneWay(200);
+		}
+		long deltaMillis = System.currentTimeMillis() - startMillis;
+		assertEquals("One-way calls must not wait for the method: " + deltaMillis + " ms", true, deltaMillis < 200);
+		
+		long endMillis = System.currentTimeMillis() + 10000;
+		while (testService.oneWayCounter() < startCount + 3 && System.currentTimeMillis() < endMillis) {
+			Thread.sleep(10);
+		}
+		assertEquals(startCount + 3, testService.oneWayCounter());
+	}
+	
 	@Test
 	public void testThrowIllegalArgumentException() {
 		try {
@@ -50,6 +167,16 @@ public abstract class AbstractTransportTest {
 		}
 	}
 	
+	@Test
+	public void testThrowRpcException() {
+		try {
+			testService.methodRpcException();
+			fail("Expected an exception");
+		} catch(RpcException e) {
+			assertEquals(RPC_EXCEPTION_MESSAGE, e.getMessage());
+		}
+	}
+	
 	@Test
 	public void testSleep() {
 		long slept = testService.sleep(1000);
@@ -80,6 +207,38 @@ public abstract class AbstractTransportTest {
 		assertEquals(false, Thread.currentThread().isInterrupted());
 	}
 	
+	@Test
+	public void testDeadline() throws InterruptedException {
+		int sleepCounter = testService.sleepCounter();
+
+		long startMillis = System.currentTimeMillis();
+		try {
+			Deadline.run(200, TimeUnit.MILLISECONDS, () -> testService.sleep(1000));
+			fail("Expected an exception");
+		} catch (RpcTimeoutException e) {
+			// expected
+		}
+		assertEquals(true, System.currentTimeMillis() - startMillis < 900);
+
+		Thread.sleep(2000); // wait to make sure we catch the incremented sleep counter in case the service execution is not interrupted
+
+		assertEquals(sleepCounter + 0, testService.sleepCounter());
+	}
+	
+	public static void waitUntilListening(String hostname, int port) {
+		for (int i = 0; i < 100; i++) {
+			try (Socket socket = new Socket(hostname, port)) {
+				return;
+			} catch (IOException e) {
+				try {
+					Thread.sleep(50);
+				} catch (InterruptedException e1) {
+					return;
+				}
+			}
+		}
+	}
+
 	@RpcService
 	public static interface TestService {
 		void methodVoidToVoid();
@@ -87,18 +246,31 @@ public abstract class AbstractTransportTest {
 		int methodIntToInt(int value);
 		String methodIntToString(int value);
 		List<String> methodIntToListOfString(int value);
+		Stream<Integer> methodIntToStream(int count);
+		Iterator<String> methodIntToIterator(int count);
+		RpcChannel<Integer> methodIntToChannel(int count);
+		int methodChannelToInt(RpcChannel<Integer> values);
+		RpcChannel<String> methodChannelToChannel(RpcChannel<Integer> values);
 		
 		int methodIllegalArgumentException();
+		
+		int methodRpcException();
 
 		long sleep(long milliseconds);
 		
 		int sleepCounter();
+		
+		@RpcOneWay
+		void methodOneWay(long milliseconds);
+		
+		int oneWayCounter();
 	}
 
 	public static interface TestServiceAsync {
 		CompletableFuture<Integer> methodVoidToIntAsync();
 		Future<Integer> methodIntToIntAsync(int value);
 		CompletableFuture<Long> sleepAsync(long milliseconds);
+		CompletableFuture<Stream<Integer>> methodIntToStreamAsync(int count);
 	}
 
 	public static class TestServiceImpl implements TestService {
@@ -108,6 +280,7 @@ public abstract class AbstractTransportTest {
 		 * In this case we do this for testing purposes.
 		 */
 		private AtomicInteger sleepCounter = new AtomicInteger();
+		private AtomicInteger oneWayCounter = new AtomicInteger();
 		
 		@Override
 		public void methodVoidToVoid() {
@@ -133,11 +306,67 @@ public abstract class AbstractTransportTest {
 			return Arrays.asList("first", "int:" + value , "last");
 		}
 
+		@Override
+		public Stream<Integer> methodIntToStream(int count) {
+			return IntStream.range(0, count).boxed();
+		}
+		
+		@Override
+		public Iterator<String> methodIntToIterator(int count) {
+			return IntStream.range(0, count).mapToObj(i -> "int:" + i).iterator();
+		}
+
+		@Override
+		public RpcChannel<Integer> methodIntToChannel(int count) {
+			RpcChannel<Integer> channel = new RpcChannel<>();
+			new Thread(() -> {
+				try {
+					for (int i = 0; i < count; i++) {
+						channel.send(i);
+					}
+					channel.close();
+				} catch (RpcException e) {
+					// cancelled by the client
+				}
+			}).start();
+			return channel;
+		}
+		
+		@Override
+		public int methodChannelToInt(RpcChannel<Integer> values) {
+			int sum = 0;
+			while (values.hasNext()) {
+				sum += values.next();
+			}
+			return sum;
+		}
+		
+		@Override
+		public RpcChannel<String> methodChannelToChannel(RpcChannel<Integer> values) {
+			RpcChannel<String> channel = new RpcChannel<>();
+			new Thread(() -> {
+				try {
+					while (values.hasNext()) {
+						channel.send("int:" + values.next());
+					}
+					channel.close();
+				} catch (RpcException e) {
+					// cancelled by the client
+				}
+			}).start();
+			return channel;
+		}
+
 		@Override
 		public int methodIllegalArgumentException() {
 			throw new IllegalArgumentException(ILLEGAL_ARGUMENT_EXCEPTION_MESSAGE);
 		}
 		
+		@Override
+		public int methodRpcException() {
+			throw new RpcException(RPC_EXCEPTION_MESSAGE);
+		}
+		
 		@Override
 		public long sleep(long milliseconds) {
 			long startMillis = System.currentTimeMillis();
@@ -156,5 +385,20 @@ public abstract class AbstractTransportTest {
 		public int sleepCounter() {
 			return sleepCounter.get();
 		}
+		
+		@Override
+		public void methodOneWay(long milliseconds) {
+			try {
+				Thread.sleep(milliseconds);
+			} catch (InterruptedException e) {
+				// ignore
+			}
+			oneWayCounter.incrementAndGet();
+		}
+		
+		@Override
+		public int oneWayCounter() {
+			return oneWayCounter.get();
+		}
 	}
 }
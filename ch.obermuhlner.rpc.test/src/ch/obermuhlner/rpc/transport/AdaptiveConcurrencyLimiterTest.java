@@ -0,0 +1,84 @@
+package ch.obermuhlner.rpc.transport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import ch.obermuhlner.rpc.transport.AdaptiveConcurrencyLimiter.Permit;
+
+public class AdaptiveConcurrencyLimiterTest {
+
+	private static final long MILLISECOND = 1_000_000;
+
+	@Test
+	public void testTryAcquire() {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 10);
+
+		Permit permit1 = limiter.tryAcquire("A");
+		Permit permit2 = limiter.tryAcquire("A");
+		assertNotNull(permit1);
+		assertNotNull(permit2);
+		assertNull(limiter.tryAcquire("A"));
+		assertEquals(2, limiter.getInFlightCount("A"));
+		assertEquals(1, limiter.getRejectedCount());
+
+		permit1.discard();
+		assertEquals(1, limiter.getInFlightCount("A"));
+		assertNotNull(limiter.tryAcquire("A"));
+	}
+
+	@Test
+	public void testIndependentServices() {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 10);
+
+		assertNotNull(limiter.tryAcquire("A"));
+		assertNull(limiter.tryAcquire("A"));
+		assertNotNull(limiter.tryAcquire("B"));
+	}
+
+	@Test
+	public void testLimitGrowsWithFlatLatency() {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 1, 100);
+
+		for (int i = 0; i < 100; i++) {
+			limiter.update("A", MILLISECOND, limiter.getLimit("A"));
+		}
+
+		assertEquals(100, limiter.getLimit("A"));
+	}
+
+	@Test
+	public void testLimitShrinksWithRisingLatency() {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(50, 1, 100);
+
+		for (int i = 0; i < 100; i++) {
+			limiter.update("A", MILLISECOND, limiter.getLimit("A"));
+		}
+		int flatLimit = limiter.getLimit("A");
+
+		for (int i = 0; i < 20; i++) {
+			limiter.update("A", 10 * MILLISECOND, limiter.getLimit("A"));
+		}
+
+		assertTrue(limiter.getLimit("A") < flatLimit / 2);
+	}
+
+	@Test
+	public void testUnusedLimitDoesNotGrow() {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 1, 100);
+
+		for (int i = 0; i < 100; i++) {
+			limiter.update("A", MILLISECOND, 1);
+		}
+
+		assertEquals(10, limiter.getLimit("A"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testIllegalInitialLimit() {
+		new AdaptiveConcurrencyLimiter(0, 1, 10);
+	}
+}
@@ -0,0 +1,103 @@
+package ch.obermuhlner.rpc.transport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class AdmissionControllerTest {
+
+	@Test
+	public void testSubmit() throws InterruptedException {
+		ExecutorService executorService = Executors.newCachedThreadPool();
+		try {
+			AdmissionController admissionController = new AdmissionController(2, 1);
+			CountDownLatch release = new CountDownLatch(1);
+			CountDownLatch finished = new CountDownLatch(3);
+			Runnable task = () -> {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					// ignore
+				}
+				finished.countDown();
+			};
+
+			assertEquals(true, admissionController.submit(task, executorService));
+			assertEquals(true, admissionController.submit(task, executorService));
+			assertEquals(true, admissionController.submit(task, executorService));
+			assertEquals(false, admissionController.submit(task, executorService));
+
+			assertEquals(2, admissionController.getInFlightCount());
+			assertEquals(1, admissionController.getQueuedCount());
+			assertEquals(3, admissionController.getAcceptedCount());
+			assertEquals(1, admissionController.getRejectedCount());
+
+			release.countDown();
+			assertEquals(true, finished.await(5, TimeUnit.SECONDS));
+			waitUntilIdle(admissionController);
+
+			assertEquals(0, admissionController.getInFlightCount());
+			assertEquals(0, admissionController.getQueuedCount());
+			assertEquals(true, admissionController.submit(() -> {}, executorService));
+		} finally {
+			executorService.shutdown();
+		}
+	}
+
+	@Test
+	public void testSubmitAsync() throws InterruptedException {
+		ExecutorService executorService = Executors.newCachedThreadPool();
+		try {
+			AdmissionController admissionController = new AdmissionController(1, 0);
+			CompletableFuture<Void> completion = new CompletableFuture<>();
+
+			assertEquals(true, admissionController.submitAsync(() -> completion, executorService));
+			Thread.sleep(100);
+
+			// the task returned, but keeps its slot until the completion
+			assertEquals(1, admissionController.getInFlightCount());
+			assertEquals(false, admissionController.submit(() -> {}, executorService));
+
+			completion.complete(null);
+			assertEquals(0, admissionController.getInFlightCount());
+		} finally {
+			executorService.shutdown();
+		}
+	}
+
+	@Test
+	public void testRejectedExecution() {
+		AdmissionController admissionController = new AdmissionController(1, 1);
+		try {
+			admissionController.submit(() -> {}, task -> { throw new RejectedExecutionException(); });
+			fail("Expected RejectedExecutionException");
+		} catch (RejectedExecutionException e) {
+			// expected
+		}
+		assertEquals(0, admissionController.getInFlightCount());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testIllegalMaxInFlight() {
+		new AdmissionController(0, 10);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testIllegalMaxQueued() {
+		new AdmissionController(1, -1);
+	}
+
+	private static void waitUntilIdle(AdmissionController admissionController) throws InterruptedException {
+		for (int i = 0; i < 100 && admissionController.getInFlightCount() > 0; i++) {
+			Thread.sleep(10);
+		}
+	}
+}
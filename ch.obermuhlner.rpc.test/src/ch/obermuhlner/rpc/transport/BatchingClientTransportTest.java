@@ -0,0 +1,172 @@
+package ch.obermuhlner.rpc.transport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ch.obermuhlner.rpc.exception.RpcException;
+import ch.obermuhlner.rpc.meta.MetaDataService;
+import ch.obermuhlner.rpc.protocol.structure.StructureProtocol;
+import ch.obermuhlner.rpc.protocol.structure.binary.BinaryProtocol;
+import ch.obermuhlner.rpc.service.BatchRequest;
+import ch.obermuhlner.rpc.service.Request;
+import ch.obermuhlner.rpc.service.Response;
+import ch.obermuhlner.rpc.service.ServiceFactory;
+import ch.obermuhlner.rpc.transport.socket.SocketClientTransport;
+import ch.obermuhlner.rpc.transport.socket.SocketServerTransport;
+
+public class BatchingClientTransportTest extends AbstractTransportTest {
+
+	private static ExecutorService executorService = Executors.newCachedThreadPool();
+
+	private static SocketClientTransport socketClientTransport;
+
+	private static BatchingClientTransport batchingClientTransport;
+
+	@BeforeClass
+	public static void beforeClass() {
+		MetaDataService metaDataService = new MetaDataService();
+
+		int port = 15928;
+		String hostname = "localhost";
+
+		StructureProtocol<Object> protocol = new BinaryProtocol<Object>(metaDataService, BatchingClientTransportTest.class.getClassLoader());
+		SocketServerTransport socketServerTransport = new SocketServerTransport(metaDataService, protocol, port);
+		executorService.execute(() -> socketServerTransport.run());
+		waitUntilListening(hostname, port);
+
+		socketClientTransport = new SocketClientTransport(protocol, hostname, port, true);
+		batchingClientTransport = new BatchingClientTransport(socketClientTransport, 16, TimeUnit.MILLISECONDS.toNanos(1), true);
+
+		ServiceFactory serviceFactory = new ServiceFactory(metaDataService);
+
+		TestServiceImpl testServiceImpl = new TestServiceImpl();
+
+		serviceFactory.publishService(TestService.class, testServiceImpl, socketServerTransport);
+		testService = serviceFactory.createRemoteService(TestService.class, TestServiceAsync.class, batchingClientTransport);
+		testServiceAsync = (TestServiceAsync) testService;
+	}
+
+	@AfterClass
+	public static void afterClass() {
+		testService = null;
+		testServiceAsync = null;
+		batchingClientTransport.close();
+		socketClientTransport.close();
+		executorService.shutdown();
+	}
+
+	@Test
+	public void testLingeringRequestFails() throws InterruptedException {
+		RecordingClientTransport clientTransport = new RecordingClientTransport();
+		clientTransport.failure = new RpcException("Connection refused");
+		try (BatchingClientTransport transport = new BatchingClientTransport(clientTransport, 16, TimeUnit.MILLISECONDS.toNanos(1))) {
+			CompletableFuture<Response> future = transport.send(createRequest("1"));
+			try {
+				future.get(5, TimeUnit.SECONDS);
+				fail("expected ExecutionException");
+			} catch (ExecutionException e) {
+				assertEquals(clientTransport.failure, e.getCause());
+			} catch (TimeoutException e) {
+				fail("the failure of the lingering request was lost");
+			}
+		}
+	}
+
+	@Test
+	public void testFullBatchCancelsLinger() throws InterruptedException {
+		RecordingClientTransport clientTransport = new RecordingClientTransport();
+		try (BatchingClientTransport transport = new BatchingClientTransport(clientTransport, 2, TimeUnit.MILLISECONDS.toNanos(200))) {
+			transport.send(createRequest("1"));
+			transport.send(createRequest("2"));
+			assertEquals(1, clientTransport.batchCount);
+
+			Thread.sleep(100);
+			long startNanos = System.nanoTime();
+			transport.send(createRequest("3"));
+			for (int i = 0; i < 100 && clientTransport.sentCount == 0; i++) {
+				Thread.sleep(10);
+			}
+
+			// the next batch lingers for the full time, it is not sent by the linger timeout of the first batch
+			assertEquals(1, clientTransport.sentCount);
+			assertTrue(System.nanoTime() - startNanos >= TimeUnit.MILLISECONDS.toNanos(200));
+		}
+	}
+
+	@Test
+	public void testSendAfterClose() {
+		RecordingClientTransport clientTransport = new RecordingClientTransport();
+		BatchingClientTransport transport = new BatchingClientTransport(clientTransport, 16, TimeUnit.MILLISECONDS.toNanos(200));
+		transport.close();
+
+		transport.send(createRequest("1"));
+		assertEquals(1, clientTransport.sentCount);
+	}
+
+	@Test
+	public void testManyConcurrentCalls() throws InterruptedException, ExecutionException {
+		ExecutorService callerExecutorService = Executors.newFixedThreadPool(32);
+		try {
+			List<Future<String>> futures = new ArrayList<>();
+			for (int i = 0; i < 500; i++) {
+				int value = i;
+				futures.add(callerExecutorService.submit(() -> testService.methodIntToString(value)));
+			}
+
+			for (int i = 0; i < futures.size(); i++) {
+				assertEquals("int:" + i, futures.get(i).get());
+			}
+		} finally {
+			callerExecutorService.shutdown();
+		}
+	}
+
+	private static Request createRequest(String requestId) {
+		Request request = new Request();
+		request.serviceName = "test";
+		request.methodName = "test";
+		request.execute = true;
+		request.requestId = requestId;
+		return request;
+	}
+
+	private static class RecordingClientTransport implements ClientTransport {
+		volatile RpcException failure;
+		volatile int sentCount;
+		volatile int batchCount;
+
+		@Override
+		public synchronized CompletableFuture<Response> send(Request request) {
+			if (failure != null) {
+				throw failure;
+			}
+			sentCount++;
+			return new CompletableFuture<>();
+		}
+
+		@Override
+		public synchronized List<CompletableFuture<Response>> sendBatch(BatchRequest batchRequest) {
+			batchCount++;
+			List<CompletableFuture<Response>> futures = new ArrayList<>();
+			for (int i = 0; i < batchRequest.requests.size(); i++) {
+				futures.add(new CompletableFuture<>());
+			}
+			return futures;
+		}
+	}
+}
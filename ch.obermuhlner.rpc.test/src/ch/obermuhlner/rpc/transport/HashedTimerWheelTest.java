@@ -0,0 +1,87 @@
+package ch.obermuhlner.rpc.transport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import ch.obermuhlner.rpc.transport.HashedTimerWheel.Timeout;
+
+public class HashedTimerWheelTest {
+
+	@Test
+	public void testExpire() throws InterruptedException {
+		try (HashedTimerWheel timerWheel = new HashedTimerWheel(1, TimeUnit.MILLISECONDS, 8)) {
+			CountDownLatch latch = new CountDownLatch(1);
+			long startNanos = System.nanoTime();
+			Timeout timeout = timerWheel.schedule(() -> latch.countDown(), 50, TimeUnit.MILLISECONDS);
+
+			assertEquals(true, latch.await(5, TimeUnit.SECONDS));
+			assertTrue(System.nanoTime() - startNanos >= TimeUnit.MILLISECONDS.toNanos(50));
+			assertEquals(true, timeout.isExpired());
+			assertEquals(false, timeout.cancel());
+			assertEquals(0, timerWheel.getPendingCount());
+		}
+	}
+
+	@Test
+	public void testExpireAfterSeveralRounds() throws InterruptedException {
+		try (HashedTimerWheel timerWheel = new HashedTimerWheel(1, TimeUnit.MILLISECONDS, 4)) {
+			CountDownLatch latch = new CountDownLatch(1);
+			long startNanos = System.nanoTime();
+			timerWheel.schedule(() -> latch.countDown(), 30, TimeUnit.MILLISECONDS);
+
+			assertEquals(true, latch.await(5, TimeUnit.SECONDS));
+			assertTrue(System.nanoTime() - startNanos >= TimeUnit.MILLISECONDS.toNanos(30));
+		}
+	}
+
+	@Test
+	public void testCancel() throws InterruptedException {
+		try (HashedTimerWheel timerWheel = new HashedTimerWheel(1, TimeUnit.MILLISECONDS, 8)) {
+			AtomicInteger expiredCount = new AtomicInteger();
+			Timeout timeout = timerWheel.schedule(() -> expiredCount.incrementAndGet(), 20, TimeUnit.MILLISECONDS);
+
+			assertEquals(true, timeout.cancel());
+			assertEquals(true, timeout.isCancelled());
+			assertEquals(false, timeout.cancel());
+
+			Thread.sleep(100);
+			assertEquals(0, expiredCount.get());
+			assertEquals(0, timerWheel.getPendingCount());
+		}
+	}
+
+	@Test
+	public void testManyTimeouts() throws InterruptedException {
+		try (HashedTimerWheel timerWheel = new HashedTimerWheel(1, TimeUnit.MILLISECONDS, 64)) {
+			int count = 100000;
+			AtomicInteger expiredCount = new AtomicInteger();
+			List<Timeout> timeouts = new ArrayList<>();
+			for (int i = 0; i < count; i++) {
+				timeouts.add(timerWheel.schedule(() -> expiredCount.incrementAndGet(), 200 + i % 100, TimeUnit.MILLISECONDS));
+			}
+			// on a slow machine some timeouts may already have expired before they are cancelled
+			int cancelledCount = 0;
+			for (int i = 0; i < count; i += 2) {
+				if (timeouts.get(i).cancel()) {
+					cancelledCount++;
+				}
+			}
+			assertTrue(cancelledCount > 0);
+
+			long endMillis = System.currentTimeMillis() + 5000;
+			while (expiredCount.get() < count - cancelledCount && System.currentTimeMillis() < endMillis) {
+				Thread.sleep(10);
+			}
+			assertEquals(count - cancelledCount, expiredCount.get());
+			assertEquals(0, timerWheel.getPendingCount());
+		}
+	}
+}
@@ -0,0 +1,367 @@
+package ch.obermuhlner.rpc.transport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import ch.obermuhlner.rpc.data.DynamicStruct;
+import ch.obermuhlner.rpc.exception.RpcAlreadyCancelledException;
+import ch.obermuhlner.rpc.exception.RpcException;
+import ch.obermuhlner.rpc.exception.RpcTimeoutException;
+import ch.obermuhlner.rpc.meta.MetaDataService;
+import ch.obermuhlner.rpc.service.BatchRequest;
+import ch.obermuhlner.rpc.service.BatchResponse;
+import ch.obermuhlner.rpc.service.Request;
+import ch.obermuhlner.rpc.service.Response;
+import ch.obermuhlner.rpc.service.RpcChannel;
+import ch.obermuhlner.rpc.transport.AbstractTransportTest.TestService;
+import ch.obermuhlner.rpc.transport.AbstractTransportTest.TestServiceImpl;
+
+public class ServerTransportImplTest {
+
+	@Test
+	public void testDispatchExpiredRequest() throws Exception {
+		MetaDataService metaDataService = new MetaDataService();
+		ServerTransportImpl serverTransport = new ServerTransportImpl(metaDataService);
+		serverTransport.register(TestService.class, new TestServiceImpl(), session -> {});
+
+		Executor slowExecutor = task -> new Thread(() -> {
+			try {
+				Thread.sleep(200);
+			} catch (InterruptedException e) {
+				// ignore
+			}
+			task.run();
+		}).start();
+
+		Request request = new Request();
+		request.serviceName = metaDataService.registerService(TestService.class).name;
+		request.methodName = "methodVoidToInt";
+		request.execute = true;
+		request.arguments = metaDataService.createDynamicStruct(TestService.class.getMethod("methodVoidToInt"), new Object[0]);
+		request.requestId = "1";
+		request.timeout = 50;
+
+		CompletableFuture<Response> future = new CompletableFuture<>();
+		serverTransport.dispatch(request, slowExecutor, future::complete);
+
+		Response response = future.get(5, TimeUnit.SECONDS);
+		assertEquals("1", response.requestId);
+		assertTrue(response.exception instanceof RpcTimeoutException);
+		assertEquals(1, serverTransport.getExpiredCount());
+	}
+
+	@Test
+	public void testDispatchParallelBatchWithAdmissionController() throws Exception {
+		MetaDataService metaDataService = new MetaDataService();
+		ServerTransportImpl serverTransport = new ServerTransportImpl(metaDataService);
+		serverTransport.register(TestService.class, new TestServiceImpl(), session -> {});
+		serverTransport.setAdmissionController(new AdmissionController(1, 10));
+
+		BatchRequest batchRequest = new BatchRequest();
+		batchRequest.parallel = true;
+		batchRequest.requests = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			Request request = createRequest(metaDataService, "methodVoidToInt");
+			request.requestId = "batch-" + i;
+			batchRequest.requests.add(request);
+		}
+
+		// the batch must not block the only thread while its requests wait for it
+		ExecutorService executorService = Executors.newSingleThreadExecutor();
+		try {
+			CompletableFuture<BatchResponse> future = new CompletableFuture<>();
+			serverTransport.dispatchBatch(batchRequest, executorService, future::complete);
+
+			BatchResponse batchResponse = future.get(5, TimeUnit.SECONDS);
+			assertEquals(3, batchResponse.responses.size());
+			assertEquals(1, batchResponse.responses.get(0).result.getField("result"));
+
+			// the slots are released right after the response was sent
+			for (int i = 0; i < 100 && serverTransport.getAdmissionController().getInFlightCount() > 0; i++) {
+				Thread.sleep(10);
+			}
+			assertEquals(0, serverTransport.getInFlightCount());
+			assertEquals(0, serverTransport.getAdmissionController().getInFlightCount());
+		} finally {
+			executorService.shutdown();
+		}
+	}
+
+	@Test
+	public void testDispatchRejectedByExecutor() throws Exception {
+		MetaDataService metaDataService = new MetaDataService();
+		ServerTransportImpl serverTransport = new ServerTransportImpl(metaDataService);
+		serverTransport.register(TestService.class, new TestServiceImpl(), session -> {});
+		serverTransport.setAdmissionController(new AdmissionController(1, 10));
+		AdaptiveConcurrencyLimiter concurrencyLimiter = new AdaptiveConcurrencyLimiter();
+		serverTransport.setConcurrencyLimiter(concurrencyLimiter);
+
+		Request request = createRequest(metaDataService, "methodVoidToInt");
+		try {
+			serverTransport.dispatch(request, task -> { throw new RejectedExecutionException(); }, response -> {});
+			fail("Expected RejectedExecutionException");
+		} catch (RejectedExecutionException e) {
+			// expected
+		}
+
+		assertEquals(0, serverTransport.getInFlightCount());
+		assertEquals(0, serverTransport.getAdmissionController().getInFlightCount());
+		assertEquals(0, concurrencyLimiter.getInFlightCount(request.serviceName));
+	}
+
+	@Test
+	public void testDispatchCancelWithFullAdmissionController() throws Exception {
+		MetaDataService metaDataService = new MetaDataService();
+		ServerTransportImpl serverTransport = new ServerTransportImpl(metaDataService);
+		serverTransport.register(TestService.class, new TestServiceImpl(), session -> {});
+		serverTransport.setAdmissionController(new AdmissionController(1, 0));
+
+		// the only slot is taken by a request that is not executed yet
+		List<Runnable> queuedTasks = new ArrayList<>();
+		Request request = createRequest(metaDataService, "methodVoidToInt");
+		serverTransport.dispatch(request, queuedTasks::add, response -> {});
+		assertEquals(1, queuedTasks.size());
+
+		Request cancelRequest = new Request();
+		cancelRequest.serviceName = request.serviceName;
+		cancelRequest.methodName = request.methodName;
+		cancelRequest.execute = false;
+		cancelRequest.requestId = request.requestId;
+
+		CompletableFuture<Response> future = new CompletableFuture<>();
+		serverTransport.dispatch(cancelRequest, queuedTasks::add, future::complete);
+
+		Response response = future.getNow(null);
+		assertEquals("1", response.requestId);
+		assertEquals(null, response.exception);
+		assertEquals(1, queuedTasks.size());
+		assertEquals(0, serverTransport.getAdmissionController().getRejectedCount());
+	}
+
+	@Test
+	public void testDispatchWithFullConcurrencyLimiter() throws Exception {
+		MetaDataService metaDataService = new MetaDataService();
+		ServerTransportImpl serverTransport = new ServerTransportImpl(metaDataService);
+		serverTransport.register(TestService.class, new TestServiceImpl(), session -> {});
+		AdaptiveConcurrencyLimiter concurrencyLimiter = new AdaptiveConcurrencyLimiter(1, 1, 1);
+		serverTransport.setConcurrencyLimiter(concurrencyLimiter);
+
+		// the only permit is taken by a request that is not executed yet
+		List<Runnable> queuedTasks = new ArrayList<>();
+		Request request = createRequest(metaDataService, "methodVoidToInt");
+		serverTransport.dispatch(request, queuedTasks::add, response -> {});
+		assertEquals(1, concurrencyLimiter.getInFlightCount(request.serviceName));
+
+		Request cancelRequest = new Request();
+		cancelRequest.serviceName = request.serviceName;
+		cancelRequest.methodName = request.methodName;
+		cancelRequest.execute = false;
+		cancelRequest.requestId = request.requestId;
+
+		CompletableFuture<Response> future = new CompletableFuture<>();
+		serverTransport.dispatch(cancelRequest, queuedTasks::add, future::complete);
+		assertEquals(null, future.getNow(null).exception);
+
+		// requests for unknown services are not limited
+		for (int i = 0; i < 2; i++) {
+			Request unknownRequest = createRequest(metaDataService, "methodVoidToInt");
+			unknownRequest.serviceName = "unknown-" + i;
+			serverTransport.dispatch(unknownRequest, queuedTasks::add, response -> {});
+		}
+		assertEquals(3, queuedTasks.size());
+		assertEquals(0, concurrencyLimiter.getRejectedCount());
+		assertEquals(0, concurrencyLimiter.getInFlightCount("unknown-0"));
+	}
+
+	@Test
+	public void testErrorResponse() {
+		ServerTransportImpl serverTransport = new ServerTransportImpl(new MetaDataService());
+
+		Response response = serverTransport.errorResponse("1", new RpcAlreadyCancelledException("cancelled"));
+		assertEquals("1", response.requestId);
+		assertEquals(RpcException.class, response.exception.getClass());
+		assertEquals("cancelled", ((RpcException) response.exception).getMessage());
+
+		response = serverTransport.errorResponse("2", new RpcTimeoutException("timed out"));
+		assertEquals(RpcTimeoutException.class, response.exception.getClass());
+	}
+
+	@Test
+	public void testStreamChunks() throws Exception {
+		MetaDataService metaDataService = new MetaDataService();
+		ServerTransportImpl serverTransport = new ServerTransportImpl(metaDataService);
+		serverTransport.register(TestService.class, new TestServiceImpl(), session -> {});
+		serverTransport.setStreamChunkSize(10);
+
+		Request request = new Request();
+		request.serviceName = metaDataService.registerService(TestService.class).name;
+		request.methodName = "methodIntToStream";
+		request.execute = true;
+		request.arguments = metaDataService.createDynamicStruct(TestService.class.getMethod("methodIntToStream", int.class), new Object[] { 25 });
+		request.requestId = "1";
+
+		Response response = serverTransport.receive(request);
+		assertEquals(10, ((List<?>) response.result.getField("result")).size());
+		assertTrue(response.streamOpen);
+		assertEquals(1, serverTransport.getOpenStreamCount());
+
+		Request nextRequest = new Request();
+		nextRequest.serviceName = request.serviceName;
+		nextRequest.methodName = request.methodName;
+		nextRequest.execute = true;
+		nextRequest.requestId = "1";
+		nextRequest.streamNext = true;
+
+		response = serverTransport.receive(nextRequest);
+		assertEquals(10, ((List<?>) response.result.getField("result")).size());
+		assertTrue(response.streamOpen);
+
+		response = serverTransport.receive(nextRequest);
+		assertEquals(5, ((List<?>) response.result.getField("result")).size());
+		assertFalse(response.streamOpen);
+		assertEquals(0, serverTransport.getOpenStreamCount());
+
+		// a late request for the next chunk of the closed stream
+		response = serverTransport.receive(nextRequest);
+		assertEquals(null, response.exception);
+		assertEquals(0, ((List<?>) response.result.getField("result")).size());
+		assertFalse(response.streamOpen);
+	}
+
+	@Test
+	public void testStreamCancel() throws Exception {
+		MetaDataService metaDataService = new MetaDataService();
+		ServerTransportImpl serverTransport = new ServerTransportImpl(metaDataService);
+		serverTransport.register(TestService.class, new TestServiceImpl(), session -> {});
+		serverTransport.setStreamChunkSize(10);
+
+		Request request = new Request();
+		request.serviceName = metaDataService.registerService(TestService.class).name;
+		request.methodName = "methodIntToIterator";
+		request.execute = true;
+		request.arguments = metaDataService.createDynamicStruct(TestService.class.getMethod("methodIntToIterator", int.class), new Object[] { 25 });
+		request.requestId = "2";
+
+		assertTrue(serverTransport.receive(request).streamOpen);
+		assertEquals(1, serverTransport.getOpenStreamCount());
+
+		Request cancelRequest = new Request();
+		cancelRequest.serviceName = request.serviceName;
+		cancelRequest.methodName = request.methodName;
+		cancelRequest.execute = false;
+		cancelRequest.requestId = "2";
+		serverTransport.receive(cancelRequest);
+		assertEquals(0, serverTransport.getOpenStreamCount());
+	}
+
+	@Test(timeout = 5000)
+	public void testUploadAfterCompletedCall() throws Exception {
+		MetaDataService metaDataService = new MetaDataService();
+		ServerTransportImpl serverTransport = new ServerTransportImpl(metaDataService);
+		serverTransport.register(TestService.class, new TestServiceImpl(), session -> {});
+
+		Request request = new Request();
+		request.serviceName = metaDataService.registerService(TestService.class).name;
+		request.methodName = "methodChannelToInt";
+		request.execute = true;
+		request.arguments = metaDataService.createDynamicStruct(TestService.class.getMethod("methodChannelToInt", RpcChannel.class), new Object[] { null });
+		request.requestId = "3";
+
+		// the elements may arrive before the call
+		Response response = serverTransport.receive(createUploadRequest(request, Arrays.asList(1, 2, 3), true));
+		assertFalse(response.streamOpen);
+
+		response = serverTransport.receive(request);
+		assertEquals(6, response.result.getField("result"));
+
+		// elements still in transit after the call completed do not open the channel again
+		try {
+			serverTransport.receive(createUploadRequest(request, Arrays.asList(4), false));
+			fail("expected RpcException");
+		} catch (RpcException e) {
+			assertEquals("Call already completed: 3", e.getMessage());
+		}
+	}
+
+	@Test
+	public void testCancelUploadChannels() throws Exception {
+		MetaDataService metaDataService = new MetaDataService();
+		HashedTimerWheel timerWheel = new HashedTimerWheel(10, TimeUnit.MILLISECONDS, 64);
+		try {
+			ServerTransportImpl serverTransport = new ServerTransportImpl(metaDataService) {
+				@Override
+				protected HashedTimerWheel getTimerWheel() {
+					return timerWheel;
+				}
+			};
+			serverTransport.register(TestService.class, new TestServiceImpl(), session -> {});
+
+			// calls without upload channels leave nothing behind when they are cancelled
+			serverTransport.receive(createCancelRequest(createRequest(metaDataService, "methodVoidToVoid")));
+			assertEquals(0, timerWheel.getPendingCount());
+
+			Request request = new Request();
+			request.serviceName = metaDataService.registerService(TestService.class).name;
+			request.methodName = "methodChannelToInt";
+			request.execute = true;
+			request.requestId = "4";
+			serverTransport.receive(createUploadRequest(request, Arrays.asList(1, 2), false));
+			serverTransport.receive(createCancelRequest(request));
+
+			try {
+				serverTransport.receive(createUploadRequest(request, Arrays.asList(3), false));
+				fail("expected RpcException");
+			} catch (RpcException e) {
+				assertEquals("Call already completed: 4", e.getMessage());
+			}
+		} finally {
+			timerWheel.close();
+		}
+	}
+
+	private static Request createCancelRequest(Request request) {
+		Request cancelRequest = new Request();
+		cancelRequest.serviceName = request.serviceName;
+		cancelRequest.methodName = request.methodName;
+		cancelRequest.execute = false;
+		cancelRequest.requestId = request.requestId;
+		return cancelRequest;
+	}
+
+	private static Request createUploadRequest(Request request, List<Integer> elements, boolean closed) {
+		Request uploadRequest = new Request();
+		uploadRequest.serviceName = request.serviceName;
+		uploadRequest.methodName = request.methodName;
+		uploadRequest.execute = true;
+		uploadRequest.streamUpload = "0";
+		uploadRequest.requestId = request.requestId + "#" + uploadRequest.streamUpload;
+		uploadRequest.arguments = new DynamicStruct();
+		uploadRequest.arguments.setField("elements", new ArrayList<>(elements));
+		uploadRequest.arguments.setField("closed", closed);
+		return uploadRequest;
+	}
+
+	private static Request createRequest(MetaDataService metaDataService, String methodName) throws NoSuchMethodException {
+		Request request = new Request();
+		request.serviceName = metaDataService.registerService(TestService.class).name;
+		request.methodName = methodName;
+		request.execute = true;
+		request.arguments = metaDataService.createDynamicStruct(TestService.class.getMethod(methodName), new Object[0]);
+		request.requestId = "1";
+		return request;
+	}
+}
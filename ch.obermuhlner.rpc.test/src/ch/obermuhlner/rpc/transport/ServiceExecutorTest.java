@@ -0,0 +1,64 @@
+package ch.obermuhlner.rpc.transport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import org.junit.Test;
+
+import ch.obermuhlner.rpc.exception.RpcTimeoutException;
+
+import ch.obermuhlner.rpc.transport.AbstractTransportTest.TestService;
+import ch.obermuhlner.rpc.transport.AbstractTransportTest.TestServiceImpl;
+
+public class ServiceExecutorTest {
+
+	@Test
+	public void testExecuteTimeout() throws InvocationTargetException, NoSuchMethodException {
+		ServiceExecutor serviceExecutor = new ServiceExecutor();
+		TestServiceImpl service = new TestServiceImpl();
+		Method method = TestService.class.getMethod("sleep", long.class);
+
+		long startMillis = System.currentTimeMillis();
+		try {
+			serviceExecutor.execute("1", service, method, new Object[] { 2000L }, 100);
+			fail("Expected an exception");
+		} catch (RpcTimeoutException e) {
+			// expected
+		}
+
+		assertTrue(System.currentTimeMillis() - startMillis < 1500);
+		assertEquals(false, Thread.currentThread().isInterrupted());
+	}
+
+	@Test
+	public void testExecuteWithinTimeout() throws InvocationTargetException, NoSuchMethodException {
+		ServiceExecutor serviceExecutor = new ServiceExecutor();
+		TestServiceImpl service = new TestServiceImpl();
+		Method method = TestService.class.getMethod("sleep", long.class);
+
+		Object result = serviceExecutor.execute("1", service, method, new Object[] { 10L }, 1000);
+
+		assertTrue((Long) result >= 10);
+	}
+
+	@Test
+	public void testCancelBeforeExecution() throws InvocationTargetException, NoSuchMethodException, InterruptedException {
+		ServiceExecutor serviceExecutor = new ServiceExecutor(HashedTimerWheel.getDefault(), 50);
+		TestServiceImpl service = new TestServiceImpl();
+		Method method = TestService.class.getMethod("sleep", long.class);
+
+		serviceExecutor.interruptRequestThread("1");
+		assertNull(serviceExecutor.execute("1", service, method, new Object[] { 10L }));
+
+		// the cancel of a request that never arrived is forgotten
+		serviceExecutor.interruptRequestThread("2");
+		Thread.sleep(200);
+		Object result = serviceExecutor.execute("2", service, method, new Object[] { 10L });
+		assertTrue((Long) result >= 10);
+	}
+}
@@ -0,0 +1,45 @@
+package ch.obermuhlner.rpc.transport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import ch.obermuhlner.rpc.exception.RpcException;
+
+public class VirtualThreadExecutorsTest {
+
+	@Test
+	public void testThreadPerTaskExecutor() throws InterruptedException, ExecutionException {
+		ExecutorService executorService = VirtualThreadExecutors.newThreadPerTaskExecutor();
+		try {
+			assertEquals("done", executorService.submit(() -> "done").get());
+		} finally {
+			executorService.shutdown();
+		}
+	}
+
+	@Test
+	public void testFallbackToPlatformThreads() {
+		Assume.assumeFalse(VirtualThreadExecutors.isAvailable());
+
+		ExecutorService executorService = VirtualThreadExecutors.newThreadPerTaskExecutor();
+		try {
+			assertTrue(executorService instanceof ThreadPoolExecutor);
+		} finally {
+			executorService.shutdown();
+		}
+	}
+
+	@Test(expected = RpcException.class)
+	public void testVirtualThreadsUnavailable() {
+		Assume.assumeFalse(VirtualThreadExecutors.isAvailable());
+
+		VirtualThreadExecutors.newVirtualThreadPerTaskExecutor();
+	}
+}
@@ -0,0 +1,157 @@
+package ch.obermuhlner.rpc.transport.balancer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import ch.obermuhlner.rpc.exception.RpcCircuitOpenException;
+import ch.obermuhlner.rpc.exception.RpcException;
+import ch.obermuhlner.rpc.exception.RpcOverloadedException;
+import ch.obermuhlner.rpc.service.Request;
+import ch.obermuhlner.rpc.service.Response;
+import ch.obermuhlner.rpc.transport.ClientTransport;
+import ch.obermuhlner.rpc.transport.balancer.CircuitBreaker.State;
+
+public class CircuitBreakerClientTransportTest {
+
+	private static final long EJECTION_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+	@Test
+	public void testFailFastWhenOpen() {
+		CountingClientTransport clientTransport = new CountingClientTransport();
+		clientTransport.fail = true;
+		CircuitBreakerClientTransport transport = new CircuitBreakerClientTransport(clientTransport, createCircuitBreaker());
+
+		for (int i = 0; i < 5; i++) {
+			assertTrue(transport.send(createRequest()).isCompletedExceptionally());
+		}
+		assertEquals(State.OPEN, transport.getCircuitBreaker().getState());
+
+		try {
+			transport.send(createRequest());
+			fail("expected RpcCircuitOpenException");
+		} catch (RpcCircuitOpenException e) {
+			// expected
+		}
+		assertEquals(5, clientTransport.sentCount);
+
+		// cancel requests are always sent
+		Request cancelRequest = createRequest();
+		cancelRequest.execute = false;
+		transport.send(cancelRequest);
+		assertEquals(6, clientTransport.sentCount);
+
+		// requests for the next chunk of a stream of a permitted call are always sent
+		Request streamNextRequest = createRequest();
+		streamNextRequest.streamNext = true;
+		transport.send(streamNextRequest);
+		assertEquals(7, clientTransport.sentCount);
+	}
+
+	@Test
+	public void testOverloadedResponsesCountAsFailures() {
+		CountingClientTransport clientTransport = new CountingClientTransport();
+		clientTransport.overloaded = true;
+		CircuitBreakerClientTransport transport = new CircuitBreakerClientTransport(clientTransport, createCircuitBreaker());
+
+		for (int i = 0; i < 5; i++) {
+			transport.send(createRequest());
+		}
+		assertEquals(State.OPEN, transport.getCircuitBreaker().getState());
+	}
+
+	@Test
+	public void testEjectAndReadmitEndpoint() throws InterruptedException {
+		CountingClientTransport healthy = new CountingClientTransport();
+		CountingClientTransport sick = new CountingClientTransport();
+		sick.fail = true;
+
+		LoadBalancingClientTransport transport = new LoadBalancingClientTransport(new RoundRobinLoadBalancer());
+		transport.addEndpoint("healthy", new CircuitBreakerClientTransport(healthy, createCircuitBreaker()));
+		transport.addEndpoint("sick", new CircuitBreakerClientTransport(sick, createCircuitBreaker()));
+
+		for (int i = 0; i < 10; i++) {
+			transport.send(createRequest());
+		}
+		assertEquals(5, sick.sentCount);
+
+		// the sick endpoint is ejected
+		Endpoint sickEndpoint = transport.getEndpoints().get(1);
+		assertFalse(sickEndpoint.isAvailable());
+		for (int i = 0; i < 10; i++) {
+			assertFalse(transport.send(createRequest()).isCompletedExceptionally());
+		}
+		assertEquals(5, sick.sentCount);
+
+		// after the ejection time trial requests are sent to the recovered endpoint
+		sick.fail = false;
+		Thread.sleep(TimeUnit.NANOSECONDS.toMillis(EJECTION_NANOS) + 20);
+		assertTrue(sickEndpoint.isAvailable());
+		for (int i = 0; i < 10; i++) {
+			assertFalse(transport.send(createRequest()).isCompletedExceptionally());
+		}
+		assertTrue(sick.sentCount > 5);
+		assertEquals(State.CLOSED, ((CircuitBreakerClientTransport) sickEndpoint.getClientTransport()).getCircuitBreaker().getState());
+	}
+
+	@Test
+	public void testAllEndpointsEjected() {
+		CountingClientTransport sick = new CountingClientTransport();
+		sick.fail = true;
+
+		LoadBalancingClientTransport transport = new LoadBalancingClientTransport(new RoundRobinLoadBalancer());
+		transport.addEndpoint("sick", new CircuitBreakerClientTransport(sick, createCircuitBreaker()));
+
+		for (int i = 0; i < 5; i++) {
+			transport.send(createRequest());
+		}
+
+		try {
+			transport.send(createRequest());
+			fail("expected RpcCircuitOpenException");
+		} catch (RpcException e) {
+			assertTrue(e instanceof RpcCircuitOpenException);
+		}
+	}
+
+	private static CircuitBreaker createCircuitBreaker() {
+		return new CircuitBreaker(10, 5, 0.5, TimeUnit.SECONDS.toNanos(1), EJECTION_NANOS, EJECTION_NANOS * 10, 2);
+	}
+
+	private static Request createRequest() {
+		Request request = new Request();
+		request.execute = true;
+		request.requestId = UUID.randomUUID().toString();
+		return request;
+	}
+
+	private static class CountingClientTransport implements ClientTransport {
+		int sentCount;
+		boolean fail;
+		boolean overloaded;
+
+		@Override
+		public CompletableFuture<Response> send(Request request) {
+			sentCount++;
+			CompletableFuture<Response> future = new CompletableFuture<>();
+			if (fail && request.execute) {
+				future.completeExceptionally(new RpcException("Failed"));
+			} else if (overloaded && request.execute) {
+				Response response = new Response();
+				response.requestId = request.requestId;
+				response.exception = new RpcOverloadedException("Overloaded");
+				future.complete(response);
+			} else {
+				future.complete(new Response());
+			}
+			return future;
+		}
+	}
+}
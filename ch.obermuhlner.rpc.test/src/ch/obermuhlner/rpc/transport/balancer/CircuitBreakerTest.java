@@ -0,0 +1,163 @@
+package ch.obermuhlner.rpc.transport.balancer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import ch.obermuhlner.rpc.transport.balancer.CircuitBreaker.Permit;
+import ch.obermuhlner.rpc.transport.balancer.CircuitBreaker.State;
+
+public class CircuitBreakerTest {
+
+	private static final long SLOW_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+	private static final long EJECTION_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+	@Test
+	public void testOpensAtFailureRate() {
+		CircuitBreaker circuitBreaker = new CircuitBreaker(10, 4, 0.5, SLOW_NANOS, EJECTION_NANOS, EJECTION_NANOS * 4, 2);
+
+		call(circuitBreaker, false);
+		call(circuitBreaker, true);
+		call(circuitBreaker, false);
+		assertEquals(State.CLOSED, circuitBreaker.getState());
+
+		call(circuitBreaker, true);
+		assertEquals(State.OPEN, circuitBreaker.getState());
+		assertNull(circuitBreaker.tryAcquire());
+		assertFalse(circuitBreaker.isAvailable());
+		assertEquals(1, circuitBreaker.getEjectionCount());
+	}
+
+	@Test
+	public void testMinimumCalls() {
+		CircuitBreaker circuitBreaker = new CircuitBreaker(10, 4, 0.5, SLOW_NANOS, EJECTION_NANOS, EJECTION_NANOS * 4, 2);
+
+		call(circuitBreaker, true);
+		call(circuitBreaker, true);
+		call(circuitBreaker, true);
+		assertEquals(State.CLOSED, circuitBreaker.getState());
+	}
+
+	@Test
+	public void testSlowCallsCountAsFailures() {
+		CircuitBreaker circuitBreaker = new CircuitBreaker(10, 2, 0.5, SLOW_NANOS, EJECTION_NANOS, EJECTION_NANOS * 4, 2);
+
+		circuitBreaker.tryAcquire().onCompleted(SLOW_NANOS * 2, false);
+		circuitBreaker.tryAcquire().onCompleted(SLOW_NANOS * 2, false);
+
+		assertEquals(State.OPEN, circuitBreaker.getState());
+	}
+
+	@Test
+	public void testSlidingWindow() {
+		CircuitBreaker circuitBreaker = new CircuitBreaker(4, 4, 0.75, SLOW_NANOS, EJECTION_NANOS, EJECTION_NANOS * 4, 2);
+
+		call(circuitBreaker, true);
+		call(circuitBreaker, true);
+		for (int i = 0; i < 10; i++) {
+			call(circuitBreaker, false);
+		}
+		// the old failures have left the window
+		call(circuitBreaker, true);
+		call(circuitBreaker, true);
+		assertEquals(State.CLOSED, circuitBreaker.getState());
+
+		call(circuitBreaker, true);
+		assertEquals(State.OPEN, circuitBreaker.getState());
+	}
+
+	@Test
+	public void testTrialCallsClose() throws InterruptedException {
+		CircuitBreaker circuitBreaker = new CircuitBreaker(10, 2, 0.5, SLOW_NANOS, EJECTION_NANOS, EJECTION_NANOS * 4, 2);
+		call(circuitBreaker, true);
+		call(circuitBreaker, true);
+		assertEquals(State.OPEN, circuitBreaker.getState());
+
+		Thread.sleep(TimeUnit.NANOSECONDS.toMillis(EJECTION_NANOS) + 20);
+		assertEquals(State.HALF_OPEN, circuitBreaker.getState());
+
+		// only the configured number of trial calls is allowed
+		Permit trial1 = circuitBreaker.tryAcquire();
+		Permit trial2 = circuitBreaker.tryAcquire();
+		assertNotNull(trial1);
+		assertNotNull(trial2);
+		assertNull(circuitBreaker.tryAcquire());
+		assertFalse(circuitBreaker.isAvailable());
+
+		trial1.onCompleted(1000, false);
+		assertEquals(State.HALF_OPEN, circuitBreaker.getState());
+		trial2.onCompleted(1000, false);
+		assertEquals(State.CLOSED, circuitBreaker.getState());
+		assertTrue(circuitBreaker.isAvailable());
+	}
+
+	@Test
+	public void testLateOutcomesAreNoTrialCalls() throws InterruptedException {
+		CircuitBreaker circuitBreaker = new CircuitBreaker(10, 2, 0.5, SLOW_NANOS, EJECTION_NANOS, EJECTION_NANOS * 4, 2);
+		Permit latePermit = circuitBreaker.tryAcquire();
+		call(circuitBreaker, true);
+		call(circuitBreaker, true);
+		assertEquals(State.OPEN, circuitBreaker.getState());
+
+		Thread.sleep(TimeUnit.NANOSECONDS.toMillis(EJECTION_NANOS) + 20);
+		assertEquals(State.HALF_OPEN, circuitBreaker.getState());
+
+		// the call started while the circuit was closed and neither closes nor reopens the circuit
+		latePermit.onCompleted(1000, false);
+		latePermit.onCompleted(1000, true);
+		assertEquals(State.HALF_OPEN, circuitBreaker.getState());
+
+		call(circuitBreaker, false);
+		assertEquals(State.HALF_OPEN, circuitBreaker.getState());
+		call(circuitBreaker, false);
+		assertEquals(State.CLOSED, circuitBreaker.getState());
+	}
+
+	@Test
+	public void testHangingTrialCallReopens() throws InterruptedException {
+		CircuitBreaker circuitBreaker = new CircuitBreaker(10, 2, 0.5, SLOW_NANOS, EJECTION_NANOS, EJECTION_NANOS * 4, 2);
+		call(circuitBreaker, true);
+		call(circuitBreaker, true);
+
+		Thread.sleep(TimeUnit.NANOSECONDS.toMillis(EJECTION_NANOS) + 20);
+		assertNotNull(circuitBreaker.tryAcquire());
+		call(circuitBreaker, false);
+		assertEquals(State.HALF_OPEN, circuitBreaker.getState());
+
+		// the first trial call never completes and counts as failed after the slow call threshold
+		Thread.sleep(TimeUnit.NANOSECONDS.toMillis(SLOW_NANOS) + 50);
+		assertEquals(State.OPEN, circuitBreaker.getState());
+		assertEquals(2, circuitBreaker.getEjectionCount());
+	}
+
+	@Test
+	public void testFailedTrialCallReopensWithBackoff() throws InterruptedException {
+		long ejectionMillis = TimeUnit.NANOSECONDS.toMillis(EJECTION_NANOS);
+		CircuitBreaker circuitBreaker = new CircuitBreaker(10, 2, 0.5, SLOW_NANOS, EJECTION_NANOS, EJECTION_NANOS * 4, 2);
+		call(circuitBreaker, true);
+		call(circuitBreaker, true);
+
+		Thread.sleep(ejectionMillis + 20);
+		call(circuitBreaker, true);
+		assertEquals(State.OPEN, circuitBreaker.getState());
+		assertEquals(2, circuitBreaker.getEjectionCount());
+
+		// the second ejection lasts twice as long
+		Thread.sleep(ejectionMillis + 20);
+		assertEquals(State.OPEN, circuitBreaker.getState());
+		Thread.sleep(ejectionMillis + 20);
+		assertEquals(State.HALF_OPEN, circuitBreaker.getState());
+	}
+
+	private static void call(CircuitBreaker circuitBreaker, boolean failed) {
+		Permit permit = circuitBreaker.tryAcquire();
+		assertNotNull(permit);
+		permit.onCompleted(1000, failed);
+	}
+}
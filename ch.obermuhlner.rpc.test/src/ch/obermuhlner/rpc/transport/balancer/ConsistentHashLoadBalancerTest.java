@@ -0,0 +1,169 @@
+package ch.obermuhlner.rpc.transport.balancer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import ch.obermuhlner.rpc.annotation.RpcShardKey;
+import ch.obermuhlner.rpc.exception.RpcException;
+import ch.obermuhlner.rpc.meta.MetaDataService;
+import ch.obermuhlner.rpc.meta.MethodDefinition;
+import ch.obermuhlner.rpc.meta.ParameterDefinition;
+import ch.obermuhlner.rpc.service.Request;
+import ch.obermuhlner.rpc.service.Response;
+
+public class ConsistentHashLoadBalancerTest {
+
+	public static interface ShardedService {
+		String get(@RpcShardKey String key, int version);
+
+		String ping();
+	}
+
+	public static interface ValueShardedService {
+		String getById(@RpcShardKey long id);
+
+		String getByUnit(@RpcShardKey TimeUnit unit);
+	}
+
+	public static interface StructShardedService {
+		String get(@RpcShardKey Object key);
+	}
+
+	@Test
+	public void testShardKeyMetaData() throws NoSuchMethodException {
+		MetaDataService metaDataService = new MetaDataService();
+		String serviceName = metaDataService.registerService(ShardedService.class).name;
+
+		MethodDefinition methodDefinition = metaDataService.registerService(ShardedService.class).methodDefinitions.stream()
+				.filter(definition -> definition.name.equals("get"))
+				.findFirst()
+				.get();
+		ParameterDefinition keyParameterDefinition = methodDefinition.parameterDefinitions.get(0);
+		ParameterDefinition versionParameterDefinition = methodDefinition.parameterDefinitions.get(1);
+		assertEquals(true, keyParameterDefinition.isShardKey());
+		assertEquals(false, versionParameterDefinition.isShardKey());
+
+		Request request = createGetRequest(metaDataService, "alpha");
+		assertEquals("alpha", metaDataService.getShardKey(serviceName, "get", request.arguments));
+		assertNull(metaDataService.getShardKey(serviceName, "ping", metaDataService.createDynamicStruct(ShardedService.class.getMethod("ping"), new Object[0])));
+	}
+
+	@Test
+	public void testSameKeySameEndpoint() {
+		MetaDataService metaDataService = new MetaDataService();
+		List<Endpoint> endpoints = createEndpoints(5);
+		LoadBalancer loadBalancer = new ConsistentHashLoadBalancer(metaDataService);
+
+		for (int i = 0; i < 100; i++) {
+			Endpoint endpoint = loadBalancer.select(endpoints, createGetRequest(metaDataService, "key" + i));
+			assertSame(endpoint, loadBalancer.select(endpoints, createGetRequest(metaDataService, "key" + i)));
+		}
+	}
+
+	@Test
+	public void testDistribution() {
+		MetaDataService metaDataService = new MetaDataService();
+		List<Endpoint> endpoints = createEndpoints(4);
+		LoadBalancer loadBalancer = new ConsistentHashLoadBalancer(metaDataService);
+
+		Map<Endpoint, Integer> counts = new HashMap<>();
+		for (int i = 0; i < 10000; i++) {
+			counts.merge(loadBalancer.select(endpoints, createGetRequest(metaDataService, "key" + i)), 1, Integer::sum);
+		}
+
+		assertEquals(4, counts.size());
+		for (int count : counts.values()) {
+			assertTrue("count " + count, count > 1500 && count < 3500);
+		}
+	}
+
+	@Test
+	public void testRemoveEndpointMovesOnlyItsKeys() {
+		MetaDataService metaDataService = new MetaDataService();
+		List<Endpoint> endpoints = createEndpoints(4);
+		List<Endpoint> reducedEndpoints = new ArrayList<>(endpoints);
+		Endpoint removedEndpoint = reducedEndpoints.remove(2);
+		LoadBalancer loadBalancer = new ConsistentHashLoadBalancer(metaDataService);
+
+		for (int i = 0; i < 1000; i++) {
+			Endpoint before = loadBalancer.select(endpoints, createGetRequest(metaDataService, "key" + i));
+			Endpoint after = loadBalancer.select(reducedEndpoints, createGetRequest(metaDataService, "key" + i));
+			if (before != removedEndpoint) {
+				assertSame(before, after);
+			}
+		}
+	}
+
+	@Test
+	public void testAlternatingEndpointsReuseRings() {
+		MetaDataService metaDataService = new MetaDataService();
+		List<Endpoint> endpoints = createEndpoints(4);
+		ConsistentHashLoadBalancer loadBalancer = new ConsistentHashLoadBalancer(metaDataService);
+
+		for (int i = 0; i < 100; i++) {
+			// a new filtered list for every call, as with an ejected endpoint
+			List<Endpoint> selectedEndpoints = new ArrayList<>(i % 2 == 0 ? endpoints : endpoints.subList(1, 4));
+			assertNotNull(loadBalancer.select(selectedEndpoints, createGetRequest(metaDataService, "key" + i)));
+		}
+
+		assertEquals(2, loadBalancer.getRingCount());
+	}
+
+	@Test
+	public void testValueShardKeys() {
+		MetaDataService metaDataService = new MetaDataService();
+		metaDataService.registerService(ValueShardedService.class);
+	}
+
+	@Test(expected = RpcException.class)
+	public void testStructShardKey() {
+		MetaDataService metaDataService = new MetaDataService();
+		metaDataService.registerService(StructShardedService.class);
+	}
+
+	@Test
+	public void testWithoutShardKey() throws NoSuchMethodException {
+		MetaDataService metaDataService = new MetaDataService();
+		List<Endpoint> endpoints = createEndpoints(2);
+		LoadBalancer loadBalancer = new ConsistentHashLoadBalancer(metaDataService, 10, new RoundRobinLoadBalancer());
+
+		Request request = new Request();
+		request.serviceName = metaDataService.registerService(ShardedService.class).name;
+		request.methodName = "ping";
+		request.arguments = metaDataService.createDynamicStruct(ShardedService.class.getMethod("ping"), new Object[0]);
+		assertNotNull(loadBalancer.select(endpoints, request));
+	}
+
+	private static Request createGetRequest(MetaDataService metaDataService, String key) {
+		try {
+			Request request = new Request();
+			request.serviceName = metaDataService.registerService(ShardedService.class).name;
+			request.methodName = "get";
+			request.execute = true;
+			request.arguments = metaDataService.createDynamicStruct(ShardedService.class.getMethod("get", String.class, int.class), new Object[] { key, 1 });
+			return request;
+		} catch (NoSuchMethodException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static List<Endpoint> createEndpoints(int count) {
+		List<Endpoint> endpoints = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			endpoints.add(new Endpoint("host" + i + ":7000", request -> new CompletableFuture<Response>()));
+		}
+		return endpoints;
+	}
+}
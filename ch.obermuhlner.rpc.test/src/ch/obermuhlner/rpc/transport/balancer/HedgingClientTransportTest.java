@@ -0,0 +1,287 @@
+package ch.obermuhlner.rpc.transport.balancer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import ch.obermuhlner.rpc.annotation.RpcMethod;
+import ch.obermuhlner.rpc.exception.RpcException;
+import ch.obermuhlner.rpc.meta.MetaDataService;
+import ch.obermuhlner.rpc.service.Request;
+import ch.obermuhlner.rpc.service.Response;
+import ch.obermuhlner.rpc.service.RetryBudget;
+import ch.obermuhlner.rpc.transport.ClientTransport;
+
+public class HedgingClientTransportTest {
+
+	public static interface CatalogService {
+		@RpcMethod(idempotent = true)
+		String lookup(String key);
+
+		String store(String key);
+	}
+
+	private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+	@AfterClass
+	public static void afterClass() {
+		scheduler.shutdown();
+	}
+
+	@Test
+	public void testIdempotentMetaData() {
+		MetaDataService metaDataService = new MetaDataService();
+		String serviceName = metaDataService.registerService(CatalogService.class).name;
+
+		assertTrue(metaDataService.isIdempotent(serviceName, "lookup"));
+		assertFalse(metaDataService.isIdempotent(serviceName, "store"));
+		assertFalse(metaDataService.isIdempotent("Unknown", "lookup"));
+	}
+
+	@Test
+	public void testHedgedRequestWins() throws InterruptedException, ExecutionException {
+		MetaDataService metaDataService = new MetaDataService();
+		String serviceName = metaDataService.registerService(CatalogService.class).name;
+
+		DelayedClientTransport primary = new DelayedClientTransport(1);
+		DelayedClientTransport secondary = new DelayedClientTransport(1);
+		LoadBalancingClientTransport transport = new LoadBalancingClientTransport((endpoints, request) -> endpoints.get(0), metaDataService, 0.9);
+		transport.addEndpoint("primary", primary);
+		transport.addEndpoint("secondary", secondary);
+
+		assertEquals(-1, transport.getHedgeDelayNanos(serviceName, "lookup"));
+		for (int i = 0; i < 30; i++) {
+			transport.send(createRequest(serviceName, "lookup")).get();
+		}
+		assertTrue(transport.getHedgeDelayNanos(serviceName, "lookup") > 0);
+
+		primary.delayMillis = 2000;
+		Request request = createRequest(serviceName, "lookup");
+		long startNanos = System.nanoTime();
+		Response response = transport.send(request).get();
+
+		assertTrue(System.nanoTime() - startNanos < TimeUnit.MILLISECONDS.toNanos(1000));
+		assertSame(secondary.lastResponse, response);
+		assertEquals(request.requestId, secondary.requests.get(secondary.requests.size() - 1).requestId);
+
+		// the loser is cancelled through the cancel path (right after the winning response completed)
+		Thread.sleep(100);
+		Request cancelRequest = primary.requests.get(primary.requests.size() - 1);
+		assertFalse(cancelRequest.execute);
+		assertEquals(request.requestId, cancelRequest.requestId);
+	}
+
+	@Test
+	public void testHedgeBudgetExhausted() throws InterruptedException, ExecutionException {
+		MetaDataService metaDataService = new MetaDataService();
+		String serviceName = metaDataService.registerService(CatalogService.class).name;
+
+		DelayedClientTransport primary = new DelayedClientTransport(1);
+		DelayedClientTransport secondary = new DelayedClientTransport(1);
+		LoadBalancingClientTransport transport = new LoadBalancingClientTransport((endpoints, request) -> endpoints.get(0), metaDataService, 0.9, new RetryBudget(0, 0));
+		transport.addEndpoint("primary", primary);
+		transport.addEndpoint("secondary", secondary);
+
+		for (int i = 0; i < 30; i++) {
+			transport.send(createRequest(serviceName, "lookup")).get();
+		}
+
+		assertTrue(transport.getHedgeDelayNanos(serviceName, "lookup") > 0);
+
+		// the slow call waits for the primary because the budget allows no hedged requests
+		primary.delayMillis = 300;
+		Response response = transport.send(createRequest(serviceName, "lookup")).get();
+		assertSame(primary.lastResponse, response);
+		assertEquals(0, secondary.requests.size());
+		assertEquals(0, transport.getHedgeBudget().getRetryCount());
+		assertTrue(transport.getHedgeBudget().getExhaustedCount() >= 1);
+	}
+
+	@Test
+	public void testNotIdempotentIsNotHedged() throws InterruptedException, ExecutionException {
+		MetaDataService metaDataService = new MetaDataService();
+		String serviceName = metaDataService.registerService(CatalogService.class).name;
+
+		DelayedClientTransport primary = new DelayedClientTransport(1);
+		DelayedClientTransport secondary = new DelayedClientTransport(1);
+		LoadBalancingClientTransport transport = new LoadBalancingClientTransport((endpoints, request) -> endpoints.get(0), metaDataService, 0.9);
+		transport.addEndpoint("primary", primary);
+		transport.addEndpoint("secondary", secondary);
+
+		for (int i = 0; i < 30; i++) {
+			transport.send(createRequest(serviceName, "store")).get();
+		}
+
+		primary.delayMillis = 200;
+		Response response = transport.send(createRequest(serviceName, "store")).get();
+
+		assertSame(primary.lastResponse, response);
+		assertEquals(0, secondary.requests.size());
+	}
+
+	@Test
+	public void testFailedRequestTriesOtherEndpoint() throws InterruptedException, ExecutionException {
+		MetaDataService metaDataService = new MetaDataService();
+		String serviceName = metaDataService.registerService(CatalogService.class).name;
+
+		DelayedClientTransport primary = new DelayedClientTransport(1);
+		DelayedClientTransport secondary = new DelayedClientTransport(1);
+		LoadBalancingClientTransport transport = new LoadBalancingClientTransport((endpoints, request) -> endpoints.get(0), metaDataService, 0.9);
+		transport.addEndpoint("primary", primary);
+		transport.addEndpoint("secondary", secondary);
+
+		for (int i = 0; i < 30; i++) {
+			transport.send(createRequest(serviceName, "lookup")).get();
+		}
+
+		primary.fail = true;
+		Response response = transport.send(createRequest(serviceName, "lookup")).get();
+
+		assertSame(secondary.lastResponse, response);
+	}
+
+	@Test
+	public void testHedgedRequestKeepsCreditsAndRemainingTimeout() throws InterruptedException, ExecutionException {
+		MetaDataService metaDataService = new MetaDataService();
+		String serviceName = metaDataService.registerService(CatalogService.class).name;
+
+		DelayedClientTransport primary = new DelayedClientTransport(1);
+		DelayedClientTransport secondary = new DelayedClientTransport(1);
+		LoadBalancingClientTransport transport = new LoadBalancingClientTransport((endpoints, request) -> endpoints.get(0), metaDataService, 0.9);
+		transport.addEndpoint("primary", primary);
+		transport.addEndpoint("secondary", secondary);
+
+		for (int i = 0; i < 30; i++) {
+			transport.send(createRequest(serviceName, "lookup")).get();
+		}
+
+		primary.delayMillis = 2000;
+		Request request = createRequest(serviceName, "lookup");
+		request.timeout = 5000;
+		request.streamCredits = 7;
+		Thread.sleep(50);
+		transport.send(request).get();
+
+		Request hedgedRequest = secondary.requests.get(secondary.requests.size() - 1);
+		assertNotSame(request, hedgedRequest);
+		assertEquals(request.requestId, hedgedRequest.requestId);
+		assertEquals(7, hedgedRequest.streamCredits);
+		assertTrue(hedgedRequest.timeout > 0);
+		assertTrue(hedgedRequest.timeout <= 5000);
+	}
+
+	@Test
+	public void testChannelArgumentPinsHedgedCall() throws InterruptedException {
+		MetaDataService metaDataService = new MetaDataService();
+		String serviceName = metaDataService.registerService(CatalogService.class).name;
+
+		DelayedClientTransport primary = new DelayedClientTransport(200);
+		DelayedClientTransport secondary = new DelayedClientTransport(1);
+		LoadBalancingClientTransport transport = new LoadBalancingClientTransport((endpoints, request) -> endpoints.get(0), metaDataService, 0.9);
+		transport.addEndpoint("primary", primary);
+		transport.addEndpoint("secondary", secondary);
+
+		primary.fail = true;
+		Request request = createRequest(serviceName, "lookup");
+		CompletableFuture<Response> future = transport.send(request);
+
+		Request uploadRequest = createRequest(serviceName, "lookup");
+		uploadRequest.streamUpload = "0";
+		uploadRequest.requestId = request.requestId + "#" + uploadRequest.streamUpload;
+		transport.send(uploadRequest);
+		assertSame(uploadRequest, primary.requests.get(primary.requests.size() - 1));
+
+		// the elements went to the primary, so the failed call is not tried again on the secondary
+		try {
+			future.get();
+			fail("expected ExecutionException");
+		} catch (ExecutionException e) {
+			assertEquals("Failed", e.getCause().getMessage());
+		}
+		Thread.sleep(100);
+		assertEquals(0, secondary.requests.size());
+	}
+
+	@Test
+	public void testNoEndpointsForHedgedCall() {
+		MetaDataService metaDataService = new MetaDataService();
+		String serviceName = metaDataService.registerService(CatalogService.class).name;
+
+		LoadBalancingClientTransport transport = new LoadBalancingClientTransport((endpoints, request) -> endpoints.get(0), metaDataService, 0.9);
+
+		Request request = createRequest(serviceName, "lookup");
+		try {
+			transport.send(request);
+			fail("expected RpcException");
+		} catch (RpcException e) {
+			assertEquals("No endpoints available", e.getMessage());
+		}
+
+		// the failed call is forgotten
+		Request uploadRequest = createRequest(serviceName, "lookup");
+		uploadRequest.streamUpload = "0";
+		uploadRequest.requestId = request.requestId + "#" + uploadRequest.streamUpload;
+		try {
+			transport.send(uploadRequest);
+			fail("expected RpcException");
+		} catch (RpcException e) {
+			assertEquals("No pending call: " + request.requestId, e.getMessage());
+		}
+	}
+
+	private static Request createRequest(String serviceName, String methodName) {
+		Request request = new Request();
+		request.serviceName = serviceName;
+		request.methodName = methodName;
+		request.execute = true;
+		request.requestId = UUID.randomUUID().toString();
+		return request;
+	}
+
+	private static class DelayedClientTransport implements ClientTransport {
+		final List<Request> requests = new CopyOnWriteArrayList<>();
+		volatile long delayMillis;
+		volatile boolean fail;
+		volatile Response lastResponse;
+
+		DelayedClientTransport(long delayMillis) {
+			this.delayMillis = delayMillis;
+		}
+
+		@Override
+		public CompletableFuture<Response> send(Request request) {
+			requests.add(request);
+			if (!request.execute) {
+				return CompletableFuture.completedFuture(new Response());
+			}
+
+			CompletableFuture<Response> future = new CompletableFuture<>();
+			scheduler.schedule(() -> {
+				if (fail) {
+					future.completeExceptionally(new IllegalStateException("Failed"));
+					return;
+				}
+				Response response = new Response();
+				response.requestId = request.requestId;
+				lastResponse = response;
+				future.complete(response);
+			}, delayMillis, TimeUnit.MILLISECONDS);
+			return future;
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package ch.obermuhlner.rpc.transport.balancer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Test;
+
+import ch.obermuhlner.rpc.exception.RpcException;
+import ch.obermuhlner.rpc.service.Request;
+import ch.obermuhlner.rpc.service.Response;
+import ch.obermuhlner.rpc.transport.ClientTransport;
+
+public class LoadBalancerTest {
+
+	@Test
+	public void testRoundRobin() {
+		List<Endpoint> endpoints = createEndpoints(3);
+		LoadBalancer loadBalancer = new RoundRobinLoadBalancer();
+
+		for (int i = 0; i < 6; i++) {
+			assertSame(endpoints.get(i % 3), loadBalancer.select(endpoints, createRequest()));
+		}
+	}
+
+	@Test
+	public void testLeastOutstanding() {
+		List<Endpoint> endpoints = createEndpoints(3);
+		endpoints.get(0).send(createRequest());
+		endpoints.get(0).send(createRequest());
+		endpoints.get(1).send(createRequest());
+		endpoints.get(2).send(createRequest());
+		endpoints.get(2).send(createRequest());
+
+		assertSame(endpoints.get(1), new LeastOutstandingLoadBalancer().select(endpoints, createRequest()));
+	}
+
+	@Test
+	public void testPowerOfTwoChoices() {
+		List<Endpoint> endpoints = createEndpoints(2);
+		endpoints.get(0).updateLatency(1000);
+		endpoints.get(1).updateLatency(1000000);
+
+		LoadBalancer loadBalancer = new PowerOfTwoChoicesLoadBalancer();
+		for (int i = 0; i < 10; i++) {
+			assertSame(endpoints.get(0), loadBalancer.select(endpoints, createRequest()));
+		}
+	}
+
+	@Test
+	public void testAddRemoveEndpoints() {
+		LoadBalancingClientTransport transport = new LoadBalancingClientTransport();
+		try {
+			transport.send(createRequest());
+		} catch (RpcException e) {
+			// expected - no endpoints
+		}
+
+		PendingClientTransport clientTransport = new PendingClientTransport();
+		transport.addEndpoint("a", clientTransport);
+		Request request = createRequest();
+		transport.send(request);
+		assertEquals(1, transport.getEndpoints().get(0).getOutstandingCount());
+
+		// cancel request goes to the same endpoint
+		Request cancelRequest = createRequest();
+		cancelRequest.requestId = request.requestId;
+		cancelRequest.execute = false;
+		transport.send(cancelRequest);
+		assertEquals(2, clientTransport.sentCount);
+
+		assertEquals("a", transport.removeEndpoint("a").getName());
+		assertNull(transport.removeEndpoint("a"));
+		assertEquals(0, transport.getEndpoints().size());
+	}
+
+	private static List<Endpoint> createEndpoints(int count) {
+		Endpoint[] endpoints = new Endpoint[count];
+		for (int i = 0; i < count; i++) {
+			endpoints[i] = new Endpoint("endpoint" + i, new PendingClientTransport());
+		}
+		return Arrays.asList(endpoints);
+	}
+
+	private static Request createRequest() {
+		Request request = new Request();
+		request.execute = true;
+		request.requestId = UUID.randomUUID().toString();
+		return request;
+	}
+
+	private static class PendingClientTransport implements ClientTransport {
+		int sentCount;
+
+		@Override
+		public CompletableFuture<Response> send(Request request) {
+			sentCount++;
+			return new CompletableFuture<>();
+		}
+	}
+}
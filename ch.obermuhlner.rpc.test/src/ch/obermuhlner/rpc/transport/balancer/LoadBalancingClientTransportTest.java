@@ -0,0 +1,85 @@
+package ch.obermuhlner.rpc.transport.balancer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ch.obermuhlner.rpc.meta.MetaDataService;
+import ch.obermuhlner.rpc.protocol.structure.StructureProtocol;
+import ch.obermuhlner.rpc.protocol.structure.binary.BinaryProtocol;
+import ch.obermuhlner.rpc.service.ServiceFactory;
+import ch.obermuhlner.rpc.transport.AbstractTransportTest;
+import ch.obermuhlner.rpc.transport.socket.SocketClientTransport;
+import ch.obermuhlner.rpc.transport.socket.SocketServerTransport;
+
+public class LoadBalancingClientTransportTest extends AbstractTransportTest {
+
+	private static ExecutorService executorService = Executors.newCachedThreadPool();
+
+	private static SocketClientTransport socketClientTransport1;
+
+	private static SocketClientTransport socketClientTransport2;
+
+	private static LoadBalancingClientTransport loadBalancingClientTransport;
+
+	@BeforeClass
+	public static void beforeClass() {
+		MetaDataService metaDataService = new MetaDataService();
+
+		int port1 = 15931;
+		int port2 = 15932;
+		String hostname = "localhost";
+
+		StructureProtocol<Object> protocol = new BinaryProtocol<Object>(metaDataService, LoadBalancingClientTransportTest.class.getClassLoader());
+		SocketServerTransport socketServerTransport1 = new SocketServerTransport(metaDataService, protocol, port1);
+		SocketServerTransport socketServerTransport2 = new SocketServerTransport(metaDataService, protocol, port2);
+		executorService.execute(() -> socketServerTransport1.run());
+		executorService.execute(() -> socketServerTransport2.run());
+		waitUntilListening(hostname, port1);
+		waitUntilListening(hostname, port2);
+
+		socketClientTransport1 = new SocketClientTransport(protocol, hostname, port1, true);
+		socketClientTransport2 = new SocketClientTransport(protocol, hostname, port2, true);
+		loadBalancingClientTransport = new LoadBalancingClientTransport(new RoundRobinLoadBalancer());
+		loadBalancingClientTransport.addEndpoint(hostname + ":" + port1, socketClientTransport1);
+		loadBalancingClientTransport.addEndpoint(hostname + ":" + port2, socketClientTransport2);
+
+		ServiceFactory serviceFactory = new ServiceFactory(metaDataService);
+
+		TestServiceImpl testServiceImpl = new TestServiceImpl();
+
+		serviceFactory.publishService(TestService.class, testServiceImpl, socketServerTransport1);
+		serviceFactory.publishService(TestService.class, testServiceImpl, socketServerTransport2);
+		testService = serviceFactory.createRemoteService(TestService.class, TestServiceAsync.class, loadBalancingClientTransport);
+		testServiceAsync = (TestServiceAsync) testService;
+	}
+
+	@AfterClass
+	public static void afterClass() {
+		testService = null;
+		testServiceAsync = null;
+		socketClientTransport1.close();
+		socketClientTransport2.close();
+		executorService.shutdown();
+	}
+
+	@Test
+	public void testEndpoints() throws InterruptedException {
+		for (int i = 0; i < 10; i++) {
+			assertEquals("int:" + i, testService.methodIntToString(i));
+		}
+		Thread.sleep(100); // the outstanding count is updated after the caller has received the response
+
+		assertEquals(2, loadBalancingClientTransport.getEndpoints().size());
+		for (Endpoint endpoint : loadBalancingClientTransport.getEndpoints()) {
+			assertEquals(0, endpoint.getOutstandingCount());
+			assertTrue(endpoint.getAverageLatencyNanos() > 0);
+		}
+	}
+}
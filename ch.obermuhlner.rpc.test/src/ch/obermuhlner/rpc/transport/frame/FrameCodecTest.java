@@ -0,0 +1,251 @@
+package ch.obermuhlner.rpc.transport.frame;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import ch.obermuhlner.rpc.exception.RpcException;
+import ch.obermuhlner.rpc.meta.MetaDataService;
+import ch.obermuhlner.rpc.protocol.structure.binary.BinaryProtocol;
+import ch.obermuhlner.rpc.service.Handshake;
+
+public class FrameCodecTest {
+
+	private final FrameCodec frameCodec = new FrameCodec(new BinaryProtocol<Object>(new MetaDataService(), FrameCodecTest.class.getClassLoader()));
+
+	@Test
+	public void testEncodeDecodeFrame() {
+		ByteBuffer frame = frameCodec.encode(Arrays.asList("alpha", "beta"), false);
+		
+		assertEquals(Arrays.asList("alpha", "beta"), frameCodec.decodeFrame(frame));
+		frameCodec.release(frame);
+	}
+
+	@Test
+	public void testEncodeDirect() {
+		ByteBuffer frame = frameCodec.encode("Hello", true);
+		
+		assertEquals(true, frame.isDirect());
+		assertEquals("Hello", frameCodec.decodeFrame(frame));
+		frameCodec.release(frame);
+	}
+
+	@Test
+	public void testEncodeLarge() {
+		List<String> large = new ArrayList<>();
+		for (int i = 0; i < 100000; i++) {
+			large.add("element" + i);
+		}
+		
+		ByteBuffer frame = frameCodec.encode(large, false);
+		assertEquals(large, frameCodec.decodeFrame(frame));
+		frameCodec.release(frame);
+	}
+
+	@Test
+	public void testReadFramePartialReads() throws IOException {
+		InputStream in = new OneByteInputStream(toBytes(frameCodec.encode("first", false), frameCodec.encode(123, false)));
+		
+		assertEquals("first", frameCodec.readFrame(in));
+		assertEquals(123, frameCodec.readFrame(in));
+	}
+
+	@Test(expected = EOFException.class)
+	public void testReadFrameEndOfStream() throws IOException {
+		frameCodec.readFrame(new ByteArrayInputStream(new byte[0]));
+	}
+
+	@Test(expected = EOFException.class)
+	public void testReadFrameTruncated() throws IOException {
+		byte[] data = toBytes(frameCodec.encode("truncated", false));
+		frameCodec.readFrame(new ByteArrayInputStream(data, 0, data.length - 1));
+	}
+
+	@Test
+	public void testNextFrame() {
+		byte[] data = toBytes(frameCodec.encode("first", false), frameCodec.encode("second", false));
+		
+		ByteBuffer buffer = ByteBuffer.wrap(data, 0, data.length - 1);
+		assertEquals("first", frameCodec.decodeFrame(frameCodec.nextFrame(buffer)));
+		assertNull(frameCodec.nextFrame(buffer));
+		
+		buffer.limit(data.length);
+		assertEquals("second", frameCodec.decodeFrame(frameCodec.nextFrame(buffer)));
+		assertNull(frameCodec.nextFrame(buffer));
+	}
+
+	@Test(expected = RpcException.class)
+	public void testMaxFrameSizeEncode() {
+		FrameCodec smallFrameCodec = new FrameCodec(new BinaryProtocol<Object>(new MetaDataService(), FrameCodecTest.class.getClassLoader()), BufferPool.getDefault(), 10);
+		smallFrameCodec.encode("This is longer than ten bytes", false);
+	}
+
+	@Test
+	public void testMaxFrameSizeEncodeLarge() {
+		List<Integer> acquiredCapacities = new ArrayList<>();
+		BufferPool bufferPool = new BufferPool(BufferPool.DEFAULT_MAX_POOLED_CAPACITY, BufferPool.DEFAULT_MAX_BUFFERS_PER_SIZE) {
+			@Override
+			public ByteBuffer acquire(int minCapacity, boolean direct) {
+				acquiredCapacities.add(minCapacity);
+				return super.acquire(minCapacity, direct);
+			}
+		};
+		FrameCodec smallFrameCodec = new FrameCodec(new BinaryProtocol<Object>(new MetaDataService(), FrameCodecTest.class.getClassLoader()), bufferPool, 10000);
+
+		List<String> large = new ArrayList<>();
+		for (int i = 0; i < 100000; i++) {
+			large.add("element" + i);
+		}
+		try {
+			smallFrameCodec.encode(large, false);
+			fail("Expected RpcException");
+		} catch (RpcException e) {
+			// expected
+		}
+
+		// the buffer stops growing at the maximum frame size
+		for (int capacity : acquiredCapacities) {
+			assertTrue("Acquired capacity " + capacity, capacity <= FrameCodec.HEADER_SIZE + 10000);
+		}
+	}
+
+	@Test(expected = RpcException.class)
+	public void testMaxFrameSizeRead() throws IOException {
+		FrameCodec smallFrameCodec = new FrameCodec(new BinaryProtocol<Object>(new MetaDataService(), FrameCodecTest.class.getClassLoader()), BufferPool.getDefault(), 10);
+		smallFrameCodec.readFrame(new ByteArrayInputStream(toBytes(frameCodec.encode("This is longer than ten bytes", false))));
+	}
+
+	@Test
+	public void testNegotiateCompression() {
+		FrameCodec clientFrameCodec = createCompressingFrameCodec(100);
+		FrameCodec serverFrameCodec = createCompressingFrameCodec(100);
+
+		Handshake answer = serverFrameCodec.answerHandshake(clientFrameCodec.createHandshake());
+		assertEquals(Arrays.asList(DeflateCompressionCodec.NAME), answer.compressionCodecs);
+
+		FrameCodec negotiatedClientFrameCodec = clientFrameCodec.negotiate(answer);
+		FrameCodec negotiatedServerFrameCodec = serverFrameCodec.negotiate(answer);
+		assertNotNull(negotiatedClientFrameCodec.getCompressionCodec());
+		assertNotNull(negotiatedServerFrameCodec.getCompressionCodec());
+	}
+
+	@Test
+	public void testNegotiateCompressionUnsupported() {
+		Handshake answer = frameCodec.answerHandshake(createCompressingFrameCodec(100).createHandshake());
+		assertEquals(0, answer.compressionCodecs.size());
+
+		FrameCodec negotiatedFrameCodec = createCompressingFrameCodec(100).negotiate(answer);
+		assertNull(negotiatedFrameCodec.getCompressionCodec());
+	}
+
+	@Test
+	public void testCompression() throws IOException {
+		FrameCodec compressingFrameCodec = createCompressingFrameCodec(100);
+		compressingFrameCodec = compressingFrameCodec.negotiate(compressingFrameCodec.answerHandshake(compressingFrameCodec.createHandshake()));
+
+		List<String> large = new ArrayList<>();
+		for (int i = 0; i < 10000; i++) {
+			large.add("element");
+		}
+
+		ByteBuffer uncompressedFrame = frameCodec.encode(large, false);
+		ByteBuffer compressedFrame = compressingFrameCodec.encode(large, false);
+		assertTrue(compressedFrame.remaining() * 5 < uncompressedFrame.remaining());
+		frameCodec.release(uncompressedFrame);
+
+		assertEquals(large, compressingFrameCodec.decodeFrame(compressedFrame));
+		assertEquals(large, compressingFrameCodec.readFrame(new OneByteInputStream(toBytes(compressedFrame))));
+	}
+
+	@Test
+	public void testCompressionFromManyThreads() throws Exception {
+		FrameCodec compressingFrameCodec = createCompressingFrameCodec(100);
+		FrameCodec negotiatedFrameCodec = compressingFrameCodec.negotiate(compressingFrameCodec.answerHandshake(compressingFrameCodec.createHandshake()));
+
+		List<String> large = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			large.add("element" + i);
+		}
+
+		// more threads than pooled deflaters and inflaters
+		ExecutorService executorService = Executors.newFixedThreadPool(32);
+		try {
+			List<Future<Object>> futures = new ArrayList<>();
+			for (int i = 0; i < 200; i++) {
+				futures.add(executorService.submit(() -> negotiatedFrameCodec.decodeFrame(negotiatedFrameCodec.encode(large, false))));
+			}
+			for (Future<Object> future : futures) {
+				assertEquals(large, future.get());
+			}
+		} finally {
+			executorService.shutdown();
+		}
+	}
+
+	@Test
+	public void testCompressionThreshold() {
+		FrameCodec compressingFrameCodec = createCompressingFrameCodec(100);
+		compressingFrameCodec = compressingFrameCodec.negotiate(compressingFrameCodec.answerHandshake(compressingFrameCodec.createHandshake()));
+
+		ByteBuffer frame = compressingFrameCodec.encode("small", false);
+		ByteBuffer expectedFrame = frameCodec.encode("small", false);
+		assertEquals(expectedFrame, frame);
+
+		assertEquals("small", frameCodec.decodeFrame(frame));
+		frameCodec.release(frame);
+		frameCodec.release(expectedFrame);
+	}
+
+	@Test(expected = RpcException.class)
+	public void testCompressedFrameWithoutNegotiation() {
+		FrameCodec compressingFrameCodec = createCompressingFrameCodec(0);
+		compressingFrameCodec = compressingFrameCodec.negotiate(compressingFrameCodec.answerHandshake(compressingFrameCodec.createHandshake()));
+
+		frameCodec.decodeFrame(compressingFrameCodec.encode(Arrays.asList("compressed", "compressed", "compressed", "compressed"), false));
+	}
+
+	private FrameCodec createCompressingFrameCodec(int compressionThreshold) {
+		return new FrameCodec(new BinaryProtocol<Object>(new MetaDataService(), FrameCodecTest.class.getClassLoader()), compressionThreshold);
+	}
+
+	private byte[] toBytes(ByteBuffer... frames) {
+		int size = 0;
+		for (ByteBuffer frame : frames) {
+			size += frame.remaining();
+		}
+		
+		ByteBuffer result = ByteBuffer.allocate(size);
+		for (ByteBuffer frame : frames) {
+			result.put(frame);
+			frameCodec.release(frame);
+		}
+		return result.array();
+	}
+	
+	private static class OneByteInputStream extends ByteArrayInputStream {
+		public OneByteInputStream(byte[] data) {
+			super(data);
+		}
+		
+		@Override
+		public synchronized int read(byte[] data, int offset, int length) {
+			return super.read(data, offset, Math.min(1, length));
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package ch.obermuhlner.rpc.transport.frame;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import ch.obermuhlner.rpc.meta.MetaDataService;
+import ch.obermuhlner.rpc.protocol.structure.binary.BinaryProtocol;
+
+public class FrameWriterTest {
+
+	private final Set<ByteBuffer> acquiredBuffers = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+
+	private final BufferPool bufferPool = new BufferPool(BufferPool.DEFAULT_MAX_POOLED_CAPACITY, BufferPool.DEFAULT_MAX_BUFFERS_PER_SIZE) {
+		@Override
+		public ByteBuffer acquire(int minCapacity, boolean direct) {
+			ByteBuffer buffer = super.acquire(minCapacity, direct);
+			acquiredBuffers.add(buffer);
+			return buffer;
+		}
+
+		@Override
+		public void release(ByteBuffer buffer) {
+			acquiredBuffers.remove(buffer);
+			super.release(buffer);
+		}
+	};
+
+	private final FrameCodec frameCodec = new FrameCodec(new BinaryProtocol<Object>(new MetaDataService(), FrameWriterTest.class.getClassLoader()), bufferPool, FrameCodec.DEFAULT_MAX_FRAME_SIZE);
+
+	@Test
+	public void testWrite() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		FrameWriter frameWriter = new FrameWriter(out, frameCodec);
+
+		frameWriter.write("first");
+		frameWriter.write("second");
+
+		ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+		assertEquals("first", frameCodec.readFrame(in));
+		assertEquals("second", frameCodec.readFrame(in));
+		assertTrue(acquiredBuffers.isEmpty());
+	}
+
+	@Test(timeout = 10000)
+	public void testFailedWriteReleasesQueuedFrames() throws Exception {
+		CountDownLatch writeStarted = new CountDownLatch(1);
+		CountDownLatch failWrite = new CountDownLatch(1);
+		OutputStream brokenOut = new OutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				write(new byte[] { (byte) b }, 0, 1);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				writeStarted.countDown();
+				try {
+					failWrite.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				throw new IOException("broken");
+			}
+		};
+		FrameWriter frameWriter = new FrameWriter(brokenOut, frameCodec);
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<?> future = executor.submit(() -> {
+				frameWriter.write("first");
+				return null;
+			});
+			writeStarted.await();
+
+			// queued while the first thread is writing - the first thread is responsible to write them
+			frameWriter.write("second");
+			frameWriter.write("third");
+
+			failWrite.countDown();
+			try {
+				future.get();
+				fail("Expected IOException");
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof IOException);
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		assertTrue("Buffers not released: " + acquiredBuffers.size(), acquiredBuffers.isEmpty());
+	}
+}
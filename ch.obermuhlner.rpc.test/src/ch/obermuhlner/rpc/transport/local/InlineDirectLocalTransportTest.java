@@ -0,0 +1,69 @@
+package ch.obermuhlner.rpc.transport.local;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ch.obermuhlner.rpc.annotation.RpcService;
+import ch.obermuhlner.rpc.meta.MetaDataService;
+import ch.obermuhlner.rpc.service.ServiceFactory;
+import ch.obermuhlner.rpc.transport.AbstractTransportTest;
+
+public class InlineDirectLocalTransportTest extends AbstractTransportTest {
+
+	private static DirectLocalTransport transport;
+
+	private static ServiceFactory serviceFactory;
+
+	@BeforeClass
+	public static void beforeClass() {
+		MetaDataService metaDataService = new MetaDataService();
+		
+		transport = new DirectLocalTransport(metaDataService, ForkJoinPool.commonPool(), true);
+		serviceFactory = new ServiceFactory(metaDataService);
+
+		TestServiceImpl testServiceImpl = new TestServiceImpl();
+
+		serviceFactory.publishService(TestService.class, testServiceImpl, transport);
+		serviceFactory.publishService(ThreadService.class, () -> Thread.currentThread().getName(), transport);
+		
+		testService = serviceFactory.createRemoteService(TestService.class, TestServiceAsync.class, transport);
+		testServiceAsync = (TestServiceAsync) testService;
+	}
+	
+	@AfterClass
+	public static void afterClass() {
+		testService = null;
+		testServiceAsync = null;
+	}
+
+	@Test
+	public void testInlineCall() {
+		ThreadService threadService = serviceFactory.createRemoteService(ThreadService.class, transport);
+
+		assertEquals(Thread.currentThread().getName(), threadService.threadName());
+	}
+
+	@Test
+	public void testInlineCallKeepsInterruptStatus() {
+		ThreadService threadService = serviceFactory.createRemoteService(ThreadService.class, transport);
+
+		Thread.currentThread().interrupt();
+		try {
+			assertEquals(Thread.currentThread().getName(), threadService.threadName());
+			assertTrue(Thread.currentThread().isInterrupted());
+		} finally {
+			Thread.interrupted();
+		}
+	}
+
+	@RpcService
+	public static interface ThreadService {
+		String threadName();
+	}
+}
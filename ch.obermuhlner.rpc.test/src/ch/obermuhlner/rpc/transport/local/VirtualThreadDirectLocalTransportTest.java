@@ -0,0 +1,45 @@
+package ch.obermuhlner.rpc.transport.local;
+
+import java.util.concurrent.ExecutorService;
+
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+
+import ch.obermuhlner.rpc.meta.MetaDataService;
+import ch.obermuhlner.rpc.service.ServiceFactory;
+import ch.obermuhlner.rpc.transport.AbstractTransportTest;
+import ch.obermuhlner.rpc.transport.VirtualThreadExecutors;
+
+public class VirtualThreadDirectLocalTransportTest extends AbstractTransportTest {
+
+	private static ExecutorService executorService;
+
+	@BeforeClass
+	public static void beforeClass() {
+		// the fallback to platform threads is tested in VirtualThreadExecutorsTest
+		Assume.assumeTrue(VirtualThreadExecutors.isAvailable());
+
+		executorService = VirtualThreadExecutors.newVirtualThreadPerTaskExecutor();
+		MetaDataService metaDataService = new MetaDataService();
+		
+		DirectLocalTransport transport = new DirectLocalTransport(metaDataService, executorService);
+		ServiceFactory serviceFactory = new ServiceFactory(metaDataService, executorService);
+
+		TestServiceImpl testServiceImpl = new TestServiceImpl();
+
+		serviceFactory.publishService(TestService.class, testServiceImpl, transport);
+		
+		testService = serviceFactory.createRemoteService(TestService.class, TestServiceAsync.class, transport);
+		testServiceAsync = (TestServiceAsync) testService;
+	}
+	
+	@AfterClass
+	public static void afterClass() {
+		testService = null;
+		testServiceAsync = null;
+		if (executorService != null) {
+			executorService.shutdown();
+		}
+	}
+}
@@ -0,0 +1,126 @@
+package ch.obermuhlner.rpc.transport.shm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.obermuhlner.rpc.exception.RpcException;
+import ch.obermuhlner.rpc.meta.MetaDataService;
+import ch.obermuhlner.rpc.protocol.structure.binary.BinaryProtocol;
+import ch.obermuhlner.rpc.transport.frame.FrameCodec;
+
+public class SharedMemoryChannelTest {
+
+	private final FrameCodec frameCodec = new FrameCodec(new BinaryProtocol<Object>(new MetaDataService(), SharedMemoryChannelTest.class.getClassLoader()));
+
+	private File file;
+
+	@Before
+	public void before() throws IOException {
+		file = File.createTempFile("ez-rpc-shm", ".dat");
+	}
+
+	@After
+	public void after() {
+		file.delete();
+	}
+
+	@Test
+	public void testWriteRead() throws IOException {
+		try (SharedMemoryChannel server = SharedMemoryChannel.create(frameCodec, file, 1024);
+				SharedMemoryChannel client = SharedMemoryChannel.open(frameCodec, file)) {
+			client.write("request");
+			assertEquals("request", server.read());
+
+			server.write("response");
+			assertEquals("response", client.read());
+		}
+	}
+
+	@Test(expected = RpcException.class)
+	public void testSecondServer() throws IOException {
+		SharedMemoryChannel server = SharedMemoryChannel.create(frameCodec, file, 1024);
+		try {
+			SharedMemoryChannel.create(frameCodec, file, 1024);
+		} finally {
+			server.close();
+		}
+	}
+
+	@Test
+	public void testSecondClient() throws IOException {
+		SharedMemoryChannel server = SharedMemoryChannel.create(frameCodec, file, 1024);
+		SharedMemoryChannel client = SharedMemoryChannel.open(frameCodec, file);
+		try {
+			// the locks of the channels must survive a garbage collection
+			System.gc();
+			SharedMemoryChannel.open(frameCodec, file);
+			fail("Expected RpcException");
+		} catch (RpcException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("already used by another client"));
+		} finally {
+			client.close();
+			server.close();
+		}
+	}
+
+	@Test(expected = RpcException.class)
+	public void testOpenWithoutServer() throws IOException {
+		SharedMemoryChannel.create(frameCodec, file, 1024).close();
+
+		SharedMemoryChannel.open(frameCodec, file);
+	}
+
+	@Test(timeout = 10000)
+	public void testWriteFailsWhenServerGone() throws IOException {
+		SharedMemoryChannel server = SharedMemoryChannel.create(frameCodec, file, 1024);
+		try (SharedMemoryChannel client = SharedMemoryChannel.open(frameCodec, file)) {
+			server.close();
+
+			// the reader notices that the server is gone and closes the channel
+			new Thread(() -> {
+				try {
+					client.read();
+				} catch (EOFException e) {
+					// expected
+				}
+			}).start();
+
+			try {
+				for (;;) {
+					client.write("request");
+				}
+			} catch (EOFException e) {
+				// expected - the ring buffer is full and nobody reads it
+			}
+			assertFalse(client.isOpen());
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testReadFailsWhenClientGone() throws IOException {
+		try (SharedMemoryChannel server = SharedMemoryChannel.create(frameCodec, file, 1024)) {
+			SharedMemoryChannel client = SharedMemoryChannel.open(frameCodec, file);
+			client.write("request");
+			assertEquals("request", server.read());
+			client.close();
+
+			try {
+				server.read();
+				fail("Expected EOFException");
+			} catch (EOFException e) {
+				// expected
+			}
+			assertFalse(server.isOpen());
+		}
+	}
+}
@@ -0,0 +1,88 @@
+package ch.obermuhlner.rpc.transport.shm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import ch.obermuhlner.rpc.exception.RpcException;
+import ch.obermuhlner.rpc.meta.MetaDataService;
+import ch.obermuhlner.rpc.protocol.structure.binary.BinaryProtocol;
+import ch.obermuhlner.rpc.transport.frame.BufferPool;
+import ch.obermuhlner.rpc.transport.frame.FrameCodec;
+
+public class SharedMemoryRingBufferTest {
+
+	private final FrameCodec frameCodec = new FrameCodec(new BinaryProtocol<Object>(new MetaDataService(), SharedMemoryRingBufferTest.class.getClassLoader()));
+
+	@Test
+	public void testEmpty() {
+		SharedMemoryRingBuffer ringBuffer = new SharedMemoryRingBuffer(ByteBuffer.allocateDirect(SharedMemoryRingBuffer.size(1024)));
+
+		assertEquals(1024, ringBuffer.getCapacity());
+		assertNull(ringBuffer.poll(BufferPool.getDefault()));
+	}
+
+	@Test
+	public void testWrapAround() {
+		SharedMemoryRingBuffer ringBuffer = new SharedMemoryRingBuffer(ByteBuffer.allocateDirect(SharedMemoryRingBuffer.size(1024)));
+
+		for (int i = 0; i < 1000; i++) {
+			String message = "message " + i;
+			assertTrue(ringBuffer.offer(frameCodec.encode(message, false)));
+			assertTrue(ringBuffer.offer(frameCodec.encode(i, false)));
+
+			assertEquals(message, decode(ringBuffer.poll(BufferPool.getDefault())));
+			assertEquals(i, decode(ringBuffer.poll(BufferPool.getDefault())));
+			assertNull(ringBuffer.poll(BufferPool.getDefault()));
+		}
+	}
+
+	@Test
+	public void testFull() {
+		SharedMemoryRingBuffer ringBuffer = new SharedMemoryRingBuffer(ByteBuffer.allocateDirect(SharedMemoryRingBuffer.size(1024)));
+
+		int count = 0;
+		while (ringBuffer.offer(frameCodec.encode("message " + count, false))) {
+			count++;
+		}
+		assertTrue(count > 0);
+
+		assertEquals("message 0", decode(ringBuffer.poll(BufferPool.getDefault())));
+		assertTrue(ringBuffer.offer(frameCodec.encode("message " + count, false)));
+		assertFalse(ringBuffer.offer(frameCodec.encode("message " + count, false)));
+
+		for (int i = 1; i <= count; i++) {
+			assertEquals("message " + i, decode(ringBuffer.poll(BufferPool.getDefault())));
+		}
+		assertNull(ringBuffer.poll(BufferPool.getDefault()));
+	}
+
+	@Test(expected = RpcException.class)
+	public void testFrameLargerThanCapacity() {
+		SharedMemoryRingBuffer ringBuffer = new SharedMemoryRingBuffer(ByteBuffer.allocateDirect(SharedMemoryRingBuffer.size(1024)));
+
+		StringBuilder message = new StringBuilder();
+		for (int i = 0; i < 2000; i++) {
+			message.append('x');
+		}
+		ringBuffer.offer(frameCodec.encode(message.toString(), false));
+	}
+
+	@Test(expected = RpcException.class)
+	public void testCapacityNotPowerOfTwo() {
+		new SharedMemoryRingBuffer(ByteBuffer.allocateDirect(SharedMemoryRingBuffer.size(1000)));
+	}
+
+	private Object decode(ByteBuffer payload) {
+		try {
+			return frameCodec.decode(payload);
+		} finally {
+			frameCodec.release(payload);
+		}
+	}
+}
@@ -0,0 +1,130 @@
+package ch.obermuhlner.rpc.transport.shm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ch.obermuhlner.rpc.annotation.RpcService;
+import ch.obermuhlner.rpc.exception.RpcException;
+import ch.obermuhlner.rpc.meta.MetaDataService;
+import ch.obermuhlner.rpc.protocol.structure.StructureProtocol;
+import ch.obermuhlner.rpc.protocol.structure.binary.BinaryProtocol;
+import ch.obermuhlner.rpc.service.Request;
+import ch.obermuhlner.rpc.service.Response;
+import ch.obermuhlner.rpc.service.ServiceFactory;
+import ch.obermuhlner.rpc.transport.AbstractTransportTest;
+
+public class SharedMemoryTransportTest extends AbstractTransportTest {
+
+	private static ExecutorService executorService = Executors.newCachedThreadPool();
+
+	private static File file;
+
+	private static SharedMemoryServerTransport sharedMemoryServerTransport;
+
+	private static SharedMemoryClientTransport sharedMemoryClientTransport;
+
+	private static LargeResultService largeResultService;
+
+	@BeforeClass
+	public static void beforeClass() throws IOException {
+		MetaDataService metaDataService = new MetaDataService();
+
+		file = File.createTempFile("ez-rpc-shm", ".dat");
+
+		StructureProtocol<Object> protocol = new BinaryProtocol<Object>(metaDataService, SharedMemoryTransportTest.class.getClassLoader());
+		sharedMemoryServerTransport = new SharedMemoryServerTransport(metaDataService, protocol, file, 64 * 1024, Executors.newCachedThreadPool());
+		executorService.execute(() -> sharedMemoryServerTransport.run());
+
+		sharedMemoryClientTransport = new SharedMemoryClientTransport(protocol, file);
+
+		ServiceFactory serviceFactory = new ServiceFactory(metaDataService);
+
+		TestServiceImpl testServiceImpl = new TestServiceImpl();
+
+		serviceFactory.publishService(TestService.class, testServiceImpl, sharedMemoryServerTransport);
+		testService = serviceFactory.createRemoteService(TestService.class, TestServiceAsync.class, sharedMemoryClientTransport);
+		testServiceAsync = (TestServiceAsync) testService;
+
+		serviceFactory.publishService(LargeResultService.class, count -> Collections.nCopies(count, "0123456789"), sharedMemoryServerTransport);
+		largeResultService = serviceFactory.createRemoteService(LargeResultService.class, sharedMemoryClientTransport);
+	}
+
+	@AfterClass
+	public static void afterClass() {
+		testService = null;
+		testServiceAsync = null;
+		largeResultService = null;
+		sharedMemoryClientTransport.close();
+		sharedMemoryServerTransport.close();
+		executorService.shutdown();
+		file.delete();
+	}
+
+	@Test
+	public void testResultLargerThanRingBuffer() {
+		try {
+			largeResultService.large(10000);
+			fail("Expected an exception");
+		} catch (RpcException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("exceeds ring buffer capacity"));
+		}
+
+		// the channel is still usable
+		assertEquals(100, largeResultService.large(100).size());
+	}
+
+	@Test(timeout = 10000)
+	public void testSendFailsWhenServerGone() throws Exception {
+		MetaDataService metaDataService = new MetaDataService();
+		StructureProtocol<Object> protocol = new BinaryProtocol<Object>(metaDataService, SharedMemoryTransportTest.class.getClassLoader());
+		File otherFile = File.createTempFile("ez-rpc-shm", ".dat");
+		try {
+			SharedMemoryServerTransport serverTransport = new SharedMemoryServerTransport(metaDataService, protocol, otherFile, 1024, Executors.newCachedThreadPool());
+			SharedMemoryClientTransport clientTransport = new SharedMemoryClientTransport(protocol, otherFile);
+			serverTransport.close();
+
+			CompletableFuture<Response> future = clientTransport.send(createRequest("1"));
+			try {
+				future.get();
+				fail("Expected ExecutionException");
+			} catch (ExecutionException e) {
+				// expected - the server is gone before it could answer
+			}
+
+			assertFalse(clientTransport.isAlive());
+			assertTrue(clientTransport.send(createRequest("2")).isCompletedExceptionally());
+			clientTransport.close();
+		} finally {
+			otherFile.delete();
+		}
+	}
+
+	private static Request createRequest(String requestId) {
+		Request request = new Request();
+		request.serviceName = "TestService";
+		request.methodName = "methodVoidToVoid";
+		request.execute = true;
+		request.requestId = requestId;
+		return request;
+	}
+
+	@RpcService
+	public static interface LargeResultService {
+		List<String> large(int count);
+	}
+}
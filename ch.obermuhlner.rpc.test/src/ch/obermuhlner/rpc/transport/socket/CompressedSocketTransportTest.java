@@ -0,0 +1,53 @@
+package ch.obermuhlner.rpc.transport.socket;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+
+import ch.obermuhlner.rpc.meta.MetaDataService;
+import ch.obermuhlner.rpc.protocol.structure.StructureProtocol;
+import ch.obermuhlner.rpc.protocol.structure.binary.BinaryProtocol;
+import ch.obermuhlner.rpc.service.ServiceFactory;
+import ch.obermuhlner.rpc.transport.AbstractTransportTest;
+import ch.obermuhlner.rpc.transport.frame.FrameCodec;
+
+public class CompressedSocketTransportTest extends AbstractTransportTest {
+
+	private static ExecutorService executorService = Executors.newCachedThreadPool();
+
+	private static SocketClientTransport socketClientTransport;
+
+	@BeforeClass
+	public static void beforeClass() {
+		MetaDataService metaDataService = new MetaDataService();
+		
+		int port = 15929;
+		String hostname = "localhost";
+		
+		StructureProtocol<Object> protocol = new BinaryProtocol<Object>(metaDataService, CompressedSocketTransportTest.class.getClassLoader());
+		FrameCodec frameCodec = new FrameCodec(protocol, 0);
+		NioSocketServerTransport nioSocketServerTransport = new NioSocketServerTransport(metaDataService, frameCodec, port, 1, Executors.newCachedThreadPool());
+		executorService.execute(() -> nioSocketServerTransport.run());
+		waitUntilListening(hostname, port);
+		
+		socketClientTransport = new SocketClientTransport(frameCodec, hostname, port, true, 0);
+		
+		ServiceFactory serviceFactory = new ServiceFactory(metaDataService);
+
+		TestServiceImpl testServiceImpl = new TestServiceImpl();
+
+		serviceFactory.publishService(TestService.class, testServiceImpl, nioSocketServerTransport);
+		testService = serviceFactory.createRemoteService(TestService.class, TestServiceAsync.class, socketClientTransport);
+		testServiceAsync = (TestServiceAsync) testService;
+	}
+
+	@AfterClass
+	public static void afterClass() {
+		testService = null;
+		testServiceAsync = null;
+		socketClientTransport.close();
+		executorService.shutdown();
+	}
+}
@@ -0,0 +1,304 @@
+package ch.obermuhlner.rpc.transport.socket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ch.obermuhlner.rpc.meta.MetaDataService;
+import ch.obermuhlner.rpc.protocol.structure.StructureProtocol;
+import ch.obermuhlner.rpc.protocol.structure.binary.BinaryProtocol;
+import ch.obermuhlner.rpc.service.Heartbeat;
+import ch.obermuhlner.rpc.service.Request;
+import ch.obermuhlner.rpc.service.Response;
+import ch.obermuhlner.rpc.service.ServiceFactory;
+import ch.obermuhlner.rpc.transport.AbstractTransportTest;
+import ch.obermuhlner.rpc.transport.balancer.LoadBalancingClientTransport;
+import ch.obermuhlner.rpc.transport.balancer.RoundRobinLoadBalancer;
+import ch.obermuhlner.rpc.transport.frame.FrameCodec;
+
+public class HeartbeatSocketTransportTest extends AbstractTransportTest {
+
+	private static final String HOSTNAME = "localhost";
+	private static final int PORT = 15933;
+	private static final int DEAD_PORT = 15934;
+	private static final int NIO_PORT = 15935;
+
+	private static ExecutorService executorService = Executors.newCachedThreadPool();
+
+	private static MetaDataService metaDataService;
+
+	private static StructureProtocol<Object> protocol;
+
+	private static SocketClientTransport socketClientTransport;
+
+	private static ServerSocket deadServerSocket;
+
+	@BeforeClass
+	public static void beforeClass() throws IOException {
+		metaDataService = new MetaDataService();
+
+		protocol = new BinaryProtocol<Object>(metaDataService, HeartbeatSocketTransportTest.class.getClassLoader());
+		SocketServerTransport socketServerTransport = new SocketServerTransport(metaDataService, protocol, PORT);
+		socketServerTransport.setIdleTimeout(500, TimeUnit.MILLISECONDS);
+		executorService.execute(() -> socketServerTransport.run());
+		waitUntilListening(HOSTNAME, PORT);
+
+		NioSocketServerTransport nioSocketServerTransport = new NioSocketServerTransport(metaDataService, protocol, NIO_PORT);
+		nioSocketServerTransport.setIdleTimeout(500, TimeUnit.MILLISECONDS);
+		executorService.execute(() -> nioSocketServerTransport.run());
+		waitUntilListening(HOSTNAME, NIO_PORT);
+
+		// accepts connections but never answers, like a server behind a half-open connection
+		deadServerSocket = new ServerSocket(DEAD_PORT);
+		executorService.execute(() -> {
+			List<Socket> sockets = new ArrayList<>();
+			try {
+				for (;;) {
+					sockets.add(deadServerSocket.accept());
+				}
+			} catch (IOException e) {
+				// server socket closed
+			}
+		});
+
+		// the heartbeats keep the connection open although the server reaps idle connections
+		socketClientTransport = new SocketClientTransport(protocol, HOSTNAME, PORT, true);
+		socketClientTransport.setHeartbeat(100, 2000, TimeUnit.MILLISECONDS);
+
+		ServiceFactory serviceFactory = new ServiceFactory(metaDataService);
+
+		TestServiceImpl testServiceImpl = new TestServiceImpl();
+
+		serviceFactory.publishService(TestService.class, testServiceImpl, socketServerTransport);
+		serviceFactory.publishService(TestService.class, testServiceImpl, nioSocketServerTransport);
+		testService = serviceFactory.createRemoteService(TestService.class, TestServiceAsync.class, socketClientTransport);
+		testServiceAsync = (TestServiceAsync) testService;
+	}
+
+	@AfterClass
+	public static void afterClass() throws IOException {
+		testService = null;
+		testServiceAsync = null;
+		socketClientTransport.close();
+		deadServerSocket.close();
+		executorService.shutdown();
+	}
+
+	@Test
+	public void testHeartbeatKeepsConnectionAlive() throws InterruptedException {
+		assertEquals("int:1", testService.methodIntToString(1));
+		Thread.sleep(1200);
+		assertTrue(socketClientTransport.isAlive());
+		assertEquals("int:2", testService.methodIntToString(2));
+	}
+
+	@Test
+	public void testServerClosesIdleConnection() throws IOException {
+		assertServerClosesIdleConnection(PORT);
+	}
+
+	@Test
+	public void testNioServerClosesIdleConnection() throws IOException {
+		assertServerClosesIdleConnection(NIO_PORT);
+	}
+
+	@Test
+	public void testClientClosesIdleConnection() throws InterruptedException {
+		SocketClientTransport clientTransport = new SocketClientTransport(protocol, HOSTNAME, PORT, true);
+		clientTransport.setHeartbeat(0, 100, TimeUnit.MILLISECONDS);
+		try {
+			TestService service = new ServiceFactory(metaDataService).createRemoteService(TestService.class, clientTransport);
+			assertEquals("int:1", service.methodIntToString(1));
+
+			Thread.sleep(400);
+
+			// closing an idle connection is not a failure, the next call simply reconnects
+			assertTrue(clientTransport.isAlive());
+			assertEquals("int:2", service.methodIntToString(2));
+		} finally {
+			clientTransport.close();
+		}
+	}
+
+	@Test
+	public void testHeartbeatDetectsDeadServer() throws InterruptedException, TimeoutException {
+		SocketClientTransport clientTransport = new SocketClientTransport(protocol, HOSTNAME, DEAD_PORT, true);
+		clientTransport.setHeartbeat(200, 0, TimeUnit.MILLISECONDS);
+		LoadBalancingClientTransport loadBalancingClientTransport = new LoadBalancingClientTransport(new RoundRobinLoadBalancer());
+		loadBalancingClientTransport.addEndpoint("dead", clientTransport);
+		try {
+			TestServiceAsync service = (TestServiceAsync) new ServiceFactory(metaDataService).createRemoteService(TestService.class, TestServiceAsync.class, clientTransport);
+			assertTrue(clientTransport.isAlive());
+
+			try {
+				service.methodIntToIntAsync(1).get(5, TimeUnit.SECONDS);
+				fail("expected ExecutionException");
+			} catch (ExecutionException e) {
+				// expected - no pong received
+			}
+
+			assertFalse(clientTransport.isAlive());
+			assertFalse(loadBalancingClientTransport.getEndpoints().get(0).isAvailable());
+			assertFalse(loadBalancingClientTransport.isAlive());
+		} finally {
+			clientTransport.close();
+		}
+	}
+
+	@Test
+	public void testValidate() throws IOException {
+		try (SocketConnection connection = new SocketConnection(new FrameCodec(protocol), HOSTNAME, PORT)) {
+			assertTrue(connection.validate(0, 1000, TimeUnit.MILLISECONDS));
+			assertTrue(connection.isAlive());
+		}
+
+		try (SocketConnection connection = new SocketConnection(new FrameCodec(protocol), HOSTNAME, DEAD_PORT)) {
+			// recently opened connections are not asked
+			assertTrue(connection.validate(10, 200, TimeUnit.SECONDS));
+
+			assertFalse(connection.validate(0, 200, TimeUnit.MILLISECONDS));
+			assertFalse(connection.isOpen());
+			assertFalse(connection.isAlive());
+		}
+	}
+
+	@Test
+	public void testResponseTimeoutCompletesOutsideTimerThread() throws Exception {
+		try (SocketConnection connection = new SocketConnection(new FrameCodec(protocol), HOSTNAME, DEAD_PORT)) {
+			Request request = createRequest("methodIntToString", int.class, 1, "1");
+			request.timeout = 100;
+			CompletableFuture<String> threadName = connection.send(request).handle((response, exception) -> Thread.currentThread().getName());
+
+			assertNotEquals("ez-rpc-timer", threadName.get(5, TimeUnit.SECONDS));
+		}
+	}
+
+	@Test
+	public void testPoolReplacesIdleConnectionWithoutAnswer() throws InterruptedException {
+		try (SocketConnectionPool connectionPool = new SocketConnectionPool(protocol, 0, 1)) {
+			connectionPool.setValidation(50, 200, TimeUnit.MILLISECONDS);
+
+			SocketConnection connection = connectionPool.acquire(HOSTNAME, DEAD_PORT);
+			assertSame(connection, connectionPool.acquire(HOSTNAME, DEAD_PORT));
+
+			Thread.sleep(100);
+
+			SocketConnection replacedConnection = connectionPool.acquire(HOSTNAME, DEAD_PORT);
+			assertNotSame(connection, replacedConnection);
+			assertFalse(connection.isOpen());
+			assertTrue(replacedConnection.isOpen());
+		}
+	}
+
+	@Test
+	public void testPoolKeepsMinimumIdleConnections() throws InterruptedException {
+		try (SocketConnectionPool connectionPool = new SocketConnectionPool(protocol, 1, 2)) {
+			connectionPool.setHeartbeat(0, 100, TimeUnit.MILLISECONDS);
+
+			SocketConnection connection = connectionPool.acquire(HOSTNAME, PORT);
+
+			// shorter than the idle timeout of the server
+			Thread.sleep(300);
+
+			assertTrue(connection.isOpen());
+			assertEquals(1, connectionPool.getConnectionCount(HOSTNAME, PORT));
+			assertSame(connection, connectionPool.acquire(HOSTNAME, PORT));
+		}
+	}
+
+	@Test
+	public void testServerWaitsForPartialFrame() throws Exception {
+		FrameCodec frameCodec = new FrameCodec(protocol);
+		try (Socket socket = new Socket(HOSTNAME, PORT)) {
+			socket.setSoTimeout(5000);
+			OutputStream out = socket.getOutputStream();
+			InputStream in = socket.getInputStream();
+
+			// a request in flight keeps the connection open
+			out.write(toBytes(frameCodec.encode(createRequest("sleep", long.class, 1500L, "1"), false)));
+
+			// the rest of the frame arrives after more than the idle timeout
+			byte[] frame = toBytes(frameCodec.encode(createRequest("methodIntToString", int.class, 1, "2"), false));
+			out.write(frame, 0, frame.length / 2);
+			out.flush();
+			Thread.sleep(800);
+			out.write(frame, frame.length / 2, frame.length - frame.length / 2);
+			out.flush();
+
+			Response response = (Response) frameCodec.readFrame(in);
+			assertEquals("2", response.requestId);
+			assertEquals("int:1", response.result.getField("result"));
+			response = (Response) frameCodec.readFrame(in);
+			assertEquals("1", response.requestId);
+		}
+	}
+
+	@Test
+	public void testServerClosesConnectionOnLateHandshake() throws IOException {
+		assertServerClosesConnectionOnLateHandshake(PORT);
+		assertServerClosesConnectionOnLateHandshake(NIO_PORT);
+	}
+
+	private static Request createRequest(String methodName, Class<?> parameterType, Object argument, String requestId) throws NoSuchMethodException {
+		Request request = new Request();
+		request.serviceName = metaDataService.registerService(TestService.class).name;
+		request.methodName = methodName;
+		request.execute = true;
+		request.arguments = metaDataService.createDynamicStruct(TestService.class.getMethod(methodName, parameterType), new Object[] { argument });
+		request.requestId = requestId;
+		return request;
+	}
+
+	private static byte[] toBytes(ByteBuffer frame) {
+		byte[] bytes = new byte[frame.remaining()];
+		frame.get(bytes);
+		return bytes;
+	}
+
+	private static void assertServerClosesConnectionOnLateHandshake(int port) throws IOException {
+		FrameCodec frameCodec = new FrameCodec(protocol, 0);
+		try (Socket socket = new Socket(HOSTNAME, port)) {
+			socket.setSoTimeout(5000);
+			OutputStream out = socket.getOutputStream();
+			InputStream in = socket.getInputStream();
+
+			frameCodec.writeFrame(out, new Heartbeat());
+			assertTrue(frameCodec.readFrame(in) instanceof Heartbeat);
+
+			frameCodec.writeFrame(out, frameCodec.createHandshake());
+			assertEquals(-1, in.read());
+		}
+	}
+
+	private static void assertServerClosesIdleConnection(int port) throws IOException {
+		try (Socket socket = new Socket(HOSTNAME, port)) {
+			socket.setSoTimeout(5000);
+			long startMillis = System.currentTimeMillis();
+			assertEquals(-1, socket.getInputStream().read());
+			assertTrue(System.currentTimeMillis() - startMillis >= 200);
+		}
+	}
+}
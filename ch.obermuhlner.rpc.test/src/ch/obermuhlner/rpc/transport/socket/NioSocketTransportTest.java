@@ -0,0 +1,73 @@
+package ch.obermuhlner.rpc.transport.socket;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ch.obermuhlner.rpc.exception.RpcException;
+import ch.obermuhlner.rpc.meta.MetaDataService;
+import ch.obermuhlner.rpc.protocol.structure.StructureProtocol;
+import ch.obermuhlner.rpc.protocol.structure.binary.BinaryProtocol;
+import ch.obermuhlner.rpc.service.ServiceFactory;
+import ch.obermuhlner.rpc.transport.AbstractTransportTest;
+import ch.obermuhlner.rpc.transport.socket.SocketTransportTest.UnencodableService;
+
+public class NioSocketTransportTest extends AbstractTransportTest {
+
+	private static ExecutorService executorService = Executors.newCachedThreadPool();
+
+	private static SocketClientTransport socketClientTransport;
+
+	private static UnencodableService unencodableService;
+
+	@BeforeClass
+	public static void beforeClass() {
+		MetaDataService metaDataService = new MetaDataService();
+		
+		int port = 15926;
+		String hostname = "localhost";
+		
+		StructureProtocol<Object> protocol = new BinaryProtocol<Object>(metaDataService, NioSocketTransportTest.class.getClassLoader());
+		NioSocketServerTransport socketServerTransport = new NioSocketServerTransport(metaDataService, protocol, port);
+		executorService.execute(() -> socketServerTransport.run());
+		waitUntilListening(hostname, port);
+		
+		socketClientTransport = new SocketClientTransport(protocol, hostname, port, true);
+		
+		ServiceFactory serviceFactory = new ServiceFactory(metaDataService);
+
+		TestServiceImpl testServiceImpl = new TestServiceImpl();
+
+		serviceFactory.publishService(TestService.class, testServiceImpl, socketServerTransport);
+		testService = serviceFactory.createRemoteService(TestService.class, TestServiceAsync.class, socketClientTransport);
+		testServiceAsync = (TestServiceAsync) testService;
+
+		serviceFactory.publishService(UnencodableService.class, () -> new Object(), socketServerTransport);
+		unencodableService = serviceFactory.createRemoteService(UnencodableService.class, socketClientTransport);
+	}
+
+	@AfterClass
+	public static void afterClass() {
+		testService = null;
+		testServiceAsync = null;
+		unencodableService = null;
+		socketClientTransport.close();
+		executorService.shutdown();
+	}
+
+	@Test
+	public void testUnencodableResult() {
+		try {
+			unencodableService.unencodable();
+			fail("Expected an exception");
+		} catch (RpcException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith("Failed to encode response"));
+		}
+	}
+}
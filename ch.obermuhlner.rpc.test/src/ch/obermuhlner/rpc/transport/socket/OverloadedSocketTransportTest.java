@@ -0,0 +1,118 @@
+package ch.obermuhlner.rpc.transport.socket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ch.obermuhlner.rpc.exception.RpcOverloadedException;
+import ch.obermuhlner.rpc.meta.MetaDataService;
+import ch.obermuhlner.rpc.protocol.structure.StructureProtocol;
+import ch.obermuhlner.rpc.protocol.structure.binary.BinaryProtocol;
+import ch.obermuhlner.rpc.service.ServiceFactory;
+import ch.obermuhlner.rpc.transport.AbstractTransportTest;
+import ch.obermuhlner.rpc.transport.AdaptiveConcurrencyLimiter;
+import ch.obermuhlner.rpc.transport.AdmissionController;
+
+public class OverloadedSocketTransportTest extends AbstractTransportTest {
+
+	private static ExecutorService executorService = Executors.newCachedThreadPool();
+
+	private static SocketClientTransport socketClientTransport;
+
+	private static final int MAX_IN_FLIGHT = 4;
+
+	private static AdmissionController admissionController;
+
+	@BeforeClass
+	public static void beforeClass() {
+		MetaDataService metaDataService = new MetaDataService();
+
+		int port = 15930;
+		String hostname = "localhost";
+
+		StructureProtocol<Object> protocol = new BinaryProtocol<Object>(metaDataService, OverloadedSocketTransportTest.class.getClassLoader());
+		SocketServerTransport socketServerTransport = new SocketServerTransport(metaDataService, protocol, port);
+		admissionController = new AdmissionController(MAX_IN_FLIGHT, 0);
+		socketServerTransport.setAdmissionController(admissionController);
+		socketServerTransport.setConcurrencyLimiter(new AdaptiveConcurrencyLimiter(20, 10, 100));
+		executorService.execute(() -> socketServerTransport.run());
+		waitUntilListening(hostname, port);
+
+		socketClientTransport = new SocketClientTransport(protocol, hostname, port, true);
+
+		ServiceFactory serviceFactory = new ServiceFactory(metaDataService);
+
+		serviceFactory.publishService(TestService.class, new TestServiceImpl(), socketServerTransport);
+		testService = serviceFactory.createRemoteService(TestService.class, TestServiceAsync.class, socketClientTransport);
+		testServiceAsync = (TestServiceAsync) testService;
+	}
+
+	@AfterClass
+	public static void afterClass() {
+		testService = null;
+		testServiceAsync = null;
+		socketClientTransport.close();
+		executorService.shutdown();
+	}
+
+	@Override
+	@Test
+	public void testOneWay() throws InterruptedException {
+		int startCount = testService.oneWayCounter();
+
+		long startMillis = System.currentTimeMillis();
+		for (int i = 0; i < 3; i++) {
+			testService.methodOneWay(200);
+		}
+		long deltaMillis = System.currentTimeMillis() - startMillis;
+		assertEquals("One-way calls must not wait for the method: " + deltaMillis + " ms", true, deltaMillis < 200);
+
+		// a poll of the counter could take the slot of a one-way call that has not arrived yet, so wait for them without calling the server
+		long endMillis = System.currentTimeMillis() + 10000;
+		while (admissionController.getInFlightCount() < 3 && System.currentTimeMillis() < endMillis) {
+			Thread.sleep(1);
+		}
+		while (admissionController.getInFlightCount() > 0 && System.currentTimeMillis() < endMillis) {
+			Thread.sleep(10);
+		}
+		assertEquals(startCount + 3, testService.oneWayCounter());
+	}
+
+	@Test
+	public void testOverloaded() throws InterruptedException, ExecutionException {
+		long rejectedCount = admissionController.getRejectedCount();
+
+		List<CompletableFuture<Long>> futures = new ArrayList<>();
+		for (int i = 0; i < MAX_IN_FLIGHT; i++) {
+			futures.add(testServiceAsync.sleepAsync(1000));
+		}
+		Thread.sleep(200);
+		assertEquals(MAX_IN_FLIGHT, admissionController.getInFlightCount());
+
+		try {
+			testService.methodIntToString(1);
+			fail("Expected an exception");
+		} catch (RpcOverloadedException e) {
+			// expected
+		}
+		assertEquals(rejectedCount + 1, admissionController.getRejectedCount());
+
+		for (CompletableFuture<Long> future : futures) {
+			future.get();
+		}
+		for (int i = 0; i < 100 && admissionController.getInFlightCount() > 0; i++) {
+			Thread.sleep(10);
+		}
+		assertEquals("int:2", testService.methodIntToString(2));
+	}
+}
@@ -0,0 +1,91 @@
+package ch.obermuhlner.rpc.transport.socket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ch.obermuhlner.rpc.data.DynamicStruct;
+import ch.obermuhlner.rpc.exception.RpcException;
+import ch.obermuhlner.rpc.meta.MetaDataService;
+import ch.obermuhlner.rpc.protocol.structure.StructureProtocol;
+import ch.obermuhlner.rpc.protocol.structure.binary.BinaryProtocol;
+import ch.obermuhlner.rpc.service.Request;
+import ch.obermuhlner.rpc.service.ServiceFactory;
+import ch.obermuhlner.rpc.transport.AbstractTransportTest;
+import ch.obermuhlner.rpc.transport.frame.FrameCodec;
+
+public class PersistentSocketTransportTest extends AbstractTransportTest {
+
+	private static final String HOSTNAME = "localhost";
+	private static final int PORT = 15925;
+
+	private static ExecutorService executorService = Executors.newCachedThreadPool();
+
+	private static StructureProtocol<Object> protocol;
+
+	private static SocketClientTransport socketClientTransport;
+
+	@BeforeClass
+	public static void beforeClass() {
+		MetaDataService metaDataService = new MetaDataService();
+		
+		int port = PORT;
+		String hostname = HOSTNAME;
+		
+		protocol = new BinaryProtocol<Object>(metaDataService, PersistentSocketTransportTest.class.getClassLoader());
+		SocketServerTransport socketServerTransport = new SocketServerTransport(metaDataService, protocol, port);
+		executorService.execute(() -> socketServerTransport.run());
+		waitUntilListening(hostname, port);
+		
+		socketClientTransport = new SocketClientTransport(protocol, hostname, port, true);
+		
+		ServiceFactory serviceFactory = new ServiceFactory(metaDataService);
+
+		TestServiceImpl testServiceImpl = new TestServiceImpl();
+
+		serviceFactory.publishService(TestService.class, testServiceImpl, socketServerTransport);
+		testService = serviceFactory.createRemoteService(TestService.class, TestServiceAsync.class, socketClientTransport);
+		testServiceAsync = (TestServiceAsync) testService;
+	}
+
+	@AfterClass
+	public static void afterClass() {
+		testService = null;
+		testServiceAsync = null;
+		socketClientTransport.close();
+		executorService.shutdown();
+	}
+
+	@Test
+	public void testUnencodableRequest() throws IOException {
+		SocketConnection connection = new SocketConnection(new FrameCodec(protocol), HOSTNAME, PORT);
+		try {
+			Request request = new Request();
+			request.requestId = "unencodable";
+			request.execute = true;
+			request.arguments = new DynamicStruct();
+			request.arguments.name = "Unencodable";
+			request.arguments.setField("value", new Object());
+
+			try {
+				connection.send(request);
+				fail("Expected an exception");
+			} catch (RpcException e) {
+				// expected
+			}
+
+			assertEquals(0, connection.getPendingCount());
+			assertTrue(connection.isOpen());
+		} finally {
+			connection.close();
+		}
+	}
+}
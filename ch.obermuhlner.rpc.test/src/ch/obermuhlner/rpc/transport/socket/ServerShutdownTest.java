@@ -0,0 +1,151 @@
+package ch.obermuhlner.rpc.transport.socket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ch.obermuhlner.rpc.meta.MetaDataService;
+import ch.obermuhlner.rpc.protocol.structure.StructureProtocol;
+import ch.obermuhlner.rpc.protocol.structure.binary.BinaryProtocol;
+import ch.obermuhlner.rpc.service.ServiceFactory;
+import ch.obermuhlner.rpc.transport.AbstractTransportTest;
+import ch.obermuhlner.rpc.transport.AbstractTransportTest.TestService;
+import ch.obermuhlner.rpc.transport.AbstractTransportTest.TestServiceAsync;
+import ch.obermuhlner.rpc.transport.AbstractTransportTest.TestServiceImpl;
+import ch.obermuhlner.rpc.transport.ServerTransportImpl;
+
+public class ServerShutdownTest {
+
+	private static final String HOSTNAME = "localhost";
+
+	private static ExecutorService executorService = Executors.newCachedThreadPool();
+
+	private static MetaDataService metaDataService;
+
+	private static StructureProtocol<Object> protocol;
+
+	@BeforeClass
+	public static void beforeClass() {
+		metaDataService = new MetaDataService();
+		protocol = new BinaryProtocol<Object>(metaDataService, ServerShutdownTest.class.getClassLoader());
+	}
+
+	@AfterClass
+	public static void afterClass() {
+		executorService.shutdown();
+	}
+
+	@Test
+	public void testStopDrainsRequestsInFlight() throws Exception {
+		SocketServerTransport serverTransport = new SocketServerTransport(metaDataService, protocol, 15936);
+		start(serverTransport, () -> serverTransport.run(), 15936);
+		assertStopDrainsRequestsInFlight(serverTransport, serverTransport::stop, 15936);
+	}
+
+	@Test
+	public void testNioStopDrainsRequestsInFlight() throws Exception {
+		NioSocketServerTransport serverTransport = new NioSocketServerTransport(metaDataService, protocol, 15937);
+		start(serverTransport, () -> serverTransport.run(), 15937);
+		assertStopDrainsRequestsInFlight(serverTransport, serverTransport::stop, 15937);
+	}
+
+	@Test
+	public void testStopTimeout() throws Exception {
+		SocketServerTransport serverTransport = new SocketServerTransport(metaDataService, protocol, 15938);
+		start(serverTransport, () -> serverTransport.run(), 15938);
+		assertStopTimeout(serverTransport, serverTransport::stop, 15938);
+	}
+
+	@Test
+	public void testNioStopTimeout() throws Exception {
+		NioSocketServerTransport serverTransport = new NioSocketServerTransport(metaDataService, protocol, 15939);
+		start(serverTransport, () -> serverTransport.run(), 15939);
+		assertStopTimeout(serverTransport, serverTransport::stop, 15939);
+	}
+
+	private static void assertStopDrainsRequestsInFlight(ServerTransportImpl serverTransport, Stop stop, int port) throws Exception {
+		SocketClientTransport clientTransport = new SocketClientTransport(protocol, HOSTNAME, port, true);
+		try {
+			TestService testService = new ServiceFactory(metaDataService).createRemoteService(TestService.class, TestServiceAsync.class, clientTransport);
+			TestServiceAsync testServiceAsync = (TestServiceAsync) testService;
+			assertEquals("int:1", testService.methodIntToString(1));
+
+			CompletableFuture<Long> sleepFuture = testServiceAsync.sleepAsync(500);
+			waitUntil(() -> serverTransport.getInFlightCount() == 1);
+
+			Future<Boolean> stopFuture = executorService.submit(() -> stop.stop(5, TimeUnit.SECONDS));
+
+			// the client received the GoAway and drains the connection
+			waitUntil(() -> !clientTransport.isAlive());
+			assertFalse(sleepFuture.isDone());
+
+			assertTrue(stopFuture.get());
+			assertTrue(sleepFuture.get() >= 500);
+			assertEquals(0, serverTransport.getInFlightCount());
+
+			// new requests are not accepted anymore
+			try {
+				testService.methodIntToString(2);
+				fail("expected exception");
+			} catch (RuntimeException e) {
+				// expected
+			}
+		} finally {
+			clientTransport.close();
+		}
+	}
+
+	private static void assertStopTimeout(ServerTransportImpl serverTransport, Stop stop, int port) throws Exception {
+		SocketClientTransport clientTransport = new SocketClientTransport(protocol, HOSTNAME, port, true);
+		try {
+			TestServiceAsync testServiceAsync = (TestServiceAsync) new ServiceFactory(metaDataService).createRemoteService(TestService.class, TestServiceAsync.class, clientTransport);
+
+			CompletableFuture<Long> sleepFuture = testServiceAsync.sleepAsync(5000);
+			waitUntil(() -> serverTransport.getInFlightCount() == 1);
+
+			assertFalse(stop.stop(200, TimeUnit.MILLISECONDS));
+
+			try {
+				long slept = sleepFuture.get(5, TimeUnit.SECONDS);
+				fail("expected ExecutionException, but the interrupted request was answered: " + slept);
+			} catch (ExecutionException e) {
+				// expected - the connection was closed after the timeout
+			}
+		} finally {
+			clientTransport.close();
+		}
+	}
+
+	private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+		long endMillis = System.currentTimeMillis() + 5000;
+		while (!condition.getAsBoolean()) {
+			if (System.currentTimeMillis() > endMillis) {
+				fail("condition not reached within 5 seconds");
+			}
+			Thread.sleep(10);
+		}
+	}
+
+	private static void start(ServerTransportImpl serverTransport, Runnable run, int port) {
+		new ServiceFactory(metaDataService).publishService(TestService.class, new TestServiceImpl(), serverTransport);
+		executorService.execute(run);
+		AbstractTransportTest.waitUntilListening(HOSTNAME, port);
+	}
+
+	private interface Stop {
+		boolean stop(long timeout, TimeUnit unit);
+	}
+}
@@ -1,11 +1,17 @@
 package ch.obermuhlner.rpc.transport.socket;
 
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
+import org.junit.Test;
 
+import ch.obermuhlner.rpc.annotation.RpcService;
+import ch.obermuhlner.rpc.exception.RpcException;
 import ch.obermuhlner.rpc.meta.MetaDataService;
 import ch.obermuhlner.rpc.protocol.structure.StructureProtocol;
 import ch.obermuhlner.rpc.protocol.structure.binary.BinaryProtocol;
@@ -16,6 +22,8 @@ public class SocketTransportTest extends AbstractTransportTest {
 
 	private static ExecutorService executorService = Executors.newCachedThreadPool();
 
+	private static UnencodableService unencodableService;
+
 	@BeforeClass
 	public static void beforeClass() {
 		MetaDataService metaDataService = new MetaDataService();
@@ -36,12 +44,31 @@ public class SocketTransportTest extends AbstractTransportTest {
 		serviceFactory.publishService(TestService.class, testServiceImpl, socketServerTransport);
 		testService = serviceFactory.createRemoteService(TestService.class, TestServiceAsync.class, socketClientTransport);
 		testServiceAsync = (TestServiceAsync) testService;
+
+		serviceFactory.publishService(UnencodableService.class, () -> new Object(), socketServerTransport);
+		unencodableService = serviceFactory.createRemoteService(UnencodableService.class, socketClientTransport);
 	}
 
 	@AfterClass
 	public static void afterClass() {
 		testService = null;
 		testServiceAsync = null;
+		unencodableService = null;
 		executorService.shutdown();
 	}
+
+	@Test
+	public void testUnencodableResult() {
+		try {
+			unencodableService.unencodable();
+			fail("Expected an exception");
+		} catch (RpcException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith("Failed to encode response"));
+		}
+	}
+
+	@RpcService
+	public static interface UnencodableService {
+		Object unencodable();
+	}
 }
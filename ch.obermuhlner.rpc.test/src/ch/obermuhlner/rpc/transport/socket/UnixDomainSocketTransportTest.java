@@ -0,0 +1,121 @@
+package ch.obermuhlner.rpc.transport.socket;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.BindException;
+import java.nio.channels.ServerSocketChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ch.obermuhlner.rpc.meta.MetaDataService;
+import ch.obermuhlner.rpc.protocol.structure.StructureProtocol;
+import ch.obermuhlner.rpc.protocol.structure.binary.BinaryProtocol;
+import ch.obermuhlner.rpc.service.ServiceFactory;
+import ch.obermuhlner.rpc.transport.AbstractTransportTest;
+
+public class UnixDomainSocketTransportTest extends AbstractTransportTest {
+
+	private static ExecutorService executorService = Executors.newCachedThreadPool();
+
+	private static File file;
+
+	private static UnixDomainSocketClientTransport unixDomainSocketClientTransport;
+
+	@BeforeClass
+	public static void beforeClass() throws IOException {
+		Assume.assumeTrue(UnixDomainSockets.isAvailable());
+
+		MetaDataService metaDataService = new MetaDataService();
+
+		file = File.createTempFile("ez-rpc", ".sock");
+		// only a socket file is replaced by the server
+		file.delete();
+		String path = file.getAbsolutePath();
+
+		StructureProtocol<Object> protocol = new BinaryProtocol<Object>(metaDataService, UnixDomainSocketTransportTest.class.getClassLoader());
+		UnixDomainSocketServerTransport unixDomainSocketServerTransport = new UnixDomainSocketServerTransport(metaDataService, protocol, path);
+		executorService.execute(() -> unixDomainSocketServerTransport.run());
+		waitUntilBound(path);
+
+		unixDomainSocketClientTransport = new UnixDomainSocketClientTransport(protocol, path);
+
+		ServiceFactory serviceFactory = new ServiceFactory(metaDataService);
+
+		TestServiceImpl testServiceImpl = new TestServiceImpl();
+
+		serviceFactory.publishService(TestService.class, testServiceImpl, unixDomainSocketServerTransport);
+		testService = serviceFactory.createRemoteService(TestService.class, TestServiceAsync.class, unixDomainSocketClientTransport);
+		testServiceAsync = (TestServiceAsync) testService;
+	}
+
+	@AfterClass
+	public static void afterClass() {
+		testService = null;
+		testServiceAsync = null;
+		if (unixDomainSocketClientTransport != null) {
+			unixDomainSocketClientTransport.close();
+		}
+		executorService.shutdown();
+		if (file != null) {
+			file.delete();
+		}
+	}
+
+	@Test(expected = BindException.class)
+	public void testBindWhileListening() throws IOException {
+		UnixDomainSockets.openServerSocketChannel(file.getAbsolutePath()).close();
+	}
+
+	@Test
+	public void testBindNotSocketFile() throws IOException {
+		File regularFile = File.createTempFile("ez-rpc", ".sock");
+		try {
+			UnixDomainSockets.openServerSocketChannel(regularFile.getAbsolutePath()).close();
+			fail("expected BindException");
+		} catch (BindException e) {
+			assertTrue(regularFile.exists());
+		} finally {
+			regularFile.delete();
+		}
+	}
+
+	@Test
+	public void testBindStaleSocketFile() throws IOException {
+		File staleFile = File.createTempFile("ez-rpc", ".sock");
+		staleFile.delete();
+		try {
+			// closing the channel leaves the socket file behind
+			UnixDomainSockets.openServerSocketChannel(staleFile.getAbsolutePath()).close();
+			assertTrue(staleFile.exists());
+
+			try (ServerSocketChannel serverSocketChannel = UnixDomainSockets.openServerSocketChannel(staleFile.getAbsolutePath())) {
+				assertTrue(serverSocketChannel.isOpen());
+			}
+		} finally {
+			staleFile.delete();
+		}
+	}
+
+	private static void waitUntilBound(String path) {
+		for (int i = 0; i < 100; i++) {
+			try {
+				UnixDomainSockets.openSocketChannel(path).close();
+				return;
+			} catch (IOException e) {
+				try {
+					Thread.sleep(50);
+				} catch (InterruptedException e1) {
+					return;
+				}
+			}
+		}
+	}
+}
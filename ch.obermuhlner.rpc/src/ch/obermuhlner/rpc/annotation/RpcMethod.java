@@ -12,4 +12,18 @@ public @interface RpcMethod {
 
 	String name() default "";
 	
+	/**
+	 * The default timeout in milliseconds of remote calls to this method, <code>0</code> for no timeout.
+	 * 
+	 * @return the timeout in milliseconds
+	 */
+	long timeout() default 0;
+	
+	/**
+	 * Whether the method can safely be executed more than once for the same call, which allows the client to send hedged requests and to retry failed calls.
+	 * 
+	 * @return <code>true</code> if the method is idempotent
+	 */
+	boolean idempotent() default false;
+	
 }
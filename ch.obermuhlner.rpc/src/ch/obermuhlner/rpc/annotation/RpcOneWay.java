@@ -0,0 +1,19 @@
+package ch.obermuhlner.rpc.annotation;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a <code>void</code> service method whose remote calls do not wait for a response.
+ * 
+ * The client returns as soon as the request is sent and the server does not send a response,
+ * so failures of the method (and of the transport after sending) are not reported to the caller.
+ */
+@Target({METHOD})
+@Retention(RUNTIME)
+public @interface RpcOneWay {
+
+}
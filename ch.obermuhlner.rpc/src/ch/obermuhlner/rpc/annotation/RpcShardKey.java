@@ -0,0 +1,20 @@
+package ch.obermuhlner.rpc.annotation;
+
+import static java.lang.annotation.ElementType.PARAMETER;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+/**
+ * Marks the parameter of a service method that determines which server owns the data of a call.
+ * 
+ * Calls with equal shard keys are routed to the same server by a {@link ch.obermuhlner.rpc.transport.balancer.ConsistentHashLoadBalancer}.
+ * At most one parameter of a method can be the shard key.
+ * The shard key must be a String, a number or an enum, so that its value (and not its identity) determines the server.
+ */
+@Target({PARAMETER})
+@Retention(RUNTIME)
+public @interface RpcShardKey {
+
+}
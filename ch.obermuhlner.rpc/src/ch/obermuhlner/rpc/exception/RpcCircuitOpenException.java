@@ -0,0 +1,15 @@
+package ch.obermuhlner.rpc.exception;
+
+/**
+ * Thrown by the client when a request was not sent because the circuit breaker of the endpoint is open.
+ * 
+ * The request was not executed, so it is safe to retry it later or on another server.
+ */
+public class RpcCircuitOpenException extends RpcException {
+
+	private static final long serialVersionUID = 1L;
+
+	public RpcCircuitOpenException(String message) {
+		super(message);
+	}
+}
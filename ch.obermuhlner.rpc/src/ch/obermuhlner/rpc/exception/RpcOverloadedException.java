@@ -0,0 +1,15 @@
+package ch.obermuhlner.rpc.exception;
+
+/**
+ * Thrown when the server rejected a request because it is overloaded.
+ * 
+ * The request was not executed, so it is safe to retry it later or on another server.
+ */
+public class RpcOverloadedException extends RpcException {
+
+	private static final long serialVersionUID = 1L;
+
+	public RpcOverloadedException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,13 @@
+package ch.obermuhlner.rpc.exception;
+
+/**
+ * Thrown when the deadline of a call has passed before its response arrived.
+ */
+public class RpcTimeoutException extends RpcException {
+
+	private static final long serialVersionUID = 1L;
+
+	public RpcTimeoutException(String message) {
+		super(message);
+	}
+}
@@ -89,6 +89,8 @@ public class MetaData {
 	private void checkMatch(MethodDefinition existingMethodDefinition, MethodDefinition updateMethodDefinition) {
 		checkEqual("method.name", existingMethodDefinition.name, updateMethodDefinition.name);
 		checkEqual("method.return", existingMethodDefinition.returns, updateMethodDefinition.returns);
+		checkEqual("method.idempotent", existingMethodDefinition.isIdempotent(), updateMethodDefinition.isIdempotent());
+		checkEqual("method.oneWay", existingMethodDefinition.isOneWay(), updateMethodDefinition.isOneWay());
 
 		if (existingMethodDefinition.parameterDefinitions.size() != updateMethodDefinition.parameterDefinitions.size()) {
 			throw new RpcMetaDataException("Wrong number of parameters in service method " + updateMethodDefinition.name);
@@ -105,6 +107,7 @@ public class MetaData {
 	private void checkMatch(ParameterDefinition existingParameterDefinition, ParameterDefinition updateParameterDefinition) {
 		checkEqual("parameter.name", existingParameterDefinition.name, updateParameterDefinition.name);
 		checkEqual("parameter.type", existingParameterDefinition.type, updateParameterDefinition.type);
+		checkEqual("parameter.shardKey", existingParameterDefinition.isShardKey(), updateParameterDefinition.isShardKey());
 	}
 	
 	private void checkEqual(String name, Object existing, Object update) {
@@ -5,9 +5,12 @@ import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.lang.reflect.Parameter;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.BaseStream;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
@@ -18,18 +21,24 @@ import ch.obermuhlner.rpc.annotation.RpcEnum;
 import ch.obermuhlner.rpc.annotation.RpcEnumValue;
 import ch.obermuhlner.rpc.annotation.RpcField;
 import ch.obermuhlner.rpc.annotation.RpcMethod;
+import ch.obermuhlner.rpc.annotation.RpcOneWay;
 import ch.obermuhlner.rpc.annotation.RpcParameter;
 import ch.obermuhlner.rpc.annotation.RpcService;
+import ch.obermuhlner.rpc.annotation.RpcShardKey;
 import ch.obermuhlner.rpc.annotation.RpcStruct;
 import ch.obermuhlner.rpc.data.DynamicStruct;
 import ch.obermuhlner.rpc.exception.RpcException;
 import ch.obermuhlner.rpc.meta.adapter.Adapter;
 import ch.obermuhlner.rpc.meta.adapter.bigdecimal.BigDecimalAdapter;
 import ch.obermuhlner.rpc.meta.adapter.exception.IllegalArgumentExceptionAdapter;
+import ch.obermuhlner.rpc.meta.adapter.exception.RpcExceptionAdapter;
+import ch.obermuhlner.rpc.meta.adapter.exception.RpcOverloadedExceptionAdapter;
+import ch.obermuhlner.rpc.meta.adapter.exception.RpcTimeoutExceptionAdapter;
 import ch.obermuhlner.rpc.meta.adapter.time.DateAdapter;
 import ch.obermuhlner.rpc.meta.adapter.time.LocalDateAdapter;
 import ch.obermuhlner.rpc.meta.adapter.time.LocalDateTimeAdapter;
 import ch.obermuhlner.rpc.meta.adapter.time.PeriodAdapter;
+import ch.obermuhlner.rpc.service.RpcChannel;
 
 public class MetaDataService implements AutoCloseable {
 
@@ -38,6 +47,8 @@ public class MetaDataService implements AutoCloseable {
 	private final MetaData metaData = new MetaData();
 	
 	private final List<Adapter<?, ?>> adapters = new ArrayList<Adapter<?, ?>>();
+	
+	private final Map<String, String> shardKeyArgumentNames = new ConcurrentHashMap<>();
 
 	public MetaDataService() {
 		this(true);
@@ -65,6 +76,9 @@ public class MetaDataService implements AutoCloseable {
 			addAdapter(new LocalDateAdapter());
 			addAdapter(new PeriodAdapter());
 			addAdapter(new IllegalArgumentExceptionAdapter());
+			addAdapter(new RpcOverloadedExceptionAdapter());
+			addAdapter(new RpcTimeoutExceptionAdapter());
+			addAdapter(new RpcExceptionAdapter());
 		}
 	}
 	
@@ -232,7 +246,91 @@ public class MetaDataService implements AutoCloseable {
 		for (Method method : type.getMethods()) {
 			MethodDefinition methodDefinition = toMethodDefinition(method);
 			serviceDefinition.methodDefinitions.add(methodDefinition);
+			
+			registerShardKey(serviceDefinition.name, method);
+		}
+	}
+	
+	private void registerShardKey(String serviceName, Method method) {
+		String shardKeyArgumentName = null;
+		for (Parameter parameter : method.getParameters()) {
+			if (parameter.getAnnotation(RpcShardKey.class) != null) {
+				if (shardKeyArgumentName != null) {
+					throw new RpcException("Method '" + method + "' must not have more than one @RpcShardKey parameter");
+				}
+				if (!isValueType(parameter.getType())) {
+					// the shard key is hashed by its string value, which must be equal in all clients
+					throw new RpcException("Method '" + method + "' has @RpcShardKey parameter of type " + parameter.getType().getName() + ", only String, number and enum types are supported");
+				}
+				// the argument name used in the DynamicStruct created by createDynamicStruct()
+				shardKeyArgumentName = parameter.getName();
+			}
+		}
+		
+		if (shardKeyArgumentName != null) {
+			shardKeyArgumentNames.put(serviceName + "#" + method.getName(), shardKeyArgumentName);
+		}
+	}
+	
+	private static boolean isValueType(Class<?> type) {
+		if (type.isPrimitive()) {
+			return type != boolean.class && type != char.class && type != void.class;
 		}
+		return type == String.class || Number.class.isAssignableFrom(type) || type.isEnum();
+	}
+	
+	/**
+	 * Returns whether a service method is idempotent, see {@link RpcMethod#idempotent()}.
+	 * 
+	 * @param serviceName the name of the service
+	 * @param methodName the Java name of the method
+	 * @return <code>true</code> if the method is known and idempotent
+	 */
+	public boolean isIdempotent(String serviceName, String methodName) {
+		MethodDefinition methodDefinition = findMethodDefinition(serviceName, methodName);
+		return methodDefinition != null && methodDefinition.isIdempotent();
+	}
+	
+	/**
+	 * Returns whether the calls of a service method do not wait for a response, see {@link RpcOneWay}.
+	 * 
+	 * @param serviceName the name of the service
+	 * @param methodName the Java name of the method
+	 * @return <code>true</code> if the method is known and one-way
+	 */
+	public boolean isOneWay(String serviceName, String methodName) {
+		MethodDefinition methodDefinition = findMethodDefinition(serviceName, methodName);
+		return methodDefinition != null && methodDefinition.isOneWay();
+	}
+	
+	private MethodDefinition findMethodDefinition(String serviceName, String methodName) {
+		ServiceDefinition serviceDefinition = metaData.getServiceDefinitions().findByName(serviceName);
+		if (serviceDefinition == null) {
+			return null;
+		}
+		
+		for (MethodDefinition methodDefinition : serviceDefinition.methodDefinitions) {
+			if (methodDefinition.getJavaName().equals(methodName)) {
+				return methodDefinition;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Returns the value of the argument annotated with {@link RpcShardKey} of a remote call.
+	 * 
+	 * @param serviceName the name of the service
+	 * @param methodName the name of the method
+	 * @param arguments the arguments of the call, as created by {@link #createDynamicStruct(Method, Object[])}
+	 * @return the value of the shard key argument, or <code>null</code> if the method has no shard key
+	 */
+	public Object getShardKey(String serviceName, String methodName, DynamicStruct arguments) {
+		String shardKeyArgumentName = shardKeyArgumentNames.get(serviceName + "#" + methodName);
+		if (shardKeyArgumentName == null || arguments == null) {
+			return null;
+		}
+		return arguments.getField(shardKeyArgumentName);
 	}
 	
 	private MethodDefinition toMethodDefinition(Method method) {
@@ -244,10 +342,26 @@ public class MetaDataService implements AutoCloseable {
 			if (annotation.name() != null && !annotation.name().equals("")) {
 				methodDefinition.javaName = methodDefinition.name;
 				methodDefinition.name = annotation.name();
-			}			
+			}
+			if (annotation.idempotent() && !hasChannel(method)) {
+				// the elements of a channel cannot be sent again
+				methodDefinition.idempotent = true;
+			}
 		}
 		
-		methodDefinition.returns= toTypeString(method.getReturnType());
+		if (method.getAnnotation(RpcOneWay.class) != null) {
+			if (method.getReturnType() != void.class) {
+				throw new RpcException("Method '" + method + "' annotated with @RpcOneWay must return void");
+			}
+			methodDefinition.oneWay = true;
+		}
+		
+		if (BaseStream.class.isAssignableFrom(method.getReturnType()) || Iterator.class.isAssignableFrom(method.getReturnType())) {
+			// streamed results and channels are sent as lists of elements
+			methodDefinition.returns = Type.LIST.toTypeName();
+		} else {
+			methodDefinition.returns= toTypeString(method.getReturnType());
+		}
 		
 		for (Parameter parameter : method.getParameters()) {
 			ParameterDefinition parameterDefinition = toParameterDefinition(parameter);
@@ -257,6 +371,18 @@ public class MetaDataService implements AutoCloseable {
 		return methodDefinition;
 	}
 
+	private static boolean hasChannel(Method method) {
+		if (method.getReturnType() == RpcChannel.class) {
+			return true;
+		}
+		for (Class<?> parameterType : method.getParameterTypes()) {
+			if (parameterType == RpcChannel.class) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	private ParameterDefinition toParameterDefinition(Parameter parameter) {
 		ParameterDefinition parameterDefinition = new ParameterDefinition();
 		
@@ -269,7 +395,16 @@ public class MetaDataService implements AutoCloseable {
 			}			
 		}
 
-		parameterDefinition.type = toTypeString(parameter.getType());
+		if (parameter.getType() == RpcChannel.class) {
+			// the elements of channel parameters are sent as lists of elements
+			parameterDefinition.type = Type.LIST.toTypeName();
+		} else {
+			parameterDefinition.type = toTypeString(parameter.getType());
+		}
+		
+		if (parameter.getAnnotation(RpcShardKey.class) != null) {
+			parameterDefinition.shardKey = true;
+		}
 		
 		return parameterDefinition;
 	}
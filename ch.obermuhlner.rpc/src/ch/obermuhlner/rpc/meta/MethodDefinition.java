@@ -17,6 +17,12 @@ public class MethodDefinition {
 	@XmlAttribute
 	public String javaName;
 	
+	@XmlAttribute
+	public Boolean idempotent;
+	
+	@XmlAttribute
+	public Boolean oneWay;
+	
 	@XmlElement
 	public String returns;
 	
@@ -27,8 +33,16 @@ public class MethodDefinition {
 		return javaName == null ? name : javaName;
 	}
 
+	public boolean isIdempotent() {
+		return idempotent != null && idempotent;
+	}
+
+	public boolean isOneWay() {
+		return oneWay != null && oneWay;
+	}
+
 	@Override
 	public String toString() {
-		return "MethodDefinition [name=" + name + ", returns=" + returns + ", parameterDefinitions=" + parameterDefinitions + "]";
+		return "MethodDefinition [name=" + name + ", idempotent=" + idempotent + ", oneWay=" + oneWay + ", returns=" + returns + ", parameterDefinitions=" + parameterDefinitions + "]";
 	}
 }
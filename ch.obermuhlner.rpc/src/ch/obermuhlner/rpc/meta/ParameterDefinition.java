@@ -15,13 +15,20 @@ public class ParameterDefinition {
 	
 	@XmlAttribute
 	public String type;
+	
+	@XmlAttribute
+	public Boolean shardKey;
 
 	public String getJavaName() {
 		return javaName == null ? name : javaName;
 	}
 
+	public boolean isShardKey() {
+		return shardKey != null && shardKey;
+	}
+
 	@Override
 	public String toString() {
-		return "ParameterDefinition [name=" + name + ", javaName=" + javaName + ", type=" + type + "]";
+		return "ParameterDefinition [name=" + name + ", javaName=" + javaName + ", type=" + type + ", shardKey=" + shardKey + "]";
 	}
 }
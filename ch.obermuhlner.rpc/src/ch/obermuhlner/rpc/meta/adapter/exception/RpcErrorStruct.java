@@ -0,0 +1,9 @@
+package ch.obermuhlner.rpc.meta.adapter.exception;
+
+import ch.obermuhlner.rpc.annotation.RpcStruct;
+
+@RpcStruct(name = "RpcError")
+public class RpcErrorStruct {
+
+	public String message;
+}
@@ -0,0 +1,31 @@
+package ch.obermuhlner.rpc.meta.adapter.exception;
+
+import ch.obermuhlner.rpc.exception.RpcException;
+import ch.obermuhlner.rpc.meta.adapter.Adapter;
+
+public class RpcExceptionAdapter implements Adapter<RpcException, RpcErrorStruct> {
+
+	@Override
+	public Class<RpcException> getLocalType() {
+		return RpcException.class;
+	}
+
+	@Override
+	public Class<RpcErrorStruct> getRemoteType() {
+		return RpcErrorStruct.class;
+	}
+
+	@Override
+	public RpcErrorStruct convertLocalToRemote(RpcException local) {
+		RpcErrorStruct remote = new RpcErrorStruct();
+		remote.message = local.getMessage();
+		return remote;
+	}
+
+	@Override
+	public RpcException convertRemoteToLocal(RpcErrorStruct remote) {
+		RpcException local = new RpcException(remote.message);
+		return local;
+	}
+
+}
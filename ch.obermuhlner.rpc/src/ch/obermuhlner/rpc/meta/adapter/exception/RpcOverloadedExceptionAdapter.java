@@ -0,0 +1,31 @@
+package ch.obermuhlner.rpc.meta.adapter.exception;
+
+import ch.obermuhlner.rpc.exception.RpcOverloadedException;
+import ch.obermuhlner.rpc.meta.adapter.Adapter;
+
+public class RpcOverloadedExceptionAdapter implements Adapter<RpcOverloadedException, RpcOverloadedStruct> {
+
+	@Override
+	public Class<RpcOverloadedException> getLocalType() {
+		return RpcOverloadedException.class;
+	}
+
+	@Override
+	public Class<RpcOverloadedStruct> getRemoteType() {
+		return RpcOverloadedStruct.class;
+	}
+
+	@Override
+	public RpcOverloadedStruct convertLocalToRemote(RpcOverloadedException local) {
+		RpcOverloadedStruct remote = new RpcOverloadedStruct();
+		remote.message = local.getMessage();
+		return remote;
+	}
+
+	@Override
+	public RpcOverloadedException convertRemoteToLocal(RpcOverloadedStruct remote) {
+		RpcOverloadedException local = new RpcOverloadedException(remote.message);
+		return local;
+	}
+
+}
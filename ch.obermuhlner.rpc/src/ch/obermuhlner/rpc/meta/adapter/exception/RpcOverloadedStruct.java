@@ -0,0 +1,9 @@
+package ch.obermuhlner.rpc.meta.adapter.exception;
+
+import ch.obermuhlner.rpc.annotation.RpcStruct;
+
+@RpcStruct(name = "RpcOverloaded")
+public class RpcOverloadedStruct {
+
+	public String message;
+}
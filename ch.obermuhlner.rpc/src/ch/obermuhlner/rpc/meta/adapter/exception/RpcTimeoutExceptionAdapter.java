@@ -0,0 +1,31 @@
+package ch.obermuhlner.rpc.meta.adapter.exception;
+
+import ch.obermuhlner.rpc.exception.RpcTimeoutException;
+import ch.obermuhlner.rpc.meta.adapter.Adapter;
+
+public class RpcTimeoutExceptionAdapter implements Adapter<RpcTimeoutException, RpcTimeoutStruct> {
+
+	@Override
+	public Class<RpcTimeoutException> getLocalType() {
+		return RpcTimeoutException.class;
+	}
+
+	@Override
+	public Class<RpcTimeoutStruct> getRemoteType() {
+		return RpcTimeoutStruct.class;
+	}
+
+	@Override
+	public RpcTimeoutStruct convertLocalToRemote(RpcTimeoutException local) {
+		RpcTimeoutStruct remote = new RpcTimeoutStruct();
+		remote.message = local.getMessage();
+		return remote;
+	}
+
+	@Override
+	public RpcTimeoutException convertRemoteToLocal(RpcTimeoutStruct remote) {
+		RpcTimeoutException local = new RpcTimeoutException(remote.message);
+		return local;
+	}
+
+}
@@ -0,0 +1,9 @@
+package ch.obermuhlner.rpc.meta.adapter.exception;
+
+import ch.obermuhlner.rpc.annotation.RpcStruct;
+
+@RpcStruct(name = "RpcTimeout")
+public class RpcTimeoutStruct {
+
+	public String message;
+}
@@ -24,6 +24,11 @@ import ch.obermuhlner.rpc.meta.MetaDataService;
 import ch.obermuhlner.rpc.meta.StructDefinition;
 import ch.obermuhlner.rpc.meta.adapter.Adapter;
 import ch.obermuhlner.rpc.protocol.Protocol;
+import ch.obermuhlner.rpc.service.BatchRequest;
+import ch.obermuhlner.rpc.service.BatchResponse;
+import ch.obermuhlner.rpc.service.Handshake;
+import ch.obermuhlner.rpc.service.GoAway;
+import ch.obermuhlner.rpc.service.Heartbeat;
 import ch.obermuhlner.rpc.service.Request;
 import ch.obermuhlner.rpc.service.Response;
 
@@ -42,6 +47,11 @@ public class StructureProtocol<T> implements Protocol<T> {
 		
 		metaDataService.registerStruct(Request.class);
 		metaDataService.registerStruct(Response.class);
+		metaDataService.registerStruct(BatchRequest.class);
+		metaDataService.registerStruct(BatchResponse.class);
+		metaDataService.registerStruct(Handshake.class);
+		metaDataService.registerStruct(Heartbeat.class);
+		metaDataService.registerStruct(GoAway.class);
 	}
 	
 	@Override
@@ -0,0 +1,22 @@
+package ch.obermuhlner.rpc.service;
+
+import java.io.Serializable;
+import java.util.List;
+
+import ch.obermuhlner.rpc.annotation.RpcField;
+import ch.obermuhlner.rpc.annotation.RpcStruct;
+
+@RpcStruct(name = "RpcBatchRequest")
+public class BatchRequest implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	@RpcField(element = Request.class)
+	public List<Request> requests;
+	public boolean parallel;
+
+	@Override
+	public String toString() {
+		return "BatchRequest [requests=" + requests + ", parallel=" + parallel + "]";
+	}
+}
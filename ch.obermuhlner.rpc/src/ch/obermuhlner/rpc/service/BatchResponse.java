@@ -0,0 +1,21 @@
+package ch.obermuhlner.rpc.service;
+
+import java.io.Serializable;
+import java.util.List;
+
+import ch.obermuhlner.rpc.annotation.RpcField;
+import ch.obermuhlner.rpc.annotation.RpcStruct;
+
+@RpcStruct(name = "RpcBatchResponse")
+public class BatchResponse implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	@RpcField(element = Response.class)
+	public List<Response> responses;
+
+	@Override
+	public String toString() {
+		return "BatchResponse [responses=" + responses + "]";
+	}
+}
@@ -0,0 +1,120 @@
+package ch.obermuhlner.rpc.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * The deadline of the calls made by the current thread.
+ *
+ * Remote calls made while a deadline is set send the remaining time with the {@link Request}, and the client gives up waiting when the deadline has passed.
+ * The server executes the request with the same deadline, so that nested remote calls made by the service implementation inherit it.
+ * Calls of local services are interrupted when the deadline has passed.
+ *
+ * <pre>
+ * Deadline.run(500, TimeUnit.MILLISECONDS, () -&gt; helloService.ping());
+ * </pre>
+ */
+public class Deadline {
+
+	private static final ThreadLocal<Long> currentDeadlineNanos = new ThreadLocal<>();
+
+	private Deadline() {
+		// static methods only
+	}
+
+	/**
+	 * Sets the deadline of the current thread until the returned {@link Scope} is closed.
+	 *
+	 * A nested deadline can only shorten the current deadline, never extend it.
+	 *
+	 * @param timeout the timeout from now
+	 * @param unit the {@link TimeUnit} of the timeout
+	 * @return the {@link Scope} that restores the previous deadline when closed
+	 */
+	public static Scope withTimeout(long timeout, TimeUnit unit) {
+		Long previousDeadlineNanos = currentDeadlineNanos.get();
+		long deadlineNanos = System.nanoTime() + unit.toNanos(timeout);
+		if (previousDeadlineNanos == null || deadlineNanos - previousDeadlineNanos < 0) {
+			currentDeadlineNanos.set(deadlineNanos);
+		}
+		return new Scope(previousDeadlineNanos);
+	}
+
+	/**
+	 * Calls a {@link Supplier} with the deadline of the current thread set to the specified timeout.
+	 *
+	 * A nested deadline can only shorten the current deadline, never extend it.
+	 *
+	 * @param timeout the timeout from now
+	 * @param unit the {@link TimeUnit} of the timeout
+	 * @param supplier the {@link Supplier} to call
+	 * @return the result of the supplier
+	 */
+	public static <T> T call(long timeout, TimeUnit unit, Supplier<T> supplier) {
+		Scope scope = withTimeout(timeout, unit);
+		try {
+			return supplier.get();
+		} finally {
+			scope.close();
+		}
+	}
+
+	/**
+	 * Runs a {@link Runnable} with the deadline of the current thread set to the specified timeout.
+	 *
+	 * A nested deadline can only shorten the current deadline, never extend it.
+	 *
+	 * @param timeout the timeout from now
+	 * @param unit the {@link TimeUnit} of the timeout
+	 * @param runnable the {@link Runnable} to run
+	 */
+	public static void run(long timeout, TimeUnit unit, Runnable runnable) {
+		call(timeout, unit, () -> {
+			runnable.run();
+			return null;
+		});
+	}
+
+	/**
+	 * Returns whether a deadline is set for the current thread.
+	 *
+	 * @return <code>true</code> if a deadline is set
+	 */
+	public static boolean isSet() {
+		return currentDeadlineNanos.get() != null;
+	}
+
+	/**
+	 * Returns the remaining time until the deadline of the current thread.
+	 *
+	 * @param unit the {@link TimeUnit} of the result
+	 * @return the remaining time (zero or negative if the deadline has passed), or {@link Long#MAX_VALUE} if no deadline is set
+	 */
+	public static long getRemaining(TimeUnit unit) {
+		Long deadlineNanos = currentDeadlineNanos.get();
+		if (deadlineNanos == null) {
+			return Long.MAX_VALUE;
+		}
+		return unit.convert(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Restores the previous deadline when closed.
+	 */
+	public static class Scope implements AutoCloseable {
+		private final Long previousDeadlineNanos;
+
+		private Scope(Long previousDeadlineNanos) {
+			this.previousDeadlineNanos = previousDeadlineNanos;
+		}
+
+		@Override
+		public void close() {
+			if (previousDeadlineNanos == null) {
+				currentDeadlineNanos.remove();
+			} else {
+				currentDeadlineNanos.set(previousDeadlineNanos);
+			}
+		}
+	}
+}
@@ -0,0 +1,24 @@
+package ch.obermuhlner.rpc.service;
+
+import java.io.Serializable;
+
+import ch.obermuhlner.rpc.annotation.RpcStruct;
+
+/**
+ * Frame sent by a server that is shutting down to all connected clients.
+ * 
+ * The server still answers the requests it has already received, but the client should send new requests to another server.
+ */
+@RpcStruct(name = "RpcGoAway")
+public class GoAway implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/** the time in milliseconds the server waits for the requests in flight before it closes the connection */
+	public long drainTimeout;
+
+	@Override
+	public String toString() {
+		return "GoAway [drainTimeout=" + drainTimeout + "]";
+	}
+}
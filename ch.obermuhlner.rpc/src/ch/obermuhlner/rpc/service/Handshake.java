@@ -0,0 +1,21 @@
+package ch.obermuhlner.rpc.service;
+
+import java.io.Serializable;
+import java.util.List;
+
+import ch.obermuhlner.rpc.annotation.RpcField;
+import ch.obermuhlner.rpc.annotation.RpcStruct;
+
+@RpcStruct(name = "RpcHandshake")
+public class Handshake implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	@RpcField(element = String.class)
+	public List<String> compressionCodecs;
+
+	@Override
+	public String toString() {
+		return "Handshake [compressionCodecs=" + compressionCodecs + "]";
+	}
+}
@@ -0,0 +1,24 @@
+package ch.obermuhlner.rpc.service;
+
+import java.io.Serializable;
+
+import ch.obermuhlner.rpc.annotation.RpcStruct;
+
+/**
+ * Frame sent by a client over an idle persistent connection to check that the server is still alive.
+ * 
+ * The server answers every ping with a pong.
+ */
+@RpcStruct(name = "RpcHeartbeat")
+public class Heartbeat implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/** <code>false</code> for the ping sent by the client, <code>true</code> for the pong answered by the server */
+	public boolean pong;
+
+	@Override
+	public String toString() {
+		return "Heartbeat [pong=" + pong + "]";
+	}
+}
@@ -0,0 +1,120 @@
+package ch.obermuhlner.rpc.service;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import ch.obermuhlner.rpc.exception.RpcException;
+import ch.obermuhlner.rpc.meta.MetaDataService;
+import ch.obermuhlner.rpc.transport.ClientTransport;
+
+/**
+ * Receives the elements that a service pushes into the {@link RpcChannel} returned by a remote call.
+ *
+ * A single request for the next chunk is outstanding at any time, granting the free capacity of the local channel as credits.
+ * The server answers it as soon as elements are available, so no thread waits on either side.
+ * If the local channel is full the next request is sent when the consumer has made room.
+ */
+class RemoteChannelReceiver {
+
+	private final ClientTransport clientTransport;
+	private final MetaDataService metaDataService;
+	private final Executor executor;
+	private final Request request;
+	private final RpcChannel<Object> channel;
+
+	RemoteChannelReceiver(ClientTransport clientTransport, MetaDataService metaDataService, Executor executor, Request request, RpcChannel<Object> channel) {
+		this.clientTransport = clientTransport;
+		this.metaDataService = metaDataService;
+		this.executor = executor;
+		this.request = request;
+		this.channel = channel;
+	}
+
+	/**
+	 * Adds the first chunk that arrived with the response of the call and starts receiving the next chunks.
+	 */
+	void start(List<?> firstChunk, boolean streamOpen) {
+		add(firstChunk);
+		if (!streamOpen) {
+			channel.close();
+			return;
+		}
+
+		channel.whenCancelled(() -> sendCancel());
+		requestNextChunk();
+	}
+
+	private void requestNextChunk() {
+		if (channel.isCancelled()) {
+			return;
+		}
+
+		int credits = channel.getRemainingCapacity();
+		if (credits == 0) {
+			channel.whenSpaceAvailable(() -> requestNextChunk());
+			return;
+		}
+
+		Request nextRequest = new Request();
+		nextRequest.serviceName = request.serviceName;
+		nextRequest.methodName = request.methodName;
+		nextRequest.execute = true;
+		nextRequest.session = request.session;
+		nextRequest.requestId = request.requestId;
+		nextRequest.streamNext = true;
+		nextRequest.streamCredits = credits;
+
+		// sending may block (for example with a transport that executes the request in the calling thread)
+		executor.execute(() -> {
+			CompletableFuture<Response> future;
+			try {
+				future = clientTransport.send(nextRequest);
+			} catch (RpcException e) {
+				channel.fail(e);
+				return;
+			}
+			future.whenComplete((response, exception) -> received(response, exception));
+		});
+	}
+
+	private void received(Response response, Throwable exception) {
+		if (exception != null) {
+			channel.fail(exception instanceof RpcException ? (RpcException) exception : new RpcException(exception));
+			return;
+		}
+		if (response.exception != null) {
+			Object remoteException = metaDataService.adaptRemoteToLocal(response.exception);
+			channel.fail(remoteException instanceof RuntimeException ? (RuntimeException) remoteException : new RpcException(String.valueOf(remoteException)));
+			return;
+		}
+
+		add((List<?>) response.result.getField("result"));
+		if (response.streamOpen) {
+			requestNextChunk();
+		} else {
+			channel.close();
+		}
+	}
+
+	private void add(List<?> chunk) {
+		if (chunk == null) {
+			return;
+		}
+		for (Object element : chunk) {
+			// the chunk never contains more elements than the granted credits
+			if (!channel.offer(element)) {
+				return;
+			}
+		}
+	}
+
+	private void sendCancel() {
+		Request cancelRequest = new Request();
+		cancelRequest.serviceName = request.serviceName;
+		cancelRequest.methodName = request.methodName;
+		cancelRequest.execute = false;
+		cancelRequest.requestId = request.requestId;
+		executor.execute(() -> clientTransport.send(cancelRequest));
+	}
+}
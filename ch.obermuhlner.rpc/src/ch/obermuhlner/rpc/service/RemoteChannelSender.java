@@ -0,0 +1,98 @@
+package ch.obermuhlner.rpc.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import ch.obermuhlner.rpc.data.DynamicStruct;
+import ch.obermuhlner.rpc.exception.RpcException;
+import ch.obermuhlner.rpc.transport.ClientTransport;
+
+/**
+ * Sends the elements of a {@link RpcChannel} argument of a remote call to the channel that the service method receives.
+ *
+ * A single chunk is outstanding at any time and never contains more elements than the credits granted by the server,
+ * which answers with the remaining capacity of its channel as soon as the service has received some elements.
+ */
+class RemoteChannelSender {
+
+	private final ClientTransport clientTransport;
+	private final Executor executor;
+	private final Request request;
+	private final String parameterIndex;
+	private final RpcChannel<?> channel;
+
+	private int credits = RpcChannel.DEFAULT_CAPACITY;
+
+	RemoteChannelSender(ClientTransport clientTransport, Executor executor, Request request, String parameterIndex, RpcChannel<?> channel) {
+		this.clientTransport = clientTransport;
+		this.executor = executor;
+		this.request = request;
+		this.parameterIndex = parameterIndex;
+		this.channel = channel;
+	}
+
+	void start() {
+		channel.whenAvailable(() -> executor.execute(() -> sendChunk()));
+	}
+
+	/**
+	 * Stops sending because the call has completed.
+	 */
+	void cancel() {
+		channel.cancel();
+	}
+
+	private void sendChunk() {
+		List<Object> elements;
+		boolean closed;
+		try {
+			elements = new ArrayList<>(channel.drain(credits));
+			closed = channel.isDone();
+		} catch (RuntimeException e) {
+			// the producer failed - the service method sees the end of the channel
+			elements = new ArrayList<>();
+			closed = true;
+		}
+
+		if (elements.isEmpty() && !closed) {
+			start();
+			return;
+		}
+
+		Request uploadRequest = new Request();
+		uploadRequest.serviceName = request.serviceName;
+		uploadRequest.methodName = request.methodName;
+		uploadRequest.execute = true;
+		uploadRequest.session = request.session;
+		uploadRequest.requestId = request.requestId + "#" + parameterIndex;
+		uploadRequest.streamUpload = parameterIndex;
+		uploadRequest.arguments = new DynamicStruct();
+		uploadRequest.arguments.name = "RpcChannelChunk";
+		uploadRequest.arguments.setField("elements", elements);
+		uploadRequest.arguments.setField("closed", closed);
+
+		boolean lastChunk = closed;
+		CompletableFuture<Response> future;
+		try {
+			future = clientTransport.send(uploadRequest);
+		} catch (RpcException e) {
+			channel.cancel();
+			return;
+		}
+		future.whenComplete((response, exception) -> {
+			if (lastChunk) {
+				return;
+			}
+			if (exception != null || response.exception != null || !response.streamOpen) {
+				// the service is no longer interested
+				channel.cancel();
+				return;
+			}
+
+			credits = (Integer) response.result.getField("credits");
+			start();
+		});
+	}
+}
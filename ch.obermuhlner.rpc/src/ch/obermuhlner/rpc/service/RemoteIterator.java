@@ -0,0 +1,118 @@
+package ch.obermuhlner.rpc.service;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import ch.obermuhlner.rpc.exception.RpcException;
+import ch.obermuhlner.rpc.meta.MetaDataService;
+import ch.obermuhlner.rpc.transport.ClientTransport;
+
+/**
+ * Client side {@link Iterator} over a result that the server streams in chunks.
+ *
+ * The next chunk is requested as soon as the previous chunk arrives, so that the client holds at most two chunks in memory
+ * while the transfer of the next chunk overlaps with the consumption of the current one.
+ * Closing the iterator before the end tells the server to close the stream.
+ */
+class RemoteIterator implements Iterator<Object>, AutoCloseable {
+
+	private final ClientTransport clientTransport;
+	private final MetaDataService metaDataService;
+	private final Request request;
+
+	private Iterator<?> currentChunk;
+	private CompletableFuture<Response> nextChunk;
+
+	RemoteIterator(ClientTransport clientTransport, MetaDataService metaDataService, Request request, List<?> firstChunk, boolean streamOpen) {
+		this.clientTransport = clientTransport;
+		this.metaDataService = metaDataService;
+		this.request = request;
+		this.currentChunk = firstChunk == null ? Collections.emptyIterator() : firstChunk.iterator();
+
+		if (streamOpen) {
+			requestNextChunk();
+		}
+	}
+
+	@Override
+	public synchronized boolean hasNext() {
+		while (!currentChunk.hasNext()) {
+			if (nextChunk == null) {
+				return false;
+			}
+
+			Response response = awaitNextChunk();
+			if (response.exception != null) {
+				nextChunk = null;
+				Object exception = metaDataService.adaptRemoteToLocal(response.exception);
+				throw exception instanceof RuntimeException ? (RuntimeException) exception : new RpcException(String.valueOf(exception));
+			}
+
+			List<?> chunk = (List<?>) response.result.getField("result");
+			currentChunk = chunk == null ? Collections.emptyIterator() : chunk.iterator();
+			if (response.streamOpen) {
+				requestNextChunk();
+			} else {
+				nextChunk = null;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public synchronized Object next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return currentChunk.next();
+	}
+
+	@Override
+	public synchronized void close() {
+		currentChunk = Collections.emptyIterator();
+		if (nextChunk == null) {
+			return;
+		}
+		nextChunk = null;
+
+		Request cancelRequest = new Request();
+		cancelRequest.serviceName = request.serviceName;
+		cancelRequest.methodName = request.methodName;
+		cancelRequest.execute = false;
+		cancelRequest.requestId = request.requestId;
+		clientTransport.send(cancelRequest);
+	}
+
+	private void requestNextChunk() {
+		Request nextRequest = new Request();
+		nextRequest.serviceName = request.serviceName;
+		nextRequest.methodName = request.methodName;
+		nextRequest.execute = true;
+		nextRequest.session = request.session;
+		nextRequest.requestId = request.requestId;
+		nextRequest.streamNext = true;
+		try {
+			nextChunk = clientTransport.send(nextRequest);
+		} catch (RpcException e) {
+			nextChunk = new CompletableFuture<>();
+			nextChunk.completeExceptionally(e);
+		}
+	}
+
+	private Response awaitNextChunk() {
+		try {
+			return nextChunk.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RpcException(e);
+		} catch (ExecutionException e) {
+			nextChunk = null;
+			Throwable cause = e.getCause();
+			throw cause instanceof RpcException ? (RpcException) cause : new RpcException(cause);
+		}
+	}
+}
@@ -16,10 +16,23 @@ public class Request implements Serializable {
 	public DynamicStruct arguments;
 	public Object session;
 	public String requestId;
+	/** the remaining time in milliseconds until the caller gives up waiting for the response, <code>0</code> for no timeout */
+	public long timeout;
+	/** <code>true</code> if the client does not wait for a {@link Response}, see {@link ch.obermuhlner.rpc.annotation.RpcOneWay} */
+	public boolean oneWay;
+	/** <code>true</code> to ask for the next chunk of the streamed result of the earlier request with the same {@link #requestId} */
+	public boolean streamNext;
+	/** the maximum number of elements the client accepts in the next chunk of a streamed result, <code>0</code> for the default chunk size */
+	public int streamCredits;
+	/**
+	 * the index of the {@link RpcChannel} parameter whose elements are sent in the {@link #arguments},
+	 * the {@link #requestId} is the one of the call followed by <code>#</code> and the parameter index, so that the call itself stays pending
+	 */
+	public String streamUpload;
 	
 	@Override
 	public String toString() {
 		return "Request [serviceName=" + serviceName + ", methodName=" + methodName + ", execute=" + execute
-				+ ", arguments=" + arguments + ", session=" + session + ", requestId=" + requestId + "]";
+				+ ", arguments=" + arguments + ", session=" + session + ", requestId=" + requestId + ", timeout=" + timeout + ", oneWay=" + oneWay + ", streamNext=" + streamNext + ", streamCredits=" + streamCredits + ", streamUpload=" + streamUpload + "]";
 	}
 }
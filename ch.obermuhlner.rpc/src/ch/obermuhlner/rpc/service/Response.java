@@ -12,9 +12,12 @@ public class Response implements Serializable {
 
 	public DynamicStruct result;
 	public Object exception;
+	public String requestId;
+	/** <code>true</code> if the result is a chunk of a streamed result and more chunks can be requested with {@link Request#streamNext} */
+	public boolean streamOpen;
 	
 	@Override
 	public String toString() {
-		return "Response [result=" + result + ", exception=" + exception + "]";
+		return "Response [result=" + result + ", exception=" + exception + ", requestId=" + requestId + ", streamOpen=" + streamOpen + "]";
 	}
 }
@@ -0,0 +1,87 @@
+package ch.obermuhlner.rpc.service;
+
+/**
+ * Limits the number of retries to a fraction of the calls, so that retries cannot multiply the load on servers that are already failing.
+ *
+ * Every call deposits a fraction of a token and every retry withdraws a whole token.
+ * The balance starts full and never exceeds the maximum, which allows short bursts of retries.
+ * A single budget is usually shared by all services of a client.
+ */
+public class RetryBudget {
+
+	private final double ratio;
+	private final int maxRetries;
+
+	private double balance;
+	private long retryCount;
+	private long exhaustedCount;
+
+	public RetryBudget() {
+		this(0.1, 10);
+	}
+
+	/**
+	 * Constructs a {@link RetryBudget}.
+	 *
+	 * @param ratio the maximum number of retries per call, for example 0.1 for at most 10% additional requests
+	 * @param maxRetries the maximum number of retries in a burst
+	 */
+	public RetryBudget(double ratio, int maxRetries) {
+		if (ratio < 0) {
+			throw new IllegalArgumentException("Illegal ratio: " + ratio);
+		}
+		if (maxRetries < 0) {
+			throw new IllegalArgumentException("Illegal maximum retries: " + maxRetries);
+		}
+
+		this.ratio = ratio;
+		this.maxRetries = maxRetries;
+		this.balance = maxRetries;
+	}
+
+	/**
+	 * Records a call.
+	 */
+	public synchronized void deposit() {
+		balance = Math.min(maxRetries, balance + ratio);
+	}
+
+	/**
+	 * Asks for permission to retry a call.
+	 *
+	 * @return <code>true</code> if the retry is permitted
+	 */
+	public synchronized boolean tryWithdraw() {
+		if (balance < 1) {
+			exhaustedCount++;
+			return false;
+		}
+
+		balance -= 1;
+		retryCount++;
+		return true;
+	}
+
+	/**
+	 * Returns the number of retries that were permitted.
+	 *
+	 * @return the retry count
+	 */
+	public synchronized long getRetryCount() {
+		return retryCount;
+	}
+
+	/**
+	 * Returns the number of retries that were refused because the budget was exhausted.
+	 *
+	 * @return the exhausted count
+	 */
+	public synchronized long getExhaustedCount() {
+		return exhaustedCount;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "RetryBudget [balance=" + balance + ", retryCount=" + retryCount + ", exhaustedCount=" + exhaustedCount + "]";
+	}
+}
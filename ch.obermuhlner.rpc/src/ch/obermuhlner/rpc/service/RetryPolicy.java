@@ -0,0 +1,88 @@
+package ch.obermuhlner.rpc.service;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import ch.obermuhlner.rpc.annotation.RpcMethod;
+import ch.obermuhlner.rpc.exception.RpcAlreadyCancelledException;
+import ch.obermuhlner.rpc.exception.RpcException;
+import ch.obermuhlner.rpc.exception.RpcTimeoutException;
+
+/**
+ * Policy to retry remote calls that failed in the transport or were rejected by an overloaded server.
+ *
+ * Only calls of idempotent methods (see {@link RpcMethod#idempotent()}) are retried.
+ * The retries are delayed with exponential backoff and full jitter, and limited by a {@link RetryBudget}.
+ * Timeouts are never retried, the retries only use the remaining time of the call.
+ */
+public class RetryPolicy {
+
+	private final int maxAttempts;
+	private final long initialBackoffNanos;
+	private final long maxBackoffNanos;
+	private final RetryBudget retryBudget;
+
+	public RetryPolicy() {
+		this(3, 10, 1000, TimeUnit.MILLISECONDS, new RetryBudget());
+	}
+
+	/**
+	 * Constructs a {@link RetryPolicy}.
+	 *
+	 * @param maxAttempts the maximum number of attempts of a call, including the first
+	 * @param initialBackoff the maximum delay before the first retry
+	 * @param maxBackoff the maximum delay before any retry
+	 * @param unit the {@link TimeUnit} of the backoff delays
+	 * @param retryBudget the {@link RetryBudget} that limits the retries
+	 */
+	public RetryPolicy(int maxAttempts, long initialBackoff, long maxBackoff, TimeUnit unit, RetryBudget retryBudget) {
+		if (maxAttempts < 1) {
+			throw new IllegalArgumentException("Illegal maximum attempts: " + maxAttempts);
+		}
+
+		this.maxAttempts = maxAttempts;
+		this.initialBackoffNanos = unit.toNanos(initialBackoff);
+		this.maxBackoffNanos = unit.toNanos(maxBackoff);
+		this.retryBudget = retryBudget;
+	}
+
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	public RetryBudget getRetryBudget() {
+		return retryBudget;
+	}
+
+	/**
+	 * Returns the random delay before a retry.
+	 *
+	 * @param attempt the number of attempts made so far (starting with 1)
+	 * @return the backoff delay in nanoseconds
+	 */
+	public long getBackoffNanos(int attempt) {
+		long backoffNanos = initialBackoffNanos << Math.min(attempt - 1, 30);
+		if (backoffNanos <= 0 || backoffNanos > maxBackoffNanos) {
+			backoffNanos = maxBackoffNanos;
+		}
+		return ThreadLocalRandom.current().nextLong(backoffNanos + 1);
+	}
+
+	/**
+	 * Returns whether a call that failed with the specified exception may be retried.
+	 *
+	 * @param exception the exception
+	 * @return <code>true</code> if the failure is retryable
+	 */
+	public boolean isRetryable(Throwable exception) {
+		if (exception instanceof CompletionException && exception.getCause() != null) {
+			exception = exception.getCause();
+		}
+		if (exception instanceof CancellationException || exception instanceof RpcTimeoutException || exception instanceof RpcAlreadyCancelledException) {
+			return false;
+		}
+		return exception instanceof RpcException;
+	}
+}
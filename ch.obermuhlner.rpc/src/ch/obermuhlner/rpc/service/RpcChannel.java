@@ -0,0 +1,368 @@
+package ch.obermuhlner.rpc.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+
+import ch.obermuhlner.rpc.exception.RpcException;
+
+/**
+ * Bounded channel of elements streamed between client and server in a long-lived call.
+ *
+ * A service method can return a channel to push elements to the client (for example price ticks or invalidations)
+ * and can take channel parameters to receive elements streamed by the client.
+ * Both directions can be combined in the same call.
+ *
+ * <pre>
+ * RpcChannel&lt;PriceTick&gt; subscribe(String symbol);
+ * int importOrders(RpcChannel&lt;Order&gt; orders);
+ * RpcChannel&lt;Quote&gt; trade(RpcChannel&lt;Order&gt; orders);
+ * </pre>
+ *
+ * The producer {@link #send(Object)}s elements and {@link #close()}s the channel when it is finished,
+ * the consumer iterates over the elements and can {@link #cancel()} the channel when it is no longer interested.
+ * The capacity of the channel is the flow control window: the remote side never sends more elements than the channel can hold,
+ * and a producer that sends faster than the consumer receives is blocked.
+ *
+ * @param <T> the type of the elements
+ */
+public class RpcChannel<T> implements Iterator<T> {
+
+	/**
+	 * The default capacity of a channel.
+	 */
+	public static final int DEFAULT_CAPACITY = 256;
+
+	private final int capacity;
+
+	private final ArrayDeque<T> elements = new ArrayDeque<>();
+	private boolean closed;
+	private RuntimeException failure;
+	private boolean cancelled;
+
+	private List<Runnable> availableListeners = new ArrayList<>();
+	private List<Runnable> spaceListeners = new ArrayList<>();
+	private List<Runnable> cancelListeners = new ArrayList<>();
+
+	public RpcChannel() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructs a {@link RpcChannel}.
+	 *
+	 * @param capacity the maximum number of elements buffered in the channel
+	 */
+	public RpcChannel(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Illegal capacity: " + capacity);
+		}
+		this.capacity = capacity;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Sends an element, waiting while the channel is full.
+	 *
+	 * @param element the element to send
+	 * @throws RpcException if the channel was closed or cancelled, or if the thread was interrupted while waiting
+	 */
+	public void send(T element) {
+		List<Runnable> listeners;
+		synchronized (this) {
+			while (!cancelled && !closed && elements.size() >= capacity) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new RpcException(e);
+				}
+			}
+			checkSendable();
+			elements.add(element);
+			listeners = takeListeners(true, false);
+		}
+		run(listeners);
+	}
+
+	/**
+	 * Sends an element if the channel is not full.
+	 *
+	 * @param element the element to send
+	 * @return <code>true</code> if the element was sent, <code>false</code> if the channel is full or cancelled
+	 * @throws RpcException if the channel was closed
+	 */
+	public boolean offer(T element) {
+		List<Runnable> listeners;
+		synchronized (this) {
+			if (cancelled || elements.size() >= capacity) {
+				return false;
+			}
+			checkSendable();
+			elements.add(element);
+			listeners = takeListeners(true, false);
+		}
+		run(listeners);
+		return true;
+	}
+
+	/**
+	 * Closes the channel after the last element was sent.
+	 *
+	 * The consumer still receives the elements that are buffered in the channel.
+	 */
+	public void close() {
+		complete(null);
+	}
+
+	/**
+	 * Closes the channel with a failure.
+	 *
+	 * The consumer receives the elements that are buffered in the channel, then the failure is thrown.
+	 *
+	 * @param exception the failure
+	 */
+	public void fail(RuntimeException exception) {
+		complete(exception);
+	}
+
+	/**
+	 * Tells the producer that the consumer is no longer interested in the elements.
+	 *
+	 * The buffered elements are discarded.
+	 */
+	public void cancel() {
+		List<Runnable> listeners;
+		synchronized (this) {
+			if (cancelled) {
+				return;
+			}
+			cancelled = true;
+			elements.clear();
+			notifyAll();
+			listeners = takeListeners(true, true);
+			listeners.addAll(cancelListeners);
+			cancelListeners = new ArrayList<>();
+		}
+		run(listeners);
+	}
+
+	public synchronized boolean isCancelled() {
+		return cancelled;
+	}
+
+	public synchronized boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * Returns whether the consumer has received all elements, or has cancelled the channel.
+	 *
+	 * @return <code>true</code> if no more elements will be received
+	 */
+	public synchronized boolean isDone() {
+		return cancelled || (closed && elements.isEmpty());
+	}
+
+	@Override
+	public synchronized boolean hasNext() {
+		while (elements.isEmpty() && !closed && !cancelled) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RpcException(e);
+			}
+		}
+		if (elements.isEmpty() && failure != null) {
+			throw failure;
+		}
+		return !elements.isEmpty();
+	}
+
+	@Override
+	public T next() {
+		T element;
+		List<Runnable> listeners;
+		synchronized (this) {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			element = elements.poll();
+			notifyAll();
+			listeners = takeListeners(false, true);
+		}
+		run(listeners);
+		return element;
+	}
+
+	/**
+	 * Receives the next element, waiting up to the specified time.
+	 *
+	 * @param timeout the maximum time to wait
+	 * @param unit the {@link TimeUnit} of the timeout
+	 * @return the next element, or <code>null</code> if no element arrived in time or the channel is done
+	 * @throws RpcException if the thread was interrupted while waiting
+	 */
+	public T poll(long timeout, TimeUnit unit) {
+		long deadlineNanos = System.nanoTime() + unit.toNanos(timeout);
+		synchronized (this) {
+			while (elements.isEmpty() && !closed && !cancelled) {
+				long remainingNanos = deadlineNanos - System.nanoTime();
+				if (remainingNanos <= 0) {
+					return null;
+				}
+				try {
+					TimeUnit.NANOSECONDS.timedWait(this, remainingNanos);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new RpcException(e);
+				}
+			}
+			if (elements.isEmpty()) {
+				return null;
+			}
+		}
+		return next();
+	}
+
+	/**
+	 * Receives all buffered elements without waiting.
+	 *
+	 * Used by the transports to send the elements to the remote side.
+	 *
+	 * @param maxElements the maximum number of elements
+	 * @return the received elements, empty if no element is buffered
+	 * @throws RuntimeException the failure of the channel if all elements have been received
+	 */
+	public List<T> drain(int maxElements) {
+		List<T> result = new ArrayList<>(Math.min(maxElements, 64));
+		List<Runnable> listeners;
+		synchronized (this) {
+			while (result.size() < maxElements && !elements.isEmpty()) {
+				result.add(elements.poll());
+			}
+			if (result.isEmpty() && failure != null && !cancelled) {
+				throw failure;
+			}
+			notifyAll();
+			listeners = result.isEmpty() ? new ArrayList<>() : takeListeners(false, true);
+		}
+		run(listeners);
+		return result;
+	}
+
+	/**
+	 * Returns the number of elements that can be sent before the channel is full.
+	 *
+	 * @return the remaining capacity
+	 */
+	public synchronized int getRemainingCapacity() {
+		return capacity - elements.size();
+	}
+
+	/**
+	 * Runs the specified action once as soon as an element can be received or the channel is done.
+	 *
+	 * Used by the transports to wait for elements without blocking a thread.
+	 *
+	 * @param action the action to run
+	 */
+	public void whenAvailable(Runnable action) {
+		synchronized (this) {
+			if (elements.isEmpty() && !closed && !cancelled) {
+				availableListeners.add(action);
+				return;
+			}
+		}
+		action.run();
+	}
+
+	/**
+	 * Runs the specified action once as soon as an element can be sent or the channel is cancelled.
+	 *
+	 * Used by the transports to wait for free capacity without blocking a thread.
+	 *
+	 * @param action the action to run
+	 */
+	public void whenSpaceAvailable(Runnable action) {
+		synchronized (this) {
+			if (elements.size() >= capacity && !cancelled) {
+				spaceListeners.add(action);
+				return;
+			}
+		}
+		action.run();
+	}
+
+	/**
+	 * Runs the specified action once when the channel is cancelled.
+	 *
+	 * @param action the action to run
+	 */
+	public void whenCancelled(Runnable action) {
+		synchronized (this) {
+			if (!cancelled) {
+				cancelListeners.add(action);
+				return;
+			}
+		}
+		action.run();
+	}
+
+	private void complete(RuntimeException exception) {
+		List<Runnable> listeners;
+		synchronized (this) {
+			if (closed || cancelled) {
+				return;
+			}
+			closed = true;
+			failure = exception;
+			notifyAll();
+			listeners = takeListeners(true, false);
+		}
+		run(listeners);
+	}
+
+	private void checkSendable() {
+		if (cancelled) {
+			throw new RpcException("Channel cancelled");
+		}
+		if (closed) {
+			throw new RpcException("Channel closed");
+		}
+	}
+
+	private List<Runnable> takeListeners(boolean available, boolean space) {
+		List<Runnable> listeners = new ArrayList<>();
+		if (available && !availableListeners.isEmpty()) {
+			listeners.addAll(availableListeners);
+			availableListeners = new ArrayList<>();
+		}
+		if (space && !spaceListeners.isEmpty()) {
+			listeners.addAll(spaceListeners);
+			spaceListeners = new ArrayList<>();
+		}
+		if (available || space) {
+			notifyAll();
+		}
+		return listeners;
+	}
+
+	private static void run(List<Runnable> listeners) {
+		for (Runnable listener : listeners) {
+			listener.run();
+		}
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "RpcChannel [size=" + elements.size() + ", capacity=" + capacity + ", closed=" + closed + ", cancelled=" + cancelled + "]";
+	}
+}
@@ -3,17 +3,36 @@ package ch.obermuhlner.rpc.service;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.UUID;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+import ch.obermuhlner.rpc.annotation.RpcMethod;
+import ch.obermuhlner.rpc.annotation.RpcOneWay;
 import ch.obermuhlner.rpc.exception.RpcException;
+import ch.obermuhlner.rpc.exception.RpcOverloadedException;
+import ch.obermuhlner.rpc.exception.RpcTimeoutException;
 import ch.obermuhlner.rpc.meta.MetaDataService;
 import ch.obermuhlner.rpc.transport.ClientTransport;
+import ch.obermuhlner.rpc.transport.HashedTimerWheel;
+import ch.obermuhlner.rpc.transport.HashedTimerWheel.Timeout;
 import ch.obermuhlner.rpc.transport.ServerTransport;
 import ch.obermuhlner.rpc.transport.ServiceExecutor;
 
@@ -25,17 +44,63 @@ public class ServiceFactory {
 	
 	private final ServiceExecutor localServiceExecutor;
 
+	private final Executor asyncExecutor;
+
+	private final HashedTimerWheel timerWheel;
+
+	private volatile RetryPolicy retryPolicy;
+
 	public ServiceFactory(MetaDataService metaDataService) {
+		this(metaDataService, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Constructs a {@link ServiceFactory} that executes the asynchronous calls of local services with the specified {@link Executor}.
+	 * 
+	 * @param metaDataService the {@link MetaDataService}
+	 * @param asyncExecutor the {@link Executor} to execute asynchronous calls, for example {@link ch.obermuhlner.rpc.transport.VirtualThreadExecutors#newVirtualThreadPerTaskExecutor()}
+	 */
+	public ServiceFactory(MetaDataService metaDataService, Executor asyncExecutor) {
+		this(metaDataService, asyncExecutor, HashedTimerWheel.getDefault());
+	}
+	
+	/**
+	 * Constructs a {@link ServiceFactory} that executes the asynchronous calls of local services with the specified {@link Executor}
+	 * and schedules the timeouts of remote calls in the specified {@link HashedTimerWheel}.
+	 * 
+	 * @param metaDataService the {@link MetaDataService}
+	 * @param asyncExecutor the {@link Executor} to execute asynchronous calls and to complete timed out calls
+	 * @param timerWheel the {@link HashedTimerWheel} to schedule timeouts
+	 */
+	public ServiceFactory(MetaDataService metaDataService, Executor asyncExecutor, HashedTimerWheel timerWheel) {
 		this.metaDataService = metaDataService;
+		this.asyncExecutor = asyncExecutor;
+		this.timerWheel = timerWheel;
 		
-		localServiceExecutor = new ServiceExecutor();
+		localServiceExecutor = new ServiceExecutor(timerWheel);
 	}
 	
+	/**
+	 * Sets the {@link RetryPolicy} of the remote services created by this factory.
+	 * 
+	 * @param retryPolicy the {@link RetryPolicy}, or <code>null</code> to never retry
+	 */
+	public void setRetryPolicy(RetryPolicy retryPolicy) {
+		this.retryPolicy = retryPolicy;
+	}
+
+	public RetryPolicy getRetryPolicy() {
+		return retryPolicy;
+	}
+
 	public <Service, AsyncService, ServiceImpl extends Service> Service createLocalService(Class<Service> serviceType, Class<AsyncService> asyncServiceType, ServiceImpl serviceImpl) {
 		return createLocalService(serviceType, asyncServiceType, serviceImpl, () -> null, (session) -> {});
 	}
 	
 	public <Service, AsyncService, ServiceImpl extends Service, Session> Service createLocalService(Class<Service> serviceType, Class<AsyncService> asyncServiceType, ServiceImpl serviceImpl, Supplier<Session> sessionSupplier, Consumer<Session> sessionConsumer) {
+		// the implementation methods are looked up once instead of on every call
+		Map<Method, Method> implMethods = new ConcurrentHashMap<>();
+		
 		Object proxyObject = Proxy.newProxyInstance(
 				serviceType.getClassLoader(),
 				new Class<?>[] { serviceType, asyncServiceType },
@@ -43,18 +108,21 @@ public class ServiceFactory {
 					try {
 						if (method.getReturnType() == CompletableFuture.class || method.getReturnType() == Future.class) { 
 							String requestId = UUID.randomUUID().toString();
+							long timeoutMillis = Deadline.getRemaining(TimeUnit.MILLISECONDS);
 							CompletableFuture<Object> future = CompletableFuture.supplyAsync(() -> {
+								checkDeadline(timeoutMillis, serviceType, method);
 								try {
 									sessionConsumer.accept(sessionSupplier.get());
-									String underlyingMethodName = withoutSuffix(method.getName(), ASYNC_SUFFIX);
-									Method implMethod = serviceImpl.getClass().getMethod(underlyingMethodName, method.getParameterTypes());
-									return localServiceExecutor.execute(requestId, serviceImpl, implMethod, args);
+									Method implMethod = findImplMethod(implMethods, serviceImpl, method);
+									return localServiceExecutor.execute(requestId, serviceImpl, implMethod, args, timeoutMillis == Long.MAX_VALUE ? 0 : timeoutMillis);
+								} catch (RpcException e) {
+									throw e;
 								} catch (Exception e) {
 									throw new RpcException(e);
 								} finally {
 									sessionConsumer.accept(null);
 								}
-							});
+							}, asyncExecutor);
 							future.exceptionally((ex) -> {
 								if (ex instanceof CancellationException) {
 									localServiceExecutor.interruptRequestThread(requestId);
@@ -62,10 +130,30 @@ public class ServiceFactory {
 								return null;
 							});
 							return future;
+						} else if (method.getAnnotation(RpcOneWay.class) != null) {
+							Session session = sessionSupplier.get();
+							Method implMethod = findImplMethod(implMethods, serviceImpl, method);
+							asyncExecutor.execute(() -> {
+								try {
+									sessionConsumer.accept(session);
+									implMethod.invoke(serviceImpl, args);
+								} catch (IllegalAccessException | InvocationTargetException e) {
+									// nobody waits for the failure of a one-way call
+								} finally {
+									sessionConsumer.accept(null);
+								}
+							});
+							return null;
 						} else {
+							long timeoutMillis = Deadline.getRemaining(TimeUnit.MILLISECONDS);
+							checkDeadline(timeoutMillis, serviceType, method);
 							try {
 								sessionConsumer.accept(sessionSupplier.get());
-								Method implMethod = serviceImpl.getClass().getMethod(method.getName(), method.getParameterTypes());
+								Method implMethod = findImplMethod(implMethods, serviceImpl, method);
+								if (timeoutMillis != Long.MAX_VALUE) {
+									// the deadline interrupts the call like the timeout of a remote call
+									return localServiceExecutor.execute(UUID.randomUUID().toString(), serviceImpl, implMethod, args, timeoutMillis);
+								}
 								return implMethod.invoke(serviceImpl, args);
 							} finally {
 								sessionConsumer.accept(null);
@@ -110,25 +198,77 @@ public class ServiceFactory {
 						request.serviceName = serviceName;
 						request.methodName = methodName;
 						request.execute = true;
-						request.arguments = metaDataService.createDynamicStruct(method, args);
+						List<RemoteChannelSender> channelSenders = new ArrayList<>();
+						request.arguments = metaDataService.createDynamicStruct(method, withoutChannels(method, args, request, clientTransport, channelSenders));
 						request.session = sessionSupplier.get();
 						request.requestId = UUID.randomUUID().toString();
-						CompletableFuture<Object> future = clientTransport.send(request)
+						request.timeout = getTimeout(serviceType, method, methodName);
+						request.oneWay = metaDataService.isOneWay(serviceName, methodName);
+						Class<?> resultType = getResultType(serviceType, method, methodName, asyncMode);
+						if (request.timeout < 0) {
+							RpcTimeoutException exception = new RpcTimeoutException("Deadline passed before calling " + serviceName + "#" + methodName);
+							if (asyncMode) {
+								CompletableFuture<Object> failedFuture = new CompletableFuture<>();
+								failedFuture.completeExceptionally(exception);
+								return failedFuture;
+							}
+							throw exception;
+						}
+						
+						if (resultType == RpcChannel.class) {
+							request.streamCredits = RpcChannel.DEFAULT_CAPACITY;
+						}
+						// channel arguments are sent only after the request, so the request must not be executed in the calling thread
+						boolean synchronous = !asyncMode && channelSenders.isEmpty();
+						CompletableFuture<Response> responseFuture = send(clientTransport, request, synchronous);
+						for (RemoteChannelSender channelSender : channelSenders) {
+							channelSender.start();
+						}
+						CompletableFuture<Object> future = responseFuture
 								.thenApply(response -> {
+									if (request.oneWay) {
+										return null;
+									}
 									if (response.exception != null) {
 										throwAsException(metaDataService.adaptRemoteToLocal(response.exception));
 									}
 									Object result = response.result.getField("result");
+									if (resultType == RpcChannel.class) {
+										RpcChannel<Object> channel = new RpcChannel<>();
+										new RemoteChannelReceiver(clientTransport, metaDataService, asyncExecutor, request, channel).start((List<?>) result, response.streamOpen);
+										return channel;
+									}
+									if (response.streamOpen || isStreamType(resultType)) {
+										return toStream(resultType, new RemoteIterator(clientTransport, metaDataService, request, (List<?>) result, response.streamOpen));
+									}
 									return result;
 								});
+						if (request.timeout > 0) {
+							// complete in the async executor, because the timer thread must not block on sending the cancel request
+							Timeout timeoutTask = timerWheel.schedule(
+									() -> asyncExecutor.execute(() -> future.completeExceptionally(new RpcTimeoutException("Timeout after " + request.timeout + " ms calling " + request.serviceName + "#" + request.methodName))),
+									request.timeout,
+									TimeUnit.MILLISECONDS);
+							future.whenComplete((result, ex) -> timeoutTask.cancel());
+						}
+						if (!channelSenders.isEmpty() && resultType != RpcChannel.class) {
+							// the service no longer receives the elements of its channel arguments
+							future.whenComplete((result, ex) -> channelSenders.forEach(RemoteChannelSender::cancel));
+						}
 						future.exceptionally((ex) -> {
-							if (ex instanceof CancellationException) {
+							// a failure of the transport arrives wrapped in a CompletionException
+							Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+							if (cause instanceof CancellationException || cause instanceof RpcTimeoutException) {
+								// the server no longer needs to execute the request
 								Request cancelRequest = new Request();
 								cancelRequest.serviceName = request.serviceName;
 								cancelRequest.methodName = request.methodName;
 								cancelRequest.execute = false;
 								cancelRequest.requestId = request.requestId;
 								clientTransport.send(cancelRequest);
+								
+								// stop retrying
+								responseFuture.cancel(false);
 							}
 							return null;
 						});
@@ -148,6 +288,153 @@ public class ServiceFactory {
 		return proxyService;
 	}
 
+	private CompletableFuture<Response> send(ClientTransport clientTransport, Request request, boolean synchronous) {
+		RetryPolicy policy = retryPolicy;
+		if (policy == null) {
+			return sendOnce(clientTransport, request, synchronous);
+		}
+		
+		policy.getRetryBudget().deposit();
+		if (!metaDataService.isIdempotent(request.serviceName, request.methodName)) {
+			return sendOnce(clientTransport, request, synchronous);
+		}
+		
+		CompletableFuture<Response> result = new CompletableFuture<>();
+		sendAttempt(clientTransport, request, synchronous, policy, 1, request.timeout, System.nanoTime(), result);
+		return result;
+	}
+	
+	private static CompletableFuture<Response> sendOnce(ClientTransport clientTransport, Request request, boolean synchronous) {
+		return synchronous ? clientTransport.sendSynchronous(request) : clientTransport.send(request);
+	}
+	
+	private void sendAttempt(ClientTransport clientTransport, Request request, boolean synchronous, RetryPolicy policy, int attempt, long timeout, long startNanos, CompletableFuture<Response> result) {
+		if (result.isDone()) {
+			return;
+		}
+		
+		CompletableFuture<Response> attemptFuture;
+		try {
+			attemptFuture = sendOnce(clientTransport, request, synchronous);
+		} catch (RpcException e) {
+			attemptFuture = new CompletableFuture<>();
+			attemptFuture.completeExceptionally(e);
+		}
+		
+		attemptFuture.whenComplete((response, exception) -> {
+			Throwable failure = exception;
+			if (failure == null && response.exception != null) {
+				Object remoteException = metaDataService.adaptRemoteToLocal(response.exception);
+				if (remoteException instanceof RpcOverloadedException) {
+					failure = (RpcOverloadedException) remoteException;
+				}
+			}
+			
+			if (failure != null && attempt < policy.getMaxAttempts() && policy.isRetryable(failure)) {
+				long backoffNanos = policy.getBackoffNanos(attempt);
+				long remainingMillis = timeout - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos + backoffNanos);
+				if ((timeout == 0 || remainingMillis > 0) && policy.getRetryBudget().tryWithdraw()) {
+					timerWheel.schedule(() -> asyncExecutor.execute(() -> {
+						if (timeout > 0) {
+							request.timeout = Math.max(1, timeout - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+						}
+						// the server may still execute (or have a cancel registered for) the failed attempt, so every attempt is a new request
+						request.requestId = UUID.randomUUID().toString();
+						sendAttempt(clientTransport, request, synchronous, policy, attempt + 1, timeout, startNanos, result);
+					}), backoffNanos, TimeUnit.NANOSECONDS);
+					return;
+				}
+			}
+			
+			if (exception != null) {
+				result.completeExceptionally(exception);
+			} else {
+				result.complete(response);
+			}
+		});
+	}
+	
+	/**
+	 * Replaces the {@link RpcChannel} arguments of a remote call with <code>null</code> and prepares the {@link RemoteChannelSender}s that send their elements.
+	 */
+	private Object[] withoutChannels(Method method, Object[] args, Request request, ClientTransport clientTransport, List<RemoteChannelSender> channelSenders) {
+		if (args == null) {
+			return null;
+		}
+		
+		Object[] result = args;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i] instanceof RpcChannel) {
+				if (result == args) {
+					result = args.clone();
+				}
+				// parameter names are only known if the classes were compiled with -parameters, so the channel is identified by its index
+				channelSenders.add(new RemoteChannelSender(clientTransport, asyncExecutor, request, String.valueOf(i), (RpcChannel<?>) args[i]));
+				result[i] = null;
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Returns the type of the result of a remote call, which for asynchronous methods is the return type of the synchronous counterpart.
+	 */
+	private Class<?> getResultType(Class<?> serviceType, Method method, String methodName, boolean asyncMode) {
+		if (!asyncMode) {
+			return method.getReturnType();
+		}
+		try {
+			return serviceType.getMethod(methodName, method.getParameterTypes()).getReturnType();
+		} catch (NoSuchMethodException e) {
+			return Object.class;
+		}
+	}
+	
+	private static void checkDeadline(long timeoutMillis, Class<?> serviceType, Method method) {
+		if (timeoutMillis <= 0) {
+			throw new RpcTimeoutException("Deadline passed before calling " + serviceType.getName() + "#" + method.getName());
+		}
+	}
+	
+	private static boolean isStreamType(Class<?> type) {
+		return type == Stream.class || type == Iterator.class;
+	}
+	
+	private static Object toStream(Class<?> resultType, RemoteIterator iterator) {
+		if (resultType == Iterator.class) {
+			return iterator;
+		}
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false).onClose(iterator::close);
+	}
+	
+	/**
+	 * Returns the timeout in milliseconds of a remote call,
+	 * which is the shorter of the {@link RpcMethod#timeout()} of the method and the remaining time until the {@link Deadline} of the current thread.
+	 * 
+	 * @return the timeout in milliseconds, <code>0</code> for no timeout, or <code>-1</code> if the deadline has already passed
+	 */
+	private long getTimeout(Class<?> serviceType, Method method, String methodName) {
+		RpcMethod annotation = method.getAnnotation(RpcMethod.class);
+		if (annotation == null) {
+			try {
+				annotation = serviceType.getMethod(methodName, method.getParameterTypes()).getAnnotation(RpcMethod.class);
+			} catch (NoSuchMethodException e) {
+				// asynchronous method without synchronous counterpart
+			}
+		}
+		long timeout = annotation == null ? 0 : annotation.timeout();
+		
+		if (Deadline.isSet()) {
+			long remaining = Deadline.getRemaining(TimeUnit.MILLISECONDS);
+			if (remaining <= 0) {
+				return -1;
+			}
+			timeout = timeout == 0 ? remaining : Math.min(timeout, remaining);
+		}
+		
+		return timeout;
+	}
+
 	private void throwAsException(Object exception) {
 		if (exception == null) {
 			return;
@@ -174,6 +461,18 @@ public class ServiceFactory {
 		serverTransport.register(serviceType, serviceImpl, sessionConsumer);
 	}
 
+	private Method findImplMethod(Map<Method, Method> implMethods, Object serviceImpl, Method method) {
+		return implMethods.computeIfAbsent(method, key -> {
+			try {
+				boolean asyncMode = method.getReturnType() == CompletableFuture.class || method.getReturnType() == Future.class;
+				String methodName = asyncMode ? withoutSuffix(method.getName(), ASYNC_SUFFIX) : method.getName();
+				return serviceImpl.getClass().getMethod(methodName, method.getParameterTypes());
+			} catch (NoSuchMethodException e) {
+				throw new RpcException(e);
+			}
+		});
+	}
+
 	private String withoutSuffix(String name, String suffix) {
 		if (name.endsWith(suffix)) {
 			return name.substring(0, name.length() - suffix.length());
@@ -0,0 +1,203 @@
+package ch.obermuhlner.rpc.transport;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the number of concurrently executed requests per service with a limit that adapts to the observed latency.
+ *
+ * The limit of every service is adjusted with a gradient algorithm:
+ * the latency of every request is compared with the long term average latency of the service.
+ * As long as the latency stays flat the limit grows, when requests start to queue and the latency rises the limit shrinks proportionally.
+ * Requests above the limit are rejected immediately, which keeps the latency flat under overload.
+ *
+ * Services are distinguished by their name, so cheap and expensive services get independent limits.
+ * The limit of a service is kept for the lifetime of the limiter, so only requests of known services should acquire permits.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+	private static final double SMOOTHING = 0.2;
+	private static final int LONG_RTT_WINDOW = 100;
+	private static final double MIN_GRADIENT = 0.5;
+
+	private final int initialLimit;
+	private final int minLimit;
+	private final int maxLimit;
+
+	private final Map<String, ServiceLimit> serviceLimits = new ConcurrentHashMap<>();
+
+	private final AtomicLong rejectedCount = new AtomicLong();
+
+	public AdaptiveConcurrencyLimiter() {
+		this(20, 1, 1000);
+	}
+
+	/**
+	 * Constructs an {@link AdaptiveConcurrencyLimiter}.
+	 *
+	 * @param initialLimit the initial limit of every service
+	 * @param minLimit the minimum limit of every service
+	 * @param maxLimit the maximum limit of every service
+	 */
+	public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+		if (minLimit < 1 || minLimit > maxLimit) {
+			throw new IllegalArgumentException("Illegal limits: " + minLimit + " to " + maxLimit);
+		}
+		if (initialLimit < minLimit || initialLimit > maxLimit) {
+			throw new IllegalArgumentException("Illegal initial limit: " + initialLimit);
+		}
+
+		this.initialLimit = initialLimit;
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+	}
+
+	/**
+	 * Tries to acquire a permit to execute a request of the specified service.
+	 *
+	 * @param serviceName the name of the service
+	 * @return the acquired {@link Permit}, or <code>null</code> if the limit of the service is reached
+	 */
+	public Permit tryAcquire(String serviceName) {
+		ServiceLimit serviceLimit = getServiceLimit(serviceName);
+		synchronized (serviceLimit) {
+			if (serviceLimit.inFlight >= (int) serviceLimit.limit) {
+				rejectedCount.incrementAndGet();
+				return null;
+			}
+			serviceLimit.inFlight++;
+			return new Permit(serviceLimit, serviceLimit.inFlight);
+		}
+	}
+
+	/**
+	 * Returns the current limit of the specified service.
+	 *
+	 * @param serviceName the name of the service
+	 * @return the current limit
+	 */
+	public int getLimit(String serviceName) {
+		ServiceLimit serviceLimit = serviceLimits.get(serviceName);
+		if (serviceLimit == null) {
+			return initialLimit;
+		}
+		synchronized (serviceLimit) {
+			return (int) serviceLimit.limit;
+		}
+	}
+
+	/**
+	 * Returns the number of requests of the specified service that are currently executed.
+	 *
+	 * @param serviceName the name of the service
+	 * @return the in-flight count
+	 */
+	public int getInFlightCount(String serviceName) {
+		ServiceLimit serviceLimit = serviceLimits.get(serviceName);
+		if (serviceLimit == null) {
+			return 0;
+		}
+		synchronized (serviceLimit) {
+			return serviceLimit.inFlight;
+		}
+	}
+
+	/**
+	 * Returns the total number of requests that were rejected because the limit of their service was reached.
+	 *
+	 * @return the rejected count
+	 */
+	public long getRejectedCount() {
+		return rejectedCount.get();
+	}
+
+	/**
+	 * Updates the limit of the specified service with a latency sample.
+	 *
+	 * @param serviceName the name of the service
+	 * @param rttNanos the latency of the request in nanoseconds
+	 * @param inFlight the number of requests in flight when the request was started
+	 */
+	void update(String serviceName, long rttNanos, int inFlight) {
+		ServiceLimit serviceLimit = getServiceLimit(serviceName);
+		synchronized (serviceLimit) {
+			serviceLimit.update(rttNanos, inFlight);
+		}
+	}
+
+	private ServiceLimit getServiceLimit(String serviceName) {
+		return serviceLimits.computeIfAbsent(serviceName, name -> new ServiceLimit(initialLimit));
+	}
+
+	private class ServiceLimit {
+		double limit;
+		int inFlight;
+		double longRttNanos;
+
+		ServiceLimit(double limit) {
+			this.limit = limit;
+		}
+
+		void update(long rttNanos, int inFlightAtStart) {
+			double shortRttNanos = Math.max(1, rttNanos);
+			if (longRttNanos == 0) {
+				longRttNanos = shortRttNanos;
+			} else {
+				longRttNanos += (shortRttNanos - longRttNanos) / LONG_RTT_WINDOW;
+			}
+
+			if (longRttNanos / shortRttNanos > 2) {
+				// the load has dropped - let the long term average recover faster
+				longRttNanos *= 0.95;
+			}
+
+			if (inFlightAtStart < limit / 2) {
+				// the limit was not used, so the sample says nothing about it
+				return;
+			}
+
+			double gradient = Math.max(MIN_GRADIENT, Math.min(1.0, longRttNanos / shortRttNanos));
+			double queueSize = Math.sqrt(limit);
+			double newLimit = limit * gradient + queueSize;
+			newLimit = limit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+			limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+		}
+	}
+
+	/**
+	 * Permit to execute a single request.
+	 *
+	 * Exactly one of {@link #release()} or {@link #discard()} must be called when the request is done.
+	 */
+	public class Permit {
+		private final ServiceLimit serviceLimit;
+		private final int inFlight;
+		private final long startNanos = System.nanoTime();
+
+		private Permit(ServiceLimit serviceLimit, int inFlight) {
+			this.serviceLimit = serviceLimit;
+			this.inFlight = inFlight;
+		}
+
+		/**
+		 * Releases the permit after the request was executed and updates the limit with the measured latency.
+		 */
+		public void release() {
+			long rttNanos = System.nanoTime() - startNanos;
+			synchronized (serviceLimit) {
+				serviceLimit.inFlight--;
+				serviceLimit.update(rttNanos, inFlight);
+			}
+		}
+
+		/**
+		 * Releases the permit of a request that was not executed, without updating the limit.
+		 */
+		public void discard() {
+			synchronized (serviceLimit) {
+				serviceLimit.inFlight--;
+			}
+		}
+	}
+}
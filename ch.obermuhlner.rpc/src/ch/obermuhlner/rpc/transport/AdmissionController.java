@@ -0,0 +1,187 @@
+package ch.obermuhlner.rpc.transport;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Limits the number of requests a server executes concurrently.
+ *
+ * Up to the maximum number of in-flight requests are executed immediately,
+ * further requests wait in a bounded queue until an in-flight request has finished.
+ * When the queue is full, new requests are rejected immediately so that the server sheds load instead of creating more and more threads.
+ * Queued requests that the {@link Executor} rejects later (because it was shut down) are dropped.
+ *
+ * The counters can be used to monitor the load of a server.
+ */
+public class AdmissionController {
+
+	private final int maxInFlight;
+	private final int maxQueued;
+
+	private final Queue<Supplier<? extends CompletionStage<?>>> queue = new ArrayDeque<>();
+
+	private int inFlightCount;
+	private long acceptedCount;
+	private long rejectedCount;
+
+	/**
+	 * Constructs an {@link AdmissionController}.
+	 *
+	 * @param maxInFlight the maximum number of requests that are executed concurrently
+	 * @param maxQueued the maximum number of requests that wait for execution, <code>0</code> to reject all requests above the in-flight limit
+	 */
+	public AdmissionController(int maxInFlight, int maxQueued) {
+		if (maxInFlight < 1) {
+			throw new IllegalArgumentException("Illegal maximum in-flight count: " + maxInFlight);
+		}
+		if (maxQueued < 0) {
+			throw new IllegalArgumentException("Illegal maximum queued count: " + maxQueued);
+		}
+
+		this.maxInFlight = maxInFlight;
+		this.maxQueued = maxQueued;
+	}
+
+	/**
+	 * Submits a task for execution with the specified {@link Executor}.
+	 *
+	 * @param task the task to execute
+	 * @param executor the {@link Executor} to execute the task
+	 * @return <code>true</code> if the task was accepted, <code>false</code> if it was rejected because the server is overloaded
+	 * @throws RejectedExecutionException if the {@link Executor} rejected the task
+	 */
+	public boolean submit(Runnable task, Executor executor) {
+		return submitAsync(() -> {
+			task.run();
+			return CompletableFuture.completedFuture(null);
+		}, executor);
+	}
+
+	/**
+	 * Submits an asynchronous task for execution with the specified {@link Executor}.
+	 *
+	 * The task counts as in flight until the {@link CompletionStage} it returns is completed, so that it does not need to block a thread of the {@link Executor} while waiting.
+	 *
+	 * @param task the task to execute, returning the {@link CompletionStage} that is completed when the task is finished
+	 * @param executor the {@link Executor} to execute the task
+	 * @return <code>true</code> if the task was accepted, <code>false</code> if it was rejected because the server is overloaded
+	 * @throws RejectedExecutionException if the {@link Executor} rejected the task
+	 */
+	public boolean submitAsync(Supplier<? extends CompletionStage<?>> task, Executor executor) {
+		synchronized (this) {
+			if (inFlightCount >= maxInFlight) {
+				if (queue.size() >= maxQueued) {
+					rejectedCount++;
+					return false;
+				}
+				queue.add(task);
+				acceptedCount++;
+				return true;
+			}
+			inFlightCount++;
+			acceptedCount++;
+		}
+
+		try {
+			execute(task, executor);
+		} catch (RejectedExecutionException e) {
+			release(executor);
+			throw e;
+		}
+		return true;
+	}
+
+	private void execute(Supplier<? extends CompletionStage<?>> task, Executor executor) {
+		executor.execute(() -> {
+			CompletionStage<?> completion;
+			try {
+				completion = task.get();
+			} catch (RuntimeException | Error e) {
+				release(executor);
+				throw e;
+			}
+			completion.whenComplete((result, exception) -> release(executor));
+		});
+	}
+
+	/**
+	 * Passes the slot of a finished task on to the next queued task, or frees it if no task is waiting.
+	 */
+	private void release(Executor executor) {
+		for (;;) {
+			Supplier<? extends CompletionStage<?>> nextTask;
+			synchronized (this) {
+				nextTask = queue.poll();
+				if (nextTask == null) {
+					inFlightCount--;
+					return;
+				}
+			}
+			try {
+				execute(nextTask, executor);
+				return;
+			} catch (RejectedExecutionException e) {
+				// the executor was shut down - drop the queued task
+			}
+		}
+	}
+
+	/**
+	 * Returns the maximum number of requests that are executed concurrently.
+	 *
+	 * @return the maximum in-flight count
+	 */
+	public int getMaxInFlight() {
+		return maxInFlight;
+	}
+
+	/**
+	 * Returns the maximum number of requests that wait for execution.
+	 *
+	 * @return the maximum queued count
+	 */
+	public int getMaxQueued() {
+		return maxQueued;
+	}
+
+	/**
+	 * Returns the number of requests that are currently executed.
+	 *
+	 * @return the in-flight count
+	 */
+	public synchronized int getInFlightCount() {
+		return inFlightCount;
+	}
+
+	/**
+	 * Returns the number of requests that currently wait for execution.
+	 *
+	 * @return the queue depth
+	 */
+	public synchronized int getQueuedCount() {
+		return queue.size();
+	}
+
+	/**
+	 * Returns the total number of accepted requests.
+	 *
+	 * @return the accepted count
+	 */
+	public synchronized long getAcceptedCount() {
+		return acceptedCount;
+	}
+
+	/**
+	 * Returns the total number of requests that were rejected because the server was overloaded.
+	 *
+	 * @return the rejected count
+	 */
+	public synchronized long getRejectedCount() {
+		return rejectedCount;
+	}
+}
@@ -0,0 +1,214 @@
+package ch.obermuhlner.rpc.transport;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import ch.obermuhlner.rpc.exception.RpcException;
+import ch.obermuhlner.rpc.service.BatchRequest;
+import ch.obermuhlner.rpc.service.Request;
+import ch.obermuhlner.rpc.service.Response;
+import ch.obermuhlner.rpc.transport.HashedTimerWheel.Timeout;
+
+/**
+ * Client transport layer that collects the requests of many concurrent calls into batches and sends every batch with {@link ClientTransport#sendBatch(BatchRequest)}.
+ *
+ * A batch is sent as soon as it contains the maximum number of requests or when the linger time since its first request has expired.
+ * The server executes the requests of a batch one after the other (or in parallel if configured) and returns all responses in a single frame.
+ *
+ * Cancel requests are never delayed. Cancelling a request that is still waiting in the batch simply removes it from the batch.
+ * The requests for the next chunk of a streamed result and for the elements of a {@link ch.obermuhlner.rpc.service.RpcChannel} are not batched either.
+ *
+ * The linger time is measured with a {@link HashedTimerWheel} and therefore has the resolution of its tick, the expired batches are sent by an {@link Executor}.
+ */
+public class BatchingClientTransport implements ClientTransport, AutoCloseable {
+
+	private final ClientTransport clientTransport;
+	private final int maxBatchSize;
+	private final long lingerNanos;
+	private final boolean parallel;
+
+	private final HashedTimerWheel timerWheel;
+	private final Executor flushExecutor;
+
+	private Map<String, PendingRequest> batch = new LinkedHashMap<>();
+	private Timeout lingerTimeout;
+	private boolean closed;
+
+	public BatchingClientTransport(ClientTransport clientTransport, int maxBatchSize, long lingerNanos) {
+		this(clientTransport, maxBatchSize, lingerNanos, false);
+	}
+
+	public BatchingClientTransport(ClientTransport clientTransport, int maxBatchSize, long lingerNanos, boolean parallel) {
+		this(clientTransport, maxBatchSize, lingerNanos, parallel, HashedTimerWheel.getDefault(), ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Constructs a {@link BatchingClientTransport}.
+	 *
+	 * @param clientTransport the {@link ClientTransport} to send the batches
+	 * @param maxBatchSize the maximum number of requests in a batch
+	 * @param lingerNanos the maximum time in nanoseconds a request waits for more requests to join its batch
+	 * @param parallel <code>true</code> to let the server execute the requests of a batch in parallel
+	 * @param timerWheel the {@link HashedTimerWheel} to measure the linger time
+	 * @param flushExecutor the {@link Executor} to send the batches whose linger time expired
+	 */
+	public BatchingClientTransport(ClientTransport clientTransport, int maxBatchSize, long lingerNanos, boolean parallel, HashedTimerWheel timerWheel, Executor flushExecutor) {
+		if (maxBatchSize < 1) {
+			throw new IllegalArgumentException("Illegal maximum batch size: " + maxBatchSize);
+		}
+
+		this.clientTransport = clientTransport;
+		this.maxBatchSize = maxBatchSize;
+		this.lingerNanos = lingerNanos;
+		this.parallel = parallel;
+		this.timerWheel = timerWheel;
+		this.flushExecutor = flushExecutor;
+	}
+
+	@Override
+	public CompletableFuture<Response> send(Request request) {
+		if (!request.execute) {
+			PendingRequest cancelledRequest;
+			synchronized (this) {
+				cancelledRequest = batch.remove(request.requestId);
+			}
+			if (cancelledRequest != null) {
+				cancelledRequest.future.cancel(false);
+				return CompletableFuture.completedFuture(new Response());
+			}
+			return clientTransport.send(request);
+		}
+		if (request.streamNext || request.streamUpload != null) {
+			// the server may hold the requests of channels until elements are available
+			return clientTransport.send(request);
+		}
+
+		PendingRequest pendingRequest = new PendingRequest(request);
+		boolean batching;
+		boolean full = false;
+		synchronized (this) {
+			batching = !closed;
+			if (batching) {
+				batch.put(request.requestId, pendingRequest);
+				full = batch.size() >= maxBatchSize;
+				if (batch.size() == 1 && !full) {
+					Map<String, PendingRequest> lingeringBatch = batch;
+					// the timer thread must not block on sending the batch
+					lingerTimeout = timerWheel.schedule(() -> flushExecutor.execute(() -> flush(lingeringBatch)), lingerNanos, TimeUnit.NANOSECONDS);
+				}
+			}
+		}
+
+		if (!batching) {
+			return clientTransport.send(request);
+		}
+		if (full) {
+			flush();
+		}
+		if (request.oneWay) {
+			// the server does not answer one-way requests
+			return CompletableFuture.completedFuture(new Response());
+		}
+		return pendingRequest.future;
+	}
+
+	/**
+	 * Sends the current batch immediately.
+	 */
+	public void flush() {
+		flush(null);
+	}
+
+	/**
+	 * Sends the current batch if it is the expected batch.
+	 *
+	 * @param expectedBatch the batch whose linger time expired, or <code>null</code> to send any current batch
+	 */
+	private void flush(Map<String, PendingRequest> expectedBatch) {
+		List<PendingRequest> pendingRequests;
+		synchronized (this) {
+			if (batch.isEmpty() || (expectedBatch != null && batch != expectedBatch)) {
+				// the expected batch was already sent because it was full
+				return;
+			}
+			pendingRequests = new ArrayList<>(batch.values());
+			batch = new LinkedHashMap<>();
+			if (lingerTimeout != null) {
+				lingerTimeout.cancel();
+				lingerTimeout = null;
+			}
+		}
+
+		if (pendingRequests.size() == 1) {
+			PendingRequest pendingRequest = pendingRequests.get(0);
+			try {
+				forward(clientTransport.send(pendingRequest.request), pendingRequest.future);
+			} catch (RpcException e) {
+				pendingRequest.future.completeExceptionally(e);
+			}
+			return;
+		}
+
+		BatchRequest batchRequest = new BatchRequest();
+		batchRequest.requests = new ArrayList<>();
+		for (PendingRequest pendingRequest : pendingRequests) {
+			batchRequest.requests.add(pendingRequest.request);
+		}
+		batchRequest.parallel = parallel;
+
+		try {
+			List<CompletableFuture<Response>> futures = clientTransport.sendBatch(batchRequest);
+			for (int i = 0; i < pendingRequests.size(); i++) {
+				forward(futures.get(i), pendingRequests.get(i).future);
+			}
+		} catch (RpcException e) {
+			for (PendingRequest pendingRequest : pendingRequests) {
+				pendingRequest.future.completeExceptionally(e);
+			}
+		}
+	}
+
+	@Override
+	public boolean isAlive() {
+		return clientTransport.isAlive();
+	}
+
+	/**
+	 * Sends the current batch and stops batching.
+	 *
+	 * Requests sent afterwards are passed to the underlying {@link ClientTransport} one by one.
+	 * The underlying {@link ClientTransport} is not closed.
+	 */
+	@Override
+	public void close() {
+		synchronized (this) {
+			closed = true;
+		}
+		flush();
+	}
+
+	private static void forward(CompletableFuture<Response> source, CompletableFuture<Response> target) {
+		source.whenComplete((response, exception) -> {
+			if (exception != null) {
+				target.completeExceptionally(exception);
+			} else {
+				target.complete(response);
+			}
+		});
+	}
+
+	private static class PendingRequest {
+		final Request request;
+		final CompletableFuture<Response> future = new CompletableFuture<>();
+
+		PendingRequest(Request request) {
+			this.request = request;
+		}
+	}
+}
@@ -1,7 +1,10 @@
 package ch.obermuhlner.rpc.transport;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
+import ch.obermuhlner.rpc.service.BatchRequest;
 import ch.obermuhlner.rpc.service.Request;
 import ch.obermuhlner.rpc.service.Response;
 
@@ -9,4 +12,45 @@ public interface ClientTransport {
 
 	CompletableFuture<Response> send(Request request);
 	
+	/**
+	 * Sends a request of a caller that blocks until the response has arrived.
+	 * 
+	 * The default implementation calls {@link #send(Request)}.
+	 * Transports in the same JVM may override this method to execute the request in the calling thread, see {@link ch.obermuhlner.rpc.transport.local.DirectLocalTransport}.
+	 * 
+	 * @param request the {@link Request} to send
+	 * @return the {@link CompletableFuture} of the response
+	 */
+	default CompletableFuture<Response> sendSynchronous(Request request) {
+		return send(request);
+	}
+	
+	/**
+	 * Sends several requests together, see {@link BatchingClientTransport}.
+	 * 
+	 * The default implementation sends every request separately.
+	 * Transports that can send the whole batch in a single frame override this method.
+	 * 
+	 * @param batchRequest the {@link BatchRequest} to send
+	 * @return the {@link CompletableFuture}s of the responses, in the order of the requests
+	 */
+	default List<CompletableFuture<Response>> sendBatch(BatchRequest batchRequest) {
+		List<CompletableFuture<Response>> futures = new ArrayList<>();
+		for (Request request : batchRequest.requests) {
+			futures.add(send(request));
+		}
+		return futures;
+	}
+	
+	/**
+	 * Returns whether the server is considered reachable, so that load balancers can avoid transports to dead servers.
+	 * 
+	 * The default implementation always returns <code>true</code>.
+	 * Transports over persistent connections override this method, see {@link ch.obermuhlner.rpc.transport.socket.SocketConnection#isAlive()}.
+	 * 
+	 * @return <code>true</code> if the server is considered reachable
+	 */
+	default boolean isAlive() {
+		return true;
+	}
 }
@@ -0,0 +1,261 @@
+package ch.obermuhlner.rpc.transport;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hashed timer wheel to schedule a large number of timeouts that usually are cancelled before they expire.
+ *
+ * The timeouts are kept in a ring of buckets, every bucket covers one tick.
+ * Scheduling and cancelling a timeout is O(1) and does not lock, a single worker thread advances the wheel once per tick and runs the expired tasks.
+ * Timeouts never expire early but may expire up to one tick late.
+ *
+ * The expired tasks are run in the worker thread and must therefore be short and must not block.
+ */
+public class HashedTimerWheel implements AutoCloseable {
+
+	private static final int STATE_PENDING = 0;
+	private static final int STATE_CANCELLED = 1;
+	private static final int STATE_EXPIRED = 2;
+
+	private static HashedTimerWheel defaultTimerWheel;
+
+	private final long tickNanos;
+	private final Bucket[] wheel;
+	private final int mask;
+
+	private final Queue<Timeout> scheduledTimeouts = new ConcurrentLinkedQueue<>();
+	private final Queue<Timeout> cancelledTimeouts = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger pendingCount = new AtomicInteger();
+
+	private final long startNanos = System.nanoTime();
+	private long tick;
+
+	private final Thread workerThread;
+	private volatile boolean closed;
+
+	/**
+	 * Returns the shared {@link HashedTimerWheel} with a tick of 10 milliseconds.
+	 *
+	 * @return the shared {@link HashedTimerWheel}
+	 */
+	public static synchronized HashedTimerWheel getDefault() {
+		if (defaultTimerWheel == null) {
+			defaultTimerWheel = new HashedTimerWheel(10, TimeUnit.MILLISECONDS, 512);
+		}
+		return defaultTimerWheel;
+	}
+
+	/**
+	 * Constructs a {@link HashedTimerWheel} and starts its worker thread.
+	 *
+	 * @param tickDuration the duration of a tick, which is the resolution of the timeouts
+	 * @param unit the {@link TimeUnit} of the tick duration
+	 * @param wheelSize the number of buckets, rounded up to a power of two
+	 */
+	public HashedTimerWheel(long tickDuration, TimeUnit unit, int wheelSize) {
+		if (tickDuration <= 0) {
+			throw new IllegalArgumentException("Illegal tick duration: " + tickDuration);
+		}
+		if (wheelSize < 1 || wheelSize > (1 << 30)) {
+			throw new IllegalArgumentException("Illegal wheel size: " + wheelSize);
+		}
+
+		this.tickNanos = unit.toNanos(tickDuration);
+
+		int size = Integer.highestOneBit(wheelSize - 1) << 1;
+		if (size == 0) {
+			size = 1;
+		}
+		wheel = new Bucket[size];
+		for (int i = 0; i < size; i++) {
+			wheel[i] = new Bucket();
+		}
+		mask = size - 1;
+
+		workerThread = new Thread(() -> run(), "ez-rpc-timer");
+		workerThread.setDaemon(true);
+		workerThread.start();
+	}
+
+	/**
+	 * Schedules a task to run after the specified delay.
+	 *
+	 * @param task the task to run
+	 * @param delay the delay from now
+	 * @param unit the {@link TimeUnit} of the delay
+	 * @return the {@link Timeout} that can be used to cancel the task
+	 */
+	public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+		Timeout timeout = new Timeout(task, System.nanoTime() + unit.toNanos(delay));
+		pendingCount.incrementAndGet();
+		scheduledTimeouts.add(timeout);
+		return timeout;
+	}
+
+	/**
+	 * Returns the number of timeouts that have neither expired nor been cancelled.
+	 *
+	 * @return the pending count
+	 */
+	public int getPendingCount() {
+		return pendingCount.get();
+	}
+
+	/**
+	 * Stops the worker thread, the pending timeouts will not expire anymore.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		LockSupport.unpark(workerThread);
+	}
+
+	private void run() {
+		while (!closed) {
+			long tickEndNanos = startNanos + (tick + 1) * tickNanos;
+			long sleepNanos = tickEndNanos - System.nanoTime();
+			if (sleepNanos > 0) {
+				LockSupport.parkNanos(this, sleepNanos);
+				continue;
+			}
+
+			removeCancelledTimeouts();
+			addScheduledTimeouts();
+			wheel[(int) (tick & mask)].expireTimeouts();
+			tick++;
+		}
+	}
+
+	private void removeCancelledTimeouts() {
+		Timeout timeout;
+		while ((timeout = cancelledTimeouts.poll()) != null) {
+			if (timeout.bucket != null) {
+				timeout.bucket.remove(timeout);
+			}
+		}
+	}
+
+	private void addScheduledTimeouts() {
+		Timeout timeout;
+		while ((timeout = scheduledTimeouts.poll()) != null) {
+			if (timeout.state.get() != STATE_PENDING) {
+				continue;
+			}
+
+			long targetTick = Math.max(tick, (timeout.deadlineNanos - startNanos) / tickNanos);
+			timeout.remainingRounds = (targetTick - tick) / wheel.length;
+			wheel[(int) (targetTick & mask)].add(timeout);
+		}
+	}
+
+	/**
+	 * Task scheduled in a {@link HashedTimerWheel}.
+	 */
+	public class Timeout {
+		private final Runnable task;
+		private final long deadlineNanos;
+
+		private final AtomicInteger state = new AtomicInteger(STATE_PENDING);
+
+		// accessed only by the worker thread
+		private long remainingRounds;
+		private Bucket bucket;
+		private Timeout previous;
+		private Timeout next;
+
+		private Timeout(Runnable task, long deadlineNanos) {
+			this.task = task;
+			this.deadlineNanos = deadlineNanos;
+		}
+
+		/**
+		 * Cancels the task if it has not expired yet.
+		 *
+		 * @return <code>true</code> if the task was cancelled, <code>false</code> if it has already expired or was cancelled before
+		 */
+		public boolean cancel() {
+			if (!state.compareAndSet(STATE_PENDING, STATE_CANCELLED)) {
+				return false;
+			}
+			pendingCount.decrementAndGet();
+			cancelledTimeouts.add(this);
+			return true;
+		}
+
+		public boolean isCancelled() {
+			return state.get() == STATE_CANCELLED;
+		}
+
+		public boolean isExpired() {
+			return state.get() == STATE_EXPIRED;
+		}
+
+		private void expire() {
+			if (!state.compareAndSet(STATE_PENDING, STATE_EXPIRED)) {
+				return;
+			}
+			pendingCount.decrementAndGet();
+			try {
+				task.run();
+			} catch (RuntimeException e) {
+				// a failing task must not stop the timer
+			}
+		}
+	}
+
+	/**
+	 * Doubly linked list of the timeouts in one slot of the wheel, accessed only by the worker thread.
+	 */
+	private static class Bucket {
+		private Timeout head;
+		private Timeout tail;
+
+		void add(Timeout timeout) {
+			timeout.bucket = this;
+			timeout.previous = tail;
+			timeout.next = null;
+			if (tail == null) {
+				head = timeout;
+			} else {
+				tail.next = timeout;
+			}
+			tail = timeout;
+		}
+
+		void remove(Timeout timeout) {
+			if (timeout.previous == null) {
+				head = timeout.next;
+			} else {
+				timeout.previous.next = timeout.next;
+			}
+			if (timeout.next == null) {
+				tail = timeout.previous;
+			} else {
+				timeout.next.previous = timeout.previous;
+			}
+			timeout.bucket = null;
+			timeout.previous = null;
+			timeout.next = null;
+		}
+
+		void expireTimeouts() {
+			Timeout timeout = head;
+			while (timeout != null) {
+				Timeout next = timeout.next;
+				if (timeout.remainingRounds <= 0) {
+					remove(timeout);
+					timeout.expire();
+				} else if (timeout.isCancelled()) {
+					remove(timeout);
+				} else {
+					timeout.remainingRounds--;
+				}
+				timeout = next;
+			}
+		}
+	}
+}
@@ -0,0 +1,126 @@
+package ch.obermuhlner.rpc.transport;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.BaseStream;
+
+import ch.obermuhlner.rpc.service.RpcChannel;
+import ch.obermuhlner.rpc.transport.HashedTimerWheel.Timeout;
+
+/**
+ * The result of a service method returning a {@link BaseStream}, an {@link Iterator} or a {@link RpcChannel} that is sent to the client in chunks.
+ *
+ * A {@link RpcChannel} is drained without waiting, so a chunk contains the elements that the service has pushed so far.
+ */
+class OpenStream {
+
+	private final Iterator<?> iterator;
+	private final AutoCloseable closeable;
+	private final RpcChannel<?> channel;
+
+	private Timeout idleTimeout;
+	private boolean closed;
+
+	private OpenStream(Iterator<?> iterator, AutoCloseable closeable, RpcChannel<?> channel) {
+		this.iterator = iterator;
+		this.closeable = closeable;
+		this.channel = channel;
+	}
+
+	/**
+	 * Returns whether a result of a service method is streamed to the client.
+	 *
+	 * @param result the result of the service method
+	 * @return <code>true</code> if the result is a {@link BaseStream} or an {@link Iterator}, which includes a {@link RpcChannel}
+	 */
+	static boolean isStream(Object result) {
+		return result instanceof BaseStream || result instanceof Iterator;
+	}
+
+	static OpenStream of(Object result) {
+		if (result instanceof RpcChannel) {
+			return new OpenStream(null, null, (RpcChannel<?>) result);
+		}
+		if (result instanceof BaseStream) {
+			BaseStream<?, ?> stream = (BaseStream<?, ?>) result;
+			return new OpenStream(stream.iterator(), stream, null);
+		}
+
+		Iterator<?> iterator = (Iterator<?>) result;
+		return new OpenStream(iterator, iterator instanceof AutoCloseable ? (AutoCloseable) iterator : null, null);
+	}
+
+	/**
+	 * Returns the pushed {@link RpcChannel}.
+	 *
+	 * @return the {@link RpcChannel}, or <code>null</code> if the elements are pulled from an {@link Iterator}
+	 */
+	RpcChannel<?> getChannel() {
+		return channel;
+	}
+
+	/**
+	 * Returns the next elements.
+	 *
+	 * @param maxSize the maximum number of elements
+	 * @return the next elements, empty if the end of the stream has been reached
+	 */
+	synchronized List<Object> nextChunk(int maxSize) {
+		if (channel != null) {
+			return new ArrayList<>(channel.drain(maxSize));
+		}
+
+		List<Object> chunk = new ArrayList<>(Math.min(maxSize, 64));
+		while (!closed && chunk.size() < maxSize && iterator.hasNext()) {
+			chunk.add(iterator.next());
+		}
+		return chunk;
+	}
+
+	synchronized boolean hasNext() {
+		if (channel != null) {
+			return !closed && !channel.isDone();
+		}
+		return !closed && iterator.hasNext();
+	}
+
+	synchronized void cancelIdle() {
+		if (idleTimeout != null) {
+			idleTimeout.cancel();
+			idleTimeout = null;
+		}
+	}
+
+	/**
+	 * Closes the stream if the client does not ask for the next chunk within the specified time.
+	 */
+	synchronized void closeAfterIdle(HashedTimerWheel timerWheel, long idleMillis, Runnable closeTask) {
+		if (idleTimeout != null) {
+			idleTimeout.cancel();
+		}
+		idleTimeout = timerWheel.schedule(closeTask, idleMillis, TimeUnit.MILLISECONDS);
+	}
+
+	synchronized void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+
+		if (idleTimeout != null) {
+			idleTimeout.cancel();
+		}
+		if (channel != null) {
+			channel.cancel();
+		}
+		if (closeable != null) {
+			try {
+				closeable.close();
+			} catch (Exception e) {
+				// ignore failures to close the source of the stream
+			}
+		}
+	}
+}
@@ -2,28 +2,190 @@ package ch.obermuhlner.rpc.transport;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 
 import ch.obermuhlner.rpc.data.DynamicStruct;
 import ch.obermuhlner.rpc.exception.RpcException;
+import ch.obermuhlner.rpc.exception.RpcOverloadedException;
+import ch.obermuhlner.rpc.exception.RpcTimeoutException;
 import ch.obermuhlner.rpc.meta.MetaDataService;
+import ch.obermuhlner.rpc.service.BatchRequest;
+import ch.obermuhlner.rpc.service.BatchResponse;
+import ch.obermuhlner.rpc.service.Deadline;
 import ch.obermuhlner.rpc.service.Request;
 import ch.obermuhlner.rpc.service.Response;
+import ch.obermuhlner.rpc.service.RpcChannel;
+import ch.obermuhlner.rpc.transport.AdaptiveConcurrencyLimiter.Permit;
 
+/**
+ * Base class of the server transports that executes the received requests with the registered services.
+ * 
+ * Service methods can return a {@link java.util.stream.Stream} or an {@link java.util.Iterator} to send large results in chunks.
+ * The first chunk is sent as the response of the request, every further chunk is sent when the client asks for it with {@link Request#streamNext},
+ * so that neither side holds more than a few chunks in memory.
+ * Streams are closed when the last chunk has been sent, when the request is cancelled or when the client stops asking for chunks.
+ * A request for the next chunk of a closed stream is answered with an empty last chunk.
+ * 
+ * Service methods can also return a {@link RpcChannel} to push elements to the client, and take {@link RpcChannel} parameters to receive elements from the client.
+ * A request for the next chunk of a pushed channel is answered as soon as elements are available, without blocking a thread while waiting.
+ * The elements sent by the client arrive in {@link Request#streamUpload} requests, which are answered with the remaining capacity of the channel
+ * as soon as the service has received some of the elements.
+ * Elements for a call that has already completed are rejected, elements for a call that does not arrive within the stream idle timeout are dropped.
+ */
 public class ServerTransportImpl extends ServiceExecutor implements ServerTransport {
 
+	private static final int DEFAULT_STREAM_CHUNK_SIZE = 256;
+	
+	private static final long STREAM_IDLE_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(60);
+
 	private final MetaDataService metaDataService;
 	
 	private final Map<String, Object> serviceMap = new ConcurrentHashMap<>();
 	private final Map<String, Method> methodMap = new ConcurrentHashMap<>();
 	private final Map<String, Consumer<?>> serviceToSessionConsumerMap = new ConcurrentHashMap<>();
 	
+	private volatile AdmissionController admissionController;
+	private volatile AdaptiveConcurrencyLimiter concurrencyLimiter;
+	
+	private final AtomicLong expiredCount = new AtomicLong();
+	
+	private final AtomicInteger inFlightCount = new AtomicInteger();
+	
+	private final Map<String, OpenStream> openStreams = new ConcurrentHashMap<>();
+	
+	private final Map<String, UploadChannel> uploadChannels = new ConcurrentHashMap<>();
+	
+	private final Set<String> uploadCalls = ConcurrentHashMap.newKeySet();
+	
+	private final Set<String> completedUploadCalls = ConcurrentHashMap.newKeySet();
+	
+	private volatile int streamChunkSize = DEFAULT_STREAM_CHUNK_SIZE;
+	
 	public ServerTransportImpl(MetaDataService metaDataService) {
 		this.metaDataService = metaDataService;
 	}
 	
+	/**
+	 * Sets the {@link AdmissionController} that limits the number of concurrently executed requests.
+	 * 
+	 * Requests rejected by the {@link AdmissionController} are answered immediately with a {@link RpcOverloadedException}.
+	 * 
+	 * @param admissionController the {@link AdmissionController}, or <code>null</code> to execute all requests without limit
+	 */
+	public void setAdmissionController(AdmissionController admissionController) {
+		this.admissionController = admissionController;
+	}
+	
+	/**
+	 * Returns the {@link AdmissionController} that limits the number of concurrently executed requests.
+	 * 
+	 * @return the {@link AdmissionController}, or <code>null</code> if requests are executed without limit
+	 */
+	public AdmissionController getAdmissionController() {
+		return admissionController;
+	}
+	
+	/**
+	 * Sets the {@link AdaptiveConcurrencyLimiter} that limits the number of concurrently executed requests per service.
+	 * 
+	 * Requests rejected by the {@link AdaptiveConcurrencyLimiter} are answered immediately with a {@link RpcOverloadedException}.
+	 * Batch requests are only limited by the {@link AdmissionController}.
+	 * 
+	 * @param concurrencyLimiter the {@link AdaptiveConcurrencyLimiter}, or <code>null</code> to execute all requests without limit per service
+	 */
+	public void setConcurrencyLimiter(AdaptiveConcurrencyLimiter concurrencyLimiter) {
+		this.concurrencyLimiter = concurrencyLimiter;
+	}
+	
+	/**
+	 * Returns the {@link AdaptiveConcurrencyLimiter} that limits the number of concurrently executed requests per service.
+	 * 
+	 * @return the {@link AdaptiveConcurrencyLimiter}, or <code>null</code> if requests are executed without limit per service
+	 */
+	public AdaptiveConcurrencyLimiter getConcurrencyLimiter() {
+		return concurrencyLimiter;
+	}
+	
+	/**
+	 * Sets the maximum number of elements sent in one chunk of a streamed result.
+	 * 
+	 * @param streamChunkSize the chunk size
+	 */
+	public void setStreamChunkSize(int streamChunkSize) {
+		if (streamChunkSize < 1) {
+			throw new IllegalArgumentException("Illegal stream chunk size: " + streamChunkSize);
+		}
+		this.streamChunkSize = streamChunkSize;
+	}
+	
+	public int getStreamChunkSize() {
+		return streamChunkSize;
+	}
+	
+	/**
+	 * Returns the number of streamed results whose last chunk has not been sent yet.
+	 * 
+	 * @return the open stream count
+	 */
+	public int getOpenStreamCount() {
+		return openStreams.size();
+	}
+	
+	/**
+	 * Returns the number of requests dispatched with {@link #dispatch(Request, Executor, Consumer)} or {@link #dispatchBatch(BatchRequest, Executor, Consumer)} that have not been answered yet.
+	 * 
+	 * A batch request counts as a single request.
+	 * 
+	 * @return the in flight count
+	 */
+	public int getInFlightCount() {
+		return inFlightCount.get();
+	}
+	
+	/**
+	 * Waits until all dispatched requests have been answered, so that a server can shut down without cutting off requests in flight.
+	 * 
+	 * @param timeout the maximum time to wait
+	 * @param unit the {@link TimeUnit} of the timeout
+	 * @return <code>true</code> if no requests are in flight, <code>false</code> if the timeout expired or the thread was interrupted
+	 */
+	protected boolean awaitInFlight(long timeout, TimeUnit unit) {
+		long deadlineNanos = System.nanoTime() + unit.toNanos(timeout);
+		synchronized (inFlightCount) {
+			while (inFlightCount.get() > 0) {
+				long remainingNanos = deadlineNanos - System.nanoTime();
+				if (remainingNanos <= 0) {
+					return false;
+				}
+				try {
+					TimeUnit.NANOSECONDS.timedWait(inFlightCount, remainingNanos);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+	
+	private void completeInFlight() {
+		if (inFlightCount.decrementAndGet() == 0) {
+			synchronized (inFlightCount) {
+				inFlightCount.notifyAll();
+			}
+		}
+	}
+	
 	@Override
 	public <Service, Session> void register(Class<Service> serviceType, Service service, Consumer<Session> sessionConsumer) {
 		String serviceName = metaDataService.registerService(serviceType).name;
@@ -66,28 +228,541 @@ public class ServerTransportImpl extends ServiceExecutor implements ServerTransp
 		}
 		
 		Method method = methodMap.get(key);
-		Object[] arguments = metaDataService.toArguments(method, request.arguments);
 		
 		Response response = new Response();
+		response.requestId = request.requestId;
+		
+		if (request.streamUpload != null) {
+			RpcChannel<Object> channel = acceptUpload(request);
+			await(action -> channel.whenSpaceAvailable(action));
+			return uploadResponse(request, channel);
+		}
+		
+		if (request.streamNext) {
+			OpenStream stream = openStreams.get(request.requestId);
+			if (stream == null) {
+				// the stream has already sent its last chunk, was cancelled or was closed while idle
+				response.result = new DynamicStruct();
+				response.result.name = method + "_Reponse";
+				response.result.setField("result", new ArrayList<>());
+				return response;
+			}
+			stream.cancelIdle();
+			if (stream.getChannel() != null) {
+				await(action -> stream.getChannel().whenAvailable(action));
+			}
+			sendStreamChunk(request, method, stream, response);
+			return response;
+		}
+		
+		Object[] arguments = metaDataService.toArguments(method, request.arguments);
+		Class<?>[] parameterTypes = method.getParameterTypes();
+		boolean hasUploadChannels = false;
+		for (int i = 0; i < parameterTypes.length; i++) {
+			if (parameterTypes[i] == RpcChannel.class) {
+				arguments[i] = takeUploadChannel(request.requestId, i);
+				hasUploadChannels = true;
+			}
+		}
+		Deadline.Scope deadlineScope = request.timeout > 0 ? Deadline.withTimeout(request.timeout, TimeUnit.MILLISECONDS) : null;
 		try {
 			sessionConsumer.accept(request.session);
-			Object result = execute(request.requestId, service, method, arguments);
-			response.result = new DynamicStruct();
-			response.result.name = method + "_Reponse";
-			response.result.setField("result", result);
+			Object result = execute(request.requestId, service, method, arguments, request.timeout);
+			if (request.oneWay) {
+				// nobody waits for the result
+			} else if (OpenStream.isStream(result)) {
+				sendStreamChunk(request, method, OpenStream.of(result), response);
+			} else {
+				response.result = new DynamicStruct();
+				response.result.name = method + "_Reponse";
+				response.result.setField("result", result);
+			}
 			sessionConsumer.accept(null);
 		} catch (InvocationTargetException e) {
-			response.exception = e.getTargetException();
+			response.exception = toRemoteException(e.getTargetException());
+		} finally {
+			if (deadlineScope != null) {
+				deadlineScope.close();
+			}
+		}
+		if (hasUploadChannels && !response.streamOpen) {
+			// the client stops sending as soon as the call is completed
+			cancelUploadChannels(request.requestId);
 		}
 		
 		return response;
 	}
 
+	/**
+	 * Receives all requests of a {@link BatchRequest}.
+	 * 
+	 * The requests are executed one after the other in the calling thread,
+	 * or in parallel with the specified {@link Executor} if {@link BatchRequest#parallel} is set.
+	 * Failures of single requests are reported in their {@link Response#exception} and do not affect the other requests.
+	 * Requests whose {@link Request#timeout} has expired are not executed.
+	 * 
+	 * @param batchRequest the {@link BatchRequest} to receive
+	 * @param executor the {@link Executor} to execute the requests in parallel
+	 * @return the {@link CompletableFuture} of the {@link BatchResponse}, with the responses in the order of the requests
+	 */
+	public CompletableFuture<BatchResponse> receiveBatch(BatchRequest batchRequest, Executor executor) {
+		return receiveBatch(batchRequest, executor, System.nanoTime());
+	}
+
+	private CompletableFuture<BatchResponse> receiveBatch(BatchRequest batchRequest, Executor executor, long arrivalNanos) {
+		List<CompletableFuture<Response>> futures = new ArrayList<>();
+		for (Request request : batchRequest.requests) {
+			if (batchRequest.parallel) {
+				futures.add(CompletableFuture.supplyAsync(() -> receiveUnlessExpired(request, arrivalNanos), executor));
+			} else {
+				futures.add(CompletableFuture.completedFuture(receiveUnlessExpired(request, arrivalNanos)));
+			}
+		}
+		
+		return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()])).thenApply(ignored -> {
+			BatchResponse batchResponse = new BatchResponse();
+			batchResponse.responses = new ArrayList<>();
+			for (CompletableFuture<Response> future : futures) {
+				batchResponse.responses.add(future.join());
+			}
+			return batchResponse;
+		});
+	}
+
+	/**
+	 * Executes a request with the specified {@link Executor}, subject to the {@link AdaptiveConcurrencyLimiter} and the {@link AdmissionController}.
+	 * 
+	 * A request whose {@link Request#timeout} expires while it waits for execution is dropped and answered with a {@link RpcTimeoutException}.
+	 * {@link Request#oneWay} requests are never answered.
+	 * Cancel requests are handled immediately in the calling thread, so that they are never queued or rejected behind the requests they cancel.
+	 * 
+	 * @param request the {@link Request} to execute
+	 * @param executor the {@link Executor} to execute the request
+	 * @param responseConsumer the {@link Consumer} that sends the {@link Response}
+	 */
+	protected void dispatch(Request request, Executor executor, Consumer<Response> responseConsumer) {
+		Consumer<Response> consumer = request.oneWay ? response -> {} : responseConsumer;
+		
+		inFlightCount.incrementAndGet();
+		try {
+			dispatchRequest(request, executor, response -> {
+				try {
+					consumer.accept(response);
+				} finally {
+					completeInFlight();
+				}
+			});
+		} catch (RuntimeException e) {
+			// rejected by the executor
+			completeInFlight();
+			throw e;
+		}
+	}
+	
+	private void dispatchRequest(Request request, Executor executor, Consumer<Response> responseConsumer) {
+		if (!request.execute) {
+			responseConsumer.accept(receiveResponse(request));
+			return;
+		}
+		if (dispatchChannelRequest(request, responseConsumer)) {
+			return;
+		}
+		
+		long arrivalNanos = System.nanoTime();
+		
+		AdaptiveConcurrencyLimiter limiter = concurrencyLimiter;
+		Permit permit = null;
+		// the limiter keeps a limit per service name, unknown service names sent by clients must not make it grow
+		if (limiter != null && request.serviceName != null && serviceMap.containsKey(request.serviceName)) {
+			permit = limiter.tryAcquire(request.serviceName);
+			if (permit == null) {
+				responseConsumer.accept(overloadedResponse(request, "Service overloaded: " + request.serviceName + " is limited to " + limiter.getLimit(request.serviceName) + " concurrent requests"));
+				return;
+			}
+		}
+		
+		Permit acquiredPermit = permit;
+		Runnable task = () -> {
+			if (isExpired(request, arrivalNanos)) {
+				if (acquiredPermit != null) {
+					acquiredPermit.discard();
+				}
+				responseConsumer.accept(expiredResponse(request));
+				return;
+			}
+			
+			Response response;
+			try {
+				response = receiveResponse(request);
+			} finally {
+				if (acquiredPermit != null) {
+					acquiredPermit.release();
+				}
+			}
+			responseConsumer.accept(response);
+		};
+		
+		AdmissionController controller = admissionController;
+		boolean accepted;
+		try {
+			if (controller == null) {
+				executor.execute(task);
+				accepted = true;
+			} else {
+				accepted = controller.submit(task, executor);
+			}
+		} catch (RuntimeException e) {
+			// rejected by the executor
+			if (permit != null) {
+				permit.discard();
+			}
+			throw e;
+		}
+		if (!accepted) {
+			if (permit != null) {
+				permit.discard();
+			}
+			responseConsumer.accept(overloadedResponse(request, controller));
+		}
+	}
+	
+	/**
+	 * Executes a batch request with the specified {@link Executor}, subject to the {@link AdmissionController}.
+	 * 
+	 * The {@link AdmissionController} counts a {@link BatchRequest} as a single request.
+	 * 
+	 * @param batchRequest the {@link BatchRequest} to execute
+	 * @param executor the {@link Executor} to execute the requests
+	 * @param responseConsumer the {@link Consumer} that sends the {@link BatchResponse}
+	 */
+	protected void dispatchBatch(BatchRequest batchRequest, Executor executor, Consumer<BatchResponse> responseConsumer) {
+		long arrivalNanos = System.nanoTime();
+		
+		inFlightCount.incrementAndGet();
+		try {
+			dispatchBatchRequest(batchRequest, executor, arrivalNanos, batchResponse -> {
+				try {
+					responseConsumer.accept(batchResponse);
+				} finally {
+					completeInFlight();
+				}
+			});
+		} catch (RuntimeException e) {
+			// rejected by the executor
+			completeInFlight();
+			throw e;
+		}
+	}
+	
+	private void dispatchBatchRequest(BatchRequest batchRequest, Executor executor, long arrivalNanos, Consumer<BatchResponse> responseConsumer) {
+		AdmissionController controller = admissionController;
+		if (controller == null) {
+			executor.execute(() -> receiveBatch(batchRequest, executor, arrivalNanos).thenAccept(responseConsumer));
+		} else if (!controller.submitAsync(() -> receiveBatch(batchRequest, executor, arrivalNanos).thenAccept(responseConsumer), executor)) {
+			BatchResponse batchResponse = new BatchResponse();
+			batchResponse.responses = new ArrayList<>();
+			for (Request request : batchRequest.requests) {
+				batchResponse.responses.add(overloadedResponse(request, controller));
+			}
+			responseConsumer.accept(batchResponse);
+		}
+	}
+
+	/**
+	 * Returns the total number of requests that were dropped because their timeout expired before execution.
+	 * 
+	 * @return the expired count
+	 */
+	public long getExpiredCount() {
+		return expiredCount.get();
+	}
+
+	private Response receiveUnlessExpired(Request request, long arrivalNanos) {
+		if (isExpired(request, arrivalNanos)) {
+			return expiredResponse(request);
+		}
+		return receiveResponse(request);
+	}
+
+	/**
+	 * Checks whether the timeout of a request has expired since it arrived
+	 * and reduces the {@link Request#timeout} to the remaining time, which is then propagated to nested calls.
+	 */
+	private boolean isExpired(Request request, long arrivalNanos) {
+		if (!request.execute || request.timeout <= 0) {
+			return false;
+		}
+		
+		long remaining = request.timeout - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - arrivalNanos);
+		if (remaining <= 0) {
+			expiredCount.incrementAndGet();
+			return true;
+		}
+		request.timeout = remaining;
+		return false;
+	}
+
+	private static Response expiredResponse(Request request) {
+		Response response = new Response();
+		response.requestId = request.requestId;
+		response.exception = new RpcTimeoutException("Request expired before execution: " + request.serviceName + "#" + request.methodName);
+		return response;
+	}
+
+	private static Response overloadedResponse(Request request, AdmissionController controller) {
+		return overloadedResponse(request, "Server overloaded: " + controller.getInFlightCount() + " requests in flight, " + controller.getQueuedCount() + " queued");
+	}
+
+	private static Response overloadedResponse(Request request, String message) {
+		Response response = new Response();
+		response.requestId = request.requestId;
+		response.exception = new RpcOverloadedException(message);
+		return response;
+	}
+
+	/**
+	 * Creates a {@link Response} that reports an exception to the client.
+	 *
+	 * A {@link RpcException} without an adapter of its own is reported as a plain {@link RpcException} with the same message,
+	 * so that the response can always be encoded.
+	 *
+	 * @param requestId the id of the answered request
+	 * @param exception the exception to report
+	 * @return the {@link Response}
+	 */
+	protected Response errorResponse(String requestId, Throwable exception) {
+		Response response = new Response();
+		response.requestId = requestId;
+		response.exception = toRemoteException(exception);
+		return response;
+	}
+
+	private Object toRemoteException(Throwable exception) {
+		if (exception instanceof RpcException && metaDataService.findAdapterByLocalType(exception.getClass()) == null) {
+			return new RpcException(exception.getMessage());
+		}
+		return exception;
+	}
+
+	/**
+	 * Creates the message that is sent instead of a message that could not be encoded, so that the client does not wait for an answer forever.
+	 *
+	 * @param message the message that could not be encoded
+	 * @param exception the exception thrown while encoding the message
+	 * @return the {@link Response} or {@link BatchResponse} that reports the failure, or <code>null</code> if the message does not answer a request
+	 */
+	protected Object encodingFailure(Object message, RuntimeException exception) {
+		RpcException failure = new RpcException("Failed to encode response: " + exception.getMessage());
+		if (message instanceof Response) {
+			return errorResponse(((Response) message).requestId, failure);
+		}
+		if (message instanceof BatchResponse) {
+			BatchResponse batchResponse = new BatchResponse();
+			batchResponse.responses = new ArrayList<>();
+			for (Response response : ((BatchResponse) message).responses) {
+				batchResponse.responses.add(errorResponse(response.requestId, failure));
+			}
+			return batchResponse;
+		}
+		return null;
+	}
+
+	private Response receiveResponse(Request request) {
+		try {
+			return receive(request);
+		} catch (RpcException e) {
+			return errorResponse(request.requestId, e);
+		}
+	}
+
+	/**
+	 * Answers the requests of {@link RpcChannel}s as soon as the channel is ready, without blocking a thread while waiting.
+	 * 
+	 * @return <code>true</code> if the request was handled
+	 */
+	private boolean dispatchChannelRequest(Request request, Consumer<Response> responseConsumer) {
+		if (request.streamUpload != null) {
+			RpcChannel<Object> channel;
+			try {
+				channel = acceptUpload(request);
+			} catch (RpcException e) {
+				responseConsumer.accept(errorResponse(request.requestId, e));
+				return true;
+			}
+			channel.whenSpaceAvailable(() -> responseConsumer.accept(uploadResponse(request, channel)));
+			return true;
+		}
+		
+		if (request.streamNext) {
+			OpenStream stream = openStreams.get(request.requestId);
+			if (stream != null && stream.getChannel() != null) {
+				stream.cancelIdle();
+				stream.getChannel().whenAvailable(() -> responseConsumer.accept(receiveResponse(request)));
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Adds the elements of a {@link Request#streamUpload} request to the {@link RpcChannel} parameter of the service method.
+	 */
+	private RpcChannel<Object> acceptUpload(Request request) {
+		String key = request.requestId;
+		String callRequestId = key.substring(0, key.length() - request.streamUpload.length() - 1);
+		if (completedUploadCalls.contains(callRequestId)) {
+			throw new RpcException("Call already completed: " + callRequestId);
+		}
+		UploadChannel uploadChannel = uploadChannels.computeIfAbsent(key, k -> {
+			UploadChannel newUploadChannel = new UploadChannel();
+			uploadCalls.add(callRequestId);
+			// the elements may arrive before the call, but must not wait forever for a call that never arrives
+			getTimerWheel().schedule(() -> expireUploadChannel(callRequestId, k, newUploadChannel), STREAM_IDLE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+			return newUploadChannel;
+		});
+		RpcChannel<Object> channel = uploadChannel.channel;
+		
+		List<?> elements = request.arguments == null ? null : (List<?>) request.arguments.getField("elements");
+		if (elements != null) {
+			for (Object element : elements) {
+				if (!channel.offer(element)) {
+					if (channel.isCancelled()) {
+						break;
+					}
+					throw new RpcException("Channel capacity exceeded: " + request.streamUpload);
+				}
+			}
+		}
+		
+		if (request.arguments != null && Boolean.TRUE.equals(request.arguments.getField("closed"))) {
+			channel.close();
+		}
+		removeDoneUploadChannel(key, uploadChannel);
+		return channel;
+	}
+	
+	/**
+	 * Returns the {@link RpcChannel} argument of a service method, which may already have received elements from the client.
+	 */
+	private RpcChannel<Object> takeUploadChannel(String callRequestId, int parameterIndex) {
+		String key = callRequestId + "#" + parameterIndex;
+		uploadCalls.add(callRequestId);
+		UploadChannel uploadChannel = uploadChannels.computeIfAbsent(key, k -> new UploadChannel());
+		uploadChannel.taken = true;
+		removeDoneUploadChannel(key, uploadChannel);
+		return uploadChannel.channel;
+	}
+	
+	/**
+	 * Forgets an upload channel that will not receive any more elements, unless the service method has not taken it yet.
+	 */
+	private void removeDoneUploadChannel(String key, UploadChannel uploadChannel) {
+		if (uploadChannel.taken && (uploadChannel.channel.isClosed() || uploadChannel.channel.isCancelled())) {
+			uploadChannels.remove(key, uploadChannel);
+		}
+	}
+	
+	private void expireUploadChannel(String callRequestId, String key, UploadChannel uploadChannel) {
+		if (!uploadChannel.taken && uploadChannels.remove(key, uploadChannel)) {
+			// the call never arrived, so none of its channels was taken
+			uploadCalls.remove(callRequestId);
+			uploadChannel.channel.cancel();
+		}
+	}
+	
+	private static Response uploadResponse(Request request, RpcChannel<Object> channel) {
+		Response response = new Response();
+		response.requestId = request.requestId;
+		response.result = new DynamicStruct();
+		response.result.name = "RpcChannelCredits";
+		response.result.setField("credits", channel.getRemainingCapacity());
+		response.streamOpen = !channel.isClosed() && !channel.isCancelled();
+		return response;
+	}
+	
+	private static void await(Consumer<Runnable> condition) {
+		CompletableFuture<Void> future = new CompletableFuture<>();
+		condition.accept(() -> future.complete(null));
+		future.join();
+	}
+	
+	/**
+	 * Fills the next chunk of a streamed result into the response and keeps the stream open if there are more elements.
+	 */
+	private void sendStreamChunk(Request request, Method method, OpenStream stream, Response response) {
+		String requestId = request.requestId;
+		int chunkSize = request.streamCredits > 0 ? Math.min(request.streamCredits, streamChunkSize) : streamChunkSize;
+		List<Object> chunk;
+		boolean hasNext;
+		try {
+			chunk = stream.nextChunk(chunkSize);
+			hasNext = stream.hasNext();
+		} catch (RuntimeException e) {
+			closeStream(requestId, stream);
+			response.exception = toRemoteException(e);
+			return;
+		}
+		
+		response.result = new DynamicStruct();
+		response.result.name = method + "_Reponse";
+		response.result.setField("result", chunk);
+		
+		if (hasNext) {
+			response.streamOpen = true;
+			openStreams.put(requestId, stream);
+			stream.closeAfterIdle(getTimerWheel(), STREAM_IDLE_TIMEOUT_MILLIS, () -> closeStream(requestId, stream));
+		} else {
+			closeStream(requestId, stream);
+		}
+	}
+	
+	private void closeStream(String requestId, OpenStream stream) {
+		openStreams.remove(requestId, stream);
+		stream.close();
+		if (stream.getChannel() != null) {
+			cancelUploadChannels(requestId);
+		}
+	}
+	
+	private void cancelUploadChannels(String requestId) {
+		if (!uploadCalls.remove(requestId)) {
+			// most calls have no upload channels
+			return;
+		}
+		
+		// elements still in transit must not open the channels again
+		if (completedUploadCalls.add(requestId)) {
+			getTimerWheel().schedule(() -> completedUploadCalls.remove(requestId), STREAM_IDLE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+		}
+		
+		String uploadKeyPrefix = requestId + "#";
+		for (String key : uploadChannels.keySet()) {
+			if (key.startsWith(uploadKeyPrefix)) {
+				UploadChannel uploadChannel = uploadChannels.remove(key);
+				if (uploadChannel != null) {
+					uploadChannel.channel.cancel();
+				}
+			}
+		}
+	}
+	
 	private Response cancelRequest(Request request) {
 		interruptRequestThread(request.requestId);
+		
+		OpenStream stream = openStreams.get(request.requestId);
+		if (stream != null) {
+			closeStream(request.requestId, stream);
+		}
+		cancelUploadChannels(request.requestId);
 
 		Response response = new Response();
+		response.requestId = request.requestId;
 		return response;
 	}
 
+	private static class UploadChannel {
+		final RpcChannel<Object> channel = new RpcChannel<>();
+		volatile boolean taken;
+	}
 }
@@ -4,31 +4,103 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import ch.obermuhlner.rpc.exception.RpcAlreadyCancelledException;
 import ch.obermuhlner.rpc.exception.RpcException;
+import ch.obermuhlner.rpc.exception.RpcTimeoutException;
+import ch.obermuhlner.rpc.transport.HashedTimerWheel.Timeout;
 
 public class ServiceExecutor {
 
+	private static final long CANCEL_EXPIRY_MILLIS = 60000;
+
 	private final Map<String, Thread> requestIdToThreadMap = new HashMap<>();
 
+	private final HashedTimerWheel timerWheel;
+
+	private final long cancelExpiryMillis;
+
+	public ServiceExecutor() {
+		this(HashedTimerWheel.getDefault());
+	}
+
+	/**
+	 * Constructs a {@link ServiceExecutor} that schedules the execution timeouts in the specified {@link HashedTimerWheel}.
+	 * 
+	 * @param timerWheel the {@link HashedTimerWheel} to schedule execution timeouts
+	 */
+	public ServiceExecutor(HashedTimerWheel timerWheel) {
+		this(timerWheel, CANCEL_EXPIRY_MILLIS);
+	}
+
+	/**
+	 * Constructs a {@link ServiceExecutor} that forgets cancel requests for requests that never arrive after the specified time.
+	 */
+	ServiceExecutor(HashedTimerWheel timerWheel, long cancelExpiryMillis) {
+		this.timerWheel = timerWheel;
+		this.cancelExpiryMillis = cancelExpiryMillis;
+	}
+
+	protected HashedTimerWheel getTimerWheel() {
+		return timerWheel;
+	}
+
 	public Object execute(String requestId, Object service, Method method, Object[] args) throws InvocationTargetException {
+		return execute(requestId, service, method, args, 0);
+	}
+
+	/**
+	 * Executes a service method and interrupts the executing thread if it takes longer than the specified timeout,
+	 * exactly like a cancel request would.
+	 * The outcome of an interrupted method is replaced by a {@link RpcTimeoutException}.
+	 * 
+	 * @param requestId the id of the request
+	 * @param service the service
+	 * @param method the method to execute
+	 * @param args the arguments of the method
+	 * @param timeoutMillis the timeout in milliseconds, <code>0</code> for no timeout
+	 * @return the result of the method
+	 * @throws InvocationTargetException if the method threw an exception
+	 * @throws RpcTimeoutException if the execution took longer than the timeout
+	 */
+	public Object execute(String requestId, Object service, Method method, Object[] args, long timeoutMillis) throws InvocationTargetException {
 		Object result = null;
 		
+		// an inline call executes in the thread of the caller, whose interrupt status must survive the call
+		boolean interruptedBefore = Thread.currentThread().isInterrupted();
+		Timeout timeout = null;
 		try {
 			startRequestThread(requestId);
+			if (timeoutMillis > 0) {
+				Thread thread = Thread.currentThread();
+				timeout = timerWheel.schedule(() -> interruptRequestThread(requestId, thread), timeoutMillis, TimeUnit.MILLISECONDS);
+			}
 			result = method.invoke(service, args);
+			checkTimeout(timeout, requestId);
+		} catch (InvocationTargetException e) {
+			checkTimeout(timeout, requestId);
+			throw e;
 		} catch (IllegalAccessException | IllegalArgumentException e) {
 			throw new RpcException(e);
 		} catch (RpcAlreadyCancelledException e) {
 			// ignored - since this is a valid special case - request already cancelled before being executed
 		} finally {
-			finishRequestThread(requestId);
+			if (timeout != null) {
+				timeout.cancel();
+			}
+			finishRequestThread(requestId, interruptedBefore);
 		}
 		
 		return result;
 	}
 	
+	private static void checkTimeout(Timeout timeout, String requestId) {
+		if (timeout != null && timeout.isExpired()) {
+			throw new RpcTimeoutException("Execution timed out: " + requestId);
+		}
+	}
+	
 	private void startRequestThread(String requestId) {
 		synchronized (requestIdToThreadMap) {
 			if (requestIdToThreadMap.containsKey(requestId)) {
@@ -43,10 +115,30 @@ public class ServiceExecutor {
 		}		
 	}
 
-	private void finishRequestThread(String requestId) {
+	private void finishRequestThread(String requestId, boolean interruptedBefore) {
 		synchronized (requestIdToThreadMap) {
 			requestIdToThreadMap.remove(requestId);
-			Thread.interrupted(); // clear interrupted flag
+			Thread.interrupted(); // clear interrupted flag of a cancel or timeout
+			if (interruptedBefore) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private void interruptRequestThread(String requestId, Thread thread) {
+		synchronized (requestIdToThreadMap) {
+			// only if the request is still executed by the same thread
+			if (requestIdToThreadMap.get(requestId) == thread) {
+				thread.interrupt();
+			}
+		}
+	}
+
+	private void expireCancel(String requestId) {
+		synchronized (requestIdToThreadMap) {
+			if (requestIdToThreadMap.containsKey(requestId) && requestIdToThreadMap.get(requestId) == null) {
+				requestIdToThreadMap.remove(requestId);
+			}
 		}
 	}
 
@@ -54,8 +146,11 @@ public class ServiceExecutor {
 		synchronized (requestIdToThreadMap) {
 			Thread thread = requestIdToThreadMap.get(requestId);
 			if (thread == null) {
-				// special case - cancel request arrived before execution request
-				requestIdToThreadMap.put(requestId, null);
+				// special case - cancel request arrived before execution request (or after it finished, then the request never arrives)
+				if (!requestIdToThreadMap.containsKey(requestId)) {
+					requestIdToThreadMap.put(requestId, null);
+					timerWheel.schedule(() -> expireCancel(requestId), cancelExpiryMillis, TimeUnit.MILLISECONDS);
+				}
 			} else {
 				thread.interrupt();
 			}
@@ -0,0 +1,88 @@
+package ch.obermuhlner.rpc.transport;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import ch.obermuhlner.rpc.exception.RpcException;
+
+/**
+ * Creates {@link ExecutorService}s that run every task in a new virtual thread.
+ *
+ * The framework is compiled for Java 8, so the virtual thread executor of the running JVM (Java 21 or later) is looked up reflectively.
+ *
+ * Pass the created executors to the server transports (to execute every inbound request in its own virtual thread),
+ * to the {@link ch.obermuhlner.rpc.service.ServiceFactory} and to the local transports (to execute every asynchronous call in its own virtual thread).
+ * Cancelling a request still interrupts the (virtual) thread executing it.
+ */
+public class VirtualThreadExecutors {
+
+	private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR_METHOD = findNewVirtualThreadPerTaskExecutorMethod();
+
+	private static final boolean AVAILABLE = checkAvailable();
+
+	/**
+	 * Returns whether the running JVM supports virtual threads.
+	 *
+	 * @return <code>true</code> if virtual threads are supported
+	 */
+	public static boolean isAvailable() {
+		return AVAILABLE;
+	}
+
+	/**
+	 * Creates an {@link ExecutorService} that starts a new virtual thread for every task.
+	 *
+	 * @return the created {@link ExecutorService}
+	 * @throws RpcException if the running JVM does not support virtual threads
+	 */
+	public static ExecutorService newVirtualThreadPerTaskExecutor() {
+		if (NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR_METHOD == null) {
+			throw new RpcException("Virtual threads are not supported by Java " + System.getProperty("java.version"));
+		}
+
+		try {
+			return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR_METHOD.invoke(null);
+		} catch (IllegalAccessException e) {
+			throw new RpcException(e);
+		} catch (InvocationTargetException e) {
+			throw new RpcException("Virtual threads are not enabled in Java " + System.getProperty("java.version"), e.getTargetException());
+		}
+	}
+
+	/**
+	 * Creates an {@link ExecutorService} that starts a new virtual thread for every task if virtual threads are supported,
+	 * otherwise falls back to a cached thread pool of platform threads.
+	 *
+	 * @return the created {@link ExecutorService}
+	 */
+	public static ExecutorService newThreadPerTaskExecutor() {
+		if (AVAILABLE) {
+			return newVirtualThreadPerTaskExecutor();
+		}
+		return Executors.newCachedThreadPool();
+	}
+
+	private static Method findNewVirtualThreadPerTaskExecutorMethod() {
+		try {
+			return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+
+	private static boolean checkAvailable() {
+		if (NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR_METHOD == null) {
+			return false;
+		}
+
+		try {
+			newVirtualThreadPerTaskExecutor().shutdown();
+			return true;
+		} catch (RpcException e) {
+			// preview feature not enabled
+			return false;
+		}
+	}
+}
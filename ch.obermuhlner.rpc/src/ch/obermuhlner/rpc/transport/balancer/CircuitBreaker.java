@@ -0,0 +1,260 @@
+package ch.obermuhlner.rpc.transport.balancer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import ch.obermuhlner.rpc.transport.HashedTimerWheel;
+import ch.obermuhlner.rpc.transport.HashedTimerWheel.Timeout;
+
+/**
+ * Circuit breaker that ejects an endpoint whose error rate is too high.
+ *
+ * The outcome of the most recent calls is kept in a sliding window.
+ * A call counts as failed if it failed in the transport or if it took longer than the slow call threshold.
+ * Application exceptions returned by the server count as successful calls.
+ *
+ * <ul>
+ * <li>{@link State#CLOSED} - all calls are allowed. If the failure rate in the window reaches the threshold the circuit opens.</li>
+ * <li>{@link State#OPEN} - no calls are allowed until the ejection time has passed.
+ * The ejection time doubles with every consecutive ejection, up to the maximum ejection time.</li>
+ * <li>{@link State#HALF_OPEN} - a few trial calls are allowed.
+ * If all of them succeed the circuit closes again, if one fails the circuit opens again.
+ * A trial call that has not completed within the slow call threshold counts as failed without waiting for its outcome.</li>
+ * </ul>
+ *
+ * Only the outcomes of calls that started in the current state are recorded,
+ * so a slow call that started before the circuit opened cannot count as a trial call.
+ */
+public class CircuitBreaker {
+
+	public enum State {
+		CLOSED,
+		OPEN,
+		HALF_OPEN
+	}
+
+	private final int windowSize;
+	private final int minimumCalls;
+	private final double failureRateThreshold;
+	private final long slowCallNanos;
+	private final long baseEjectionNanos;
+	private final long maxEjectionNanos;
+	private final int trialCalls;
+
+	private final boolean[] failures;
+	private int index;
+	private int callCount;
+	private int failureCount;
+
+	private State state = State.CLOSED;
+	private long openUntilNanos;
+	private int consecutiveEjections;
+	private int trialsStarted;
+	private int trialsSucceeded;
+	private int ejectionCount;
+	private long generation;
+
+	/**
+	 * Constructs a {@link CircuitBreaker} that opens at a failure rate of 50% of the last 100 calls (counting calls slower than 1 second as failures)
+	 * and ejects the endpoint for 1 to 60 seconds.
+	 */
+	public CircuitBreaker() {
+		this(100, 20, 0.5, TimeUnit.SECONDS.toNanos(1), TimeUnit.SECONDS.toNanos(1), TimeUnit.SECONDS.toNanos(60), 3);
+	}
+
+	/**
+	 * Constructs a {@link CircuitBreaker}.
+	 *
+	 * @param windowSize the number of most recent calls used to calculate the failure rate
+	 * @param minimumCalls the minimum number of calls in the window before the circuit can open
+	 * @param failureRateThreshold the failure rate (between 0 and 1) at which the circuit opens
+	 * @param slowCallNanos the latency in nanoseconds above which a call counts as failed
+	 * @param baseEjectionNanos the time in nanoseconds the circuit stays open after the first ejection
+	 * @param maxEjectionNanos the maximum time in nanoseconds the circuit stays open after consecutive ejections
+	 * @param trialCalls the number of trial calls that must succeed before the circuit closes again
+	 */
+	public CircuitBreaker(int windowSize, int minimumCalls, double failureRateThreshold, long slowCallNanos, long baseEjectionNanos, long maxEjectionNanos, int trialCalls) {
+		if (windowSize < 1 || minimumCalls < 1 || minimumCalls > windowSize) {
+			throw new IllegalArgumentException("Illegal window size " + windowSize + " or minimum calls " + minimumCalls);
+		}
+		if (failureRateThreshold <= 0 || failureRateThreshold > 1) {
+			throw new IllegalArgumentException("Illegal failure rate threshold: " + failureRateThreshold);
+		}
+		if (trialCalls < 1) {
+			throw new IllegalArgumentException("Illegal trial calls: " + trialCalls);
+		}
+
+		this.windowSize = windowSize;
+		this.minimumCalls = minimumCalls;
+		this.failureRateThreshold = failureRateThreshold;
+		this.slowCallNanos = slowCallNanos;
+		this.baseEjectionNanos = baseEjectionNanos;
+		this.maxEjectionNanos = maxEjectionNanos;
+		this.trialCalls = trialCalls;
+		this.failures = new boolean[windowSize];
+	}
+
+	/**
+	 * Asks for permission to make a call.
+	 *
+	 * Every permitted call must be followed by a call to {@link Permit#onCompleted(long, boolean)}.
+	 *
+	 * @return the {@link Permit}, or <code>null</code> if the call is not permitted
+	 */
+	public synchronized Permit tryAcquire() {
+		switch (getState()) {
+		case CLOSED:
+			return new Permit(generation);
+		case HALF_OPEN:
+			if (trialsStarted < trialCalls) {
+				trialsStarted++;
+				Permit permit = new Permit(generation);
+				if (slowCallNanos > 0) {
+					// a trial call that never completes must not keep the circuit half open forever
+					permit.slowCallTimeout = HashedTimerWheel.getDefault().schedule(() -> permit.onCompleted(slowCallNanos, true), slowCallNanos, TimeUnit.NANOSECONDS);
+				}
+				return permit;
+			}
+			return null;
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * Returns whether a call would currently be permitted, without acquiring a permission.
+	 *
+	 * @return <code>true</code> if a call would be permitted
+	 */
+	public synchronized boolean isAvailable() {
+		State currentState = getState();
+		return currentState == State.CLOSED || (currentState == State.HALF_OPEN && trialsStarted < trialCalls);
+	}
+
+	private synchronized void onCompleted(long permitGeneration, long latencyNanos, boolean failed) {
+		if (permitGeneration != generation) {
+			// late outcome of a call that started before the state changed
+			return;
+		}
+
+		boolean failure = failed || latencyNanos > slowCallNanos;
+
+		switch (state) {
+		case HALF_OPEN:
+			if (failure) {
+				open();
+			} else {
+				trialsSucceeded++;
+				if (trialsSucceeded >= trialCalls) {
+					close();
+				}
+			}
+			break;
+		case CLOSED:
+			record(failure);
+			if (callCount >= minimumCalls && failureCount >= failureRateThreshold * callCount) {
+				open();
+			}
+			break;
+		default:
+			break;
+		}
+	}
+
+	/**
+	 * Returns the current state of the circuit.
+	 *
+	 * @return the {@link State}
+	 */
+	public synchronized State getState() {
+		if (state == State.OPEN && System.nanoTime() - openUntilNanos >= 0) {
+			state = State.HALF_OPEN;
+			generation++;
+			trialsStarted = 0;
+			trialsSucceeded = 0;
+		}
+		return state;
+	}
+
+	/**
+	 * Returns the number of times the circuit has opened.
+	 *
+	 * @return the ejection count
+	 */
+	public synchronized int getEjectionCount() {
+		return ejectionCount;
+	}
+
+	private void record(boolean failure) {
+		if (callCount == windowSize) {
+			if (failures[index]) {
+				failureCount--;
+			}
+		} else {
+			callCount++;
+		}
+		failures[index] = failure;
+		if (failure) {
+			failureCount++;
+		}
+		index = (index + 1) % windowSize;
+	}
+
+	private void open() {
+		long ejectionNanos = baseEjectionNanos << Math.min(consecutiveEjections, 30);
+		if (ejectionNanos <= 0 || ejectionNanos > maxEjectionNanos) {
+			ejectionNanos = maxEjectionNanos;
+		}
+		consecutiveEjections++;
+		ejectionCount++;
+
+		state = State.OPEN;
+		generation++;
+		openUntilNanos = System.nanoTime() + ejectionNanos;
+	}
+
+	private void close() {
+		state = State.CLOSED;
+		generation++;
+		consecutiveEjections = 0;
+		index = 0;
+		callCount = 0;
+		failureCount = 0;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "CircuitBreaker [state=" + state + ", calls=" + callCount + ", failures=" + failureCount + ", ejections=" + ejectionCount + "]";
+	}
+
+	/**
+	 * Permission to make a call, acquired with {@link CircuitBreaker#tryAcquire()}.
+	 */
+	public class Permit {
+		private final long permitGeneration;
+		private final AtomicBoolean completed = new AtomicBoolean();
+		private volatile Timeout slowCallTimeout;
+
+		private Permit(long permitGeneration) {
+			this.permitGeneration = permitGeneration;
+		}
+
+		/**
+		 * Records the outcome of the permitted call.
+		 *
+		 * Only the first outcome of a permit is recorded.
+		 *
+		 * @param latencyNanos the latency of the call in nanoseconds
+		 * @param failed <code>true</code> if the call failed in the transport
+		 */
+		public void onCompleted(long latencyNanos, boolean failed) {
+			Timeout timeout = slowCallTimeout;
+			if (timeout != null) {
+				timeout.cancel();
+			}
+			if (completed.compareAndSet(false, true)) {
+				CircuitBreaker.this.onCompleted(permitGeneration, latencyNanos, failed);
+			}
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package ch.obermuhlner.rpc.transport.balancer;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import ch.obermuhlner.rpc.exception.RpcCircuitOpenException;
+import ch.obermuhlner.rpc.exception.RpcException;
+import ch.obermuhlner.rpc.exception.RpcOverloadedException;
+import ch.obermuhlner.rpc.meta.adapter.exception.RpcOverloadedStruct;
+import ch.obermuhlner.rpc.service.BatchRequest;
+import ch.obermuhlner.rpc.service.Request;
+import ch.obermuhlner.rpc.service.Response;
+import ch.obermuhlner.rpc.transport.ClientTransport;
+import ch.obermuhlner.rpc.transport.balancer.CircuitBreaker.Permit;
+
+/**
+ * Client transport layer that protects a single endpoint with a {@link CircuitBreaker}.
+ *
+ * While the circuit is open requests fail immediately with a {@link RpcCircuitOpenException} instead of waiting for a sick server.
+ * Endpoints of a {@link LoadBalancingClientTransport} that use this transport are skipped while their circuit is open,
+ * so that the requests go to the healthy endpoints.
+ *
+ * Cancel requests and the requests that continue a stream or {@link ch.obermuhlner.rpc.service.RpcChannel} of a permitted call are always sent and not counted.
+ * A response with a {@link RpcOverloadedException} counts as a failed call, because the server could not execute the request.
+ */
+public class CircuitBreakerClientTransport implements ClientTransport {
+
+	private final ClientTransport clientTransport;
+	private final CircuitBreaker circuitBreaker;
+
+	public CircuitBreakerClientTransport(ClientTransport clientTransport) {
+		this(clientTransport, new CircuitBreaker());
+	}
+
+	/**
+	 * Constructs a {@link CircuitBreakerClientTransport}.
+	 *
+	 * @param clientTransport the {@link ClientTransport} to send the requests
+	 * @param circuitBreaker the {@link CircuitBreaker} of the endpoint
+	 */
+	public CircuitBreakerClientTransport(ClientTransport clientTransport, CircuitBreaker circuitBreaker) {
+		this.clientTransport = clientTransport;
+		this.circuitBreaker = circuitBreaker;
+	}
+
+	public CircuitBreaker getCircuitBreaker() {
+		return circuitBreaker;
+	}
+
+	@Override
+	public CompletableFuture<Response> send(Request request) {
+		if (!request.execute || request.streamNext || request.streamUpload != null) {
+			return clientTransport.send(request);
+		}
+
+		Permit permit = acquire();
+		long startNanos = System.nanoTime();
+		CompletableFuture<Response> future;
+		try {
+			future = clientTransport.send(request);
+		} catch (RpcException e) {
+			permit.onCompleted(System.nanoTime() - startNanos, true);
+			throw e;
+		}
+
+		future.whenComplete((response, exception) -> permit.onCompleted(System.nanoTime() - startNanos, exception != null || isOverloaded(response)));
+		return future;
+	}
+
+	@Override
+	public List<CompletableFuture<Response>> sendBatch(BatchRequest batchRequest) {
+		Permit permit = acquire();
+		long startNanos = System.nanoTime();
+		List<CompletableFuture<Response>> futures;
+		try {
+			futures = clientTransport.sendBatch(batchRequest);
+		} catch (RpcException e) {
+			permit.onCompleted(System.nanoTime() - startNanos, true);
+			throw e;
+		}
+
+		// the whole batch counts as a single call
+		CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()]))
+			.whenComplete((result, exception) -> permit.onCompleted(System.nanoTime() - startNanos, exception != null || futures.stream().anyMatch(future -> isOverloaded(future.join()))));
+		return futures;
+	}
+
+	/**
+	 * Returns whether the server rejected the request because it is overloaded.
+	 * The exception of the {@link Response} is the local {@link RpcOverloadedException} or its remote {@link RpcOverloadedStruct}, depending on the transport.
+	 */
+	private static boolean isOverloaded(Response response) {
+		return response != null && (response.exception instanceof RpcOverloadedException || response.exception instanceof RpcOverloadedStruct);
+	}
+
+	@Override
+	public boolean isAlive() {
+		return clientTransport.isAlive();
+	}
+
+	private Permit acquire() {
+		Permit permit = circuitBreaker.tryAcquire();
+		if (permit == null) {
+			throw new RpcCircuitOpenException("Circuit open: " + circuitBreaker);
+		}
+		return permit;
+	}
+}
@@ -0,0 +1,119 @@
+package ch.obermuhlner.rpc.transport.balancer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import ch.obermuhlner.rpc.annotation.RpcShardKey;
+import ch.obermuhlner.rpc.meta.MetaDataService;
+import ch.obermuhlner.rpc.service.Request;
+
+/**
+ * {@link LoadBalancer} that routes calls with the same {@link RpcShardKey} argument to the same endpoint, using a consistent hash ring over the endpoint names.
+ *
+ * Every endpoint is placed on the ring many times (virtual nodes), so that the keys are evenly distributed
+ * and adding or removing an endpoint only moves the keys of this endpoint.
+ * The hash of the shard key value (a String, number or enum, see {@link RpcShardKey}) is independent of the JVM, so all clients route the same key to the same endpoint.
+ * A ring is built once for every set of endpoints, so that alternating endpoint lists (ejected endpoints, hedged calls) do not rebuild it.
+ *
+ * Requests of methods without shard key are distributed by a fallback {@link LoadBalancer}.
+ */
+public class ConsistentHashLoadBalancer implements LoadBalancer {
+
+	private static final int MAX_RINGS = 32;
+
+	private final MetaDataService metaDataService;
+	private final int virtualNodeCount;
+	private final LoadBalancer fallbackLoadBalancer;
+
+	private final Map<List<Endpoint>, Ring> rings = new ConcurrentHashMap<>();
+
+	public ConsistentHashLoadBalancer(MetaDataService metaDataService) {
+		this(metaDataService, 100, new LeastOutstandingLoadBalancer());
+	}
+
+	/**
+	 * Constructs a {@link ConsistentHashLoadBalancer}.
+	 *
+	 * @param metaDataService the {@link MetaDataService} that knows the {@link RpcShardKey} parameters of the services
+	 * @param virtualNodeCount the number of places of every endpoint on the hash ring
+	 * @param fallbackLoadBalancer the {@link LoadBalancer} for requests without shard key
+	 */
+	public ConsistentHashLoadBalancer(MetaDataService metaDataService, int virtualNodeCount, LoadBalancer fallbackLoadBalancer) {
+		if (virtualNodeCount < 1) {
+			throw new IllegalArgumentException("Illegal virtual node count: " + virtualNodeCount);
+		}
+
+		this.metaDataService = metaDataService;
+		this.virtualNodeCount = virtualNodeCount;
+		this.fallbackLoadBalancer = fallbackLoadBalancer;
+	}
+
+	@Override
+	public Endpoint select(List<Endpoint> endpoints, Request request) {
+		Object shardKey = metaDataService.getShardKey(request.serviceName, request.methodName, request.arguments);
+		if (shardKey == null) {
+			return fallbackLoadBalancer.select(endpoints, request);
+		}
+
+		return getRing(endpoints).select(hash(String.valueOf(shardKey)));
+	}
+
+	private Ring getRing(List<Endpoint> endpoints) {
+		// ejected endpoints are filtered into a new list for every call, so the rings are found by the endpoints in the list
+		Ring ring = rings.get(endpoints);
+		if (ring == null) {
+			if (rings.size() >= MAX_RINGS) {
+				// the endpoints have changed too often, forget the rings of the old endpoints
+				rings.clear();
+			}
+			ring = rings.computeIfAbsent(new ArrayList<>(endpoints), key -> new Ring(key, virtualNodeCount));
+		}
+		return ring;
+	}
+
+	/**
+	 * 64 bit FNV-1a hash of the UTF-8 bytes, followed by a final mix to spread similar strings over the whole ring.
+	 */
+	static long hash(String value) {
+		long hash = 0xcbf29ce484222325L;
+		for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+			hash ^= b & 0xff;
+			hash *= 0x100000001b3L;
+		}
+
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+	int getRingCount() {
+		return rings.size();
+	}
+
+	private static class Ring {
+		final TreeMap<Long, Endpoint> nodes = new TreeMap<>();
+
+		Ring(List<Endpoint> endpoints, int virtualNodeCount) {
+			for (Endpoint endpoint : endpoints) {
+				for (int i = 0; i < virtualNodeCount; i++) {
+					nodes.put(hash(endpoint.getName() + "#" + i), endpoint);
+				}
+			}
+		}
+
+		Endpoint select(long hash) {
+			Map.Entry<Long, Endpoint> entry = nodes.ceilingEntry(hash);
+			if (entry == null) {
+				entry = nodes.firstEntry();
+			}
+			return entry.getValue();
+		}
+	}
+}
@@ -0,0 +1,133 @@
+package ch.obermuhlner.rpc.transport.balancer;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ch.obermuhlner.rpc.exception.RpcException;
+import ch.obermuhlner.rpc.service.BatchRequest;
+import ch.obermuhlner.rpc.service.Request;
+import ch.obermuhlner.rpc.service.Response;
+import ch.obermuhlner.rpc.transport.ClientTransport;
+
+/**
+ * Server endpoint of a {@link LoadBalancingClientTransport}.
+ *
+ * Keeps track of the number of outstanding requests and of the average latency of the responses, which are used by the {@link LoadBalancer}s.
+ */
+public class Endpoint {
+
+	private static final double LATENCY_SMOOTHING = 0.1;
+
+	private final String name;
+	private final ClientTransport clientTransport;
+
+	private final AtomicInteger outstandingCount = new AtomicInteger();
+
+	private double averageLatencyNanos;
+
+	/**
+	 * Constructs an {@link Endpoint}.
+	 *
+	 * @param name the unique name of the endpoint, for example <code>host:port</code>
+	 * @param clientTransport the {@link ClientTransport} to send requests to the endpoint
+	 */
+	public Endpoint(String name, ClientTransport clientTransport) {
+		this.name = name;
+		this.clientTransport = clientTransport;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public ClientTransport getClientTransport() {
+		return clientTransport;
+	}
+
+	/**
+	 * Returns whether the endpoint accepts requests.
+	 *
+	 * Endpoints whose {@link ClientTransport} is not {@link ClientTransport#isAlive() alive}
+	 * and endpoints with a {@link CircuitBreakerClientTransport} whose circuit is open are not available.
+	 *
+	 * @return <code>true</code> if the endpoint is available
+	 */
+	public boolean isAvailable() {
+		if (!clientTransport.isAlive()) {
+			return false;
+		}
+		return !(clientTransport instanceof CircuitBreakerClientTransport) || ((CircuitBreakerClientTransport) clientTransport).getCircuitBreaker().isAvailable();
+	}
+
+	/**
+	 * Returns the number of requests sent to this endpoint that have not been answered yet.
+	 *
+	 * @return the outstanding count
+	 */
+	public int getOutstandingCount() {
+		return outstandingCount.get();
+	}
+
+	/**
+	 * Returns the exponentially weighted moving average of the latency of the responses.
+	 *
+	 * @return the average latency in nanoseconds, <code>0</code> if no response has been received yet
+	 */
+	public synchronized double getAverageLatencyNanos() {
+		return averageLatencyNanos;
+	}
+
+	CompletableFuture<Response> send(Request request) {
+		outstandingCount.incrementAndGet();
+		long startNanos = System.nanoTime();
+		CompletableFuture<Response> future;
+		try {
+			future = clientTransport.send(request);
+		} catch (RpcException e) {
+			outstandingCount.decrementAndGet();
+			throw e;
+		}
+
+		future.whenComplete((response, exception) -> completed(startNanos, exception));
+		return future;
+	}
+
+	List<CompletableFuture<Response>> sendBatch(BatchRequest batchRequest) {
+		int count = batchRequest.requests.size();
+		outstandingCount.addAndGet(count);
+		long startNanos = System.nanoTime();
+		List<CompletableFuture<Response>> futures;
+		try {
+			futures = clientTransport.sendBatch(batchRequest);
+		} catch (RpcException e) {
+			outstandingCount.addAndGet(-count);
+			throw e;
+		}
+
+		for (CompletableFuture<Response> future : futures) {
+			future.whenComplete((response, exception) -> completed(startNanos, exception));
+		}
+		return futures;
+	}
+
+	private void completed(long startNanos, Throwable exception) {
+		outstandingCount.decrementAndGet();
+		if (exception == null) {
+			updateLatency(System.nanoTime() - startNanos);
+		}
+	}
+
+	synchronized void updateLatency(long latencyNanos) {
+		if (averageLatencyNanos == 0) {
+			averageLatencyNanos = latencyNanos;
+		} else {
+			averageLatencyNanos += (latencyNanos - averageLatencyNanos) * LATENCY_SMOOTHING;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "Endpoint [name=" + name + ", outstandingCount=" + outstandingCount + "]";
+	}
+}
@@ -0,0 +1,52 @@
+package ch.obermuhlner.rpc.transport.balancer;
+
+import java.util.Arrays;
+
+/**
+ * Sliding window of the most recent latencies of a method, used to estimate a latency percentile.
+ *
+ * The percentile is recomputed only every few samples, so recording a sample is cheap.
+ */
+class LatencyWindow {
+
+	private static final int MIN_SAMPLES = 20;
+	private static final int UPDATE_INTERVAL = 50;
+
+	private final long[] samples;
+	private final double percentile;
+
+	private int count;
+	private int index;
+	private int samplesSinceUpdate;
+	private long percentileNanos = -1;
+
+	LatencyWindow(int size, double percentile) {
+		this.samples = new long[size];
+		this.percentile = percentile;
+	}
+
+	synchronized void record(long latencyNanos) {
+		samples[index] = latencyNanos;
+		index = (index + 1) % samples.length;
+		if (count < samples.length) {
+			count++;
+		}
+
+		samplesSinceUpdate++;
+		if (count >= MIN_SAMPLES && (percentileNanos < 0 || samplesSinceUpdate >= UPDATE_INTERVAL)) {
+			long[] sorted = Arrays.copyOf(samples, count);
+			Arrays.sort(sorted);
+			percentileNanos = sorted[Math.min(count - 1, (int) (percentile * count))];
+			samplesSinceUpdate = 0;
+		}
+	}
+
+	/**
+	 * Returns the latency percentile.
+	 *
+	 * @return the latency percentile in nanoseconds, or <code>-1</code> if there are not enough samples yet
+	 */
+	synchronized long getPercentileNanos() {
+		return percentileNanos;
+	}
+}
@@ -0,0 +1,27 @@
+package ch.obermuhlner.rpc.transport.balancer;
+
+import java.util.List;
+
+import ch.obermuhlner.rpc.service.Request;
+
+/**
+ * {@link LoadBalancer} that selects the endpoint with the fewest outstanding requests.
+ */
+public class LeastOutstandingLoadBalancer implements LoadBalancer {
+
+	@Override
+	public Endpoint select(List<Endpoint> endpoints, Request request) {
+		Endpoint result = null;
+		int resultOutstandingCount = Integer.MAX_VALUE;
+
+		for (Endpoint endpoint : endpoints) {
+			int outstandingCount = endpoint.getOutstandingCount();
+			if (outstandingCount < resultOutstandingCount) {
+				result = endpoint;
+				resultOutstandingCount = outstandingCount;
+			}
+		}
+
+		return result;
+	}
+}
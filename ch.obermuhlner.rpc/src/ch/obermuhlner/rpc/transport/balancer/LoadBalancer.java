@@ -0,0 +1,20 @@
+package ch.obermuhlner.rpc.transport.balancer;
+
+import java.util.List;
+
+import ch.obermuhlner.rpc.service.Request;
+
+/**
+ * Strategy of a {@link LoadBalancingClientTransport} to select the {@link Endpoint} of a request.
+ */
+public interface LoadBalancer {
+
+	/**
+	 * Selects the {@link Endpoint} to send a request to.
+	 *
+	 * @param endpoints the available {@link Endpoint}s, never empty
+	 * @param request the {@link Request} to send
+	 * @return the selected {@link Endpoint}
+	 */
+	Endpoint select(List<Endpoint> endpoints, Request request);
+}
@@ -0,0 +1,543 @@
+package ch.obermuhlner.rpc.transport.balancer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import ch.obermuhlner.rpc.annotation.RpcMethod;
+import ch.obermuhlner.rpc.exception.RpcException;
+import ch.obermuhlner.rpc.meta.MetaDataService;
+import ch.obermuhlner.rpc.service.BatchRequest;
+import ch.obermuhlner.rpc.service.Request;
+import ch.obermuhlner.rpc.service.Response;
+import ch.obermuhlner.rpc.service.RetryBudget;
+import ch.obermuhlner.rpc.transport.ClientTransport;
+import ch.obermuhlner.rpc.transport.HashedTimerWheel;
+import ch.obermuhlner.rpc.transport.HashedTimerWheel.Timeout;
+
+/**
+ * Client transport layer that distributes the requests over several server endpoints with a {@link LoadBalancer}.
+ *
+ * Endpoints can be added and removed at any time.
+ * Cancel requests are sent to the same endpoint as the request they cancel,
+ * and the requests for the next chunks of a streamed result to the endpoint that streams it.
+ *
+ * Calls of idempotent methods (see {@link RpcMethod#idempotent()}) can be hedged:
+ * if the first endpoint has not answered within the configured latency percentile of the method,
+ * the same request is sent to a second endpoint.
+ * The first successful response wins and the other request is cancelled.
+ * This cuts the tail latency caused by single slow servers (for example during a garbage collection) at the cost of a few percent more requests.
+ * The percentile is measured from the start of the calls, so hedging does not lower it.
+ * A {@link RetryBudget} limits the hedged requests to a fraction of the calls, so that a slow cluster is not flooded with additional requests.
+ */
+public class LoadBalancingClientTransport implements ClientTransport {
+
+	private static final int LATENCY_WINDOW_SIZE = 1000;
+
+	private final LoadBalancer loadBalancer;
+	private final MetaDataService metaDataService;
+	private final double hedgePercentile;
+	private final RetryBudget hedgeBudget;
+
+	private volatile List<Endpoint> endpoints = Collections.emptyList();
+
+	private final Map<String, Endpoint> pendingRequestEndpoints = new ConcurrentHashMap<>();
+
+	private final Map<String, Endpoint> streamEndpoints = new ConcurrentHashMap<>();
+
+	private final Map<String, HedgedCall> pendingHedgedCalls = new ConcurrentHashMap<>();
+
+	private final Map<String, LatencyWindow> methodLatencies = new ConcurrentHashMap<>();
+
+	public LoadBalancingClientTransport() {
+		this(new LeastOutstandingLoadBalancer());
+	}
+
+	/**
+	 * Constructs a {@link LoadBalancingClientTransport} without endpoints.
+	 *
+	 * @param loadBalancer the {@link LoadBalancer} to select the endpoint of every request
+	 */
+	public LoadBalancingClientTransport(LoadBalancer loadBalancer) {
+		this(loadBalancer, null, 0);
+	}
+
+	/**
+	 * Constructs a {@link LoadBalancingClientTransport} without endpoints that hedges the calls of idempotent methods.
+	 *
+	 * @param loadBalancer the {@link LoadBalancer} to select the endpoint of every request
+	 * @param metaDataService the {@link MetaDataService} that knows which methods are idempotent
+	 * @param hedgePercentile the latency percentile (for example 0.95) of a method after which a hedged request is sent
+	 */
+	public LoadBalancingClientTransport(LoadBalancer loadBalancer, MetaDataService metaDataService, double hedgePercentile) {
+		this(loadBalancer, metaDataService, hedgePercentile, new RetryBudget());
+	}
+
+	/**
+	 * Constructs a {@link LoadBalancingClientTransport} without endpoints that hedges the calls of idempotent methods within a budget.
+	 *
+	 * @param loadBalancer the {@link LoadBalancer} to select the endpoint of every request
+	 * @param metaDataService the {@link MetaDataService} that knows which methods are idempotent
+	 * @param hedgePercentile the latency percentile (for example 0.95) of a method after which a hedged request is sent
+	 * @param hedgeBudget the {@link RetryBudget} that limits the hedged requests to a fraction of the hedged calls
+	 */
+	public LoadBalancingClientTransport(LoadBalancer loadBalancer, MetaDataService metaDataService, double hedgePercentile, RetryBudget hedgeBudget) {
+		if (metaDataService != null && (hedgePercentile <= 0 || hedgePercentile >= 1)) {
+			throw new IllegalArgumentException("Illegal hedge percentile: " + hedgePercentile);
+		}
+
+		this.loadBalancer = loadBalancer;
+		this.metaDataService = metaDataService;
+		this.hedgePercentile = hedgePercentile;
+		this.hedgeBudget = hedgeBudget;
+	}
+
+	/**
+	 * Adds an endpoint.
+	 *
+	 * @param name the unique name of the endpoint, for example <code>host:port</code>
+	 * @param clientTransport the {@link ClientTransport} to send requests to the endpoint
+	 * @return the added {@link Endpoint}
+	 */
+	public synchronized Endpoint addEndpoint(String name, ClientTransport clientTransport) {
+		if (findEndpoint(name) != null) {
+			throw new IllegalArgumentException("Endpoint already exists: " + name);
+		}
+
+		Endpoint endpoint = new Endpoint(name, clientTransport);
+		List<Endpoint> newEndpoints = new ArrayList<>(endpoints);
+		newEndpoints.add(endpoint);
+		endpoints = Collections.unmodifiableList(newEndpoints);
+		return endpoint;
+	}
+
+	/**
+	 * Removes an endpoint.
+	 *
+	 * Outstanding requests to the endpoint are not affected, the caller is responsible to close its {@link ClientTransport} when they are done.
+	 *
+	 * @param name the name of the endpoint
+	 * @return the removed {@link Endpoint}, or <code>null</code> if no endpoint with this name exists
+	 */
+	public synchronized Endpoint removeEndpoint(String name) {
+		Endpoint endpoint = findEndpoint(name);
+		if (endpoint != null) {
+			List<Endpoint> newEndpoints = new ArrayList<>(endpoints);
+			newEndpoints.remove(endpoint);
+			endpoints = Collections.unmodifiableList(newEndpoints);
+		}
+		return endpoint;
+	}
+
+	/**
+	 * Returns the current endpoints.
+	 *
+	 * @return the unmodifiable list of {@link Endpoint}s
+	 */
+	public List<Endpoint> getEndpoints() {
+		return endpoints;
+	}
+
+	/**
+	 * Returns whether at least one endpoint is {@link Endpoint#isAvailable() available}.
+	 */
+	@Override
+	public boolean isAlive() {
+		for (Endpoint endpoint : endpoints) {
+			if (endpoint.isAvailable()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public CompletableFuture<Response> send(Request request) {
+		if (!request.execute) {
+			HedgedCall hedgedCall = pendingHedgedCalls.get(request.requestId);
+			if (hedgedCall != null) {
+				hedgedCall.cancelAll();
+				return CompletableFuture.completedFuture(new Response());
+			}
+
+			Endpoint endpoint = pendingRequestEndpoints.get(request.requestId);
+			if (endpoint == null) {
+				endpoint = streamEndpoints.remove(request.requestId);
+			}
+			if (endpoint == null) {
+				// already answered - nothing to cancel
+				return CompletableFuture.completedFuture(new Response());
+			}
+			return endpoint.getClientTransport().send(request);
+		}
+
+		if (request.streamUpload != null) {
+			// elements of a channel argument go to the endpoint that executes the call, their responses wait for the consumer and are not measured
+			String callRequestId = request.requestId.substring(0, request.requestId.length() - request.streamUpload.length() - 1);
+			HedgedCall hedgedCall = pendingHedgedCalls.get(callRequestId);
+			Endpoint endpoint = hedgedCall != null ? hedgedCall.pin() : pendingRequestEndpoints.get(callRequestId);
+			if (endpoint == null) {
+				endpoint = streamEndpoints.get(callRequestId);
+			}
+			if (endpoint == null) {
+				throw new RpcException("No pending call: " + callRequestId);
+			}
+			return endpoint.getClientTransport().send(request);
+		}
+
+		if (metaDataService != null && !request.streamNext && !request.oneWay && metaDataService.isIdempotent(request.serviceName, request.methodName)) {
+			return sendHedged(request);
+		}
+
+		Endpoint endpoint = select(request);
+		pendingRequestEndpoints.put(request.requestId, endpoint);
+		CompletableFuture<Response> future;
+		try {
+			future = endpoint.send(request);
+		} catch (RuntimeException e) {
+			pendingRequestEndpoints.remove(request.requestId);
+			throw e;
+		}
+		return track(request.requestId, endpoint, future);
+	}
+
+	/**
+	 * Returns the latency percentile after which a hedged request is sent for the specified method.
+	 *
+	 * @param serviceName the name of the service
+	 * @param methodName the name of the method
+	 * @return the hedge delay in nanoseconds, or <code>-1</code> if not enough calls have been measured yet
+	 */
+	public long getHedgeDelayNanos(String serviceName, String methodName) {
+		LatencyWindow latencyWindow = methodLatencies.get(serviceName + "#" + methodName);
+		return latencyWindow == null ? -1 : latencyWindow.getPercentileNanos();
+	}
+
+	/**
+	 * Returns the {@link RetryBudget} that limits the hedged requests.
+	 *
+	 * @return the hedge budget
+	 */
+	public RetryBudget getHedgeBudget() {
+		return hedgeBudget;
+	}
+
+	private CompletableFuture<Response> sendHedged(Request request) {
+		LatencyWindow latencyWindow = methodLatencies.computeIfAbsent(request.serviceName + "#" + request.methodName, key -> new LatencyWindow(LATENCY_WINDOW_SIZE, hedgePercentile));
+		hedgeBudget.deposit();
+
+		Endpoint endpoint = select(request);
+
+		HedgedCall hedgedCall = new HedgedCall(request, latencyWindow);
+		pendingHedgedCalls.put(request.requestId, hedgedCall);
+		hedgedCall.future.whenComplete((response, exception) -> pendingHedgedCalls.remove(request.requestId));
+
+		try {
+			hedgedCall.send(endpoint, request);
+		} catch (RuntimeException e) {
+			pendingHedgedCalls.remove(request.requestId);
+			throw e;
+		}
+
+		long hedgeDelayNanos = latencyWindow.getPercentileNanos();
+		if (hedgeDelayNanos >= 0) {
+			hedgedCall.hedgeTimeout = HashedTimerWheel.getDefault().schedule(
+					// sending may block, so it must not run in the timer thread
+					() -> ForkJoinPool.commonPool().execute(() -> hedgedCall.hedge()),
+					hedgeDelayNanos,
+					TimeUnit.NANOSECONDS);
+		}
+
+		return hedgedCall.future;
+	}
+
+	/**
+	 * Selects the endpoint of every request of a {@link BatchRequest} and sends the requests for the same endpoint together in a smaller batch.
+	 */
+	@Override
+	public List<CompletableFuture<Response>> sendBatch(BatchRequest batchRequest) {
+		Map<Endpoint, List<Integer>> endpointRequestIndexes = new LinkedHashMap<>();
+		for (int i = 0; i < batchRequest.requests.size(); i++) {
+			Endpoint endpoint = select(batchRequest.requests.get(i));
+			endpointRequestIndexes.computeIfAbsent(endpoint, key -> new ArrayList<>()).add(i);
+		}
+
+		List<CompletableFuture<Response>> futures = new ArrayList<>(Collections.nCopies(batchRequest.requests.size(), null));
+		for (Map.Entry<Endpoint, List<Integer>> entry : endpointRequestIndexes.entrySet()) {
+			Endpoint endpoint = entry.getKey();
+			List<Integer> requestIndexes = entry.getValue();
+
+			BatchRequest endpointBatchRequest = new BatchRequest();
+			endpointBatchRequest.requests = new ArrayList<>();
+			for (int index : requestIndexes) {
+				Request request = batchRequest.requests.get(index);
+				endpointBatchRequest.requests.add(request);
+				pendingRequestEndpoints.put(request.requestId, endpoint);
+			}
+			endpointBatchRequest.parallel = batchRequest.parallel;
+
+			List<CompletableFuture<Response>> endpointFutures;
+			try {
+				endpointFutures = endpoint.sendBatch(endpointBatchRequest);
+			} catch (RpcException e) {
+				// the other endpoints may already have received their requests, so the failure is reported per request
+				endpointFutures = new ArrayList<>();
+				for (int i = 0; i < requestIndexes.size(); i++) {
+					CompletableFuture<Response> future = new CompletableFuture<>();
+					future.completeExceptionally(e);
+					endpointFutures.add(future);
+				}
+			}
+
+			for (int i = 0; i < requestIndexes.size(); i++) {
+				String requestId = endpointBatchRequest.requests.get(i).requestId;
+				CompletableFuture<Response> future = endpointFutures.get(i);
+				futures.set(requestIndexes.get(i), track(requestId, endpoint, future));
+			}
+		}
+		return futures;
+	}
+
+	/**
+	 * Forgets the endpoint of a request when its response arrives, unless the response is a chunk of a streamed result.
+	 *
+	 * The returned future completes only after the bookkeeping, so that a request for the next chunk sent by the caller finds the endpoint.
+	 */
+	private CompletableFuture<Response> track(String requestId, Endpoint endpoint, CompletableFuture<Response> future) {
+		CompletableFuture<Response> trackedFuture = new CompletableFuture<>();
+		future.whenComplete((response, exception) -> {
+			pendingRequestEndpoints.remove(requestId);
+			if (exception == null && response.streamOpen) {
+				streamEndpoints.put(requestId, endpoint);
+			} else {
+				streamEndpoints.remove(requestId);
+			}
+
+			if (exception != null) {
+				trackedFuture.completeExceptionally(exception);
+			} else {
+				trackedFuture.complete(response);
+			}
+		});
+		return trackedFuture;
+	}
+
+	private Endpoint select(Request request) {
+		if (request.streamNext) {
+			Endpoint endpoint = streamEndpoints.get(request.requestId);
+			if (endpoint == null) {
+				throw new RpcException("No open stream: " + request.requestId);
+			}
+			return endpoint;
+		}
+
+		List<Endpoint> currentEndpoints = endpoints;
+		if (currentEndpoints.isEmpty()) {
+			throw new RpcException("No endpoints available");
+		}
+		return loadBalancer.select(availableEndpoints(currentEndpoints), request);
+	}
+
+	/**
+	 * Returns the endpoints that are not ejected by their circuit breaker.
+	 *
+	 * If all endpoints are ejected, all of them are returned, so that the requests fail fast.
+	 */
+	private static List<Endpoint> availableEndpoints(List<Endpoint> endpoints) {
+		List<Endpoint> availableEndpoints = null;
+		for (int i = 0; i < endpoints.size(); i++) {
+			if (!endpoints.get(i).isAvailable()) {
+				if (availableEndpoints == null) {
+					availableEndpoints = new ArrayList<>(endpoints.subList(0, i));
+				}
+			} else if (availableEndpoints != null) {
+				availableEndpoints.add(endpoints.get(i));
+			}
+		}
+
+		if (availableEndpoints == null) {
+			return endpoints;
+		}
+		return availableEndpoints.isEmpty() ? endpoints : availableEndpoints;
+	}
+
+	/**
+	 * A call of an idempotent method that is sent to one or two endpoints.
+	 *
+	 * A call with {@link ch.obermuhlner.rpc.service.RpcChannel} arguments is pinned to its first endpoint as soon as the first element is sent,
+	 * because the elements cannot be sent again to another endpoint.
+	 */
+	private class HedgedCall {
+		final Request request;
+		final LatencyWindow latencyWindow;
+		final long startNanos = System.nanoTime();
+		final CompletableFuture<Response> future = new CompletableFuture<>();
+
+		final Map<Endpoint, CompletableFuture<Response>> attempts = new LinkedHashMap<>();
+		Timeout hedgeTimeout;
+		boolean hedged;
+		boolean pinned;
+		Throwable lastFailure;
+
+		HedgedCall(Request request, LatencyWindow latencyWindow) {
+			this.request = request;
+			this.latencyWindow = latencyWindow;
+		}
+
+		void hedge() {
+			List<Endpoint> otherEndpoints;
+			synchronized (this) {
+				if (future.isDone() || hedged || pinned) {
+					return;
+				}
+				hedged = true;
+				otherEndpoints = new ArrayList<>(endpoints);
+				otherEndpoints.removeAll(attempts.keySet());
+			}
+
+			try {
+				if (otherEndpoints.isEmpty()) {
+					throw new RpcException("No other endpoint");
+				}
+				long remainingMillis = request.timeout - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+				if (request.timeout > 0 && remainingMillis <= 0) {
+					throw new RpcException("No time left for a hedged request");
+				}
+				if (!hedgeBudget.tryWithdraw()) {
+					throw new RpcException("Hedge budget exhausted");
+				}
+				Endpoint endpoint = loadBalancer.select(availableEndpoints(otherEndpoints), request);
+				send(endpoint, copy(request, request.timeout > 0 ? remainingMillis : 0));
+			} catch (RuntimeException e) {
+				synchronized (this) {
+					if (lastFailure == null) {
+						// the first request is still running
+						return;
+					}
+				}
+				future.completeExceptionally(lastFailure);
+			}
+		}
+
+		/**
+		 * Stops hedging the call and returns the endpoint of the first request.
+		 */
+		synchronized Endpoint pin() {
+			pinned = true;
+			if (hedgeTimeout != null) {
+				hedgeTimeout.cancel();
+			}
+			return attempts.keySet().iterator().next();
+		}
+
+		void send(Endpoint endpoint, Request attemptRequest) {
+			CompletableFuture<Response> attempt = endpoint.send(attemptRequest);
+			synchronized (this) {
+				attempts.put(endpoint, attempt);
+			}
+			attempt.whenComplete((response, exception) -> completed(endpoint, response, exception));
+		}
+
+		private void completed(Endpoint endpoint, Response response, Throwable exception) {
+			List<Endpoint> losers = new ArrayList<>();
+			synchronized (this) {
+				if (future.isDone()) {
+					return;
+				}
+
+				if (exception != null) {
+					lastFailure = exception;
+					boolean otherAttemptPending = attempts.values().stream().anyMatch(attempt -> !attempt.isDone());
+					if (otherAttemptPending) {
+						return;
+					}
+					if (!hedged && !pinned) {
+						// no reason to wait for the hedge delay, try another endpoint now
+						if (hedgeTimeout != null) {
+							hedgeTimeout.cancel();
+						}
+						ForkJoinPool.commonPool().execute(() -> hedge());
+						return;
+					}
+					future.completeExceptionally(lastFailure);
+					return;
+				}
+
+				// the latency of the first request, which is at least the time until a hedged request won -
+				// recording only the faster hedged requests would lower the percentile and hedge more and more calls
+				latencyWindow.record(System.nanoTime() - startNanos);
+				for (Map.Entry<Endpoint, CompletableFuture<Response>> entry : attempts.entrySet()) {
+					if (entry.getKey() != endpoint && !entry.getValue().isDone()) {
+						losers.add(entry.getKey());
+					}
+				}
+			}
+
+			if (hedgeTimeout != null) {
+				hedgeTimeout.cancel();
+			}
+			if (response.streamOpen) {
+				streamEndpoints.put(request.requestId, endpoint);
+			}
+			future.complete(response);
+			for (Endpoint loser : losers) {
+				cancel(loser);
+			}
+		}
+
+		void cancelAll() {
+			List<Endpoint> attemptedEndpoints;
+			synchronized (this) {
+				if (hedgeTimeout != null) {
+					hedgeTimeout.cancel();
+				}
+				attemptedEndpoints = new ArrayList<>(attempts.keySet());
+			}
+			future.cancel(false);
+			for (Endpoint endpoint : attemptedEndpoints) {
+				cancel(endpoint);
+			}
+		}
+
+		private void cancel(Endpoint endpoint) {
+			Request cancelRequest = new Request();
+			cancelRequest.serviceName = request.serviceName;
+			cancelRequest.methodName = request.methodName;
+			cancelRequest.execute = false;
+			cancelRequest.requestId = request.requestId;
+			try {
+				endpoint.getClientTransport().send(cancelRequest);
+			} catch (RpcException e) {
+				// endpoint not reachable - nothing to cancel
+			}
+		}
+	}
+
+	private static Request copy(Request request, long timeout) {
+		Request copy = new Request();
+		copy.serviceName = request.serviceName;
+		copy.methodName = request.methodName;
+		copy.execute = request.execute;
+		copy.arguments = request.arguments;
+		copy.session = request.session;
+		copy.requestId = request.requestId;
+		copy.timeout = timeout;
+		copy.streamCredits = request.streamCredits;
+		return copy;
+	}
+
+	private Endpoint findEndpoint(String name) {
+		for (Endpoint endpoint : endpoints) {
+			if (endpoint.getName().equals(name)) {
+				return endpoint;
+			}
+		}
+		return null;
+	}
+}
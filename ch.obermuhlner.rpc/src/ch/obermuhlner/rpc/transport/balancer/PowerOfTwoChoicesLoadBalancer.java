@@ -0,0 +1,40 @@
+package ch.obermuhlner.rpc.transport.balancer;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import ch.obermuhlner.rpc.service.Request;
+
+/**
+ * {@link LoadBalancer} that picks two random endpoints and selects the one with the lower expected latency.
+ *
+ * The expected latency of an endpoint is its average latency multiplied by the number of outstanding requests (plus one for the new request).
+ * Comparing only two random endpoints avoids that all clients rush to the same fastest endpoint.
+ */
+public class PowerOfTwoChoicesLoadBalancer implements LoadBalancer {
+
+	@Override
+	public Endpoint select(List<Endpoint> endpoints, Request request) {
+		int size = endpoints.size();
+		if (size == 1) {
+			return endpoints.get(0);
+		}
+
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		int index1 = random.nextInt(size);
+		int index2 = random.nextInt(size - 1);
+		if (index2 >= index1) {
+			index2++;
+		}
+
+		Endpoint endpoint1 = endpoints.get(index1);
+		Endpoint endpoint2 = endpoints.get(index2);
+		return cost(endpoint2) < cost(endpoint1) ? endpoint2 : endpoint1;
+	}
+
+	private static double cost(Endpoint endpoint) {
+		// endpoints without latency samples yet are treated as fast, so that they get a chance
+		double latency = Math.max(1, endpoint.getAverageLatencyNanos());
+		return latency * (endpoint.getOutstandingCount() + 1);
+	}
+}
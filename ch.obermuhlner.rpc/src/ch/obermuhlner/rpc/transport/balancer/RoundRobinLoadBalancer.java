@@ -0,0 +1,20 @@
+package ch.obermuhlner.rpc.transport.balancer;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ch.obermuhlner.rpc.service.Request;
+
+/**
+ * {@link LoadBalancer} that selects the endpoints one after the other.
+ */
+public class RoundRobinLoadBalancer implements LoadBalancer {
+
+	private final AtomicInteger counter = new AtomicInteger();
+
+	@Override
+	public Endpoint select(List<Endpoint> endpoints, Request request) {
+		int index = (counter.getAndIncrement() & Integer.MAX_VALUE) % endpoints.size();
+		return endpoints.get(index);
+	}
+}
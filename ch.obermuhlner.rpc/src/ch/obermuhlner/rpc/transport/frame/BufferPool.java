@@ -0,0 +1,142 @@
+package ch.obermuhlner.rpc.transport.frame;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of heap and direct {@link ByteBuffer}s.
+ *
+ * Buffers are pooled in power of two size classes between {@link #MIN_POOLED_CAPACITY} and the maximum pooled capacity.
+ * Larger buffers are allocated on demand and dropped when released.
+ */
+public class BufferPool {
+
+	public static final int MIN_POOLED_CAPACITY = 1024;
+
+	public static final int DEFAULT_MAX_POOLED_CAPACITY = 1024 * 1024;
+
+	public static final int DEFAULT_MAX_BUFFERS_PER_SIZE = 64;
+
+	private static final BufferPool DEFAULT = new BufferPool(DEFAULT_MAX_POOLED_CAPACITY, DEFAULT_MAX_BUFFERS_PER_SIZE);
+
+	private final int maxPooledCapacity;
+	private final int maxBuffersPerSize;
+
+	private final SizeClass[] heapSizeClasses;
+	private final SizeClass[] directSizeClasses;
+
+	/**
+	 * Constructs a {@link BufferPool}.
+	 *
+	 * @param maxPooledCapacity the capacity of the largest pooled buffers, larger buffers are not pooled
+	 * @param maxBuffersPerSize the maximum number of buffers pooled per size class
+	 */
+	public BufferPool(int maxPooledCapacity, int maxBuffersPerSize) {
+		this.maxPooledCapacity = roundUpToPowerOfTwo(Math.max(maxPooledCapacity, MIN_POOLED_CAPACITY));
+		this.maxBuffersPerSize = maxBuffersPerSize;
+
+		int sizeClassCount = sizeClassIndex(this.maxPooledCapacity) + 1;
+		heapSizeClasses = new SizeClass[sizeClassCount];
+		directSizeClasses = new SizeClass[sizeClassCount];
+		for (int i = 0; i < sizeClassCount; i++) {
+			heapSizeClasses[i] = new SizeClass();
+			directSizeClasses[i] = new SizeClass();
+		}
+	}
+
+	/**
+	 * Returns the {@link BufferPool} shared by all transports that do not specify their own.
+	 *
+	 * @return the default {@link BufferPool}
+	 */
+	public static BufferPool getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * Acquires a cleared heap buffer with at least the specified capacity.
+	 *
+	 * @param minCapacity the minimum capacity
+	 * @return the acquired buffer, to be {@link #release(ByteBuffer) released} after use
+	 */
+	public ByteBuffer acquireHeap(int minCapacity) {
+		return acquire(minCapacity, false);
+	}
+
+	/**
+	 * Acquires a cleared direct buffer with at least the specified capacity.
+	 *
+	 * @param minCapacity the minimum capacity
+	 * @return the acquired buffer, to be {@link #release(ByteBuffer) released} after use
+	 */
+	public ByteBuffer acquireDirect(int minCapacity) {
+		return acquire(minCapacity, true);
+	}
+
+	public ByteBuffer acquire(int minCapacity, boolean direct) {
+		if (minCapacity > maxPooledCapacity) {
+			return allocate(minCapacity, direct);
+		}
+
+		int capacity = roundUpToPowerOfTwo(Math.max(minCapacity, MIN_POOLED_CAPACITY));
+		SizeClass sizeClass = sizeClasses(direct)[sizeClassIndex(capacity)];
+
+		ByteBuffer buffer = sizeClass.buffers.poll();
+		if (buffer == null) {
+			return allocate(capacity, direct);
+		}
+
+		sizeClass.count.decrementAndGet();
+		buffer.clear();
+		return buffer;
+	}
+
+	/**
+	 * Releases a buffer back into the pool.
+	 *
+	 * The buffer must not be used after it was released.
+	 *
+	 * @param buffer the buffer to release, or <code>null</code>
+	 */
+	public void release(ByteBuffer buffer) {
+		if (buffer == null) {
+			return;
+		}
+
+		int capacity = buffer.capacity();
+		if (capacity < MIN_POOLED_CAPACITY || capacity > maxPooledCapacity || Integer.bitCount(capacity) != 1) {
+			return;
+		}
+
+		SizeClass sizeClass = sizeClasses(buffer.isDirect())[sizeClassIndex(capacity)];
+		if (sizeClass.count.incrementAndGet() > maxBuffersPerSize) {
+			sizeClass.count.decrementAndGet();
+			return;
+		}
+		sizeClass.buffers.add(buffer);
+	}
+
+	private SizeClass[] sizeClasses(boolean direct) {
+		return direct ? directSizeClasses : heapSizeClasses;
+	}
+
+	private static ByteBuffer allocate(int capacity, boolean direct) {
+		return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+	}
+
+	private static int sizeClassIndex(int capacity) {
+		return Integer.numberOfTrailingZeros(capacity) - Integer.numberOfTrailingZeros(MIN_POOLED_CAPACITY);
+	}
+
+	private static int roundUpToPowerOfTwo(int value) {
+		int highestOneBit = Integer.highestOneBit(value);
+		return highestOneBit == value ? value : highestOneBit << 1;
+	}
+
+	private static class SizeClass {
+		final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+		final AtomicInteger count = new AtomicInteger();
+	}
+}
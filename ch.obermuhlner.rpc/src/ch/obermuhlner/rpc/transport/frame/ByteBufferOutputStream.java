@@ -0,0 +1,87 @@
+package ch.obermuhlner.rpc.transport.frame;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import ch.obermuhlner.rpc.exception.RpcException;
+
+/**
+ * {@link OutputStream} that writes into a {@link ByteBuffer} acquired from a {@link BufferPool}, growing it as needed up to a maximum size.
+ */
+public class ByteBufferOutputStream extends OutputStream {
+
+	private final BufferPool bufferPool;
+
+	private final int maxSize;
+
+	private ByteBuffer buffer;
+
+	public ByteBufferOutputStream(BufferPool bufferPool, int initialCapacity, boolean direct) {
+		this(bufferPool, initialCapacity, Integer.MAX_VALUE, direct);
+	}
+
+	/**
+	 * Constructs a {@link ByteBufferOutputStream}.
+	 *
+	 * @param bufferPool the {@link BufferPool} to acquire the buffers from
+	 * @param initialCapacity the initial capacity in bytes
+	 * @param maxSize the maximum number of bytes that may be written, writing more throws a {@link RpcException} before the buffer grows
+	 * @param direct <code>true</code> to write into direct buffers, <code>false</code> for heap buffers
+	 */
+	public ByteBufferOutputStream(BufferPool bufferPool, int initialCapacity, int maxSize, boolean direct) {
+		this.bufferPool = bufferPool;
+		this.maxSize = maxSize;
+
+		buffer = bufferPool.acquire(initialCapacity, direct);
+	}
+
+	@Override
+	public void write(int b) {
+		ensureRemaining(1);
+		buffer.put((byte) b);
+	}
+
+	@Override
+	public void write(byte[] data, int offset, int length) {
+		ensureRemaining(length);
+		buffer.put(data, offset, length);
+	}
+
+	/**
+	 * Returns the number of bytes written so far.
+	 *
+	 * @return the number of bytes
+	 */
+	public int size() {
+		return buffer.position();
+	}
+
+	/**
+	 * Returns the underlying buffer in write mode (the position is the number of bytes written).
+	 *
+	 * The returned buffer changes when the stream grows.
+	 *
+	 * @return the underlying buffer
+	 */
+	public ByteBuffer getBuffer() {
+		return buffer;
+	}
+
+	private void ensureRemaining(int length) {
+		long requiredCapacity = (long) buffer.position() + length;
+		if (requiredCapacity > maxSize) {
+			throw new RpcException("Size " + requiredCapacity + " exceeds maximum size " + maxSize);
+		}
+		if (buffer.remaining() >= length) {
+			return;
+		}
+
+		int newCapacity = (int) Math.max(requiredCapacity, Math.min(2L * buffer.capacity(), maxSize));
+
+		ByteBuffer newBuffer = bufferPool.acquire(newCapacity, buffer.isDirect());
+		buffer.flip();
+		newBuffer.put(buffer);
+		bufferPool.release(buffer);
+		buffer = newBuffer;
+	}
+}
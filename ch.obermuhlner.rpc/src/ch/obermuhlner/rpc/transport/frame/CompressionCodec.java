@@ -0,0 +1,41 @@
+package ch.obermuhlner.rpc.transport.frame;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import ch.obermuhlner.rpc.exception.RpcException;
+
+/**
+ * Compresses and decompresses the payload of frames.
+ *
+ * Implementations are looked up by name when client and server negotiate the compression of a connection, see {@link CompressionCodecs}.
+ * Additional implementations can be registered as {@link java.util.ServiceLoader} service providers.
+ * Implementations must be thread safe.
+ */
+public interface CompressionCodec {
+
+	/**
+	 * Returns the name that identifies this codec during the negotiation.
+	 *
+	 * @return the name
+	 */
+	String getName();
+
+	/**
+	 * Compresses the remaining bytes of the source buffer.
+	 *
+	 * @param source the buffer to compress
+	 * @param target the {@link OutputStream} to write the compressed bytes to
+	 */
+	void compress(ByteBuffer source, OutputStream target);
+
+	/**
+	 * Decompresses the remaining bytes of the source buffer.
+	 *
+	 * @param source the buffer to decompress
+	 * @param target the {@link OutputStream} to write the decompressed bytes to
+	 * @param maxSize the maximum number of decompressed bytes
+	 * @throws RpcException if the compressed data is corrupt or decompresses to more than the maximum size
+	 */
+	void decompress(ByteBuffer source, OutputStream target, int maxSize);
+}
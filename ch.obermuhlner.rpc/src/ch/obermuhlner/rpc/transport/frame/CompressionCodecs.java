@@ -0,0 +1,50 @@
+package ch.obermuhlner.rpc.transport.frame;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.ServiceLoader;
+
+/**
+ * Provides the available {@link CompressionCodec}s.
+ *
+ * The codecs registered as {@link ServiceLoader} service providers of {@link CompressionCodec} come first (typically faster codecs),
+ * followed by the {@link DeflateCompressionCodec} that is always available.
+ */
+public class CompressionCodecs {
+
+	private static final List<CompressionCodec> AVAILABLE = loadAvailable();
+
+	/**
+	 * Returns all available {@link CompressionCodec}s in the order of preference.
+	 *
+	 * @return the unmodifiable list of {@link CompressionCodec}s
+	 */
+	public static List<CompressionCodec> getAvailable() {
+		return AVAILABLE;
+	}
+
+	/**
+	 * Finds an available {@link CompressionCodec} by name.
+	 *
+	 * @param name the name of the codec
+	 * @return the {@link CompressionCodec}, or <code>null</code> if not available
+	 */
+	public static CompressionCodec find(String name) {
+		for (CompressionCodec compressionCodec : AVAILABLE) {
+			if (compressionCodec.getName().equals(name)) {
+				return compressionCodec;
+			}
+		}
+		return null;
+	}
+
+	private static List<CompressionCodec> loadAvailable() {
+		List<CompressionCodec> result = new ArrayList<>();
+		for (CompressionCodec compressionCodec : ServiceLoader.load(CompressionCodec.class, CompressionCodec.class.getClassLoader())) {
+			result.add(compressionCodec);
+		}
+		result.add(new DeflateCompressionCodec());
+		return Collections.unmodifiableList(result);
+	}
+}
@@ -0,0 +1,140 @@
+package ch.obermuhlner.rpc.transport.frame;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import ch.obermuhlner.rpc.exception.RpcException;
+
+/**
+ * {@link CompressionCodec} using {@link Deflater} and {@link Inflater} from the JDK.
+ *
+ * The {@link Deflater}s and {@link Inflater}s hold native memory, so a few of them are pooled for reuse and the others are {@link Deflater#end() ended} after use.
+ */
+public class DeflateCompressionCodec implements CompressionCodec {
+
+	public static final String NAME = "deflate";
+
+	private static final int CHUNK_SIZE = 8 * 1024;
+
+	private static final int MAX_POOLED = 16;
+
+	private final Pool<Deflater> deflaters;
+	private final Pool<Inflater> inflaters = new Pool<>(() -> new Inflater(), inflater -> inflater.end());
+	private final ThreadLocal<byte[]> chunk = ThreadLocal.withInitial(() -> new byte[CHUNK_SIZE]);
+
+	public DeflateCompressionCodec() {
+		this(Deflater.BEST_SPEED);
+	}
+
+	/**
+	 * Constructs a {@link DeflateCompressionCodec}.
+	 *
+	 * @param level the compression level, see {@link Deflater#setLevel(int)}
+	 */
+	public DeflateCompressionCodec(int level) {
+		deflaters = new Pool<>(() -> new Deflater(level), deflater -> deflater.end());
+	}
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	public void compress(ByteBuffer source, OutputStream target) {
+		Deflater deflater = deflaters.acquire();
+		byte[] chunk = this.chunk.get();
+		try {
+			setInput(source, (data, offset, length) -> deflater.setInput(data, offset, length));
+			deflater.finish();
+			while (!deflater.finished()) {
+				int count = deflater.deflate(chunk);
+				target.write(chunk, 0, count);
+			}
+		} catch (IOException e) {
+			throw new RpcException(e);
+		} finally {
+			deflater.reset();
+			deflaters.release(deflater);
+		}
+	}
+
+	@Override
+	public void decompress(ByteBuffer source, OutputStream target, int maxSize) {
+		Inflater inflater = inflaters.acquire();
+		byte[] chunk = this.chunk.get();
+		try {
+			setInput(source, (data, offset, length) -> inflater.setInput(data, offset, length));
+			int size = 0;
+			while (!inflater.finished()) {
+				int count = inflater.inflate(chunk);
+				if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					throw new RpcException("Corrupt compressed frame");
+				}
+				size += count;
+				if (size > maxSize) {
+					throw new RpcException("Decompressed frame exceeds maximum frame size " + maxSize);
+				}
+				target.write(chunk, 0, count);
+			}
+		} catch (DataFormatException | IOException e) {
+			throw new RpcException(e);
+		} finally {
+			inflater.reset();
+			inflaters.release(inflater);
+		}
+	}
+
+	private static void setInput(ByteBuffer source, InputConsumer consumer) {
+		if (source.hasArray()) {
+			consumer.setInput(source.array(), source.arrayOffset() + source.position(), source.remaining());
+		} else {
+			byte[] data = new byte[source.remaining()];
+			source.duplicate().get(data);
+			consumer.setInput(data, 0, data.length);
+		}
+	}
+
+	private interface InputConsumer {
+		void setInput(byte[] data, int offset, int length);
+	}
+
+	private static class Pool<T> {
+		final Queue<T> pooled = new ConcurrentLinkedQueue<>();
+		final AtomicInteger count = new AtomicInteger();
+		final Supplier<T> factory;
+		final Consumer<T> end;
+
+		Pool(Supplier<T> factory, Consumer<T> end) {
+			this.factory = factory;
+			this.end = end;
+		}
+
+		T acquire() {
+			T element = pooled.poll();
+			if (element == null) {
+				return factory.get();
+			}
+			count.decrementAndGet();
+			return element;
+		}
+
+		void release(T element) {
+			if (count.incrementAndGet() > MAX_POOLED) {
+				count.decrementAndGet();
+				end.accept(element);
+				return;
+			}
+			pooled.add(element);
+		}
+	}
+}
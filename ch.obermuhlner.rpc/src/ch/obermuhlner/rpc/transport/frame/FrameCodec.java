@@ -0,0 +1,406 @@
+package ch.obermuhlner.rpc.transport.frame;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import ch.obermuhlner.rpc.exception.RpcException;
+import ch.obermuhlner.rpc.protocol.Protocol;
+import ch.obermuhlner.rpc.service.Handshake;
+
+/**
+ * Encodes messages into length prefixed frames and decodes them again, using pooled {@link ByteBuffer}s from a {@link BufferPool}.
+ *
+ * A frame consists of the payload size as a 4 byte big endian integer, followed by the payload serialized with the {@link Protocol}.
+ * Frames larger than the maximum frame size are rejected on both sides.
+ *
+ * All transports share this codec, so that they use the same wire format.
+ *
+ * A codec constructed with {@link CompressionCodec}s offers them to the other side of a persistent connection in a {@link Handshake}.
+ * Once both sides agreed on a {@link CompressionCodec}, the connection switches to the {@link #negotiate(Handshake) negotiated} codec,
+ * which compresses the payloads of all frames larger than the compression threshold.
+ * The highest bit of the size marks a compressed payload.
+ */
+public class FrameCodec {
+
+	public static final int HEADER_SIZE = 4;
+
+	public static final int DEFAULT_MAX_FRAME_SIZE = 64 * 1024 * 1024;
+
+	public static final int DEFAULT_COMPRESSION_THRESHOLD = 4 * 1024;
+
+	private static final int INITIAL_ENCODE_CAPACITY = 4 * 1024;
+
+	private static final int COMPRESSED_FLAG = 0x80000000;
+
+	private final Protocol<Object> protocol;
+	private final BufferPool bufferPool;
+	private final int maxFrameSize;
+
+	private final List<CompressionCodec> compressionCodecs;
+	private final int compressionThreshold;
+	private final CompressionCodec compressionCodec;
+
+	public FrameCodec(Protocol<Object> protocol) {
+		this(protocol, BufferPool.getDefault(), DEFAULT_MAX_FRAME_SIZE);
+	}
+
+	/**
+	 * Constructs a {@link FrameCodec} without compression.
+	 *
+	 * @param protocol the {@link Protocol} to serialize the payload
+	 * @param bufferPool the {@link BufferPool} to acquire the buffers from
+	 * @param maxFrameSize the maximum payload size in bytes
+	 */
+	public FrameCodec(Protocol<Object> protocol, BufferPool bufferPool, int maxFrameSize) {
+		this(protocol, bufferPool, maxFrameSize, Collections.emptyList(), 0);
+	}
+
+	/**
+	 * Constructs a {@link FrameCodec} that negotiates the compression with all {@link CompressionCodecs#getAvailable() available} {@link CompressionCodec}s.
+	 *
+	 * @param protocol the {@link Protocol} to serialize the payload
+	 * @param compressionThreshold the minimum payload size in bytes to compress, for example {@link #DEFAULT_COMPRESSION_THRESHOLD}
+	 */
+	public FrameCodec(Protocol<Object> protocol, int compressionThreshold) {
+		this(protocol, BufferPool.getDefault(), DEFAULT_MAX_FRAME_SIZE, CompressionCodecs.getAvailable(), compressionThreshold);
+	}
+
+	/**
+	 * Constructs a {@link FrameCodec} that negotiates the compression.
+	 *
+	 * @param protocol the {@link Protocol} to serialize the payload
+	 * @param bufferPool the {@link BufferPool} to acquire the buffers from
+	 * @param maxFrameSize the maximum payload size in bytes (uncompressed)
+	 * @param compressionCodecs the supported {@link CompressionCodec}s in the order of preference, empty to disable compression
+	 * @param compressionThreshold the minimum payload size in bytes to compress
+	 */
+	public FrameCodec(Protocol<Object> protocol, BufferPool bufferPool, int maxFrameSize, List<CompressionCodec> compressionCodecs, int compressionThreshold) {
+		this(protocol, bufferPool, maxFrameSize, new ArrayList<>(compressionCodecs), compressionThreshold, null);
+	}
+
+	private FrameCodec(Protocol<Object> protocol, BufferPool bufferPool, int maxFrameSize, List<CompressionCodec> compressionCodecs, int compressionThreshold, CompressionCodec compressionCodec) {
+		this.protocol = protocol;
+		this.bufferPool = bufferPool;
+		this.maxFrameSize = maxFrameSize;
+		this.compressionCodecs = compressionCodecs;
+		this.compressionThreshold = compressionThreshold;
+		this.compressionCodec = compressionCodec;
+	}
+
+	public BufferPool getBufferPool() {
+		return bufferPool;
+	}
+
+	public int getMaxFrameSize() {
+		return maxFrameSize;
+	}
+
+	/**
+	 * Returns whether this codec offers or accepts compression in a {@link Handshake}.
+	 *
+	 * @return <code>true</code> if compression can be negotiated
+	 */
+	public boolean isCompressionSupported() {
+		return !compressionCodecs.isEmpty();
+	}
+
+	/**
+	 * Returns the {@link CompressionCodec} this codec compresses with.
+	 *
+	 * @return the negotiated {@link CompressionCodec}, or <code>null</code> if frames are not compressed
+	 */
+	public CompressionCodec getCompressionCodec() {
+		return compressionCodec;
+	}
+
+	/**
+	 * Creates the {@link Handshake} that the client sends as first frame to offer the supported {@link CompressionCodec}s.
+	 *
+	 * @return the offering {@link Handshake}
+	 */
+	public Handshake createHandshake() {
+		Handshake handshake = new Handshake();
+		handshake.compressionCodecs = new ArrayList<>();
+		for (CompressionCodec codec : compressionCodecs) {
+			handshake.compressionCodecs.add(codec.getName());
+		}
+		return handshake;
+	}
+
+	/**
+	 * Creates the {@link Handshake} that the server answers to an offering {@link Handshake},
+	 * containing the first offered {@link CompressionCodec} that this codec supports (or none).
+	 *
+	 * @param offer the {@link Handshake} received from the client
+	 * @return the answering {@link Handshake}
+	 */
+	public Handshake answerHandshake(Handshake offer) {
+		Handshake answer = new Handshake();
+		answer.compressionCodecs = new ArrayList<>();
+		if (offer.compressionCodecs != null) {
+			for (String name : offer.compressionCodecs) {
+				if (findCompressionCodec(name) != null) {
+					answer.compressionCodecs.add(name);
+					break;
+				}
+			}
+		}
+		return answer;
+	}
+
+	/**
+	 * Returns the codec to use for a connection after the {@link Handshake}.
+	 *
+	 * @param answer the answering {@link Handshake} (sent by the server, received by the client)
+	 * @return the {@link FrameCodec} that compresses with the negotiated {@link CompressionCodec}, or this codec if no compression was negotiated
+	 */
+	public FrameCodec negotiate(Handshake answer) {
+		if (answer.compressionCodecs == null || answer.compressionCodecs.isEmpty()) {
+			return this;
+		}
+
+		CompressionCodec negotiatedCodec = findCompressionCodec(answer.compressionCodecs.get(0));
+		if (negotiatedCodec == null) {
+			throw new RpcException("Unsupported compression codec: " + answer.compressionCodecs.get(0));
+		}
+		return new FrameCodec(protocol, bufferPool, maxFrameSize, compressionCodecs, compressionThreshold, negotiatedCodec);
+	}
+
+	/**
+	 * Encodes a message into a frame.
+	 *
+	 * @param message the message to encode
+	 * @param direct <code>true</code> to encode into a direct buffer (preferred for writing to channels), <code>false</code> for a heap buffer
+	 * @return the frame including the header, ready to be read, to be {@link #release(ByteBuffer) released} after use
+	 */
+	public ByteBuffer encode(Object message, boolean direct) {
+		// the stream fails as soon as the payload exceeds the maximum frame size, instead of growing until the whole message is serialized
+		ByteBufferOutputStream out = new ByteBufferOutputStream(bufferPool, INITIAL_ENCODE_CAPACITY, HEADER_SIZE + maxFrameSize, direct);
+		try {
+			out.getBuffer().position(HEADER_SIZE);
+			protocol.serialize(out, message);
+		} catch (RuntimeException e) {
+			bufferPool.release(out.getBuffer());
+			throw e;
+		}
+
+		ByteBuffer frame = out.getBuffer();
+		int payloadSize = frame.position() - HEADER_SIZE;
+
+		if (compressionCodec != null && payloadSize >= compressionThreshold) {
+			ByteBuffer compressedFrame = compress(frame, payloadSize, direct);
+			if (compressedFrame != null) {
+				bufferPool.release(frame);
+				return compressedFrame;
+			}
+		}
+
+		frame.putInt(0, payloadSize);
+		frame.flip();
+		return frame;
+	}
+
+	/**
+	 * Writes a message as a frame to an {@link OutputStream} (without flushing it).
+	 *
+	 * @param out the {@link OutputStream} to write to
+	 * @param message the message to write
+	 * @throws IOException if writing failed
+	 */
+	public void writeFrame(OutputStream out, Object message) throws IOException {
+		ByteBuffer frame = encode(message, false);
+		try {
+			out.write(frame.array(), frame.arrayOffset() + frame.position(), frame.remaining());
+		} finally {
+			bufferPool.release(frame);
+		}
+	}
+
+	/**
+	 * Decodes an uncompressed payload.
+	 *
+	 * @param payload the payload without the header
+	 * @return the decoded message
+	 */
+	public Object decode(ByteBuffer payload) {
+		return protocol.deserialize(new ByteBufferInputStream(payload));
+	}
+
+	/**
+	 * Decodes a complete frame including the header, for example as returned by {@link #encode(Object, boolean)} or {@link #nextFrame(ByteBuffer)}.
+	 *
+	 * @param frame the frame
+	 * @return the decoded message
+	 */
+	public Object decodeFrame(ByteBuffer frame) {
+		ByteBuffer payload = frame.duplicate();
+		int header = payload.getInt();
+		payload.limit(payload.position() + checkFrameSize(header));
+		return decode(payload, isCompressed(header));
+	}
+
+	/**
+	 * Extracts the next complete frame from a buffer that accumulates the bytes read from a channel.
+	 *
+	 * @param buffer the buffer in read mode
+	 * @return the frame including the header (sharing the content of the buffer) to be decoded with {@link #decodeFrame(ByteBuffer)}, or <code>null</code> if the buffer does not yet contain a complete frame
+	 * @throws RpcException if the frame is larger than the maximum frame size
+	 */
+	public ByteBuffer nextFrame(ByteBuffer buffer) {
+		if (buffer.remaining() < HEADER_SIZE) {
+			return null;
+		}
+
+		int frameSize = HEADER_SIZE + checkFrameSize(buffer.getInt(buffer.position()));
+		if (buffer.remaining() < frameSize) {
+			return null;
+		}
+
+		ByteBuffer frame = buffer.duplicate();
+		frame.limit(buffer.position() + frameSize);
+
+		buffer.position(buffer.position() + frameSize);
+		return frame;
+	}
+
+	/**
+	 * Returns the number of bytes needed to hold the frame starting at the current position of the buffer.
+	 *
+	 * @param buffer the buffer in read mode
+	 * @return the size of the frame including the header, or {@link #HEADER_SIZE} if the header is incomplete
+	 */
+	public int frameSize(ByteBuffer buffer) {
+		if (buffer.remaining() < HEADER_SIZE) {
+			return HEADER_SIZE;
+		}
+		return HEADER_SIZE + checkFrameSize(buffer.getInt(buffer.position()));
+	}
+
+	/**
+	 * Reads and decodes the next frame from a blocking {@link InputStream}, handling partial reads.
+	 *
+	 * @param in the {@link InputStream} to read from
+	 * @return the decoded message
+	 * @throws EOFException if the stream ended before the first byte of the frame
+	 * @throws IOException if reading failed or the stream ended inside the frame
+	 */
+	public Object readFrame(InputStream in) throws IOException {
+		int header = readInt(in);
+		int payloadSize = checkFrameSize(header);
+
+		ByteBuffer payload = bufferPool.acquireHeap(payloadSize);
+		try {
+			readFully(in, payload.array(), payload.arrayOffset(), payloadSize);
+			payload.limit(payloadSize);
+			return decode(payload, isCompressed(header));
+		} finally {
+			bufferPool.release(payload);
+		}
+	}
+
+	public void release(ByteBuffer buffer) {
+		bufferPool.release(buffer);
+	}
+
+	private ByteBuffer compress(ByteBuffer frame, int payloadSize, boolean direct) {
+		ByteBuffer payload = frame.duplicate();
+		payload.flip();
+		payload.position(HEADER_SIZE);
+
+		ByteBufferOutputStream out = new ByteBufferOutputStream(bufferPool, Math.max(INITIAL_ENCODE_CAPACITY, payloadSize / 2), direct);
+		try {
+			out.getBuffer().position(HEADER_SIZE);
+			compressionCodec.compress(payload, out);
+		} catch (RuntimeException e) {
+			bufferPool.release(out.getBuffer());
+			throw e;
+		}
+
+		ByteBuffer compressedFrame = out.getBuffer();
+		int compressedSize = compressedFrame.position() - HEADER_SIZE;
+		if (compressedSize >= payloadSize) {
+			// incompressible - send uncompressed
+			bufferPool.release(compressedFrame);
+			return null;
+		}
+
+		compressedFrame.putInt(0, compressedSize | COMPRESSED_FLAG);
+		compressedFrame.flip();
+		return compressedFrame;
+	}
+
+	private Object decode(ByteBuffer payload, boolean compressed) {
+		if (!compressed) {
+			return decode(payload);
+		}
+
+		ByteBufferOutputStream out = new ByteBufferOutputStream(bufferPool, (int) Math.max(INITIAL_ENCODE_CAPACITY, Math.min(4L * payload.remaining(), maxFrameSize)), maxFrameSize, false);
+		try {
+			compressionCodec.decompress(payload, out, maxFrameSize);
+			ByteBuffer decompressed = out.getBuffer();
+			decompressed.flip();
+			return decode(decompressed);
+		} finally {
+			bufferPool.release(out.getBuffer());
+		}
+	}
+
+	private boolean isCompressed(int header) {
+		return (header & COMPRESSED_FLAG) != 0;
+	}
+
+	private int checkFrameSize(int header) {
+		int payloadSize = header;
+		if (isCompressed(header)) {
+			if (compressionCodec == null) {
+				throw new RpcException("Compressed frame received without negotiated compression");
+			}
+			payloadSize = header & ~COMPRESSED_FLAG;
+		}
+
+		if (payloadSize < 0 || payloadSize > maxFrameSize) {
+			throw new RpcException("Illegal frame size " + payloadSize + " (maximum frame size " + maxFrameSize + ")");
+		}
+		return payloadSize;
+	}
+
+	private CompressionCodec findCompressionCodec(String name) {
+		for (CompressionCodec codec : compressionCodecs) {
+			if (codec.getName().equals(name)) {
+				return codec;
+			}
+		}
+		return null;
+	}
+
+	private static int readInt(InputStream in) throws IOException {
+		int b1 = in.read();
+		if (b1 < 0) {
+			throw new EOFException();
+		}
+		int b2 = in.read();
+		int b3 = in.read();
+		int b4 = in.read();
+		if ((b2 | b3 | b4) < 0) {
+			throw new EOFException("End of stream inside frame header");
+		}
+		return (b1 << 24) | (b2 << 16) | (b3 << 8) | b4;
+	}
+
+	private static void readFully(InputStream in, byte[] data, int offset, int length) throws IOException {
+		int count = 0;
+		while (count < length) {
+			int n = in.read(data, offset + count, length - count);
+			if (n < 0) {
+				throw new EOFException("End of stream inside frame");
+			}
+			count += n;
+		}
+	}
+}
@@ -0,0 +1,97 @@
+package ch.obermuhlner.rpc.transport.frame;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Writes frames to an {@link OutputStream}, coalescing frames written concurrently by several threads into a single flush.
+ *
+ * Writers never wait for each other: a message is encoded by the calling thread and queued,
+ * then the first thread that finds the stream free writes all queued frames
+ * (including the frames queued by other threads in the meantime) and flushes once.
+ * Optionally the writing thread waits a short coalescing window before the flush to collect more frames.
+ * If writing fails, the writing thread discards all queued frames and returns their buffers to the {@link BufferPool}.
+ */
+public class FrameWriter {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final OutputStream out;
+	private final FrameCodec frameCodec;
+	private final long coalescingNanos;
+
+	private final Queue<ByteBuffer> queue = new ConcurrentLinkedQueue<>();
+	private final AtomicBoolean writing = new AtomicBoolean();
+
+	public FrameWriter(OutputStream out, FrameCodec frameCodec) {
+		this(out, frameCodec, 0);
+	}
+
+	/**
+	 * Constructs a {@link FrameWriter}.
+	 *
+	 * @param out the {@link OutputStream} to write to
+	 * @param frameCodec the {@link FrameCodec} to encode the messages
+	 * @param coalescingNanos the time in nanoseconds to wait for more frames before flushing, or 0 to flush immediately
+	 */
+	public FrameWriter(OutputStream out, FrameCodec frameCodec, long coalescingNanos) {
+		this.out = new BufferedOutputStream(out, BUFFER_SIZE);
+		this.frameCodec = frameCodec;
+		this.coalescingNanos = coalescingNanos;
+	}
+
+	/**
+	 * Writes a message as a frame.
+	 *
+	 * The frame is either written by the calling thread or by another thread that is currently writing.
+	 *
+	 * @param message the message to write
+	 * @throws IOException if writing failed
+	 */
+	public void write(Object message) throws IOException {
+		queue.add(frameCodec.encode(message, false));
+
+		while (!queue.isEmpty() && writing.compareAndSet(false, true)) {
+			boolean written = false;
+			try {
+				drain();
+				if (coalescingNanos > 0) {
+					LockSupport.parkNanos(coalescingNanos);
+					drain();
+				}
+				out.flush();
+				written = true;
+			} finally {
+				writing.set(false);
+				if (!written) {
+					// the stream is broken - the frames queued by other threads in the meantime will never be written
+					discard();
+				}
+			}
+		}
+	}
+
+	private void drain() throws IOException {
+		ByteBuffer frame;
+		while ((frame = queue.poll()) != null) {
+			try {
+				out.write(frame.array(), frame.arrayOffset() + frame.position(), frame.remaining());
+			} finally {
+				frameCodec.release(frame);
+			}
+		}
+	}
+
+	private void discard() {
+		ByteBuffer frame;
+		while ((frame = queue.poll()) != null) {
+			frameCodec.release(frame);
+		}
+	}
+}
@@ -1,6 +1,8 @@
 package ch.obermuhlner.rpc.transport.local;
 
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 import ch.obermuhlner.rpc.meta.MetaDataService;
 import ch.obermuhlner.rpc.service.Request;
@@ -12,15 +14,66 @@ import ch.obermuhlner.rpc.transport.ServerTransportImpl;
  * Local transport layer (when client and server are in the same JVM) that calls the server implementation directly without going through a Protocol to serialize/deserialize.
  * 
  * This is the fastest implementation of a local transport.
+ * 
+ * In inline mode the synchronous calls (without timeout) are executed in the calling thread, so that they cost little more than a direct method call.
+ * Asynchronous calls, calls with a timeout and {@link Request#oneWay} calls are always executed by the {@link Executor}.
  */
 public class DirectLocalTransport extends ServerTransportImpl implements ClientTransport {
 
+	private final Executor executor;
+	
+	private final boolean inline;
+
 	public DirectLocalTransport(MetaDataService metaDataService) {
+		this(metaDataService, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Constructs a {@link DirectLocalTransport} that executes the requests with the specified {@link Executor}.
+	 * 
+	 * @param metaDataService the {@link MetaDataService}
+	 * @param executor the {@link Executor} to execute the requests, for example {@link ch.obermuhlner.rpc.transport.VirtualThreadExecutors#newVirtualThreadPerTaskExecutor()}
+	 */
+	public DirectLocalTransport(MetaDataService metaDataService, Executor executor) {
+		this(metaDataService, executor, false);
+	}
+	
+	/**
+	 * Constructs a {@link DirectLocalTransport} that executes the requests with the specified {@link Executor}, optionally executing synchronous calls inline.
+	 * 
+	 * @param metaDataService the {@link MetaDataService}
+	 * @param executor the {@link Executor} to execute the asynchronous requests
+	 * @param inline <code>true</code> to execute synchronous calls without timeout in the calling thread
+	 */
+	public DirectLocalTransport(MetaDataService metaDataService, Executor executor, boolean inline) {
 		super(metaDataService);
+		
+		this.executor = executor;
+		this.inline = inline;
 	}
 	
 	@Override
 	public CompletableFuture<Response> send(Request request) {
-		return CompletableFuture.supplyAsync(() -> receive(request));
+		if (request.oneWay) {
+			dispatch(request, executor, response -> {});
+			return CompletableFuture.completedFuture(new Response());
+		}
+		return CompletableFuture.supplyAsync(() -> receive(request), executor);
+	}
+	
+	@Override
+	public CompletableFuture<Response> sendSynchronous(Request request) {
+		if (!inline || request.oneWay || request.timeout > 0) {
+			// a call with timeout must run in another thread, so that the caller can stop waiting
+			return send(request);
+		}
+		
+		CompletableFuture<Response> future = new CompletableFuture<>();
+		try {
+			future.complete(receive(request));
+		} catch (RuntimeException e) {
+			future.completeExceptionally(e);
+		}
+		return future;
 	}
 }
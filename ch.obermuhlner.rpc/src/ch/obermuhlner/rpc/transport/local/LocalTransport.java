@@ -1,13 +1,21 @@
 package ch.obermuhlner.rpc.transport.local;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 import ch.obermuhlner.rpc.meta.MetaDataService;
 import ch.obermuhlner.rpc.protocol.Protocol;
+import ch.obermuhlner.rpc.service.BatchRequest;
+import ch.obermuhlner.rpc.service.BatchResponse;
 import ch.obermuhlner.rpc.service.Request;
 import ch.obermuhlner.rpc.service.Response;
 import ch.obermuhlner.rpc.transport.ClientTransport;
 import ch.obermuhlner.rpc.transport.ServerTransportImpl;
+import ch.obermuhlner.rpc.transport.frame.FrameCodec;
 
 /**
  * Local transport layer (when client and server are in the same JVM) that uses a Protocol to serialize/deserialize before calling the server implementation.
@@ -18,26 +26,79 @@ import ch.obermuhlner.rpc.transport.ServerTransportImpl;
  */
 public class LocalTransport extends ServerTransportImpl implements ClientTransport {
 
-	private final Protocol<Object> protocol;
+	private final FrameCodec frameCodec;
+
+	private final Executor executor;
 
 	public LocalTransport(MetaDataService metaDataService, Protocol<Object> protocol) {
+		this(metaDataService, protocol, ForkJoinPool.commonPool());
+	}
+	
+	public LocalTransport(MetaDataService metaDataService, Protocol<Object> protocol, Executor executor) {
+		this(metaDataService, new FrameCodec(protocol), executor);
+	}
+	
+	public LocalTransport(MetaDataService metaDataService, FrameCodec frameCodec, Executor executor) {
 		super(metaDataService);
 		
-		this.protocol = protocol;
+		this.frameCodec = frameCodec;
+		this.executor = executor;
 	}
 	
 	@Override
 	public CompletableFuture<Response> send(Request request) {		
+		if (request.oneWay) {
+			dispatch(decodeRequest(frameCodec.encode(request, false)), executor, response -> {});
+			return CompletableFuture.completedFuture(new Response());
+		}
+		
 		return CompletableFuture.supplyAsync(() -> {
-			byte[] requestData = protocol.serializeToBytes(request);
-			byte[] responseData = sendRequest(requestData);
-			return (Response) protocol.deserializeFromBytes(responseData);
+			ByteBuffer requestFrame = frameCodec.encode(request, false);
+			ByteBuffer responseFrame = sendRequest(requestFrame);
+			try {
+				return (Response) frameCodec.decodeFrame(responseFrame);
+			} finally {
+				frameCodec.release(responseFrame);
+			}
+		}, executor);
+	}
+	
+	@Override
+	public List<CompletableFuture<Response>> sendBatch(BatchRequest batchRequest) {
+		CompletableFuture<BatchResponse> batchFuture = CompletableFuture.supplyAsync(() -> {
+			ByteBuffer requestFrame = frameCodec.encode(batchRequest, false);
+			try {
+				return (BatchRequest) frameCodec.decodeFrame(requestFrame);
+			} finally {
+				frameCodec.release(requestFrame);
+			}
+		}, executor).thenCompose(receivedBatchRequest -> receiveBatch(receivedBatchRequest, executor)).thenApply(batchResponse -> {
+			ByteBuffer responseFrame = frameCodec.encode(batchResponse, false);
+			try {
+				return (BatchResponse) frameCodec.decodeFrame(responseFrame);
+			} finally {
+				frameCodec.release(responseFrame);
+			}
 		});
+
+		List<CompletableFuture<Response>> futures = new ArrayList<>();
+		for (int i = 0; i < batchRequest.requests.size(); i++) {
+			int index = i;
+			futures.add(batchFuture.thenApply(batchResponse -> batchResponse.responses.get(index)));
+		}
+		return futures;
+	}
+	
+	private ByteBuffer sendRequest(ByteBuffer requestFrame) {
+		Response response = receive(decodeRequest(requestFrame));
+		return frameCodec.encode(response, false);
 	}
 	
-	private byte[] sendRequest(byte[] requestData) {
-		Request request = (Request) protocol.deserializeFromBytes(requestData);
-		Response response = receive(request);
-		return protocol.serializeToBytes(response);
+	private Request decodeRequest(ByteBuffer requestFrame) {
+		try {
+			return (Request) frameCodec.decodeFrame(requestFrame);
+		} finally {
+			frameCodec.release(requestFrame);
+		}
 	}
 }
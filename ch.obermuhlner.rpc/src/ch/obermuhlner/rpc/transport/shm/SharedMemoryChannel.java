@@ -0,0 +1,272 @@
+package ch.obermuhlner.rpc.transport.shm;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.concurrent.TimeUnit;
+
+import ch.obermuhlner.rpc.exception.RpcException;
+import ch.obermuhlner.rpc.transport.frame.FrameCodec;
+
+/**
+ * Bidirectional channel between two processes on the same host, exchanging frames through a memory mapped file.
+ *
+ * The file contains a small file header and two {@link SharedMemoryRingBuffer}s, one for the requests (client to server) and one for the responses (server to client).
+ * The server {@link #create(FrameCodec, File, int) creates} the file, the client {@link #open(FrameCodec, File) opens} it.
+ *
+ * Every file connects exactly one client with one server.
+ * Each side holds an exclusive lock on its own byte of the file header as long as the channel is open,
+ * so that a second server or client is rejected and the reader of each side notices when the process of the other side is gone.
+ */
+public class SharedMemoryChannel implements AutoCloseable {
+
+	public static final int DEFAULT_RING_CAPACITY = 1024 * 1024;
+
+	private static final int MAGIC = 0x657a7368;
+	private static final int FILE_HEADER_SIZE = 64;
+	private static final int MAGIC_OFFSET = 0;
+	private static final int CAPACITY_OFFSET = 4;
+	private static final int SERVER_LOCK_OFFSET = 8;
+	private static final int CLIENT_LOCK_OFFSET = 9;
+
+	private static final long PEER_CHECK_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+	private final FrameCodec frameCodec;
+	private final RandomAccessFile file;
+	private final SharedMemoryRingBuffer inbound;
+	private final SharedMemoryRingBuffer outbound;
+	// the lock table of the JVM only references the lock weakly, so that another channel of this process would no longer see it once it is garbage collected
+	private final FileLock lock;
+	private final int peerLockOffset;
+
+	private volatile boolean closed;
+	private volatile boolean peerAttached;
+	private volatile long nextPeerCheckNanos = System.nanoTime();
+
+	private SharedMemoryChannel(FrameCodec frameCodec, RandomAccessFile file, SharedMemoryRingBuffer inbound, SharedMemoryRingBuffer outbound, FileLock lock, int peerLockOffset, boolean peerAttached) {
+		this.frameCodec = frameCodec;
+		this.file = file;
+		this.inbound = inbound;
+		this.outbound = outbound;
+		this.lock = lock;
+		this.peerLockOffset = peerLockOffset;
+		this.peerAttached = peerAttached;
+	}
+
+	/**
+	 * Creates (or recreates) the memory mapped file and returns the server side of the channel.
+	 *
+	 * @param frameCodec the {@link FrameCodec}
+	 * @param file the file to create
+	 * @param ringCapacity the capacity in bytes of each ring buffer, must be a power of two and limits the size of every frame
+	 * @return the server side {@link SharedMemoryChannel}
+	 * @throws IOException if the file could not be created
+	 * @throws RpcException if another server uses the file
+	 */
+	public static SharedMemoryChannel create(FrameCodec frameCodec, File file, int ringCapacity) throws IOException {
+		if (ringCapacity <= 0 || Integer.bitCount(ringCapacity) != 1) {
+			throw new RpcException("Ring buffer capacity must be a power of two: " + ringCapacity);
+		}
+
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+		try {
+			// lock before the file is truncated, so that the rings of a running server stay intact
+			FileLock lock = lock(randomAccessFile.getChannel(), SERVER_LOCK_OFFSET, "Shared memory transport file already used by another server: " + file);
+
+			long fileSize = FILE_HEADER_SIZE + 2L * SharedMemoryRingBuffer.size(ringCapacity);
+			randomAccessFile.setLength(fileSize);
+			MappedByteBuffer buffer = randomAccessFile.getChannel().map(MapMode.READ_WRITE, 0, fileSize);
+
+			SharedMemoryRingBuffer requests = ringBuffer(buffer, 0, ringCapacity);
+			SharedMemoryRingBuffer responses = ringBuffer(buffer, 1, ringCapacity);
+			requests.reset();
+			responses.reset();
+
+			buffer.putInt(CAPACITY_OFFSET, ringCapacity);
+			buffer.putInt(MAGIC_OFFSET, MAGIC);
+
+			return new SharedMemoryChannel(frameCodec, randomAccessFile, requests, responses, lock, CLIENT_LOCK_OFFSET, false);
+		} catch (IOException | RuntimeException e) {
+			randomAccessFile.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Opens the memory mapped file created by the server and returns the client side of the channel.
+	 *
+	 * @param frameCodec the {@link FrameCodec}
+	 * @param file the file created by the server
+	 * @return the client side {@link SharedMemoryChannel}
+	 * @throws IOException if the file could not be opened
+	 * @throws RpcException if the file is not a shared memory transport file, no server uses it or another client uses it
+	 */
+	public static SharedMemoryChannel open(FrameCodec frameCodec, File file) throws IOException {
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+		try {
+			FileChannel fileChannel = randomAccessFile.getChannel();
+			if (fileChannel.size() < FILE_HEADER_SIZE) {
+				throw new RpcException("Not a shared memory transport file: " + file);
+			}
+
+			MappedByteBuffer fileHeader = fileChannel.map(MapMode.READ_ONLY, 0, FILE_HEADER_SIZE);
+			int ringCapacity = fileHeader.getInt(CAPACITY_OFFSET);
+			long fileSize = FILE_HEADER_SIZE + 2L * SharedMemoryRingBuffer.size(ringCapacity);
+			if (fileHeader.getInt(MAGIC_OFFSET) != MAGIC || fileChannel.size() != fileSize) {
+				throw new RpcException("Not a shared memory transport file: " + file);
+			}
+
+			if (!isLocked(fileChannel, SERVER_LOCK_OFFSET)) {
+				throw new RpcException("No server uses the shared memory transport file: " + file);
+			}
+			FileLock lock = lock(fileChannel, CLIENT_LOCK_OFFSET, "Shared memory transport file already used by another client: " + file);
+
+			MappedByteBuffer buffer = fileChannel.map(MapMode.READ_WRITE, 0, fileSize);
+			SharedMemoryRingBuffer requests = ringBuffer(buffer, 0, ringCapacity);
+			SharedMemoryRingBuffer responses = ringBuffer(buffer, 1, ringCapacity);
+
+			return new SharedMemoryChannel(frameCodec, randomAccessFile, responses, requests, lock, SERVER_LOCK_OFFSET, true);
+		} catch (IOException | RuntimeException e) {
+			randomAccessFile.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Writes a message as a frame into the outbound ring buffer, waiting while the ring buffer is full.
+	 *
+	 * @param message the message to write
+	 * @throws IOException if the channel was closed, also by the {@link #read() reader} noticing that the process of the other side is gone
+	 * @throws RpcException if the message cannot be encoded or the frame is larger than the ring buffer capacity
+	 */
+	public synchronized void write(Object message) throws IOException {
+		ByteBuffer frame = frameCodec.encode(message, false);
+		try {
+			int iteration = 0;
+			while (!outbound.offer(frame)) {
+				if (closed) {
+					throw new EOFException("Channel closed");
+				}
+				iteration = SharedMemoryRingBuffer.idle(iteration);
+			}
+		} finally {
+			frameCodec.release(frame);
+		}
+	}
+
+	/**
+	 * Reads the next message from the inbound ring buffer, waiting while the ring buffer is empty.
+	 *
+	 * Must only be called by a single thread.
+	 *
+	 * @return the decoded message
+	 * @throws EOFException if the channel was closed or the process of the other side is gone
+	 */
+	public Object read() throws EOFException {
+		int iteration = 0;
+		while (!closed) {
+			ByteBuffer payload = inbound.poll(frameCodec.getBufferPool());
+			if (payload != null) {
+				// the client has attached once its first request arrived
+				peerAttached = true;
+				try {
+					return frameCodec.decode(payload);
+				} finally {
+					frameCodec.release(payload);
+				}
+			}
+			checkPeer(iteration);
+			iteration = SharedMemoryRingBuffer.idle(iteration);
+		}
+		throw new EOFException("Channel closed");
+	}
+
+	public boolean isOpen() {
+		return !closed;
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+
+		try {
+			file.close();
+		} catch (IOException e) {
+			// ignore
+		}
+	}
+
+	/**
+	 * Closes the channel if the other side released its lock, which the operating system does when its process is gone.
+	 * Checks only once the reader parks, and at most every {@link #PEER_CHECK_INTERVAL_NANOS}.
+	 *
+	 * Only the reader checks, because an interrupt during a file lock operation closes the file and thereby releases the own lock,
+	 * and writers are typically threads executing requests that get interrupted on timeout.
+	 */
+	private void checkPeer(int iteration) throws EOFException {
+		if (!peerAttached || !SharedMemoryRingBuffer.isParking(iteration) || Thread.currentThread().isInterrupted()) {
+			return;
+		}
+
+		long nowNanos = System.nanoTime();
+		if (nowNanos - nextPeerCheckNanos < 0) {
+			return;
+		}
+		nextPeerCheckNanos = nowNanos + PEER_CHECK_INTERVAL_NANOS;
+
+		boolean peerAlive;
+		try {
+			peerAlive = isLocked(file.getChannel(), peerLockOffset);
+		} catch (IOException e) {
+			peerAlive = false;
+		}
+		if (!peerAlive) {
+			close();
+			throw new EOFException("Other side of the channel is gone");
+		}
+	}
+
+	private static FileLock lock(FileChannel fileChannel, int offset, String message) throws IOException {
+		FileLock lock;
+		try {
+			lock = fileChannel.tryLock(offset, 1, false);
+		} catch (OverlappingFileLockException e) {
+			// locked by another channel of this process
+			lock = null;
+		}
+		if (lock == null) {
+			throw new RpcException(message);
+		}
+		return lock;
+	}
+
+	private static boolean isLocked(FileChannel fileChannel, int offset) throws IOException {
+		FileLock lock;
+		try {
+			lock = fileChannel.tryLock(offset, 1, false);
+		} catch (OverlappingFileLockException e) {
+			// locked by another channel of this process
+			return true;
+		}
+		if (lock == null) {
+			return true;
+		}
+		lock.release();
+		return false;
+	}
+
+	private static SharedMemoryRingBuffer ringBuffer(ByteBuffer buffer, int index, int ringCapacity) {
+		ByteBuffer ring = buffer.duplicate();
+		int start = FILE_HEADER_SIZE + index * SharedMemoryRingBuffer.size(ringCapacity);
+		ring.position(start);
+		ring.limit(start + SharedMemoryRingBuffer.size(ringCapacity));
+		return new SharedMemoryRingBuffer(ring);
+	}
+}
@@ -0,0 +1,187 @@
+package ch.obermuhlner.rpc.transport.shm;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import ch.obermuhlner.rpc.exception.RpcException;
+import ch.obermuhlner.rpc.exception.RpcTimeoutException;
+import ch.obermuhlner.rpc.protocol.Protocol;
+import ch.obermuhlner.rpc.service.BatchRequest;
+import ch.obermuhlner.rpc.service.BatchResponse;
+import ch.obermuhlner.rpc.service.Request;
+import ch.obermuhlner.rpc.service.Response;
+import ch.obermuhlner.rpc.transport.ClientTransport;
+import ch.obermuhlner.rpc.transport.HashedTimerWheel;
+import ch.obermuhlner.rpc.transport.HashedTimerWheel.Timeout;
+import ch.obermuhlner.rpc.transport.frame.FrameCodec;
+
+/**
+ * Client transport layer for a server process on the same host that exchanges frames through a memory mapped file created by the {@link SharedMemoryServerTransport}.
+ *
+ * Requests are pipelined like on a persistent socket connection and the responses are matched to the waiting {@link CompletableFuture} by {@link Request#requestId}.
+ * The reader thread busy spins while waiting for responses to achieve the lowest latency, see {@link SharedMemoryRingBuffer#idle(int)}.
+ * The transport closes when the server process is gone, failing all pending and further requests.
+ */
+public class SharedMemoryClientTransport implements ClientTransport, AutoCloseable {
+
+	private final SharedMemoryChannel channel;
+
+	private final Map<String, CompletableFuture<Response>> pendingResponses = new ConcurrentHashMap<>();
+
+	public SharedMemoryClientTransport(Protocol<Object> protocol, File file) {
+		this(new FrameCodec(protocol), file);
+	}
+
+	/**
+	 * Constructs a {@link SharedMemoryClientTransport}.
+	 *
+	 * @param frameCodec the {@link FrameCodec} to encode and decode requests and responses
+	 * @param file the file created by the {@link SharedMemoryServerTransport}
+	 */
+	public SharedMemoryClientTransport(FrameCodec frameCodec, File file) {
+		try {
+			channel = SharedMemoryChannel.open(frameCodec, file);
+		} catch (IOException e) {
+			throw new RpcException(e);
+		}
+
+		Thread readerThread = new Thread(() -> readResponses(), "ez-rpc-shm-reader-" + file.getName());
+		readerThread.setDaemon(true);
+		readerThread.start();
+	}
+
+	@Override
+	public CompletableFuture<Response> send(Request request) {
+		if (!channel.isOpen()) {
+			return failedFuture(new RpcException("Transport closed"));
+		}
+
+		CompletableFuture<Response> future;
+		if (request.execute && !request.oneWay) {
+			future = new CompletableFuture<>();
+			pendingResponses.put(request.requestId, future);
+			expireAfterTimeout(request, future);
+		} else {
+			// cancel and one-way requests do not wait for their response - the server does not answer one-way requests at all
+			future = CompletableFuture.completedFuture(new Response());
+		}
+
+		try {
+			channel.write(request);
+		} catch (IOException | RuntimeException e) {
+			pendingResponses.remove(request.requestId);
+			return failedFuture(e instanceof RpcException ? (RpcException) e : new RpcException(e));
+		}
+
+		return future;
+	}
+
+	@Override
+	public List<CompletableFuture<Response>> sendBatch(BatchRequest batchRequest) {
+		if (!channel.isOpen()) {
+			return failedFutures(batchRequest, new RpcException("Transport closed"));
+		}
+
+		List<CompletableFuture<Response>> futures = new ArrayList<>();
+		for (Request request : batchRequest.requests) {
+			CompletableFuture<Response> future = new CompletableFuture<>();
+			pendingResponses.put(request.requestId, future);
+			expireAfterTimeout(request, future);
+			futures.add(future);
+		}
+
+		try {
+			channel.write(batchRequest);
+		} catch (IOException | RuntimeException e) {
+			for (Request request : batchRequest.requests) {
+				pendingResponses.remove(request.requestId);
+			}
+			return failedFutures(batchRequest, e instanceof RpcException ? (RpcException) e : new RpcException(e));
+		}
+
+		return futures;
+	}
+
+	@Override
+	public boolean isAlive() {
+		return channel.isOpen();
+	}
+
+	@Override
+	public void close() {
+		close(new RpcException("Transport closed"));
+	}
+
+	private void close(Throwable cause) {
+		channel.close();
+
+		for (String requestId : pendingResponses.keySet()) {
+			CompletableFuture<Response> future = pendingResponses.remove(requestId);
+			if (future != null) {
+				future.completeExceptionally(cause instanceof RpcException ? cause : new RpcException(cause));
+			}
+		}
+	}
+
+	private void readResponses() {
+		try {
+			for (;;) {
+				Object responseObject = channel.read();
+				if (responseObject instanceof Response) {
+					completeResponse((Response) responseObject);
+				} else if (responseObject instanceof BatchResponse) {
+					for (Response response : ((BatchResponse) responseObject).responses) {
+						completeResponse(response);
+					}
+				}
+			}
+		} catch (IOException | RuntimeException e) {
+			close(e);
+		}
+	}
+
+	/**
+	 * Removes a pending response that did not arrive within the {@link Request#timeout}, so that it does not leak if the server never answers.
+	 */
+	private void expireAfterTimeout(Request request, CompletableFuture<Response> future) {
+		if (request.timeout <= 0) {
+			return;
+		}
+
+		Timeout timeout = HashedTimerWheel.getDefault().schedule(() -> {
+			if (pendingResponses.remove(request.requestId, future)) {
+				// the dependent stages of the future must not block the timer thread
+				ForkJoinPool.commonPool().execute(() -> future.completeExceptionally(new RpcTimeoutException("Timeout after " + request.timeout + " ms waiting for response: " + request.requestId)));
+			}
+		}, request.timeout, TimeUnit.MILLISECONDS);
+		future.whenComplete((response, exception) -> timeout.cancel());
+	}
+
+	private static CompletableFuture<Response> failedFuture(RpcException exception) {
+		CompletableFuture<Response> future = new CompletableFuture<>();
+		future.completeExceptionally(exception);
+		return future;
+	}
+
+	private static List<CompletableFuture<Response>> failedFutures(BatchRequest batchRequest, RpcException exception) {
+		List<CompletableFuture<Response>> futures = new ArrayList<>();
+		for (int i = 0; i < batchRequest.requests.size(); i++) {
+			futures.add(failedFuture(exception));
+		}
+		return futures;
+	}
+
+	private void completeResponse(Response response) {
+		CompletableFuture<Response> future = response.requestId == null ? null : pendingResponses.remove(response.requestId);
+		if (future != null) {
+			future.complete(response);
+		}
+	}
+}
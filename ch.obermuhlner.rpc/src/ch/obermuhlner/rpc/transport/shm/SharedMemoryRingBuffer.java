@@ -0,0 +1,248 @@
+package ch.obermuhlner.rpc.transport.shm;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.LockSupport;
+
+import ch.obermuhlner.rpc.exception.RpcException;
+import ch.obermuhlner.rpc.transport.frame.BufferPool;
+import ch.obermuhlner.rpc.transport.frame.FrameCodec;
+
+/**
+ * Single producer single consumer ring buffer of frames in a (memory mapped) {@link ByteBuffer}.
+ *
+ * The buffer starts with a header containing the tail (written by the producer) and the head (written by the consumer) in separate cache lines,
+ * followed by the data area with a power of two capacity.
+ * The frames are stored as encoded by the {@link FrameCodec} and may wrap around the end of the data area.
+ *
+ * Only one thread may write and only one thread may read at the same time.
+ */
+public class SharedMemoryRingBuffer {
+
+	public static final int HEADER_SIZE = 128;
+
+	private static final int TAIL_OFFSET = 0;
+	private static final int HEAD_OFFSET = 64;
+
+	private static final int SPIN_ITERATIONS = 20000;
+	private static final int YIELD_ITERATIONS = 100;
+	private static final long PARK_NANOS = 20000;
+
+	// the fences order the plain accesses to the mapped memory, which is shared with another process:
+	// the fences of VarHandle on Java 9 or later, otherwise volatile accesses that imply the same ordering
+	private static final MethodHandle ACQUIRE_FENCE = findFence("acquireFence");
+	private static final MethodHandle RELEASE_FENCE = findFence("releaseFence");
+
+	private static volatile int fence;
+
+	private final ByteBuffer header;
+	private final ByteBuffer writeData;
+	private final ByteBuffer readData;
+	private final int capacity;
+	private final int mask;
+
+	/**
+	 * Constructs a {@link SharedMemoryRingBuffer} on the remaining bytes of the specified buffer.
+	 *
+	 * @param buffer the buffer, with {@link #size(int)} remaining bytes
+	 */
+	public SharedMemoryRingBuffer(ByteBuffer buffer) {
+		header = buffer.slice();
+		header.limit(HEADER_SIZE);
+
+		capacity = buffer.remaining() - HEADER_SIZE;
+		if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+			throw new RpcException("Ring buffer capacity must be a power of two: " + capacity);
+		}
+		mask = capacity - 1;
+
+		ByteBuffer data = buffer.duplicate();
+		data.position(buffer.position() + HEADER_SIZE);
+		writeData = data.slice();
+		readData = writeData.duplicate();
+	}
+
+	/**
+	 * Returns the number of bytes needed for a ring buffer with the specified capacity.
+	 *
+	 * @param capacity the capacity of the data area, must be a power of two
+	 * @return the size in bytes including the header
+	 */
+	public static int size(int capacity) {
+		return HEADER_SIZE + capacity;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Resets the ring buffer to the empty state.
+	 *
+	 * Must only be called while neither producer nor consumer are active.
+	 */
+	public void reset() {
+		putLongRelease(TAIL_OFFSET, 0);
+		putLongRelease(HEAD_OFFSET, 0);
+	}
+
+	/**
+	 * Writes a frame into the ring buffer if there is enough free space.
+	 *
+	 * @param frame the frame including its header, as returned by {@link FrameCodec#encode(Object, boolean)}
+	 * @return <code>true</code> if the frame was written, <code>false</code> if the ring buffer is too full
+	 * @throws RpcException if the frame is larger than the capacity
+	 */
+	public boolean offer(ByteBuffer frame) {
+		int length = frame.remaining();
+		if (length > capacity) {
+			throw new RpcException("Frame size " + length + " exceeds ring buffer capacity " + capacity);
+		}
+
+		long tail = header.getLong(TAIL_OFFSET);
+		long head = getLongAcquire(HEAD_OFFSET);
+		if (capacity - (tail - head) < length) {
+			return false;
+		}
+
+		int index = (int) (tail & mask);
+		int firstLength = Math.min(length, capacity - index);
+
+		ByteBuffer source = frame.duplicate();
+		source.limit(source.position() + firstLength);
+		writeData.clear();
+		writeData.position(index);
+		writeData.put(source);
+
+		if (firstLength < length) {
+			source.limit(frame.limit());
+			writeData.clear();
+			writeData.put(source);
+		}
+
+		putLongRelease(TAIL_OFFSET, tail + length);
+		return true;
+	}
+
+	/**
+	 * Reads the payload of the next frame from the ring buffer.
+	 *
+	 * @param bufferPool the {@link BufferPool} to acquire the payload buffer from
+	 * @return the payload in read mode, to be released into the {@link BufferPool} after use, or <code>null</code> if the ring buffer is empty
+	 * @throws RpcException if the ring buffer contains a corrupt frame
+	 */
+	public ByteBuffer poll(BufferPool bufferPool) {
+		long tail = getLongAcquire(TAIL_OFFSET);
+		long head = header.getLong(HEAD_OFFSET);
+		if (tail == head) {
+			return null;
+		}
+
+		readData.clear();
+		int payloadSize = 0;
+		for (int i = 0; i < FrameCodec.HEADER_SIZE; i++) {
+			payloadSize = (payloadSize << 8) | (readData.get((int) ((head + i) & mask)) & 0xff);
+		}
+		if (payloadSize < 0 || FrameCodec.HEADER_SIZE + payloadSize > tail - head) {
+			throw new RpcException("Corrupt frame size " + payloadSize + " in ring buffer");
+		}
+
+		ByteBuffer payload = bufferPool.acquireHeap(payloadSize);
+		int index = (int) ((head + FrameCodec.HEADER_SIZE) & mask);
+		int firstLength = Math.min(payloadSize, capacity - index);
+
+		readData.position(index);
+		readData.limit(index + firstLength);
+		payload.put(readData);
+
+		if (firstLength < payloadSize) {
+			readData.clear();
+			readData.limit(payloadSize - firstLength);
+			payload.put(readData);
+		}
+		payload.flip();
+
+		putLongRelease(HEAD_OFFSET, head + FrameCodec.HEADER_SIZE + payloadSize);
+		return payload;
+	}
+
+	/**
+	 * Returns whether the caller of {@link #idle(int)} has stopped spinning and parks, so that it can afford slower checks.
+	 *
+	 * @param iteration the number of times the caller has already waited for the same condition
+	 * @return <code>true</code> if the caller parks
+	 */
+	public static boolean isParking(int iteration) {
+		return iteration >= SPIN_ITERATIONS + YIELD_ITERATIONS;
+	}
+
+	/**
+	 * Waits a little while the ring buffer is empty or full: busy spins first, then yields and finally parks for a short time.
+	 *
+	 * @param iteration the number of times the caller has already waited for the same condition
+	 * @return the next iteration
+	 */
+	public static int idle(int iteration) {
+		if (iteration < SPIN_ITERATIONS) {
+			// busy spin
+		} else if (iteration < SPIN_ITERATIONS + YIELD_ITERATIONS) {
+			Thread.yield();
+		} else {
+			LockSupport.parkNanos(PARK_NANOS);
+			return iteration;
+		}
+		return iteration + 1;
+	}
+
+	private long getLongAcquire(int offset) {
+		long value = header.getLong(offset);
+		// the following reads of the data area must not move before the read of the index
+		acquireFence();
+		return value;
+	}
+
+	private void putLongRelease(int offset, long value) {
+		// the preceding reads and writes of the data area must not move after the write of the index
+		releaseFence();
+		header.putLong(offset, value);
+	}
+
+	private static void acquireFence() {
+		if (ACQUIRE_FENCE != null) {
+			invokeFence(ACQUIRE_FENCE);
+		} else {
+			// no following access moves before a volatile read
+			int ignored = fence;
+		}
+	}
+
+	private static void releaseFence() {
+		if (RELEASE_FENCE != null) {
+			invokeFence(RELEASE_FENCE);
+		} else {
+			// no preceding access moves after the volatile write, no following access moves before the volatile read
+			fence = 0;
+			int ignored = fence;
+		}
+	}
+
+	private static void invokeFence(MethodHandle fenceHandle) {
+		try {
+			fenceHandle.invokeExact();
+		} catch (Throwable e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static MethodHandle findFence(String name) {
+		try {
+			Class<?> varHandleClass = Class.forName("java.lang.invoke.VarHandle");
+			return MethodHandles.publicLookup().findStatic(varHandleClass, name, MethodType.methodType(void.class));
+		} catch (ReflectiveOperationException e) {
+			// Java 8 has no VarHandle
+			return null;
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package ch.obermuhlner.rpc.transport.shm;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import ch.obermuhlner.rpc.exception.RpcException;
+import ch.obermuhlner.rpc.meta.MetaDataService;
+import ch.obermuhlner.rpc.protocol.Protocol;
+import ch.obermuhlner.rpc.service.BatchRequest;
+import ch.obermuhlner.rpc.service.Request;
+import ch.obermuhlner.rpc.service.Response;
+import ch.obermuhlner.rpc.transport.ServerTransportImpl;
+import ch.obermuhlner.rpc.transport.frame.FrameCodec;
+
+/**
+ * Server transport layer for a client process on the same host that exchanges frames through a memory mapped file.
+ *
+ * The file is created when the transport is constructed, so that the {@link SharedMemoryClientTransport} can open it as soon as the constructor returns.
+ * Every file serves exactly one client; use a separate file (and transport) per client process.
+ * The transport closes when the client process is gone.
+ *
+ * A frame must fit into a ring buffer, so the ring capacity limits the size of requests and responses independently of the maximum frame size of the {@link FrameCodec}.
+ * A response that is too large (or cannot be encoded at all) is answered with a {@link RpcException} instead.
+ *
+ * The thread calling {@link #run()} busy spins while waiting for requests to achieve the lowest latency, see {@link SharedMemoryRingBuffer#idle(int)}.
+ */
+public class SharedMemoryServerTransport extends ServerTransportImpl implements AutoCloseable {
+
+	private final SharedMemoryChannel channel;
+
+	private final ExecutorService executorService;
+
+	public SharedMemoryServerTransport(MetaDataService metaDataService, Protocol<Object> protocol, File file) {
+		this(metaDataService, protocol, file, SharedMemoryChannel.DEFAULT_RING_CAPACITY, Executors.newCachedThreadPool());
+	}
+
+	public SharedMemoryServerTransport(MetaDataService metaDataService, Protocol<Object> protocol, File file, int ringCapacity, ExecutorService executorService) {
+		this(metaDataService, new FrameCodec(protocol), file, ringCapacity, executorService);
+	}
+
+	/**
+	 * Constructs a {@link SharedMemoryServerTransport}.
+	 *
+	 * @param metaDataService the {@link MetaDataService}
+	 * @param frameCodec the {@link FrameCodec} to encode and decode requests and responses
+	 * @param file the file to create
+	 * @param ringCapacity the capacity in bytes of the request and response ring buffers, must be a power of two and limits the size of every frame
+	 * @param executorService the {@link ExecutorService} to execute requests
+	 */
+	public SharedMemoryServerTransport(MetaDataService metaDataService, FrameCodec frameCodec, File file, int ringCapacity, ExecutorService executorService) {
+		super(metaDataService);
+
+		this.executorService = executorService;
+
+		try {
+			channel = SharedMemoryChannel.create(frameCodec, file, ringCapacity);
+		} catch (IOException e) {
+			throw new RpcException(e);
+		}
+	}
+
+	public void run() {
+		try {
+			for (;;) {
+				Object requestObject = channel.read();
+				if (requestObject instanceof Request) {
+					Request request = (Request) requestObject;
+					if (request.execute) {
+						dispatch(request, executorService, this::write);
+					} else {
+						handleRequest(request);
+					}
+				} else if (requestObject instanceof BatchRequest) {
+					BatchRequest batchRequest = (BatchRequest) requestObject;
+					dispatchBatch(batchRequest, executorService, this::write);
+				}
+			}
+		} catch (EOFException | RpcException e) {
+			// channel closed or corrupt frame
+		} finally {
+			channel.close();
+			executorService.shutdown();
+		}
+	}
+
+	@Override
+	public void close() {
+		channel.close();
+	}
+
+	private void handleRequest(Request request) {
+		Response response;
+		try {
+			response = receive(request);
+		} catch (RpcException e) {
+			response = errorResponse(request.requestId, e);
+		}
+
+		write(response);
+	}
+
+	private void write(Object message) {
+		try {
+			try {
+				channel.write(message);
+			} catch (RuntimeException e) {
+				// too large for the ring buffer or not encodable - answer the request with the failure instead
+				Object failure = encodingFailure(message, e);
+				if (failure != null) {
+					channel.write(failure);
+				}
+			}
+		} catch (IOException e) {
+			// channel closed
+		}
+	}
+}
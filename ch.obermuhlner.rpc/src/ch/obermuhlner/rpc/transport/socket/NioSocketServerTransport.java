@@ -0,0 +1,525 @@
+package ch.obermuhlner.rpc.transport.socket;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ch.obermuhlner.rpc.exception.RpcException;
+import ch.obermuhlner.rpc.meta.MetaDataService;
+import ch.obermuhlner.rpc.protocol.Protocol;
+import ch.obermuhlner.rpc.service.BatchRequest;
+import ch.obermuhlner.rpc.service.GoAway;
+import ch.obermuhlner.rpc.service.Handshake;
+import ch.obermuhlner.rpc.service.Heartbeat;
+import ch.obermuhlner.rpc.service.Request;
+import ch.obermuhlner.rpc.service.Response;
+import ch.obermuhlner.rpc.transport.HashedTimerWheel.Timeout;
+import ch.obermuhlner.rpc.transport.ServerTransportImpl;
+import ch.obermuhlner.rpc.transport.frame.FrameCodec;
+
+/**
+ * Non-blocking server transport layer based on a {@link Selector}.
+ *
+ * A fixed number of event loop threads read and decode the frames of all connections into pooled direct buffers.
+ * The requests are executed on a separate worker {@link ExecutorService}, so that idle connections do not need a thread each.
+ *
+ * Uses the same wire format (including the {@link Handshake} to negotiate compression and the {@link Heartbeat}s) as {@link SocketServerTransport} and can therefore serve a {@link SocketClientTransport}.
+ * Connections without requests in flight are closed after the {@link #setIdleTimeout(long, TimeUnit) idle timeout}, checked by the timer wheel.
+ * Cancel requests are executed outside of the event loops and the worker {@link ExecutorService}, so that they never wait behind the requests they cancel.
+ * {@link #stop(long, TimeUnit)} shuts the server down without cutting off the requests in flight.
+ * Subclasses may listen on other kinds of sockets by overriding {@link #openServerSocketChannel()}, see {@link UnixDomainSocketServerTransport}.
+ */
+public class NioSocketServerTransport extends ServerTransportImpl {
+
+	private static final int INITIAL_READ_BUFFER_SIZE = 16 * 1024;
+
+	private final FrameCodec frameCodec;
+
+	private final SocketAddress address;
+
+	private final EventLoop[] eventLoops;
+
+	private final ExecutorService workerExecutorService;
+
+	private volatile ServerSocketChannel serverSocketChannel;
+
+	private volatile long idleTimeoutNanos;
+
+	private volatile boolean stopping;
+	private volatile long drainTimeoutMillis;
+	private volatile boolean discardResponses;
+
+	public NioSocketServerTransport(MetaDataService metaDataService, Protocol<Object> protocol, int port) {
+		this(metaDataService, protocol, port, 1, Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() * 2));
+	}
+
+	public NioSocketServerTransport(MetaDataService metaDataService, Protocol<Object> protocol, int port, int eventLoopCount, ExecutorService workerExecutorService) {
+		this(metaDataService, new FrameCodec(protocol), port, eventLoopCount, workerExecutorService);
+	}
+
+	public NioSocketServerTransport(MetaDataService metaDataService, FrameCodec frameCodec, int port, int eventLoopCount, ExecutorService workerExecutorService) {
+		this(metaDataService, frameCodec, new InetSocketAddress(port), eventLoopCount, workerExecutorService);
+	}
+
+	/**
+	 * Constructs a {@link NioSocketServerTransport}.
+	 *
+	 * @param metaDataService the {@link MetaDataService}
+	 * @param frameCodec the {@link FrameCodec} to encode and decode requests and responses
+	 * @param address the address to listen on
+	 * @param eventLoopCount the number of event loop threads
+	 * @param workerExecutorService the {@link ExecutorService} to execute requests
+	 */
+	public NioSocketServerTransport(MetaDataService metaDataService, FrameCodec frameCodec, SocketAddress address, int eventLoopCount, ExecutorService workerExecutorService) {
+		super(metaDataService);
+
+		if (eventLoopCount < 1) {
+			throw new IllegalArgumentException("At least one event loop required: " + eventLoopCount);
+		}
+
+		this.frameCodec = frameCodec;
+		this.address = address;
+		this.workerExecutorService = workerExecutorService;
+
+		eventLoops = new EventLoop[eventLoopCount];
+	}
+
+	/**
+	 * Sets the time after which a connection is closed if the client sent nothing and no requests are in flight.
+	 *
+	 * Must be called before {@link #run()}.
+	 *
+	 * @param idleTimeout the idle timeout, <code>0</code> to keep idle connections open
+	 * @param unit the {@link TimeUnit} of the idle timeout
+	 */
+	public void setIdleTimeout(long idleTimeout, TimeUnit unit) {
+		this.idleTimeoutNanos = unit.toNanos(idleTimeout);
+	}
+
+	public void run() {
+		try {
+			serverSocketChannel = openServerSocketChannel();
+
+			for (int i = 0; i < eventLoops.length; i++) {
+				eventLoops[i] = new EventLoop(Selector.open());
+				Thread thread = new Thread(eventLoops[i], "ez-rpc-nio-event-loop-" + serverSocketChannel.getLocalAddress() + "-" + i);
+				thread.setDaemon(true);
+				thread.start();
+			}
+
+			int nextEventLoop = 0;
+			for (;;) {
+				SocketChannel socketChannel = serverSocketChannel.accept();
+				socketChannel.configureBlocking(false);
+				if (socketChannel.supportedOptions().contains(StandardSocketOptions.TCP_NODELAY)) {
+					socketChannel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+				}
+
+				eventLoops[nextEventLoop].register(socketChannel);
+				nextEventLoop = (nextEventLoop + 1) % eventLoops.length;
+			}
+		} catch (IOException e) {
+			if (!stopping) {
+				closeEventLoops();
+				workerExecutorService.shutdown();
+			}
+		}
+	}
+
+	/**
+	 * Shuts the server down gracefully.
+	 *
+	 * The server stops accepting connections and sends a {@link GoAway} to all connected clients, so that they send new requests to other servers.
+	 * Requests that were already received are still executed and answered until the timeout expires, then all connections are closed.
+	 *
+	 * @param timeout the maximum time to wait for the requests in flight
+	 * @param unit the {@link TimeUnit} of the timeout
+	 * @return <code>true</code> if all requests in flight were answered within the timeout
+	 */
+	public boolean stop(long timeout, TimeUnit unit) {
+		drainTimeoutMillis = unit.toMillis(timeout);
+		stopping = true;
+
+		ServerSocketChannel listeningChannel = serverSocketChannel;
+		if (listeningChannel != null) {
+			closeQuietly(listeningChannel);
+		}
+
+		for (EventLoop eventLoop : eventLoops) {
+			if (eventLoop != null) {
+				eventLoop.goAway();
+			}
+		}
+
+		boolean drained = awaitInFlight(timeout, unit);
+
+		if (!drained) {
+			// interrupted requests must not be answered as if they had completed
+			discardResponses = true;
+		}
+		closeEventLoops();
+		if (drained) {
+			workerExecutorService.shutdown();
+		} else {
+			workerExecutorService.shutdownNow();
+		}
+		return drained;
+	}
+
+	private void closeEventLoops() {
+		for (EventLoop eventLoop : eventLoops) {
+			if (eventLoop != null) {
+				eventLoop.close();
+			}
+		}
+	}
+
+	private GoAway createGoAway() {
+		GoAway goAway = new GoAway();
+		goAway.drainTimeout = drainTimeoutMillis;
+		return goAway;
+	}
+
+	/**
+	 * Opens the {@link ServerSocketChannel} bound to the address of this transport.
+	 *
+	 * @return the bound {@link ServerSocketChannel}
+	 * @throws IOException if binding failed
+	 */
+	protected ServerSocketChannel openServerSocketChannel() throws IOException {
+		ServerSocketChannel serverSocketChannel = ServerSocketChannel.open();
+		serverSocketChannel.bind(address);
+		return serverSocketChannel;
+	}
+
+	private class EventLoop implements Runnable {
+		private final Selector selector;
+
+		private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+		private volatile boolean running = true;
+
+		public EventLoop(Selector selector) {
+			this.selector = selector;
+		}
+
+		public void register(SocketChannel socketChannel) {
+			execute(() -> {
+				try {
+					SelectionKey key = socketChannel.register(selector, SelectionKey.OP_READ);
+					Connection connection = new Connection(this, socketChannel, key);
+					key.attach(connection);
+					connection.scheduleIdleCheck();
+					if (stopping) {
+						connection.send(createGoAway());
+					}
+				} catch (IOException e) {
+					closeQuietly(socketChannel);
+				}
+			});
+		}
+
+		public void execute(Runnable task) {
+			tasks.add(task);
+			selector.wakeup();
+		}
+
+		public void goAway() {
+			execute(() -> {
+				for (SelectionKey key : selector.keys()) {
+					Connection connection = (Connection) key.attachment();
+					if (connection != null && key.isValid()) {
+						connection.send(createGoAway());
+					}
+				}
+			});
+		}
+
+		public void close() {
+			running = false;
+			selector.wakeup();
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (running) {
+					selector.select();
+
+					Runnable task;
+					while ((task = tasks.poll()) != null) {
+						task.run();
+					}
+
+					Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+					while (iterator.hasNext()) {
+						SelectionKey key = iterator.next();
+						iterator.remove();
+
+						Connection connection = (Connection) key.attachment();
+						if (!key.isValid()) {
+							connection.close();
+							continue;
+						}
+
+						if (key.isReadable()) {
+							connection.read();
+						}
+						if (key.isValid() && key.isWritable()) {
+							connection.write();
+						}
+					}
+				}
+			} catch (IOException e) {
+				// selector failed - fall through and close all connections
+			} finally {
+				// send the responses that were queued until the event loop was closed (but not the responses of interrupted requests)
+				Runnable task;
+				while ((task = tasks.poll()) != null) {
+					task.run();
+				}
+				for (SelectionKey key : selector.keys()) {
+					Connection connection = (Connection) key.attachment();
+					if (connection != null) {
+						// also cancels the idle check
+						connection.close();
+					} else {
+						closeQuietly(key.channel());
+					}
+				}
+				closeQuietly(selector);
+			}
+		}
+	}
+
+	private class Connection {
+		private final EventLoop eventLoop;
+		private final SocketChannel socketChannel;
+		private final SelectionKey key;
+
+		private volatile FrameCodec connectionFrameCodec = frameCodec;
+
+		private long frameCount;
+
+		private ByteBuffer readBuffer;
+		private final Queue<ByteBuffer> writeQueue = new ConcurrentLinkedQueue<>();
+		private final AtomicBoolean writeScheduled = new AtomicBoolean();
+
+		private final AtomicInteger inFlightCount = new AtomicInteger();
+		private long lastReceivedNanos = System.nanoTime();
+		private volatile Timeout idleCheck;
+
+		public Connection(EventLoop eventLoop, SocketChannel socketChannel, SelectionKey key) {
+			this.eventLoop = eventLoop;
+			this.socketChannel = socketChannel;
+			this.key = key;
+		}
+
+		public void read() {
+			if (readBuffer == null) {
+				readBuffer = frameCodec.getBufferPool().acquireDirect(INITIAL_READ_BUFFER_SIZE);
+			}
+
+			try {
+				int count = socketChannel.read(readBuffer);
+				if (count < 0) {
+					close();
+					return;
+				}
+				lastReceivedNanos = System.nanoTime();
+			} catch (IOException e) {
+				close();
+				return;
+			}
+
+			readBuffer.flip();
+			try {
+				ByteBuffer frame;
+				while ((frame = connectionFrameCodec.nextFrame(readBuffer)) != null) {
+					handleFrame(frame);
+				}
+
+				int frameSize = connectionFrameCodec.frameSize(readBuffer);
+				if (frameSize > readBuffer.capacity()) {
+					ByteBuffer largerBuffer = frameCodec.getBufferPool().acquireDirect(frameSize);
+					largerBuffer.put(readBuffer);
+					frameCodec.release(readBuffer);
+					readBuffer = largerBuffer;
+				} else {
+					readBuffer.compact();
+				}
+			} catch (RuntimeException e) {
+				// corrupt frame or rejected by the worker executor
+				close();
+				return;
+			}
+
+			if (readBuffer.position() == 0) {
+				// idle connections do not hold on to a buffer
+				frameCodec.release(readBuffer);
+				readBuffer = null;
+			}
+		}
+
+		private void handleFrame(ByteBuffer frame) {
+			Object requestObject = connectionFrameCodec.decodeFrame(frame);
+			frameCount++;
+			if (requestObject instanceof Handshake) {
+				if (frameCount > 1) {
+					// a late handshake would switch the codec while responses are still written with the old one
+					throw new RpcException("Handshake after the first frame");
+				}
+				Handshake answer = frameCodec.answerHandshake((Handshake) requestObject);
+				send(answer);
+				connectionFrameCodec = frameCodec.negotiate(answer);
+			} else if (requestObject instanceof Heartbeat) {
+				Heartbeat pong = new Heartbeat();
+				pong.pong = true;
+				send(pong);
+			} else if (requestObject instanceof Request) {
+				Request request = (Request) requestObject;
+				if (request.execute) {
+					if (!request.oneWay) {
+						inFlightCount.incrementAndGet();
+					}
+					dispatch(request, workerExecutorService, response -> {
+						inFlightCount.decrementAndGet();
+						send(response);
+					});
+				} else {
+					// cancelling a call can close its stream, which must not run in the event loop
+					ForkJoinPool.commonPool().execute(() -> handleRequest(request));
+				}
+			} else if (requestObject instanceof BatchRequest) {
+				BatchRequest batchRequest = (BatchRequest) requestObject;
+				inFlightCount.incrementAndGet();
+				dispatchBatch(batchRequest, workerExecutorService, batchResponse -> {
+					inFlightCount.decrementAndGet();
+					send(batchResponse);
+				});
+			}
+		}
+
+		private void handleRequest(Request request) {
+			Response response;
+			try {
+				response = receive(request);
+			} catch (RpcException e) {
+				response = errorResponse(request.requestId, e);
+			}
+
+			send(response);
+		}
+
+		private void send(Object message) {
+			if (discardResponses) {
+				return;
+			}
+			ByteBuffer frame;
+			try {
+				frame = connectionFrameCodec.encode(message, true);
+			} catch (RuntimeException e) {
+				// answer the request with the failure instead
+				Object failure = encodingFailure(message, e);
+				if (failure == null) {
+					return;
+				}
+				frame = connectionFrameCodec.encode(failure, true);
+			}
+			writeQueue.add(frame);
+			if (writeScheduled.compareAndSet(false, true)) {
+				// responses queued until the event loop runs the write are coalesced into one gathering write
+				eventLoop.execute(() -> {
+					writeScheduled.set(false);
+					write();
+				});
+			}
+		}
+
+		public void write() {
+			if (!key.isValid()) {
+				return;
+			}
+
+			try {
+				while (!writeQueue.isEmpty()) {
+					ByteBuffer[] buffers = writeQueue.toArray(new ByteBuffer[0]);
+					socketChannel.write(buffers);
+
+					for (ByteBuffer buffer : buffers) {
+						if (buffer.hasRemaining()) {
+							// socket send buffer is full - continue when the channel becomes writable again
+							key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+							return;
+						}
+						frameCodec.release(writeQueue.remove());
+					}
+				}
+				key.interestOps(SelectionKey.OP_READ);
+			} catch (IOException e) {
+				close();
+			}
+		}
+
+		/**
+		 * Closes the connection in the event loop if it is idle.
+		 * Idle connections are detected with a resolution of half the idle timeout.
+		 */
+		public void scheduleIdleCheck() {
+			long idleTimeout = idleTimeoutNanos;
+			if (idleTimeout <= 0) {
+				return;
+			}
+
+			idleCheck = getTimerWheel().schedule(() -> eventLoop.execute(() -> {
+				if (!key.isValid()) {
+					return;
+				}
+				if (inFlightCount.get() == 0 && System.nanoTime() - lastReceivedNanos >= idleTimeout) {
+					close();
+				} else {
+					scheduleIdleCheck();
+				}
+			}), Math.max(1, TimeUnit.NANOSECONDS.toMillis(idleTimeout / 2)), TimeUnit.MILLISECONDS);
+		}
+
+		public void close() {
+			key.cancel();
+			closeQuietly(socketChannel);
+			Timeout check = idleCheck;
+			if (check != null) {
+				check.cancel();
+			}
+
+			frameCodec.release(readBuffer);
+			readBuffer = null;
+			ByteBuffer buffer;
+			while ((buffer = writeQueue.poll()) != null) {
+				frameCodec.release(buffer);
+			}
+		}
+	}
+
+	private static void closeQuietly(AutoCloseable closeable) {
+		try {
+			closeable.close();
+		} catch (Exception e) {
+			// ignore
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package ch.obermuhlner.rpc.transport.socket;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import ch.obermuhlner.rpc.exception.RpcException;
+import ch.obermuhlner.rpc.protocol.Protocol;
+import ch.obermuhlner.rpc.service.BatchRequest;
+import ch.obermuhlner.rpc.service.Request;
+import ch.obermuhlner.rpc.service.Response;
+import ch.obermuhlner.rpc.transport.ClientTransport;
+
+/**
+ * Client transport layer that stripes the requests over several persistent connections of a {@link SocketConnectionPool}.
+ *
+ * Several transports may share the same {@link SocketConnectionPool}, the connection limits then apply to all of them together.
+ */
+public class PooledSocketClientTransport implements ClientTransport, AutoCloseable {
+
+	private final SocketConnectionPool connectionPool;
+	private final boolean ownsConnectionPool;
+	private final String host;
+	private final int port;
+
+	public PooledSocketClientTransport(Protocol<Object> protocol, String host, int port, int minConnections, int maxConnections) {
+		this(new SocketConnectionPool(protocol, minConnections, maxConnections), true, host, port);
+	}
+
+	public PooledSocketClientTransport(SocketConnectionPool connectionPool, String host, int port) {
+		this(connectionPool, false, host, port);
+	}
+
+	private PooledSocketClientTransport(SocketConnectionPool connectionPool, boolean ownsConnectionPool, String host, int port) {
+		this.connectionPool = connectionPool;
+		this.ownsConnectionPool = ownsConnectionPool;
+		this.host = host;
+		this.port = port;
+	}
+
+	@Override
+	public CompletableFuture<Response> send(Request request) {
+		try {
+			return connectionPool.acquire(host, port).send(request);
+		} catch (RpcException e) {
+			CompletableFuture<Response> future = new CompletableFuture<>();
+			future.completeExceptionally(e);
+			return future;
+		}
+	}
+
+	@Override
+	public List<CompletableFuture<Response>> sendBatch(BatchRequest batchRequest) {
+		try {
+			return connectionPool.acquire(host, port).sendBatch(batchRequest);
+		} catch (RpcException e) {
+			return SocketConnection.failedFutures(batchRequest, e);
+		}
+	}
+
+	@Override
+	public boolean isAlive() {
+		return connectionPool.isAlive(host, port);
+	}
+
+	@Override
+	public void close() {
+		if (ownsConnectionPool) {
+			connectionPool.close();
+		}
+	}
+}
@@ -1,66 +1,171 @@
 package ch.obermuhlner.rpc.transport.socket;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.Socket;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import ch.obermuhlner.rpc.exception.RpcException;
 import ch.obermuhlner.rpc.protocol.Protocol;
+import ch.obermuhlner.rpc.service.BatchRequest;
 import ch.obermuhlner.rpc.service.Request;
 import ch.obermuhlner.rpc.service.Response;
-import ch.obermuhlner.rpc.transport.ByteUtils;
 import ch.obermuhlner.rpc.transport.ClientTransport;
+import ch.obermuhlner.rpc.transport.frame.FrameCodec;
+import ch.obermuhlner.rpc.transport.frame.FrameWriter;
 
-public class SocketClientTransport implements ClientTransport {
+/**
+ * Client transport layer that sends requests over TCP sockets.
+ * 
+ * By default a new {@link Socket} is opened for every request.
+ * In persistent mode all requests share a single long-lived {@link SocketConnection}, which is reopened when it was lost.
+ * Compression (if supported by the {@link FrameCodec}) is only negotiated for persistent connections.
+ */
+public class SocketClientTransport implements ClientTransport, AutoCloseable {
 
-	private Protocol<Object> protocol;
+	private FrameCodec frameCodec;
 	private String host;
 	private int port;
+	private boolean persistent;
+	private long coalescingNanos;
+
+	private volatile long heartbeatIntervalNanos;
+	private volatile long idleTimeoutNanos;
+
+	private SocketConnection connection;
 
 	public SocketClientTransport(Protocol<Object> protocol, String host, int port) {
-		this.protocol = protocol;
+		this(protocol, host, port, false);
+	}
+
+	public SocketClientTransport(Protocol<Object> protocol, String host, int port, boolean persistent) {
+		this(protocol, host, port, persistent, 0);
+	}
+
+	/**
+	 * Constructs a {@link SocketClientTransport}.
+	 * 
+	 * @param protocol the {@link Protocol} to serialize requests and responses
+	 * @param host the host name of the server
+	 * @param port the port of the server
+	 * @param persistent <code>true</code> to send all requests over a single persistent connection
+	 * @param coalescingNanos the time in nanoseconds a persistent connection waits for more requests before flushing, see {@link FrameWriter}
+	 */
+	public SocketClientTransport(Protocol<Object> protocol, String host, int port, boolean persistent, long coalescingNanos) {
+		this(new FrameCodec(protocol), host, port, persistent, coalescingNanos);
+	}
+
+	/**
+	 * Constructs a {@link SocketClientTransport}.
+	 * 
+	 * @param frameCodec the {@link FrameCodec} to encode requests and decode responses
+	 * @param host the host name of the server
+	 * @param port the port of the server
+	 * @param persistent <code>true</code> to send all requests over a single persistent connection
+	 * @param coalescingNanos the time in nanoseconds a persistent connection waits for more requests before flushing, see {@link FrameWriter}
+	 */
+	public SocketClientTransport(FrameCodec frameCodec, String host, int port, boolean persistent, long coalescingNanos) {
+		this.frameCodec = frameCodec;
 		this.host = host;
 		this.port = port;
+		this.persistent = persistent;
+		this.coalescingNanos = coalescingNanos;
 	}
 	
 	@Override
 	public CompletableFuture<Response> send(Request request) {
+		if (persistent) {
+			try {
+				return getConnection().send(request);
+			} catch (RpcException e) {
+				CompletableFuture<Response> future = new CompletableFuture<>();
+				future.completeExceptionally(e);
+				return future;
+			}
+		}
+
 		return CompletableFuture.supplyAsync(() -> {
 			try (Socket socket = new Socket(host, port)) {
 				OutputStream out = socket.getOutputStream();
-				sendObject(request, out);
+				frameCodec.writeFrame(out, request);
+				out.flush();
+				if (request.oneWay) {
+					return new Response();
+				}
 				
-				InputStream in = socket.getInputStream();
-				return (Response) readObject(in);
+				InputStream in = new BufferedInputStream(socket.getInputStream());
+				Object responseObject;
+				do {
+					// skip the GoAway of a server that is shutting down
+					responseObject = frameCodec.readFrame(in);
+				} while (!(responseObject instanceof Response));
+				return (Response) responseObject;
 			} catch (IOException e) {
 				throw new RpcException(e);
 			}
 		});
 	}
 
-	private void sendObject(Object object, OutputStream out) throws IOException {
-		ByteArrayOutputStream requestByteArrayOutputStream = new ByteArrayOutputStream();
-		protocol.serialize(requestByteArrayOutputStream, object);
-		byte[] requestData = requestByteArrayOutputStream.toByteArray();
-		byte[] sizeData = ByteUtils.toBytes(requestData.length);
-		
-		out.write(sizeData);
-		out.write(requestData);
-		out.flush();
+	/**
+	 * Sends all requests of a {@link BatchRequest} in a single frame if the transport is persistent, otherwise every request separately.
+	 */
+	@Override
+	public List<CompletableFuture<Response>> sendBatch(BatchRequest batchRequest) {
+		if (persistent) {
+			try {
+				return getConnection().sendBatch(batchRequest);
+			} catch (RpcException e) {
+				return SocketConnection.failedFutures(batchRequest, e);
+			}
+		}
+
+		return ClientTransport.super.sendBatch(batchRequest);
+	}
+
+	/**
+	 * Sets the heartbeat interval and the idle timeout of the connections opened afterwards, see {@link SocketConnection#startHeartbeat(long, long, TimeUnit)}.
+	 * 
+	 * @param heartbeatInterval the heartbeat interval, <code>0</code> to send no heartbeats
+	 * @param idleTimeout the idle timeout, <code>0</code> to keep idle connections open
+	 * @param unit the {@link TimeUnit} of the heartbeat interval and the idle timeout
+	 */
+	public void setHeartbeat(long heartbeatInterval, long idleTimeout, TimeUnit unit) {
+		heartbeatIntervalNanos = unit.toNanos(heartbeatInterval);
+		idleTimeoutNanos = unit.toNanos(idleTimeout);
 	}
-	
-	private Object readObject(InputStream in) throws IOException {
-		byte[] sizeData = new byte[4];
-		in.read(sizeData);
-		int responseSize = ByteUtils.toInt(sizeData);
-		
-		byte[] responseData = new byte[responseSize];
-		in.read(responseData);
-		
-		return protocol.deserialize(new ByteArrayInputStream(responseData));
+
+	/**
+	 * Returns whether the server is considered reachable.
+	 * 
+	 * After the connection failed the server is considered dead for one heartbeat interval, then the next request tries to reconnect.
+	 * A server that sent a {@link ch.obermuhlner.rpc.service.GoAway} is not alive while it drains the connection.
+	 */
+	@Override
+	public synchronized boolean isAlive() {
+		return connection == null || !connection.isUnavailable(heartbeatIntervalNanos);
+	}
+
+	@Override
+	public synchronized void close() {
+		if (connection != null) {
+			connection.close();
+			connection = null;
+		}
+	}
+
+	private synchronized SocketConnection getConnection() {
+		if (connection == null || !connection.isOpen()) {
+			try {
+				connection = new SocketConnection(frameCodec, host, port, coalescingNanos);
+				connection.startHeartbeat(heartbeatIntervalNanos, idleTimeoutNanos, TimeUnit.NANOSECONDS);
+			} catch (IOException e) {
+				throw new RpcException(e);
+			}
+		}
+		return connection;
 	}
 }
@@ -0,0 +1,518 @@
+package ch.obermuhlner.rpc.transport.socket;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+import ch.obermuhlner.rpc.exception.RpcException;
+import ch.obermuhlner.rpc.exception.RpcTimeoutException;
+import ch.obermuhlner.rpc.service.BatchRequest;
+import ch.obermuhlner.rpc.service.BatchResponse;
+import ch.obermuhlner.rpc.service.GoAway;
+import ch.obermuhlner.rpc.service.Handshake;
+import ch.obermuhlner.rpc.service.Heartbeat;
+import ch.obermuhlner.rpc.service.Request;
+import ch.obermuhlner.rpc.service.Response;
+import ch.obermuhlner.rpc.transport.HashedTimerWheel;
+import ch.obermuhlner.rpc.transport.HashedTimerWheel.Timeout;
+import ch.obermuhlner.rpc.transport.frame.FrameCodec;
+import ch.obermuhlner.rpc.transport.frame.FrameWriter;
+
+/**
+ * A long-lived client connection that multiplexes many concurrent requests over a single {@link Socket} or blocking {@link SocketChannel}.
+ *
+ * Requests are pipelined: new requests are written without waiting for the responses of earlier requests.
+ * Requests written concurrently are coalesced into a single flush by a {@link FrameWriter}.
+ * Responses are matched to the waiting {@link CompletableFuture} by {@link Request#requestId}.
+ *
+ * If the {@link FrameCodec} supports compression, the connection starts with a {@link Handshake} to negotiate it with the server.
+ *
+ * With {@link #startHeartbeat(long, long, TimeUnit)} the connection detects a dead server (for example a half-open socket) by sending {@link Heartbeat}s,
+ * and closes itself when it has been idle for too long.
+ *
+ * When the server sends a {@link GoAway} because it shuts down, the connection is no longer {@link #isOpen() open} for new requests.
+ * It waits for the responses of the pending requests and then closes itself.
+ */
+public class SocketConnection implements AutoCloseable {
+
+	// the tasks of the timer thread must not block: writing blocks if the socket buffer of a dead connection is full,
+	// and completing an expired response runs its dependent stages, which may send a cancel request
+	private static final Executor timerTaskExecutor = Executors.newCachedThreadPool(runnable -> {
+		Thread thread = new Thread(runnable, "ez-rpc-timer-task");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final FrameCodec frameCodec;
+	private final Closeable socket;
+	private final String name;
+	private final InputStream in;
+	private final FrameWriter out;
+
+	private final Map<String, CompletableFuture<Response>> pendingResponses = new ConcurrentHashMap<>();
+
+	private volatile boolean closed;
+	private volatile boolean failed;
+	private volatile boolean goingAway;
+	private volatile long closedNanos;
+
+	private volatile long lastReceivedNanos = System.nanoTime();
+	private volatile long lastSentNanos = System.nanoTime();
+	private volatile long pingSentNanos;
+	private volatile boolean pingPending;
+
+	private final AtomicReference<CompletableFuture<Void>> nextFrameReceived = new AtomicReference<>();
+
+	public SocketConnection(FrameCodec frameCodec, String host, int port) throws IOException {
+		this(frameCodec, new Socket(host, port), 0);
+	}
+
+	public SocketConnection(FrameCodec frameCodec, String host, int port, long coalescingNanos) throws IOException {
+		this(frameCodec, new Socket(host, port), coalescingNanos);
+	}
+
+	public SocketConnection(FrameCodec frameCodec, Socket socket, long coalescingNanos) throws IOException {
+		this(frameCodec, socket, String.valueOf(socket.getRemoteSocketAddress()), socket.getInputStream(), socket.getOutputStream(), coalescingNanos);
+
+		socket.setTcpNoDelay(true);
+	}
+
+	/**
+	 * Constructs a {@link SocketConnection} over a connected {@link SocketChannel}, for example a Unix domain socket opened with {@link UnixDomainSockets}.
+	 *
+	 * @param frameCodec the {@link FrameCodec} to encode requests and decode responses
+	 * @param socketChannel the connected {@link SocketChannel} in blocking mode
+	 * @param coalescingNanos the time in nanoseconds to wait for more requests before flushing, see {@link FrameWriter}
+	 * @throws IOException if the remote address could not be determined
+	 */
+	public SocketConnection(FrameCodec frameCodec, SocketChannel socketChannel, long coalescingNanos) throws IOException {
+		this(frameCodec, socketChannel, String.valueOf(socketChannel.getRemoteAddress()), new ChannelInputStream(socketChannel), new ChannelOutputStream(socketChannel), coalescingNanos);
+	}
+
+	private SocketConnection(FrameCodec frameCodec, Closeable socket, String name, InputStream in, OutputStream out, long coalescingNanos) throws IOException {
+		this.socket = socket;
+		this.name = name;
+		this.in = new BufferedInputStream(in);
+
+		if (frameCodec.isCompressionSupported()) {
+			try {
+				frameCodec = handshake(frameCodec, this.in, out);
+			} catch (IOException | RuntimeException e) {
+				socket.close();
+				throw e;
+			}
+		}
+		this.frameCodec = frameCodec;
+		this.out = new FrameWriter(out, frameCodec, coalescingNanos);
+
+		Thread readerThread = new Thread(() -> readResponses(), "ez-rpc-socket-reader-" + name);
+		readerThread.setDaemon(true);
+		readerThread.start();
+	}
+
+	public CompletableFuture<Response> send(Request request) {
+		if (closed) {
+			throw new RpcException("Connection closed: " + name);
+		}
+
+		lastSentNanos = System.nanoTime();
+		CompletableFuture<Response> future;
+		if (request.execute && !request.oneWay) {
+			future = new CompletableFuture<>();
+			pendingResponses.put(request.requestId, future);
+			if (closed && pendingResponses.remove(request.requestId, future)) {
+				// closed concurrently (for example by the idle timeout) after the pending responses were failed
+				throw new RpcException("Connection closed: " + name);
+			}
+			expireAfterTimeout(request, future);
+		} else {
+			// cancel and one-way requests do not wait for their response - the server does not answer one-way requests at all
+			future = CompletableFuture.completedFuture(new Response());
+		}
+
+		try {
+			out.write(request);
+		} catch (IOException e) {
+			pendingResponses.remove(request.requestId);
+			close(e, true);
+			throw new RpcException(e);
+		} catch (RuntimeException e) {
+			// the request could not be encoded - nothing was written and the connection is still usable
+			pendingResponses.remove(request.requestId);
+			closeIfDrained();
+			throw e;
+		}
+
+		return future;
+	}
+
+	/**
+	 * Sends all requests of a {@link BatchRequest} in a single frame.
+	 * 
+	 * @param batchRequest the {@link BatchRequest} to send, containing only requests to execute
+	 * @return the {@link CompletableFuture}s of the responses, in the order of the requests
+	 */
+	public List<CompletableFuture<Response>> sendBatch(BatchRequest batchRequest) {
+		if (closed) {
+			throw new RpcException("Connection closed: " + name);
+		}
+
+		lastSentNanos = System.nanoTime();
+		List<CompletableFuture<Response>> futures = new ArrayList<>();
+		for (Request request : batchRequest.requests) {
+			CompletableFuture<Response> future = new CompletableFuture<>();
+			pendingResponses.put(request.requestId, future);
+			expireAfterTimeout(request, future);
+			futures.add(future);
+		}
+		if (closed) {
+			// closed concurrently (for example by the idle timeout) after the pending responses were failed
+			for (int i = 0; i < futures.size(); i++) {
+				pendingResponses.remove(batchRequest.requests.get(i).requestId, futures.get(i));
+			}
+			throw new RpcException("Connection closed: " + name);
+		}
+
+		try {
+			out.write(batchRequest);
+		} catch (IOException e) {
+			for (Request request : batchRequest.requests) {
+				pendingResponses.remove(request.requestId);
+			}
+			close(e, true);
+			throw new RpcException(e);
+		} catch (RuntimeException e) {
+			for (Request request : batchRequest.requests) {
+				pendingResponses.remove(request.requestId);
+			}
+			closeIfDrained();
+			throw e;
+		}
+
+		return futures;
+	}
+
+	/**
+	 * Returns whether new requests can be sent over this connection.
+	 *
+	 * @return <code>true</code> if the connection is neither closed nor going away
+	 */
+	public boolean isOpen() {
+		return !closed && !goingAway;
+	}
+
+	/**
+	 * Returns whether the server was reachable over this connection.
+	 *
+	 * A connection that was lost, whose heartbeat timed out or whose server sent a {@link GoAway} is not alive,
+	 * while a connection that was closed normally (for example because it was idle) still is.
+	 *
+	 * @return <code>true</code> if the connection has not failed
+	 */
+	public boolean isAlive() {
+		return !failed && !goingAway;
+	}
+
+	/**
+	 * Returns whether the server should not receive new requests, because it is draining this connection after a {@link GoAway}
+	 * or because the connection failed less than the specified time ago.
+	 */
+	boolean isUnavailable(long failureNanos) {
+		if (goingAway && !closed) {
+			return true;
+		}
+		return failed && System.nanoTime() - closedNanos < failureNanos;
+	}
+
+	/**
+	 * Starts to check periodically that the server is alive and that the connection is still used.
+	 *
+	 * If no frame was received for the heartbeat interval, a {@link Heartbeat} ping is sent which the server answers with a pong.
+	 * If the pong does not arrive within another interval, the server is considered dead and the connection is closed, failing all pending requests.
+	 * A connection without pending requests that has not sent a request for the idle timeout is closed.
+	 *
+	 * @param heartbeatInterval the heartbeat interval, <code>0</code> to send no heartbeats
+	 * @param idleTimeout the idle timeout, <code>0</code> to keep idle connections open
+	 * @param unit the {@link TimeUnit} of the heartbeat interval and the idle timeout
+	 */
+	public void startHeartbeat(long heartbeatInterval, long idleTimeout, TimeUnit unit) {
+		startHeartbeat(heartbeatInterval, idleTimeout, unit, () -> true);
+	}
+
+	/**
+	 * Starts to check periodically that the server is alive and that the connection is still used, see {@link #startHeartbeat(long, long, TimeUnit)}.
+	 *
+	 * @param heartbeatInterval the heartbeat interval, <code>0</code> to send no heartbeats
+	 * @param idleTimeout the idle timeout, <code>0</code> to keep idle connections open
+	 * @param unit the {@link TimeUnit} of the heartbeat interval and the idle timeout
+	 * @param idleClosable asked before an idle connection is closed, returns <code>false</code> to keep it open
+	 */
+	void startHeartbeat(long heartbeatInterval, long idleTimeout, TimeUnit unit, BooleanSupplier idleClosable) {
+		long heartbeatIntervalNanos = unit.toNanos(heartbeatInterval);
+		long idleTimeoutNanos = unit.toNanos(idleTimeout);
+		if (heartbeatIntervalNanos > 0 || idleTimeoutNanos > 0) {
+			scheduleHeartbeat(heartbeatIntervalNanos, idleTimeoutNanos, idleClosable);
+		}
+	}
+
+	/**
+	 * Checks that the server still answers, if nothing was received over this connection for longer than the specified idle time.
+	 *
+	 * A {@link Heartbeat} ping is sent and the calling thread waits until the server answers.
+	 * If the server does not answer within the timeout the connection is closed as failed, failing all pending requests.
+	 *
+	 * @param idleTime the time without received frames after which the server is asked, <code>0</code> to always ask
+	 * @param timeout the maximum time to wait for the answer of the server
+	 * @param unit the {@link TimeUnit} of the idle time and the timeout
+	 * @return <code>true</code> if the connection can be used for new requests
+	 */
+	public boolean validate(long idleTime, long timeout, TimeUnit unit) {
+		if (!isOpen()) {
+			return false;
+		}
+		if (idleTime > 0 && System.nanoTime() - lastReceivedNanos < unit.toNanos(idleTime)) {
+			return true;
+		}
+
+		CompletableFuture<Void> received = nextFrameReceived.updateAndGet(existing -> existing != null ? existing : new CompletableFuture<>());
+		if (closed) {
+			// close() might have run before the future was registered
+			return false;
+		}
+		timerTaskExecutor.execute(() -> {
+			try {
+				out.write(new Heartbeat());
+			} catch (IOException e) {
+				close(e, true);
+			}
+		});
+
+		try {
+			received.get(timeout, unit);
+			return isOpen();
+		} catch (TimeoutException e) {
+			close(new RpcException("No answer to heartbeat from " + name + " within " + unit.toMillis(timeout) + " ms"), true);
+			return false;
+		} catch (ExecutionException e) {
+			return false;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	public int getPendingCount() {
+		return pendingResponses.size();
+	}
+
+	@Override
+	public void close() {
+		close(new RpcException("Connection closed: " + name), false);
+	}
+
+	private void close(Throwable cause, boolean failure) {
+		synchronized (this) {
+			if (!closed) {
+				closed = true;
+				failed = failure;
+				closedNanos = System.nanoTime();
+			}
+		}
+
+		try {
+			socket.close();
+		} catch (IOException e) {
+			// ignore
+		}
+
+		for (String requestId : pendingResponses.keySet()) {
+			CompletableFuture<Response> future = pendingResponses.remove(requestId);
+			if (future != null) {
+				future.completeExceptionally(cause instanceof RpcException ? cause : new RpcException(cause));
+			}
+		}
+
+		CompletableFuture<Void> received = nextFrameReceived.getAndSet(null);
+		if (received != null) {
+			received.completeExceptionally(cause);
+		}
+	}
+
+	private void readResponses() {
+		try {
+			while (!closed) {
+				Object responseObject = frameCodec.readFrame(in);
+				lastReceivedNanos = System.nanoTime();
+				pingPending = false;
+				CompletableFuture<Void> received = nextFrameReceived.getAndSet(null);
+				if (received != null) {
+					received.complete(null);
+				}
+				if (responseObject instanceof Response) {
+					completeResponse((Response) responseObject);
+				} else if (responseObject instanceof BatchResponse) {
+					for (Response response : ((BatchResponse) responseObject).responses) {
+						completeResponse(response);
+					}
+				} else if (responseObject instanceof GoAway) {
+					goingAway = true;
+					closeIfDrained();
+				}
+			}
+		} catch (IOException | RuntimeException e) {
+			// a server that sent a GoAway closes the connection on purpose after draining
+			close(e, !goingAway);
+		}
+	}
+
+	private void closeIfDrained() {
+		if (goingAway && pendingResponses.isEmpty()) {
+			close();
+		}
+	}
+
+	private void scheduleHeartbeat(long heartbeatIntervalNanos, long idleTimeoutNanos, BooleanSupplier idleClosable) {
+		long periodNanos = heartbeatIntervalNanos > 0 ? heartbeatIntervalNanos : idleTimeoutNanos;
+		HashedTimerWheel.getDefault().schedule(() -> {
+			if (closed) {
+				return;
+			}
+
+			long nowNanos = System.nanoTime();
+			if (idleTimeoutNanos > 0 && pendingResponses.isEmpty() && nowNanos - lastSentNanos >= idleTimeoutNanos && idleClosable.getAsBoolean()) {
+				close();
+				return;
+			}
+
+			if (heartbeatIntervalNanos > 0) {
+				if (pingPending && nowNanos - pingSentNanos >= heartbeatIntervalNanos) {
+					close(new RpcException("No heartbeat from " + name + " for " + TimeUnit.NANOSECONDS.toMillis(nowNanos - lastReceivedNanos) + " ms"), true);
+					return;
+				}
+				if (!pingPending && nowNanos - lastReceivedNanos >= heartbeatIntervalNanos) {
+					pingSentNanos = nowNanos;
+					pingPending = true;
+					timerTaskExecutor.execute(() -> {
+						try {
+							out.write(new Heartbeat());
+						} catch (IOException e) {
+							close(e, true);
+						}
+					});
+				}
+			}
+
+			scheduleHeartbeat(heartbeatIntervalNanos, idleTimeoutNanos, idleClosable);
+		}, periodNanos, TimeUnit.NANOSECONDS);
+	}
+
+	private static FrameCodec handshake(FrameCodec frameCodec, InputStream in, OutputStream out) throws IOException {
+		frameCodec.writeFrame(out, frameCodec.createHandshake());
+		out.flush();
+
+		Object answer = frameCodec.readFrame(in);
+		if (!(answer instanceof Handshake)) {
+			throw new RpcException("Expected handshake but received: " + answer);
+		}
+		return frameCodec.negotiate((Handshake) answer);
+	}
+
+	static List<CompletableFuture<Response>> failedFutures(BatchRequest batchRequest, Throwable exception) {
+		List<CompletableFuture<Response>> futures = new ArrayList<>();
+		for (int i = 0; i < batchRequest.requests.size(); i++) {
+			CompletableFuture<Response> future = new CompletableFuture<>();
+			future.completeExceptionally(exception);
+			futures.add(future);
+		}
+		return futures;
+	}
+
+	/**
+	 * Removes a pending response that did not arrive within the {@link Request#timeout}, so that it does not leak if the server never answers.
+	 */
+	private void expireAfterTimeout(Request request, CompletableFuture<Response> future) {
+		if (request.timeout <= 0) {
+			return;
+		}
+
+		Timeout timeout = HashedTimerWheel.getDefault().schedule(() -> {
+			if (pendingResponses.remove(request.requestId, future)) {
+				timerTaskExecutor.execute(() -> future.completeExceptionally(new RpcTimeoutException("Timeout after " + request.timeout + " ms waiting for response: " + request.requestId)));
+			}
+		}, request.timeout, TimeUnit.MILLISECONDS);
+		future.whenComplete((response, exception) -> timeout.cancel());
+	}
+
+	private void completeResponse(Response response) {
+		CompletableFuture<Response> future = response.requestId == null ? null : pendingResponses.remove(response.requestId);
+		if (future != null) {
+			future.complete(response);
+			closeIfDrained();
+		}
+	}
+
+	/**
+	 * Reads from a blocking {@link SocketChannel} without holding the channel lock used by {@link java.nio.channels.Channels#newInputStream(java.nio.channels.ReadableByteChannel)},
+	 * so that the reader thread does not block concurrent writes.
+	 */
+	private static class ChannelInputStream extends InputStream {
+		private final SocketChannel socketChannel;
+
+		public ChannelInputStream(SocketChannel socketChannel) {
+			this.socketChannel = socketChannel;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] data = new byte[1];
+			int count = read(data, 0, 1);
+			return count < 0 ? -1 : data[0] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] data, int offset, int length) throws IOException {
+			if (length == 0) {
+				return 0;
+			}
+			return socketChannel.read(ByteBuffer.wrap(data, offset, length));
+		}
+	}
+
+	private static class ChannelOutputStream extends OutputStream {
+		private final SocketChannel socketChannel;
+
+		public ChannelOutputStream(SocketChannel socketChannel) {
+			this.socketChannel = socketChannel;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] data, int offset, int length) throws IOException {
+			ByteBuffer buffer = ByteBuffer.wrap(data, offset, length);
+			while (buffer.hasRemaining()) {
+				socketChannel.write(buffer);
+			}
+		}
+	}
+}
@@ -0,0 +1,245 @@
+package ch.obermuhlner.rpc.transport.socket;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import ch.obermuhlner.rpc.exception.RpcException;
+import ch.obermuhlner.rpc.protocol.Protocol;
+import ch.obermuhlner.rpc.transport.frame.FrameCodec;
+
+/**
+ * Pool of persistent {@link SocketConnection}s, keeping between a minimum and a maximum number of connections per <code>host:port</code>.
+ *
+ * Concurrent requests are striped over the connections of an endpoint:
+ * the connection with the fewest pending requests is chosen and a new connection is opened only if all existing connections are busy.
+ * Connections that have been closed (by either side) are detected and replaced before they are reused.
+ * A connection that has not received anything for the {@link #setValidation(long, long, TimeUnit) validation idle time} is validated with a {@link ch.obermuhlner.rpc.service.Heartbeat} before it is reused,
+ * so that a half-open connection (for example after the server host crashed or a firewall dropped the connection) is replaced instead of failing the request.
+ * With {@link #setHeartbeat(long, long, TimeUnit)} connections to dead servers are detected and closed, and idle connections above the minimum are closed until they are needed again.
+ */
+public class SocketConnectionPool implements AutoCloseable {
+
+	public static final long DEFAULT_VALIDATION_IDLE_MILLIS = 1000;
+	public static final long DEFAULT_VALIDATION_TIMEOUT_MILLIS = 1000;
+
+	private final FrameCodec frameCodec;
+	private final int minConnections;
+	private final int maxConnections;
+	private final long coalescingNanos;
+
+	private final Map<String, EndpointPool> endpointPools = new ConcurrentHashMap<>();
+
+	private volatile long heartbeatIntervalNanos;
+	private volatile long idleTimeoutNanos;
+	private volatile long validationIdleNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_VALIDATION_IDLE_MILLIS);
+	private volatile long validationTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_VALIDATION_TIMEOUT_MILLIS);
+
+	private volatile boolean closed;
+
+	public SocketConnectionPool(Protocol<Object> protocol, int minConnections, int maxConnections) {
+		this(protocol, minConnections, maxConnections, 0);
+	}
+
+	public SocketConnectionPool(Protocol<Object> protocol, int minConnections, int maxConnections, long coalescingNanos) {
+		this(new FrameCodec(protocol), minConnections, maxConnections, coalescingNanos);
+	}
+
+	public SocketConnectionPool(FrameCodec frameCodec, int minConnections, int maxConnections, long coalescingNanos) {
+		if (minConnections < 0 || maxConnections < 1 || minConnections > maxConnections) {
+			throw new IllegalArgumentException("Illegal connection limits: min=" + minConnections + " max=" + maxConnections);
+		}
+
+		this.frameCodec = frameCodec;
+		this.minConnections = minConnections;
+		this.maxConnections = maxConnections;
+		this.coalescingNanos = coalescingNanos;
+	}
+
+	public SocketConnection acquire(String host, int port) {
+		if (closed) {
+			throw new RpcException("Connection pool closed");
+		}
+
+		EndpointPool endpointPool = endpointPools.computeIfAbsent(host + ":" + port, key -> new EndpointPool(host, port));
+		return endpointPool.acquire();
+	}
+
+	/**
+	 * Sets the heartbeat interval and the idle timeout of the connections opened afterwards, see {@link SocketConnection#startHeartbeat(long, long, TimeUnit)}.
+	 *
+	 * @param heartbeatInterval the heartbeat interval, <code>0</code> to send no heartbeats
+	 * @param idleTimeout the idle timeout, <code>0</code> to keep idle connections open
+	 * @param unit the {@link TimeUnit} of the heartbeat interval and the idle timeout
+	 */
+	public void setHeartbeat(long heartbeatInterval, long idleTimeout, TimeUnit unit) {
+		heartbeatIntervalNanos = unit.toNanos(heartbeatInterval);
+		idleTimeoutNanos = unit.toNanos(idleTimeout);
+	}
+
+	/**
+	 * Sets when an idle connection is validated before it is reused, see {@link SocketConnection#validate(long, long, TimeUnit)}.
+	 *
+	 * @param idleTime the time without received frames after which a connection is validated, <code>0</code> to never validate connections
+	 * @param timeout the maximum time to wait for the server to answer the validation
+	 * @param unit the {@link TimeUnit} of the idle time and the timeout
+	 */
+	public void setValidation(long idleTime, long timeout, TimeUnit unit) {
+		validationIdleNanos = unit.toNanos(idleTime);
+		validationTimeoutNanos = unit.toNanos(timeout);
+	}
+
+	/**
+	 * Returns whether the server of an endpoint is considered reachable.
+	 *
+	 * After a connection failed the server is considered dead for one heartbeat interval, then the next request tries to reconnect.
+	 * A server that sent a {@link ch.obermuhlner.rpc.service.GoAway} is not alive while it drains its connections.
+	 *
+	 * @param host the host name of the server
+	 * @param port the port of the server
+	 * @return <code>true</code> if no connection to the server failed recently
+	 */
+	public boolean isAlive(String host, int port) {
+		EndpointPool endpointPool = endpointPools.get(host + ":" + port);
+		return endpointPool == null || endpointPool.isAlive();
+	}
+
+	public int getConnectionCount(String host, int port) {
+		EndpointPool endpointPool = endpointPools.get(host + ":" + port);
+		return endpointPool == null ? 0 : endpointPool.connections.size();
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+
+		for (EndpointPool endpointPool : endpointPools.values()) {
+			endpointPool.close();
+		}
+		endpointPools.clear();
+	}
+
+	private class EndpointPool {
+		private final String host;
+		private final int port;
+
+		private final List<SocketConnection> connections = new CopyOnWriteArrayList<>();
+
+		private volatile SocketConnection lastFailedConnection;
+
+		public EndpointPool(String host, int port) {
+			this.host = host;
+			this.port = port;
+		}
+
+		public SocketConnection acquire() {
+			while (true) {
+				SocketConnection connection = acquireConnection();
+				long validationIdle = validationIdleNanos;
+				// a connection with pending requests is watched by their timeouts, a failed validation closes the connection so that it is replaced
+				if (validationIdle <= 0 || connection.getPendingCount() > 0 || connection.validate(validationIdle, validationTimeoutNanos, TimeUnit.NANOSECONDS)) {
+					return connection;
+				}
+				if (closed) {
+					throw new RpcException("Connection pool closed");
+				}
+			}
+		}
+
+		private SocketConnection acquireConnection() {
+			SocketConnection connection = findLeastPending();
+			if (connection != null && (connection.getPendingCount() == 0 || connections.size() >= maxConnections)) {
+				return connection;
+			}
+
+			synchronized (this) {
+				for (SocketConnection existing : connections) {
+					if (!existing.isAlive()) {
+						lastFailedConnection = existing;
+					}
+				}
+				connections.removeIf(existing -> !existing.isOpen());
+
+				while (connections.size() < minConnections) {
+					connections.add(open());
+				}
+
+				connection = findLeastPending();
+				if (connection == null || (connection.getPendingCount() > 0 && connections.size() < maxConnections)) {
+					connection = open();
+					connections.add(connection);
+				}
+
+				return connection;
+			}
+		}
+
+		public boolean isAlive() {
+			long heartbeatInterval = heartbeatIntervalNanos;
+			SocketConnection failedConnection = lastFailedConnection;
+			if (failedConnection != null && failedConnection.isUnavailable(heartbeatInterval)) {
+				return false;
+			}
+			for (SocketConnection connection : connections) {
+				if (connection.isUnavailable(heartbeatInterval)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private SocketConnection findLeastPending() {
+			SocketConnection result = null;
+			int resultPendingCount = Integer.MAX_VALUE;
+
+			for (SocketConnection connection : connections) {
+				if (connection.isOpen()) {
+					int pendingCount = connection.getPendingCount();
+					if (pendingCount < resultPendingCount) {
+						result = connection;
+						resultPendingCount = pendingCount;
+					}
+				}
+			}
+
+			return result;
+		}
+
+		private SocketConnection open() {
+			try {
+				SocketConnection connection = new SocketConnection(frameCodec, host, port, coalescingNanos);
+				connection.startHeartbeat(heartbeatIntervalNanos, idleTimeoutNanos, TimeUnit.NANOSECONDS, () -> removeIdle(connection));
+				return connection;
+			} catch (IOException e) {
+				throw new RpcException(e);
+			}
+		}
+
+		/**
+		 * Removes an idle connection that is about to be closed, unless the pool would then keep less than the minimum number of open connections.
+		 */
+		private synchronized boolean removeIdle(SocketConnection connection) {
+			int openCount = 0;
+			for (SocketConnection existing : connections) {
+				if (existing.isOpen()) {
+					openCount++;
+				}
+			}
+			if (openCount <= minConnections && connections.contains(connection)) {
+				return false;
+			}
+			connections.remove(connection);
+			return true;
+		}
+
+		public synchronized void close() {
+			for (SocketConnection connection : connections) {
+				connection.close();
+			}
+			connections.clear();
+		}
+	}
+}
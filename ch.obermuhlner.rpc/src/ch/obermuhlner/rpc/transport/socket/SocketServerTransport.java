@@ -1,45 +1,107 @@
 package ch.obermuhlner.rpc.transport.socket;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import ch.obermuhlner.rpc.exception.RpcException;
 import ch.obermuhlner.rpc.meta.MetaDataService;
 import ch.obermuhlner.rpc.protocol.Protocol;
+import ch.obermuhlner.rpc.service.BatchRequest;
+import ch.obermuhlner.rpc.service.GoAway;
+import ch.obermuhlner.rpc.service.Handshake;
+import ch.obermuhlner.rpc.service.Heartbeat;
 import ch.obermuhlner.rpc.service.Request;
 import ch.obermuhlner.rpc.service.Response;
-import ch.obermuhlner.rpc.transport.ByteUtils;
+import ch.obermuhlner.rpc.transport.HashedTimerWheel.Timeout;
 import ch.obermuhlner.rpc.transport.ServerTransportImpl;
+import ch.obermuhlner.rpc.transport.frame.FrameCodec;
+import ch.obermuhlner.rpc.transport.frame.FrameWriter;
 
+/**
+ * Server transport layer that accepts TCP socket connections.
+ * 
+ * Every connection is kept open until the client closes it, so that a client may send many (also concurrent) requests over the same connection.
+ * A client may start the connection with a {@link Handshake} to negotiate the compression of the frames, see {@link FrameCodec}.
+ * A {@link Handshake} that is not the first frame of the connection closes it.
+ * {@link Heartbeat} pings of the client are answered with a pong, connections without requests in flight are closed after the {@link #setIdleTimeout(long, TimeUnit) idle timeout}.
+ * Requests are executed by the {@link ExecutorService}, which must therefore provide a thread for every open connection in addition to the threads executing the requests.
+ * Use {@link ch.obermuhlner.rpc.transport.VirtualThreadExecutors#newVirtualThreadPerTaskExecutor()} to execute every connection and request in its own virtual thread.
+ * 
+ * {@link #stop(long, TimeUnit)} shuts the server down without cutting off the requests in flight.
+ */
 public class SocketServerTransport extends ServerTransportImpl {
 
-	private Protocol<Object> protocol;
+	private FrameCodec frameCodec;
 	
 	private int port;
 
-	private ServerSocket serverSocket;
+	private volatile ServerSocket serverSocket;
 
 	private ExecutorService executorService;
 
+	private long coalescingNanos;
+
+	private volatile long idleTimeoutMillis;
+
+	private final Set<SocketHandler> handlers = ConcurrentHashMap.newKeySet();
+
+	private volatile boolean stopping;
+	private volatile long drainTimeoutMillis;
+
 	public SocketServerTransport(MetaDataService metaDataService, Protocol<Object> protocol, int port) {
 		this(metaDataService, protocol, port, Executors.newCachedThreadPool());
 	}
 	
 	public SocketServerTransport(MetaDataService metaDataService, Protocol<Object> protocol, int port, ExecutorService executorService) {
+		this(metaDataService, protocol, port, executorService, 0);
+	}
+	
+	/**
+	 * Constructs a {@link SocketServerTransport}.
+	 * 
+	 * @param metaDataService the {@link MetaDataService}
+	 * @param protocol the {@link Protocol} to serialize requests and responses
+	 * @param port the port to listen on
+	 * @param executorService the {@link ExecutorService} to handle connections and execute requests
+	 * @param coalescingNanos the time in nanoseconds a connection waits for more responses before flushing, see {@link FrameWriter}
+	 */
+	public SocketServerTransport(MetaDataService metaDataService, Protocol<Object> protocol, int port, ExecutorService executorService, long coalescingNanos) {
+		this(metaDataService, new FrameCodec(protocol), port, executorService, coalescingNanos);
+	}
+	
+	public SocketServerTransport(MetaDataService metaDataService, FrameCodec frameCodec, int port, ExecutorService executorService, long coalescingNanos) {
 		super(metaDataService);
 		
-		this.protocol = protocol;
+		this.frameCodec = frameCodec;
 		this.port = port;
 		this.executorService = executorService;
+		this.coalescingNanos = coalescingNanos;
 	}
 	
+	/**
+	 * Sets the time after which a connection is closed if the client sent nothing and no requests are in flight.
+	 *
+	 * Applies to connections accepted afterwards.
+	 *
+	 * @param idleTimeout the idle timeout, <code>0</code> to keep idle connections open
+	 * @param unit the {@link TimeUnit} of the idle timeout
+	 */
+	public void setIdleTimeout(long idleTimeout, TimeUnit unit) {
+		this.idleTimeoutMillis = unit.toMillis(idleTimeout);
+	}
+
 	public void run() {
 		try {
 			serverSocket = new ServerSocket(port);
@@ -48,50 +110,225 @@ public class SocketServerTransport extends ServerTransportImpl {
 				executorService.execute(new SocketHandler(serverSocket.accept()));
 			}
 		} catch (IOException e) {
+			if (!stopping) {
+				executorService.shutdown();
+			}
+		}
+	}
+
+	/**
+	 * Shuts the server down gracefully.
+	 * 
+	 * The server stops accepting connections and sends a {@link GoAway} to all connected clients, so that they send new requests to other servers.
+	 * Requests that were already received are still executed and answered until the timeout expires, then all connections are closed.
+	 * 
+	 * @param timeout the maximum time to wait for the requests in flight
+	 * @param unit the {@link TimeUnit} of the timeout
+	 * @return <code>true</code> if all requests in flight were answered within the timeout
+	 */
+	public boolean stop(long timeout, TimeUnit unit) {
+		drainTimeoutMillis = unit.toMillis(timeout);
+		stopping = true;
+
+		ServerSocket listeningSocket = serverSocket;
+		if (listeningSocket != null) {
+			try {
+				listeningSocket.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+
+		for (SocketHandler handler : handlers) {
+			handler.goAway();
+		}
+
+		boolean drained = awaitInFlight(timeout, unit);
+
+		for (SocketHandler handler : handlers) {
+			handler.close();
+		}
+		if (drained) {
 			executorService.shutdown();
+		} else {
+			executorService.shutdownNow();
 		}
+		return drained;
 	}
 	
 	private class SocketHandler implements Runnable {
 		private Socket socket;
 
+		private final AtomicInteger inFlightCount = new AtomicInteger();
+
+		private volatile FrameWriter writer;
+
+		private volatile boolean goingAway;
+
+		private volatile long lastReceivedNanos = System.nanoTime();
+
+		private volatile Timeout idleCheck;
+
 		public SocketHandler(Socket socket) {
 			this.socket = socket;
+
+			handlers.add(this);
+			// a connection accepted while the server stops is told to go away as soon as it is running
+			goingAway = stopping;
 		}
 		
 		public void run() {
 			try {
-				InputStream in = socket.getInputStream();
-
-				byte[] sizeData = new byte[4];
-				in.read(sizeData);
-				int requestSize = ByteUtils.toInt(sizeData);
-				
-				byte[] requestData = new byte[requestSize];
-				in.read(requestData);
-				
-				Object requestObject = protocol.deserialize(new ByteArrayInputStream(requestData));
-				if (requestObject instanceof Request) {
-					Request request = (Request) requestObject;
-					Response response = receive(request);
-					
-					ByteArrayOutputStream responseByteArrayOutputStream = new ByteArrayOutputStream();
-					protocol.serialize(responseByteArrayOutputStream, response);
-					byte[] responseData = responseByteArrayOutputStream.toByteArray();
+				InputStream in = new BufferedInputStream(new FilterInputStream(socket.getInputStream()) {
+					@Override
+					public int read(byte[] data, int offset, int length) throws IOException {
+						int count = super.read(data, offset, length);
+						if (count > 0) {
+							lastReceivedNanos = System.nanoTime();
+						}
+						return count;
+					}
+				});
+				OutputStream socketOut = socket.getOutputStream();
+				FrameCodec connectionFrameCodec = frameCodec;
+				FrameWriter out = new FrameWriter(socketOut, connectionFrameCodec, coalescingNanos);
+				setWriter(out);
+				scheduleIdleCheck(idleTimeoutMillis);
+
+				long frameCount = 0;
+				for (;;) {
+					Object requestObject;
+					try {
+						requestObject = connectionFrameCodec.readFrame(in);
+					} catch (EOFException e) {
+						break; // client closed the connection
+					}
+					frameCount++;
 					
-					OutputStream out = socket.getOutputStream();
-					out.write(ByteUtils.toBytes(responseData.length));
-					out.write(responseData);
-					out.flush();
+					if (requestObject instanceof Handshake) {
+						if (frameCount > 1) {
+							// a late handshake would switch the codec while responses are still written with the old one
+							throw new RpcException("Handshake after the first frame");
+						}
+						Handshake answer = frameCodec.answerHandshake((Handshake) requestObject);
+						out.write(answer);
+						connectionFrameCodec = frameCodec.negotiate(answer);
+						out = new FrameWriter(socketOut, connectionFrameCodec, coalescingNanos);
+						setWriter(out);
+					} else if (requestObject instanceof Heartbeat) {
+						Heartbeat pong = new Heartbeat();
+						pong.pong = true;
+						write(pong, out);
+					} else if (requestObject instanceof Request) {
+						Request request = (Request) requestObject;
+						FrameWriter writer = out;
+						if (request.execute) {
+							if (!request.oneWay) {
+								inFlightCount.incrementAndGet();
+							}
+							dispatch(request, executorService, response -> {
+								inFlightCount.decrementAndGet();
+								write(response, writer);
+							});
+						} else {
+							handleRequest(request, writer);
+						}
+					} else if (requestObject instanceof BatchRequest) {
+						BatchRequest batchRequest = (BatchRequest) requestObject;
+						FrameWriter writer = out;
+						inFlightCount.incrementAndGet();
+						dispatchBatch(batchRequest, executorService, batchResponse -> {
+							inFlightCount.decrementAndGet();
+							write(batchResponse, writer);
+						});
+					}
 				}
-			} catch (IOException e) {
-				throw new RpcException(e);
+			} catch (IOException | RpcException e) {
+				// connection lost or corrupt frame
 			} finally {
+				handlers.remove(this);
+				close();
+				Timeout check = idleCheck;
+				if (check != null) {
+					check.cancel();
+				}
+			}
+		}
+
+		/**
+		 * Closes the connection in the timer thread if it is idle, so that a read timeout never interrupts a partially received frame.
+		 * Idle connections are detected with a resolution of half the idle timeout.
+		 */
+		private void scheduleIdleCheck(long idleTimeoutMillis) {
+			if (idleTimeoutMillis <= 0) {
+				return;
+			}
+
+			idleCheck = getTimerWheel().schedule(() -> {
+				if (!handlers.contains(this)) {
+					return;
+				}
+				if (inFlightCount.get() == 0 && System.nanoTime() - lastReceivedNanos >= TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis)) {
+					close();
+				} else {
+					scheduleIdleCheck(idleTimeoutMillis);
+				}
+			}, Math.max(1, idleTimeoutMillis / 2), TimeUnit.MILLISECONDS);
+		}
+
+		private void setWriter(FrameWriter out) {
+			writer = out;
+			if (goingAway) {
+				write(createGoAway(), out);
+			}
+		}
+
+		public void goAway() {
+			goingAway = true;
+			FrameWriter out = writer;
+			if (out != null) {
+				write(createGoAway(), out);
+			}
+		}
+
+		public void close() {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+
+		private GoAway createGoAway() {
+			GoAway goAway = new GoAway();
+			goAway.drainTimeout = drainTimeoutMillis;
+			return goAway;
+		}
+
+		private void handleRequest(Request request, FrameWriter out) {
+			Response response;
+			try {
+				response = receive(request);
+			} catch (RpcException e) {
+				response = errorResponse(request.requestId, e);
+			}
+
+			write(response, out);
+		}
+
+		private void write(Object message, FrameWriter out) {
+			try {
 				try {
-					socket.close();
-				} catch (IOException e) {
-					// ignore
+					out.write(message);
+				} catch (RuntimeException e) {
+					// nothing was written - answer the request with the failure instead
+					Object failure = encodingFailure(message, e);
+					if (failure != null) {
+						out.write(failure);
+					}
 				}
+			} catch (IOException e) {
+				// connection lost - the client will notice
 			}
 		}
 	}
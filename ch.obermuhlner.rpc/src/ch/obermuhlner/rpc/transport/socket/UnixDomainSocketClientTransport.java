@@ -0,0 +1,114 @@
+package ch.obermuhlner.rpc.transport.socket;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import ch.obermuhlner.rpc.exception.RpcException;
+import ch.obermuhlner.rpc.protocol.Protocol;
+import ch.obermuhlner.rpc.service.BatchRequest;
+import ch.obermuhlner.rpc.service.Request;
+import ch.obermuhlner.rpc.service.Response;
+import ch.obermuhlner.rpc.transport.ClientTransport;
+import ch.obermuhlner.rpc.transport.frame.FrameCodec;
+import ch.obermuhlner.rpc.transport.frame.FrameWriter;
+
+/**
+ * Client transport layer that sends requests over a Unix domain socket to a server on the same host.
+ *
+ * All requests share a single persistent {@link SocketConnection} (with the same framing and wire format as the TCP transports),
+ * which is reopened when it was lost.
+ * Requires Java 16 or later at runtime, see {@link UnixDomainSockets}.
+ */
+public class UnixDomainSocketClientTransport implements ClientTransport, AutoCloseable {
+
+	private final FrameCodec frameCodec;
+	private final String path;
+	private final long coalescingNanos;
+
+	private volatile long heartbeatIntervalNanos;
+	private volatile long idleTimeoutNanos;
+
+	private SocketConnection connection;
+
+	public UnixDomainSocketClientTransport(Protocol<Object> protocol, String path) {
+		this(new FrameCodec(protocol), path, 0);
+	}
+
+	/**
+	 * Constructs a {@link UnixDomainSocketClientTransport}.
+	 * 
+	 * @param frameCodec the {@link FrameCodec} to encode requests and decode responses
+	 * @param path the path of the socket file of the server
+	 * @param coalescingNanos the time in nanoseconds the connection waits for more requests before flushing, see {@link FrameWriter}
+	 */
+	public UnixDomainSocketClientTransport(FrameCodec frameCodec, String path, long coalescingNanos) {
+		this.frameCodec = frameCodec;
+		this.path = path;
+		this.coalescingNanos = coalescingNanos;
+	}
+
+	@Override
+	public CompletableFuture<Response> send(Request request) {
+		try {
+			return getConnection().send(request);
+		} catch (RpcException e) {
+			CompletableFuture<Response> future = new CompletableFuture<>();
+			future.completeExceptionally(e);
+			return future;
+		}
+	}
+
+	@Override
+	public List<CompletableFuture<Response>> sendBatch(BatchRequest batchRequest) {
+		try {
+			return getConnection().sendBatch(batchRequest);
+		} catch (RpcException e) {
+			return SocketConnection.failedFutures(batchRequest, e);
+		}
+	}
+
+	/**
+	 * Sets the heartbeat interval and the idle timeout of the connections opened afterwards, see {@link SocketConnection#startHeartbeat(long, long, TimeUnit)}.
+	 * 
+	 * @param heartbeatInterval the heartbeat interval, <code>0</code> to send no heartbeats
+	 * @param idleTimeout the idle timeout, <code>0</code> to keep idle connections open
+	 * @param unit the {@link TimeUnit} of the heartbeat interval and the idle timeout
+	 */
+	public void setHeartbeat(long heartbeatInterval, long idleTimeout, TimeUnit unit) {
+		heartbeatIntervalNanos = unit.toNanos(heartbeatInterval);
+		idleTimeoutNanos = unit.toNanos(idleTimeout);
+	}
+
+	/**
+	 * Returns whether the server is considered reachable.
+	 * 
+	 * After the connection failed the server is considered dead for one heartbeat interval, then the next request tries to reconnect.
+	 * A server that sent a {@link ch.obermuhlner.rpc.service.GoAway} is not alive while it drains the connection.
+	 */
+	@Override
+	public synchronized boolean isAlive() {
+		return connection == null || !connection.isUnavailable(heartbeatIntervalNanos);
+	}
+
+	@Override
+	public synchronized void close() {
+		if (connection != null) {
+			connection.close();
+			connection = null;
+		}
+	}
+
+	private synchronized SocketConnection getConnection() {
+		if (connection == null || !connection.isOpen()) {
+			try {
+				connection = new SocketConnection(frameCodec, UnixDomainSockets.openSocketChannel(path), coalescingNanos);
+				connection.startHeartbeat(heartbeatIntervalNanos, idleTimeoutNanos, TimeUnit.NANOSECONDS);
+			} catch (IOException e) {
+				throw new RpcException(e);
+			}
+		}
+		return connection;
+	}
+}
@@ -0,0 +1,45 @@
+package ch.obermuhlner.rpc.transport.socket;
+
+import java.io.IOException;
+import java.nio.channels.ServerSocketChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import ch.obermuhlner.rpc.meta.MetaDataService;
+import ch.obermuhlner.rpc.protocol.Protocol;
+import ch.obermuhlner.rpc.transport.frame.FrameCodec;
+
+/**
+ * Server transport layer that listens on a Unix domain socket, for clients on the same host.
+ *
+ * Works like the {@link NioSocketServerTransport} (same framing and wire format) but bypasses the TCP stack.
+ * Requires Java 16 or later at runtime, see {@link UnixDomainSockets}.
+ */
+public class UnixDomainSocketServerTransport extends NioSocketServerTransport {
+
+	private final String path;
+
+	public UnixDomainSocketServerTransport(MetaDataService metaDataService, Protocol<Object> protocol, String path) {
+		this(metaDataService, new FrameCodec(protocol), path, 1, Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() * 2));
+	}
+
+	/**
+	 * Constructs a {@link UnixDomainSocketServerTransport}.
+	 *
+	 * @param metaDataService the {@link MetaDataService}
+	 * @param frameCodec the {@link FrameCodec} to encode and decode requests and responses
+	 * @param path the path of the socket file, an existing file is replaced
+	 * @param eventLoopCount the number of event loop threads
+	 * @param workerExecutorService the {@link ExecutorService} to execute requests
+	 */
+	public UnixDomainSocketServerTransport(MetaDataService metaDataService, FrameCodec frameCodec, String path, int eventLoopCount, ExecutorService workerExecutorService) {
+		super(metaDataService, frameCodec, UnixDomainSockets.address(path), eventLoopCount, workerExecutorService);
+
+		this.path = path;
+	}
+
+	@Override
+	protected ServerSocketChannel openServerSocketChannel() throws IOException {
+		return UnixDomainSockets.openServerSocketChannel(path);
+	}
+}
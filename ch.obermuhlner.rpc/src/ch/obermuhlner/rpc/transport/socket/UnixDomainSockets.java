@@ -0,0 +1,143 @@
+package ch.obermuhlner.rpc.transport.socket;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.BindException;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import ch.obermuhlner.rpc.exception.RpcException;
+
+/**
+ * Opens Unix domain socket channels.
+ *
+ * The framework is compiled for Java 8, so the Unix domain socket support of the running JVM (Java 16 or later) is looked up reflectively.
+ */
+public class UnixDomainSockets {
+
+	private static final ProtocolFamily UNIX_PROTOCOL_FAMILY = findUnixProtocolFamily();
+
+	private static final Method ADDRESS_OF_METHOD = findMethod("java.net.UnixDomainSocketAddress", "of", String.class);
+
+	private static final Method OPEN_SERVER_SOCKET_CHANNEL_METHOD = findMethod(ServerSocketChannel.class.getName(), "open", ProtocolFamily.class);
+
+	/**
+	 * Returns whether the running JVM supports Unix domain sockets.
+	 *
+	 * @return <code>true</code> if Unix domain sockets are supported
+	 */
+	public static boolean isAvailable() {
+		return UNIX_PROTOCOL_FAMILY != null && ADDRESS_OF_METHOD != null && OPEN_SERVER_SOCKET_CHANNEL_METHOD != null;
+	}
+
+	/**
+	 * Creates the address of a Unix domain socket.
+	 *
+	 * @param path the path of the socket file
+	 * @return the created {@link SocketAddress}
+	 * @throws RpcException if the running JVM does not support Unix domain sockets
+	 */
+	public static SocketAddress address(String path) {
+		checkAvailable();
+		return (SocketAddress) invoke(ADDRESS_OF_METHOD, null, path);
+	}
+
+	/**
+	 * Opens a blocking {@link SocketChannel} connected to the Unix domain socket at the specified path.
+	 *
+	 * @param path the path of the socket file
+	 * @return the connected {@link SocketChannel}
+	 * @throws IOException if the connection failed
+	 * @throws RpcException if the running JVM does not support Unix domain sockets
+	 */
+	public static SocketChannel openSocketChannel(String path) throws IOException {
+		return SocketChannel.open(address(path));
+	}
+
+	/**
+	 * Opens a {@link ServerSocketChannel} bound to the Unix domain socket at the specified path.
+	 *
+	 * A stale socket file left behind by a previous server, which refuses connections, is deleted before binding.
+	 *
+	 * @param path the path of the socket file
+	 * @return the bound {@link ServerSocketChannel}
+	 * @throws IOException if binding failed, for example because another server is listening on the socket or the path is not a socket file
+	 * @throws RpcException if the running JVM does not support Unix domain sockets
+	 */
+	public static ServerSocketChannel openServerSocketChannel(String path) throws IOException {
+		SocketAddress address = address(path);
+
+		deleteStaleSocketFile(Paths.get(path), address);
+		ServerSocketChannel serverSocketChannel = (ServerSocketChannel) invoke(OPEN_SERVER_SOCKET_CHANNEL_METHOD, null, UNIX_PROTOCOL_FAMILY);
+		try {
+			serverSocketChannel.bind(address);
+		} catch (IOException | RuntimeException e) {
+			serverSocketChannel.close();
+			throw e;
+		}
+		return serverSocketChannel;
+	}
+
+	private static void deleteStaleSocketFile(Path path, SocketAddress address) throws IOException {
+		if (!Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+			return;
+		}
+		if (!Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS).isOther()) {
+			throw new BindException("Not a socket file: " + path);
+		}
+
+		boolean listening;
+		try {
+			SocketChannel.open(address).close();
+			listening = true;
+		} catch (IOException e) {
+			// the connection is refused, the server that created the socket file is gone
+			listening = false;
+		}
+		if (listening) {
+			throw new BindException("Another server is listening on " + path);
+		}
+		Files.deleteIfExists(path);
+	}
+
+	private static void checkAvailable() {
+		if (!isAvailable()) {
+			throw new RpcException("Unix domain sockets are not supported by Java " + System.getProperty("java.version"));
+		}
+	}
+
+	private static Object invoke(Method method, Object target, Object argument) {
+		try {
+			return method.invoke(target, argument);
+		} catch (IllegalAccessException e) {
+			throw new RpcException(e);
+		} catch (InvocationTargetException e) {
+			throw new RpcException(e.getTargetException());
+		}
+	}
+
+	private static ProtocolFamily findUnixProtocolFamily() {
+		try {
+			return StandardProtocolFamily.valueOf("UNIX");
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	private static Method findMethod(String className, String methodName, Class<?> parameterType) {
+		try {
+			return Class.forName(className).getMethod(methodName, parameterType);
+		} catch (ClassNotFoundException | NoSuchMethodException e) {
+			return null;
+		}
+	}
+}